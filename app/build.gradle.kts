@@ -29,6 +29,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        // JMH benchmarks in src/test run bonuspack code on the JVM: android.util.Log & co return defaults.
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -41,9 +45,22 @@ dependencies {
     implementation(libs.gson)
 
     testImplementation(libs.junit)
+    testImplementation(libs.jmh.core)
+    testAnnotationProcessor(libs.jmh.generator.annprocess)
     implementation(libs.preference)
     implementation(libs.json)
 
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-}
\ No newline at end of file
+}
+
+// Runs the JMH benchmarks of src/test on the JVM: ./gradlew :app:jmh [-Pjmh.includes=OSRM]
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks of the unit test source set."
+    val unitTest = tasks.named<Test>("testDebugUnitTest")
+    dependsOn("compileDebugUnitTestJavaWithJavac")
+    classpath = files(unitTest.map { it.classpath })
+    mainClass.set("org.openjdk.jmh.Main")
+    (project.findProperty("jmh.includes") as String?)?.let { args(it) }
+}
@@ -71,17 +71,7 @@ public class AnimatedRouteActivity extends BaseMapActivity {
 
         // Zoom to bounding box toàn bộ route
         if (routePoints != null && !routePoints.isEmpty()) {
-            double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
-            double maxLat = Double.MIN_VALUE, maxLon = Double.MIN_VALUE;
-
-            for (GeoPoint p : routePoints) {
-                if (p.getLatitude() < minLat) minLat = p.getLatitude();
-                if (p.getLongitude() < minLon) minLon = p.getLongitude();
-                if (p.getLatitude() > maxLat) maxLat = p.getLatitude();
-                if (p.getLongitude() > maxLon) maxLon = p.getLongitude();
-            }
-
-            org.osmdroid.util.BoundingBox boundingBox = new org.osmdroid.util.BoundingBox(maxLat, maxLon, minLat, minLon);
+            org.osmdroid.util.BoundingBox boundingBox = road.mRouteHigh.getBoundingBox();
             map.zoomToBoundingBox(boundingBox, true, 50);
 
             // Bắt đầu animation marker
@@ -17,18 +17,22 @@ import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Marker;
+import org.osmdroid.bonuspack.location.GeocodeStore;
 import org.osmdroid.bonuspack.location.GeocoderNominatim;
 import org.osmdroid.bonuspack.location.POI;
+import org.osmdroid.bonuspack.routing.CachingRoadManager;
 import org.osmdroid.bonuspack.routing.OSRMRoadManager;
 import org.osmdroid.bonuspack.routing.Road;
 import org.osmdroid.bonuspack.routing.RoadManager;
+import org.osmdroid.bonuspack.utils.ImageCache;
+import org.osmdroid.bonuspack.utils.ImageDiskCache;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
 import org.osmdroid.views.overlay.Polyline;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -40,18 +44,16 @@ public class MainActivity extends AppCompatActivity {
     private ProgressDialog progressDialog;
 
     private GeocoderNominatim geocoder;
+    // Kết quả geocoding đã lưu trên máy: gợi ý tức thì, chỉ gọi Nominatim khi chưa có
+    private volatile GeocodeStore geocodeStore;
     private ArrayAdapter<String> fromAdapter, toAdapter;
     private List<POI> fromResults = new ArrayList<>();
     private List<POI> toResults = new ArrayList<>();
-    private final Map<String, Road> roadCache = new HashMap<>();
+    // Cache tuyến đường trên đĩa, giữ lại sau khi khởi động lại ứng dụng
+    private RoadManager roadManager;
 
     // Executor để chạy task background (tối ưu thay vì tạo thread mới mỗi lần)
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    // Hàm tạo key cache
-    private String makeCacheKey(POI start, POI end) {
-        return start.mLocation.getLatitude() + "," + start.mLocation.getLongitude()
-                + "_" + end.mLocation.getLatitude() + "," + end.mLocation.getLongitude();
-    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -63,6 +65,8 @@ public class MainActivity extends AppCompatActivity {
         initMap();
         initViews();
         initGeocoder();
+        initRoadManager();
+        initImageCache();
         initAutocomplete();
         initButton();
         progressDialog = new ProgressDialog(this);
@@ -106,6 +110,27 @@ public class MainActivity extends AppCompatActivity {
 
     private void initGeocoder() {
         geocoder = new GeocoderNominatim("MiniDeliveryApp");
+        // Đọc file trên background thread, trước mọi lần tìm kiếm (executor chạy tuần tự)
+        executor.submit(() -> {
+            GeocodeStore store = new GeocodeStore(
+                    new File(getFilesDir(), "geocode.bin"), GeocodeStore.DEFAULT_MAX_PLACES);
+            geocoder.setStore(store);
+            geocodeStore = store;
+        });
+    }
+
+    private void initRoadManager() {
+        roadManager = new CachingRoadManager(
+                new OSRMRoadManager(this, "MiniDeliveryApp_Road"), getCacheDir());
+    }
+
+    private void initImageCache() {
+        // Ảnh (icon KML, ảnh POI) lưu trên đĩa, không tải lại sau khi khởi động lại ứng dụng
+        ImageCache images = ImageCache.getDefault();
+        if (images.getDiskCache() == null) { // dùng chung cho cả ứng dụng: chỉ tạo một lần
+            images.setDiskCache(new ImageDiskCache(
+                    new File(getCacheDir(), "images"), ImageDiskCache.DEFAULT_MAX_BYTES));
+        }
     }
 
     private void initAutocomplete() {
@@ -145,6 +170,24 @@ public class MainActivity extends AppCompatActivity {
             if (delayedSearch != null) {
                 handler.removeCallbacks(delayedSearch);
             }
+            // Văn bản do chọn gợi ý: giữ nguyên danh sách để onItemClick lấy đúng POI
+            if (editText.isPerformingCompletion()) {
+                return;
+            }
+
+            // Gợi ý ngay từ kết quả đã lưu (dưới 1ms), không cần chờ
+            final String typed = s.toString().trim();
+            GeocodeStore store = geocodeStore;
+            if (store != null && !typed.isEmpty()) {
+                List<Address> stored = store.getFromLocationName(typed, 5);
+                if (!stored.isEmpty()) {
+                    showAddresses(stored);
+                }
+                // Đã có đủ kết quả: không gọi mạng
+                if (store.canAnswer(typed, 5)) {
+                    return;
+                }
+            }
 
             delayedSearch = () -> {
                 final String query = editText.getText().toString().trim();
@@ -159,24 +202,9 @@ public class MainActivity extends AppCompatActivity {
 
                 executor.submit(() -> {
                     try {
+                        // Kết quả mới được lưu lại trong geocodeStore
                         List<Address> addresses = geocoder.getFromLocationName(query, 5);
-                        runOnUiThread(() -> {
-                            results.clear();
-                            adapter.clear();
-                            for (Address address : addresses) {
-                                String featureName = address.getFeatureName();
-                                if (featureName == null || featureName.isEmpty()) {
-                                    featureName = address.getAddressLine(0);
-                                }
-                                POI poi = new POI(POI.POI_SERVICE_NOMINATIM);
-                                poi.mLocation = new GeoPoint(address.getLatitude(), address.getLongitude());
-                                poi.mDescription = featureName;
-                                results.add(poi);
-                                adapter.add(poi.mDescription);
-                            }
-                            adapter.notifyDataSetChanged();
-                            editText.showDropDown();
-                        });
+                        runOnUiThread(() -> showAddresses(addresses));
                     } catch (IOException e) {
                         e.printStackTrace();
                     }
@@ -189,6 +217,24 @@ public class MainActivity extends AppCompatActivity {
 
         @Override
         public void afterTextChanged(Editable s) {}
+
+        private void showAddresses(List<Address> addresses) {
+            results.clear();
+            adapter.clear();
+            for (Address address : addresses) {
+                String featureName = address.getFeatureName();
+                if (featureName == null || featureName.isEmpty()) {
+                    featureName = address.getAddressLine(0);
+                }
+                POI poi = new POI(POI.POI_SERVICE_NOMINATIM);
+                poi.mLocation = new GeoPoint(address.getLatitude(), address.getLongitude());
+                poi.mDescription = featureName;
+                results.add(poi);
+                adapter.add(poi.mDescription);
+            }
+            adapter.notifyDataSetChanged();
+            editText.showDropDown();
+        }
     }
 
 
@@ -205,32 +251,20 @@ public class MainActivity extends AppCompatActivity {
         endMarker.setTitle("End: " + end.mDescription);
         map.getOverlays().add(endMarker);
 
-        String key = makeCacheKey(start, end);
-        Road road = roadCache.get(key);
+        // Tính đường trên background thread (cache hit không cần gọi mạng)
+        showLoading(true);
+        executor.submit(() -> {
+            ArrayList<GeoPoint> waypoints = new ArrayList<>();
+            waypoints.add(start.mLocation);
+            waypoints.add(end.mLocation);
 
-        if (road != null) {
-            // Dùng cached road, vẽ luôn
-            drawRoadOnMap(road);
-        } else {
-            // Tính đường mới trên background thread
-            showLoading(true);
-            executor.submit(() -> {
-                RoadManager roadManager = new OSRMRoadManager(this, "MiniDeliveryApp_Road");
-                ArrayList<GeoPoint> waypoints = new ArrayList<>();
-                waypoints.add(start.mLocation);
-                waypoints.add(end.mLocation);
-
-                Road newRoad = roadManager.getRoad(waypoints);
-
-                // Lưu vào cache
-                roadCache.put(key, newRoad);
-
-                runOnUiThread(() -> {
-                    showLoading(false);
-                    drawRoadOnMap(newRoad);
-                });
+            Road newRoad = roadManager.getRoad(waypoints);
+
+            runOnUiThread(() -> {
+                showLoading(false);
+                drawRoadOnMap(newRoad);
             });
-        }
+        });
 
         map.invalidate();
     }
@@ -239,21 +273,10 @@ public class MainActivity extends AppCompatActivity {
         Polyline roadOverlay = RoadManager.buildRoadOverlay(road);
         map.getOverlayManager().add(roadOverlay);
 
-        List<GeoPoint> routePoints = road.mRouteHigh;
+        PackedPolyline routePoints = road.mRouteHigh;
         if (routePoints != null && !routePoints.isEmpty()) {
-            // Tính bounding box chứa toàn bộ route
-            double minLat = Double.MAX_VALUE, minLon = Double.MAX_VALUE;
-            double maxLat = Double.MIN_VALUE, maxLon = Double.MIN_VALUE;
-
-            for (GeoPoint p : routePoints) {
-                if (p.getLatitude() < minLat) minLat = p.getLatitude();
-                if (p.getLongitude() < minLon) minLon = p.getLongitude();
-                if (p.getLatitude() > maxLat) maxLat = p.getLatitude();
-                if (p.getLongitude() > maxLon) maxLon = p.getLongitude();
-            }
-
-            // Tạo bounding box từ 2 điểm min/max
-            org.osmdroid.util.BoundingBox boundingBox = new org.osmdroid.util.BoundingBox(maxLat, maxLon, minLat, minLon);
+            // Tính bounding box chứa toàn bộ route, trực tiếp trên mảng toạ độ (không tạo GeoPoint)
+            org.osmdroid.util.BoundingBox boundingBox = routePoints.getBoundingBox();
 
             // Zoom sao cho toàn bộ bounding box hiện trên màn hình, có padding 50 pixels
             map.zoomToBoundingBox(boundingBox, true, 50);
@@ -275,6 +298,16 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Ghi ngay các kết quả geocoding chưa lưu, phòng khi ứng dụng bị tắt ở background
+        GeocodeStore store = geocodeStore;
+        if (store != null) {
+            executor.submit(store::save);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -0,0 +1,206 @@
+package org.osmdroid.bonuspack.clustering;
+
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Radius-based clusters precomputed for all zoom levels, in the spirit of supercluster. <br>
+ *
+ * Level maxZoom+1 has one node per item. Level z is the radius-based clustering of the nodes of level z+1,
+ * with a radius in pixels at zoom z: a node joins the first earlier center within the radius, or becomes a center.
+ * Getting the clusters at a zoom level is then a lookup in the hierarchy, instead of a new clustering. <br>
+ *
+ * Items can be added incrementally: the hierarchy is the same as a full rebuild with the new item at the end.
+ * The hierarchy is built lazily, at the first request of clusters. <br>
+ *
+ * Works on positions only. Thread-safe.
+ *
+ * @see RadiusMarkerClusterer#setHierarchical
+ */
+public class ClusterHierarchy {
+
+	/** nodes of a level */
+	protected static class Level {
+		/** radius in projected [0, 1] coordinates */
+		final double mRadius;
+		final GridIndex mGrid;
+		/** projected position of the nodes */
+		double[] mX, mY;
+		/** index of the item at the center of the node */
+		int[] mCenters;
+		/** index of the node containing this node in the level below (zoom-1) */
+		int[] mParents;
+		int mSize;
+
+		Level(double radius, int capacity){
+			mRadius = radius;
+			mGrid = (radius > 0.0 ? new GridIndex(radius, capacity) : null);
+			capacity = Math.max(capacity, 16);
+			mX = new double[capacity];
+			mY = new double[capacity];
+			mCenters = new int[capacity];
+			mParents = new int[capacity];
+		}
+
+		int add(double x, double y, int center){
+			if (mSize == mCenters.length){
+				int capacity = mSize*2;
+				mX = Arrays.copyOf(mX, capacity);
+				mY = Arrays.copyOf(mY, capacity);
+				mCenters = Arrays.copyOf(mCenters, capacity);
+				mParents = Arrays.copyOf(mParents, capacity);
+			}
+			mX[mSize] = x;
+			mY[mSize] = y;
+			mCenters[mSize] = center;
+			if (mGrid != null)
+				mGrid.add(mSize, x, y);
+			return mSize++;
+		}
+
+		/** @return the first node within the radius of (x, y), or -1 if none */
+		int findNode(double x, double y){
+			long column = mGrid.getColumn(x);
+			long row = mGrid.getRow(y);
+			double radiusSquared = mRadius * mRadius;
+			int found = -1;
+			for (long r = row-1; r <= row+1; r++){
+				for (long c = column-1; c <= column+1; c++){
+					GridIndex.Cell cell = mGrid.getCell(c, r);
+					if (cell == null)
+						continue;
+					for (int i = 0; i < cell.mSize; i++){
+						int node = cell.mItems[i];
+						if (found != -1 && node >= found)
+							continue;
+						double dx = Math.abs(mX[node] - x);
+						if (dx > 0.5)
+							dx = 1.0 - dx; //across the date line
+						double dy = mY[node] - y;
+						if (dx*dx + dy*dy <= radiusSquared)
+							found = node;
+					}
+				}
+			}
+			return found;
+		}
+	}
+
+	protected final double mRadiusInPixels;
+	protected final int mMaxZoom;
+	protected final ArrayList<GeoPoint> mPositions;
+	/** levels 0 to mMaxZoom+1, or null if not built yet */
+	protected Level[] mLevels;
+
+	/**
+	 * @param radiusInPixels clustering radius, in pixels at each zoom level
+	 * @param maxZoom max zoom level with clustering. Above, each item is alone in its cluster.
+	 */
+	public ClusterHierarchy(double radiusInPixels, int maxZoom){
+		mRadiusInPixels = radiusInPixels;
+		mMaxZoom = Math.max(maxZoom, -1);
+		mPositions = new ArrayList<>();
+	}
+
+	/** replace all items. The hierarchy will be rebuilt at next request. */
+	public synchronized void setPositions(List<GeoPoint> positions){
+		mPositions.clear();
+		mPositions.addAll(positions);
+		mLevels = null;
+	}
+
+	/** add an item at the end, updating only the nodes it belongs to */
+	public synchronized void add(GeoPoint position){
+		mPositions.add(position);
+		if (mLevels != null)
+			insert(mPositions.size()-1);
+	}
+
+	/** @return the position of an item, as given to the hierarchy */
+	public synchronized GeoPoint getPosition(int item){
+		return mPositions.get(item);
+	}
+
+	/** @return the number of items */
+	public synchronized int size(){
+		return mPositions.size();
+	}
+
+	/**
+	 * @param zoom zoom level
+	 * @return for each item, the index of the item at the center of its cluster at this zoom level.
+	 * Centers always come before the other items of their cluster, as in RadiusMarkerClusterer.clusterPositions.
+	 */
+	public synchronized int[] getCenters(int zoom){
+		if (mLevels == null)
+			build();
+		int n = mPositions.size();
+		int[] nodes = new int[n];
+		for (int i = 0; i < n; i++)
+			nodes[i] = i;
+		int level = Math.max(0, Math.min(zoom, mMaxZoom+1));
+		//go down from the items to their node at this level:
+		for (int z = mMaxZoom+1; z > level; z--){
+			int[] parents = mLevels[z].mParents;
+			for (int i = 0; i < n; i++)
+				nodes[i] = parents[nodes[i]];
+		}
+		int[] centers = mLevels[level].mCenters;
+		for (int i = 0; i < n; i++)
+			nodes[i] = centers[nodes[i]];
+		return nodes;
+	}
+
+	protected void build(){
+		int n = mPositions.size();
+		mLevels = new Level[mMaxZoom+2];
+		mLevels[mMaxZoom+1] = new Level(0.0, n);
+		for (int i = 0; i < n; i++)
+			addItem(i);
+		for (int z = mMaxZoom; z >= 0; z--){
+			double radius = mRadiusInPixels / TileSystem.MapSize((double)z);
+			//a level has less nodes than the level above:
+			mLevels[z] = new Level(radius, mLevels[z+1].mSize);
+			addNodes(z, 0);
+		}
+	}
+
+	/** put the item in the top level, as a node alone */
+	protected void addItem(int item){
+		TileSystem tileSystem = MapView.getTileSystem();
+		GeoPoint p = mPositions.get(item);
+		mLevels[mMaxZoom+1].add(tileSystem.getX01FromLongitude(p.getLongitude(), true),
+				tileSystem.getY01FromLatitude(p.getLatitude(), true), item);
+	}
+
+	/** cluster the nodes of level zoom+1, from first, in the level zoom */
+	protected void addNodes(int zoom, int first){
+		Level level = mLevels[zoom];
+		Level above = mLevels[zoom+1];
+		for (int j = first; j < above.mSize; j++){
+			int node = level.findNode(above.mX[j], above.mY[j]);
+			if (node == -1)
+				node = level.add(above.mX[j], above.mY[j], above.mCenters[j]);
+			above.mParents[j] = node;
+		}
+	}
+
+	/** insert the item in an existing hierarchy */
+	protected void insert(int item){
+		addItem(item);
+		int node = mLevels[mMaxZoom+1].mSize-1;
+		for (int z = mMaxZoom; z >= 0; z--){
+			Level level = mLevels[z];
+			int size = level.mSize;
+			addNodes(z, node);
+			if (level.mSize == size)
+				return; //joined an existing node: the lower levels are unchanged
+			node = size; //new node, to be clustered in the level below
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.osmdroid.bonuspack.clustering;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory cache of cluster icons, with a byte budget. Least recently used icons are evicted first. <br>
+ * Evicted bitmaps are not recycled, as they may still be displayed: they are left to the garbage collector.
+ *
+ * @see RadiusMarkerClusterer
+ */
+public class ClusterIconCache {
+
+	protected final LinkedHashMap<String, BitmapDrawable> mIcons;
+	protected long mMaxBytes;
+	protected long mCurrentBytes;
+
+	/** @param maxBytes byte budget of the bitmaps */
+	public ClusterIconCache(long maxBytes){
+		mMaxBytes = maxBytes;
+		mIcons = new LinkedHashMap<>(32, 0.75f, true);
+		mCurrentBytes = 0;
+	}
+
+	/** @return the icon for this key, or null if not in the cache */
+	public synchronized BitmapDrawable get(String key){
+		return mIcons.get(key);
+	}
+
+	public synchronized void put(String key, BitmapDrawable icon){
+		BitmapDrawable previous = mIcons.put(key, icon);
+		if (previous != null)
+			mCurrentBytes -= getByteCount(previous);
+		mCurrentBytes += getByteCount(icon);
+		trimToSize();
+	}
+
+	public synchronized void setMaxBytes(long maxBytes){
+		mMaxBytes = maxBytes;
+		trimToSize();
+	}
+
+	/** @return the total size of the cached bitmaps, in bytes */
+	public synchronized long size(){
+		return mCurrentBytes;
+	}
+
+	public synchronized void clear(){
+		mIcons.clear();
+		mCurrentBytes = 0;
+	}
+
+	protected void trimToSize(){
+		Iterator<Map.Entry<String, BitmapDrawable>> it = mIcons.entrySet().iterator();
+		while (mCurrentBytes > mMaxBytes && it.hasNext()){
+			mCurrentBytes -= getByteCount(it.next().getValue());
+			it.remove();
+		}
+	}
+
+	protected static long getByteCount(BitmapDrawable icon){
+		Bitmap bitmap = icon.getBitmap();
+		return (bitmap != null ? bitmap.getAllocationByteCount() : 0);
+	}
+}
@@ -0,0 +1,147 @@
+package org.osmdroid.bonuspack.clustering;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uniform grid over the whole projected map, for fast neighbourhood queries on items. <br>
+ * Coordinates are the projected coordinates in [0, 1] (as given by TileSystem.getX01FromLongitude/getY01FromLatitude),
+ * so that the grid wraps around the date line. Items are identified by an int, typically their index in a list. <br>
+ *
+ * There is no removal: while scanning a cell, callers can drop the items they don't need anymore,
+ * by compacting Cell.mItems and updating Cell.mSize.
+ *
+ * @see RadiusMarkerClusterer#clusterPositions
+ */
+public class GridIndex {
+
+	/** items of a grid cell */
+	public static class Cell {
+		public int[] mItems = new int[4];
+		public int mSize;
+
+		void add(int item){
+			if (mSize == mItems.length){
+				int[] items = new int[mSize*2];
+				System.arraycopy(mItems, 0, items, 0, mSize);
+				mItems = items;
+			}
+			mItems[mSize++] = item;
+		}
+	}
+
+	protected final long mColumns;
+	protected final double mCellSize;
+	protected final HashMap<Long, Cell> mCells;
+
+	/**
+	 * @param cellSize minimal size of a cell, in projected [0, 1] coordinates.
+	 * The actual size is slightly larger, so that the cells exactly cover the map width.
+	 * @param expectedItems to size the grid.
+	 */
+	public GridIndex(double cellSize, int expectedItems){
+		long columns = (cellSize > 0.0 ? (long)Math.floor(1.0 / cellSize) : Long.MAX_VALUE);
+		mColumns = Math.max(1, Math.min(columns, 1L << 30));
+		mCellSize = 1.0 / mColumns;
+		mCells = new HashMap<>(Math.max(16, expectedItems / 2));
+	}
+
+	public double getCellSize(){
+		return mCellSize;
+	}
+
+	public long getColumn(double x){
+		return Math.min((long)(x * mColumns), mColumns-1);
+	}
+
+	public long getRow(double y){
+		return Math.max(0, Math.min((long)(y * mColumns), mColumns-1));
+	}
+
+	public void add(int item, double x, double y){
+		long key = getKey(getColumn(x), getRow(y));
+		Cell cell = mCells.get(key);
+		if (cell == null){
+			cell = new Cell();
+			mCells.put(key, cell);
+		}
+		cell.add(item);
+	}
+
+	/**
+	 * @param column can be outside the map: it wraps around the date line.
+	 * @param row outside the map gives null.
+	 * @return the cell, or null if empty.
+	 */
+	public Cell getCell(long column, long row){
+		if (row < 0 || row >= mColumns)
+			return null;
+		column = ((column % mColumns) + mColumns) % mColumns;
+		return mCells.get(getKey(column, row));
+	}
+
+	/**
+	 * @return the items of all cells intersecting the rectangle, in no specific order.
+	 * Items of these cells may be slightly outside the rectangle.
+	 * @param xWest can be greater than xEast, for a rectangle across the date line. Both can be outside [0, 1].
+	 */
+	public int[] getItems(double xWest, double yNorth, double xEast, double ySouth){
+		if (ySouth < 0.0 || yNorth > 1.0)
+			return new int[0]; //above or below the map
+		if (xEast < xWest)
+			xEast += 1.0;
+		long firstColumn = (long)Math.floor(xWest * mColumns);
+		long lastColumn = (long)Math.floor(xEast * mColumns);
+		if (lastColumn - firstColumn >= mColumns){
+			firstColumn = 0;
+			lastColumn = mColumns-1;
+		} else {
+			//first column back in the grid:
+			long shift = Math.floorDiv(firstColumn, mColumns) * mColumns;
+			firstColumn -= shift;
+			lastColumn -= shift;
+		}
+		long firstRow = getRow(yNorth);
+		long lastRow = getRow(ySouth);
+		int[] items = new int[16];
+		int count = 0;
+		double cellsInRect = (double)(lastColumn-firstColumn+1) * (lastRow-firstRow+1);
+		if (cellsInRect <= mCells.size()){
+			for (long row = firstRow; row <= lastRow; row++){
+				for (long column = firstColumn; column <= lastColumn; column++){
+					Cell cell = getCell(column, row);
+					if (cell != null){
+						items = append(items, count, cell);
+						count += cell.mSize;
+					}
+				}
+			}
+		} else {
+			//rectangle much larger than the grid content: rather check each cell
+			for (Map.Entry<Long, Cell> entry : mCells.entrySet()){
+				long key = entry.getKey();
+				long row = key / mColumns;
+				long column = key % mColumns;
+				if (column < firstColumn)
+					column += mColumns; //across the date line
+				if (row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn){
+					items = append(items, count, entry.getValue());
+					count += entry.getValue().mSize;
+				}
+			}
+		}
+		return Arrays.copyOf(items, count);
+	}
+
+	protected static int[] append(int[] items, int count, Cell cell){
+		if (count + cell.mSize > items.length)
+			items = Arrays.copyOf(items, Math.max(items.length*2, count + cell.mSize));
+		System.arraycopy(cell.mItems, 0, items, count, cell.mSize);
+		return items;
+	}
+
+	protected long getKey(long column, long row){
+		return row * mColumns + column;
+	}
+}
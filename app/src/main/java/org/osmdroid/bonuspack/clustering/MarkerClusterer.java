@@ -9,13 +9,20 @@ import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.bonuspack.kml.KmlFeature;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.Overlay;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /** 
  * An overlay allowing to perform markers clustering. 
@@ -23,7 +30,12 @@ import java.util.ListIterator;
  * Depending on the zoom level, markers will be displayed separately, or grouped as a single Marker. <br/>
  * 
  * This abstract class provides the framework. Sub-classes have to implement the clustering algorithm, 
- * and the rendering of a cluster. 
+ * and the rendering of a cluster. <br/>
+ * 
+ * Clustering is done in the draw pass by default. With setClusteringExecutor, it is done on a worker thread instead:
+ * the current clusters are still drawn until the new ones are ready. <br/>
+ * 
+ * Only the clusters around the visible area are drawn and hit-tested, using a grid index of the cluster positions. 
  * 
  * @author M.Kergall
  *
@@ -33,12 +45,45 @@ public abstract class MarkerClusterer extends Overlay {
 	/** impossible value for zoom level, to force clustering */
 	protected static final int FORCE_CLUSTERING = -1;
 	
-	protected ArrayList<Marker> mItems = new ArrayList<Marker>();
+	protected MarkerList mItems = new MarkerList();
 	protected Point mPoint = new Point();
 	protected ArrayList<StaticCluster> mClusters = new ArrayList<StaticCluster>();
 	protected int mLastZoomLevel;
 	protected Bitmap mClusterIcon;
 	protected String mName, mDescription;
+	/** executor for asynchronous clustering, or null for clustering in the draw pass */
+	protected Executor mClusteringExecutor;
+	/** id of the last clustering started, to drop the results of older ones */
+	protected final AtomicInteger mClusteringGeneration = new AtomicInteger();
+	/** clusters computed in background, waiting to be published at next draw */
+	protected final AtomicReference<ClusteringResult> mNewClusters = new AtomicReference<ClusteringResult>();
+	/** grid index of the positions of mIndexedClusters */
+	protected GridIndex mClustersIndex;
+	protected ArrayList<StaticCluster> mIndexedClusters;
+	/** margin around the screen for culling, in pixels: a marker icon can be visible when its position is not */
+	protected int mCullingMargin = 128;
+	/** bounds of the first mBoundsCount items, when mItems was at mBoundsModCount modifications and mBoundsLast was the last of them */
+	protected double mNorth, mEast, mSouth, mWest;
+	protected int mBoundsCount, mBoundsModCount;
+	protected Marker mBoundsLast;
+
+	/** list of markers counting its structural modifications, including those done through getItems() */
+	protected static class MarkerList extends ArrayList<Marker> {
+		/** @return the number of additions and removals done on the list */
+		public int getModCount(){
+			return modCount;
+		}
+	}
+
+	protected static class ClusteringResult {
+		final int mGeneration;
+		final ArrayList<StaticCluster> mClusters;
+
+		ClusteringResult(int generation, ArrayList<StaticCluster> clusters){
+			mGeneration = generation;
+			mClusters = clusters;
+		}
+	}
 	
 	// abstract methods: 
 	
@@ -48,6 +93,21 @@ public abstract class MarkerClusterer extends Overlay {
 	public abstract Marker buildClusterMarker(StaticCluster cluster, MapView mapView);
 	/** build clusters markers to be used at next draw */
 	public abstract void renderer(ArrayList<StaticCluster> clusters, Canvas canvas, MapView mapView);
+
+	/**
+	 * Asynchronous clustering: called on the UI thread, to capture what the algorithm needs from the MapView,
+	 * and a snapshot of the markers. The returned task is then run on the clustering executor. <br/>
+	 * Default implementation runs clusterer immediately: sub-classes should override it to move their algorithm to the task.
+	 * @return the task computing the clusters. It must not access the MapView, nor mItems.
+	 */
+	protected Callable<ArrayList<StaticCluster>> clustererTask(MapView mapView){
+		final ArrayList<StaticCluster> clusters = clusterer(mapView);
+		return new Callable<ArrayList<StaticCluster>>() {
+			@Override public ArrayList<StaticCluster> call() {
+				return clusters;
+			}
+		};
+	}
 	
 	public MarkerClusterer() {
 		super();
@@ -76,6 +136,22 @@ public abstract class MarkerClusterer extends Overlay {
 		mClusterIcon = icon;
 	}
 	
+	/** 
+	 * Enable asynchronous clustering: clusters are computed on this executor (typically a single thread executor), 
+	 * and the current clusters are drawn until the new ones are available. 
+	 * @param executor null to cluster synchronously, in the draw pass (default). 
+	 */
+	public void setClusteringExecutor(Executor executor){
+		mClusteringExecutor = executor;
+		invalidate();
+	}
+
+	/** Set the margin around the screen where clusters are still drawn and hit-tested, in pixels. 
+	 * It should be larger than the cluster and marker icons. Default is 128px. */
+	public void setCullingMargin(int pixels){
+		mCullingMargin = pixels;
+	}
+
 	/** Add the Marker. 
 	 * Important: Markers added in a MarkerClusterer should not be added in the map overlays. */
 	public void add(Marker marker){
@@ -83,9 +159,10 @@ public abstract class MarkerClusterer extends Overlay {
 	}
 	
 	/** Force a rebuild of clusters at next draw, even without a zooming action. 
-	 * Should be done when you changed the content of a MarkerClusterer. */
+	 * Should be done when you changed the content of a MarkerClusterer: removed or moved markers. */
 	public void invalidate(){
 		mLastZoomLevel = FORCE_CLUSTERING; 
+		mBoundsCount = 0;
 	}
 	
 	/** @return the Marker at id (starting at 0) */
@@ -112,16 +189,102 @@ public abstract class MarkerClusterer extends Overlay {
 		int zoomLevel = mapView.getZoomLevel();
 		if (zoomLevel != mLastZoomLevel && !mapView.isAnimating()){
 			hideInfoWindows();
-        	mClusters = clusterer(mapView);
-        	renderer(mClusters, canvas, mapView);
+			if (mClusteringExecutor == null){
+				mClusteringGeneration.incrementAndGet(); //drop any pending asynchronous result
+				mClusters = clusterer(mapView);
+				renderer(mClusters, canvas, mapView);
+				indexClusters(mapView);
+			} else
+				startClustering(mapView);
 			mLastZoomLevel = zoomLevel;
 		}
+
+		//publish the clusters computed in background, if still up to date:
+		ClusteringResult result = mNewClusters.getAndSet(null);
+		if (result != null && result.mGeneration == mClusteringGeneration.get()){
+			hideInfoWindows();
+			renderer(result.mClusters, canvas, mapView);
+			mClusters = result.mClusters;
+			indexClusters(mapView);
+		}
 		
-		for (StaticCluster cluster:mClusters){
+		for (StaticCluster cluster:getVisibleClusters(mapView)){
 			cluster.getMarker().draw(canvas, mapView.getProjection());
         }
 	}
 
+	/** build the grid index of mClusters positions, with cells of the size of a tile at current zoom level */
+	protected void indexClusters(MapView mapView){
+		TileSystem tileSystem = MapView.getTileSystem();
+		double cellSize = TileSystem.getTileSize() / TileSystem.MapSize(mapView.getZoomLevelDouble());
+		mIndexedClusters = mClusters;
+		mClustersIndex = new GridIndex(cellSize, mClusters.size());
+		for (int i = 0; i < mClusters.size(); i++){
+			GeoPoint p = mClusters.get(i).getPosition();
+			mClustersIndex.add(i, tileSystem.getX01FromLongitude(p.getLongitude(), true),
+					tileSystem.getY01FromLatitude(p.getLatitude(), true));
+		}
+	}
+
+	/**
+	 * @return the clusters around the visible area of the map - including the culling margin, in mClusters order. 
+	 * The visible area takes the map rotation into account. 
+	 */
+	protected ArrayList<StaticCluster> getVisibleClusters(MapView mapView){
+		BoundingBox bb = mapView.getProjection().getBoundingBox();
+		if (mIndexedClusters != mClusters || bb == null)
+			return mClusters; //not indexed
+		TileSystem tileSystem = MapView.getTileSystem();
+		double margin = mCullingMargin / TileSystem.MapSize(mapView.getZoomLevelDouble());
+		int[] items = mClustersIndex.getItems(
+				tileSystem.getX01FromLongitude(bb.getLonWest(), true) - margin,
+				tileSystem.getY01FromLatitude(bb.getLatNorth(), true) - margin,
+				tileSystem.getX01FromLongitude(bb.getLonEast(), true) + margin,
+				tileSystem.getY01FromLatitude(bb.getLatSouth(), true) + margin);
+		Arrays.sort(items);
+		ArrayList<StaticCluster> visible = new ArrayList<StaticCluster>(items.length);
+		for (int i : items)
+			visible.add(mClusters.get(i));
+		return visible;
+	}
+
+	/** @return the visible clusters, from top to bottom: the order for hit-testing */
+	protected Iterable<StaticCluster> reversedVisibleClusters(MapView mapView){
+		ArrayList<StaticCluster> visible = getVisibleClusters(mapView);
+		if (visible == mClusters)
+			return reversedClusters();
+		Collections.reverse(visible);
+		return visible;
+	}
+
+	/** start an asynchronous clustering. Its result will replace mClusters at the first draw after its completion. */
+	protected void startClustering(final MapView mapView){
+		final int generation = mClusteringGeneration.incrementAndGet();
+		final Callable<ArrayList<StaticCluster>> task = clustererTask(mapView);
+		mClusteringExecutor.execute(new Runnable() {
+			@Override public void run() {
+				if (generation != mClusteringGeneration.get())
+					return; //a more recent clustering has been started
+				ArrayList<StaticCluster> clusters;
+				try {
+					clusters = task.call();
+				} catch (Exception e) {
+					e.printStackTrace();
+					return;
+				}
+				ClusteringResult result = new ClusteringResult(generation, clusters);
+				//never replace the result of a more recent clustering:
+				ClusteringResult current;
+				do {
+					current = mNewClusters.get();
+					if (current != null && current.mGeneration > generation)
+						return;
+				} while (!mNewClusters.compareAndSet(current, result));
+				mapView.postInvalidate();
+			}
+		});
+	}
+
 	public Iterable<StaticCluster> reversedClusters() {
 		return new Iterable<StaticCluster>() {
 			@Override
@@ -148,7 +311,7 @@ public abstract class MarkerClusterer extends Overlay {
 	}
 
 	@Override public boolean onSingleTapConfirmed(final MotionEvent event, final MapView mapView){
-		for (final StaticCluster cluster : reversedClusters()) {
+		for (final StaticCluster cluster : reversedVisibleClusters(mapView)) {
 			if (cluster.getMarker().onSingleTapConfirmed(event, mapView))
 				return true;
 		}
@@ -156,7 +319,7 @@ public abstract class MarkerClusterer extends Overlay {
 	}
 	
 	@Override public boolean onLongPress(final MotionEvent event, final MapView mapView) {
-		for (final StaticCluster cluster : reversedClusters()) {
+		for (final StaticCluster cluster : reversedVisibleClusters(mapView)) {
 			if (cluster.getMarker().onLongPress(event, mapView))
 				return true;
 		}
@@ -164,7 +327,7 @@ public abstract class MarkerClusterer extends Overlay {
 	}
 
 	@Override public boolean onTouchEvent(final MotionEvent event, final MapView mapView) {
-		for (StaticCluster cluster : reversedClusters()) {
+		for (StaticCluster cluster : reversedVisibleClusters(mapView)) {
 			if (cluster.getMarker().onTouchEvent(event, mapView))
 				return true;
 		}
@@ -172,29 +335,39 @@ public abstract class MarkerClusterer extends Overlay {
 	}
 
 	@Override public boolean onDoubleTap(final MotionEvent event, final MapView mapView) {
-		for (final StaticCluster cluster : reversedClusters()) {
+		for (final StaticCluster cluster : reversedVisibleClusters(mapView)) {
 			if (cluster.getMarker().onDoubleTap(event, mapView))
 				return true;
 		}
 		return false;
 	}
 
+	/** @return the bounds of all markers. Updated incrementally as markers are appended, computed again after any other change. */
 	@Override public BoundingBox getBounds(){
-		if (mItems.size() == 0)
+		int n = mItems.size();
+		if (n == 0)
 				return null;
-		double minLat = Double.MAX_VALUE;
-		double minLon = Double.MAX_VALUE;
-		double maxLat = -Double.MAX_VALUE;
-		double maxLon = -Double.MAX_VALUE;
-		for (final Marker item : mItems) {
-			final double latitude = item.getPosition().getLatitude();
-			final double longitude = item.getPosition().getLongitude();
-			minLat = Math.min(minLat, latitude);
-			minLon = Math.min(minLon, longitude);
-			maxLat = Math.max(maxLat, latitude);
-			maxLon = Math.max(maxLon, longitude);
+		int modCount = mItems.getModCount();
+		//appended only: one modification per marker added, and the previous ones still in place
+		if (mBoundsCount > 0 && (n - mBoundsCount != modCount - mBoundsModCount || mItems.get(mBoundsCount-1) != mBoundsLast))
+			mBoundsCount = 0;
+		if (mBoundsCount == 0){
+			mSouth = mWest = Double.MAX_VALUE;
+			mNorth = mEast = -Double.MAX_VALUE;
+		}
+		for (int i = mBoundsCount; i < n; i++) {
+			final GeoPoint position = mItems.get(i).getPosition();
+			final double latitude = position.getLatitude();
+			final double longitude = position.getLongitude();
+			mSouth = Math.min(mSouth, latitude);
+			mWest = Math.min(mWest, longitude);
+			mNorth = Math.max(mNorth, latitude);
+			mEast = Math.max(mEast, longitude);
 		}
-		return new BoundingBox(maxLat, maxLon, minLat, minLon);
+		mBoundsCount = n;
+		mBoundsModCount = modCount;
+		mBoundsLast = mItems.get(n-1);
+		return new BoundingBox(mNorth, mEast, mSouth, mWest);
 	}
 
 }
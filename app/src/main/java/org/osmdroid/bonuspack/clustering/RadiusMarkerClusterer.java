@@ -13,11 +13,13 @@ import android.view.MotionEvent;
 import com.example.minideliveryapp.R;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Marker;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
 import androidx.core.content.res.ResourcesCompat;
 
 /**
@@ -38,9 +40,20 @@ public class RadiusMarkerClusterer extends MarkerClusterer {
     protected int mRadiusInPixels = 100;
     protected double mRadiusInMeters;
     protected Paint mTextPaint;
-    private ArrayList<Marker> mClonedMarkers;
     protected boolean mAnimated;
     int mDensityDpi;
+    /** clusters precomputed for all zoom levels, or null to cluster at each zoom change */
+    protected ClusterHierarchy mHierarchy;
+    /** modification count of mItems the hierarchy is up to date with */
+    protected int mHierarchyModCount;
+    public static final long DEFAULT_ICON_CACHE_BYTES = 4L*1024*1024;
+    /** cluster icons, by text and style */
+    protected final ClusterIconCache mIconCache = new ClusterIconCache(DEFAULT_ICON_CACHE_BYTES);
+    /** cluster markers of the last rendering, reused at next rendering */
+    protected final ArrayList<Marker> mClusterMarkers = new ArrayList<Marker>();
+    protected int mUsedClusterMarkers;
+    /** thresholds to display large counts as "threshold+", or null for exact counts */
+    protected int[] mCountBuckets;
 
     /** cluster icon anchor */
     public float mAnchorU = Marker.ANCHOR_CENTER, mAnchorV = Marker.ANCHOR_CENTER;
@@ -63,6 +76,26 @@ public class RadiusMarkerClusterer extends MarkerClusterer {
         mDensityDpi = ctx.getResources().getDisplayMetrics().densityDpi;
     }
 
+    /** Set the cluster icon. Clears the cache of cluster icons. */
+    @Override public void setIcon(Bitmap icon){
+        super.setIcon(icon);
+        mIconCache.clear();
+    }
+
+    /** Set the byte budget of the cluster icons cache. Default is 4MB. */
+    public void setIconCacheSize(long maxBytes){
+        mIconCache.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * Display large counts by buckets: with {10, 50, 100}, a cluster of 73 markers displays "50+".
+     * Less different texts means less icons to build and to cache.
+     * @param buckets thresholds, in increasing order. null to display exact counts (default).
+     */
+    public void setCountBuckets(int[] buckets){
+        mCountBuckets = buckets;
+    }
+
     /** If you want to change the default text paint (color, size, font) */
     public Paint getTextPaint(){
         return mTextPaint;
@@ -71,77 +104,279 @@ public class RadiusMarkerClusterer extends MarkerClusterer {
     /** Set the radius of clustering in pixels. Default is 100px. */
     public void setRadius(int radius){
         mRadiusInPixels = radius;
+        setHierarchical(mHierarchy != null);
     }
 
     /** Set max zoom level with clustering. When zoom is higher or equal to this level, clustering is disabled. 
      * You can put a high value to disable this feature. */
     public void setMaxClusteringZoomLevel(int zoom){
         mMaxClusteringZoomLevel = zoom;
+        setHierarchical(mHierarchy != null);
+    }
+
+    /**
+     * Precompute the clusters for all zoom levels, from 0 to the max clustering zoom level, once for all the markers:
+     * a zoom change is then a lookup instead of a new clustering. Markers added with add(Marker) update the hierarchy. <br>
+     * The radius is in pixels at each zoom level of the map projection, and a cluster of a zoom level
+     * groups clusters of the zoom level above.
+     * @param hierarchical true to enable. Default is false.
+     */
+    public void setHierarchical(boolean hierarchical){
+        if (hierarchical) {
+            mHierarchy = new ClusterHierarchy(mRadiusInPixels, mMaxClusteringZoomLevel);
+            resetHierarchy();
+        } else
+            mHierarchy = null;
+        super.invalidate();
+    }
+
+    /** @return the hierarchy, up to date with the markers - as long as they have not been moved without invalidate() */
+    protected ClusterHierarchy getHierarchy(){
+        if (mItems.getModCount() != mHierarchyModCount) //markers added or removed through getItems()
+            resetHierarchy();
+        return mHierarchy;
+    }
+
+    /** rebuild the hierarchy with the current markers */
+    protected void resetHierarchy(){
+        mHierarchy.setPositions(getPositions(mItems));
+        mHierarchyModCount = mItems.getModCount();
+    }
+
+    /** @return true if a marker is not at its position in the hierarchy */
+    protected boolean markersMoved(){
+        for (int i = 0; i < mItems.size(); i++) {
+            if (!mItems.get(i).getPosition().equals(mHierarchy.getPosition(i)))
+                return true;
+        }
+        return false;
+    }
+
+    @Override public void add(Marker marker){
+        boolean upToDate = (mHierarchy != null && mItems.getModCount() == mHierarchyModCount);
+        super.add(marker);
+        if (upToDate) {
+            mHierarchy.add(marker.getPosition().clone());
+            mHierarchyModCount = mItems.getModCount();
+        } //else rebuilt at next use
+    }
+
+    /**
+     * Force a rebuild of clusters at next draw. In hierarchical mode, the hierarchy is rebuilt
+     * only if markers have been removed or moved: markers added with add(Marker) are already in it.
+     */
+    @Override public void invalidate(){
+        if (mHierarchy != null && (mItems.getModCount() != mHierarchyModCount || markersMoved()))
+            resetHierarchy();
+        super.invalidate();
     }
 
     /** Radius-Based clustering algorithm */
     @Override public ArrayList<StaticCluster> clusterer(MapView mapView) {
-
-        ArrayList<StaticCluster> clusters = new ArrayList<StaticCluster>();
+        ArrayList<Marker> markers = new ArrayList<Marker>(mItems);
+        if (mHierarchy != null)
+            return buildClusters(markers, getPositions(markers), getHierarchy().getCenters(mapView.getZoomLevel()));
         convertRadiusToMeters(mapView);
+        boolean clustering = (mapView.getZoomLevel() <= mMaxClusteringZoomLevel);
+        return clusterer(markers, getPositions(markers), clustering ? mRadiusInMeters : -1.0);
+    }
 
-        mClonedMarkers = new ArrayList<Marker>(mItems); //shallow copy
-        while (!mClonedMarkers.isEmpty()) {
-            Marker m = mClonedMarkers.get(0);
-            StaticCluster cluster = createCluster(m, mapView);
-            clusters.add(cluster);
+    /** Same algorithm as clusterer(MapView), run on a snapshot of the markers and their positions */
+    @Override protected Callable<ArrayList<StaticCluster>> clustererTask(MapView mapView) {
+        if (mHierarchy != null) {
+            final ClusterHierarchy hierarchy = getHierarchy();
+            final int zoom = mapView.getZoomLevel();
+            final ArrayList<Marker> markers = new ArrayList<Marker>(mItems);
+            final ArrayList<GeoPoint> positions = getPositions(markers);
+            return new Callable<ArrayList<StaticCluster>>() {
+                @Override public ArrayList<StaticCluster> call() {
+                    return buildClusters(markers, positions, hierarchy.getCenters(zoom));
+                }
+            };
         }
-        return clusters;
+        convertRadiusToMeters(mapView);
+        final double radiusInMeters = (mapView.getZoomLevel() <= mMaxClusteringZoomLevel ? mRadiusInMeters : -1.0);
+        final ArrayList<Marker> markers = new ArrayList<Marker>(mItems);
+        final ArrayList<GeoPoint> positions = getPositions(markers);
+        return new Callable<ArrayList<StaticCluster>>() {
+            @Override public ArrayList<StaticCluster> call() {
+                return clusterer(markers, positions, radiusInMeters);
+            }
+        };
     }
 
-    private StaticCluster createCluster(Marker m, MapView mapView) {
-        GeoPoint clusterPosition = m.getPosition();
+    /** @return a copy of the positions of the markers, which can be used outside of the UI thread */
+    protected static ArrayList<GeoPoint> getPositions(ArrayList<Marker> markers) {
+        ArrayList<GeoPoint> positions = new ArrayList<GeoPoint>(markers.size());
+        for (Marker m : markers)
+            positions.add(m.getPosition().clone());
+        return positions;
+    }
 
-        StaticCluster cluster = new StaticCluster(clusterPosition);
-        cluster.add(m);
+    /**
+     * @param radiusInMeters clustering radius. Negative to block clustering: one cluster per marker.
+     * @return the clusters, in the order of their center
+     */
+    protected static ArrayList<StaticCluster> clusterer(ArrayList<Marker> markers, ArrayList<GeoPoint> positions,
+                                                        double radiusInMeters) {
+        int n = markers.size();
+        int[] centers;
+        if (radiusInMeters < 0.0) {
+            centers = new int[n];
+            for (int i = 0; i < n; i++)
+                centers[i] = i;
+        } else
+            centers = clusterPositions(positions, radiusInMeters);
+        return buildClusters(markers, positions, centers);
+    }
 
-        mClonedMarkers.remove(m);
-        
-        if (mapView.getZoomLevel() > mMaxClusteringZoomLevel) {
-        	//above max level => block clustering:
-        	return cluster;
-        }
-        
-        Iterator<Marker> it = mClonedMarkers.iterator();
-        while (it.hasNext()) {
-            Marker neighbour = it.next();
-            double distance = clusterPosition.distanceToAsDouble(neighbour.getPosition());
-            if (distance <= mRadiusInMeters) {
-                cluster.add(neighbour);
-                it.remove();
+    /**
+     * @param centers for each marker, the index of the marker at the center of its cluster
+     * @return the clusters, in the order of their center
+     */
+    protected static ArrayList<StaticCluster> buildClusters(ArrayList<Marker> markers, ArrayList<GeoPoint> positions,
+                                                            int[] centers) {
+        int n = markers.size();
+        ArrayList<StaticCluster> clusters = new ArrayList<StaticCluster>();
+        StaticCluster[] clusterOfCenter = new StaticCluster[n];
+        for (int i = 0; i < n; i++) {
+            if (centers[i] == i) {
+                StaticCluster cluster = new StaticCluster(positions.get(i));
+                clusterOfCenter[i] = cluster;
+                clusters.add(cluster);
             }
+            clusterOfCenter[centers[i]].add(markers.get(i));
+        }
+        return clusters;
+    }
+
+    /**
+     * The radius-based algorithm itself, working on positions only (no MapView, no Marker).
+     * The first remaining position becomes a cluster center, and takes all remaining positions within the radius. <br>
+     * Positions are put in a grid over the projected map, with cells larger than the radius:
+     * only the 9 cells around a center have to be checked, so this runs in near-linear time.
+     * @param positions positions of the items
+     * @param radiusInMeters clustering radius
+     * @return for each item, the index of the item at the center of its cluster.
+     * Centers always come before the other items of their cluster.
+     */
+    protected static int[] clusterPositions(ArrayList<GeoPoint> positions, double radiusInMeters) {
+        int n = positions.size();
+        int[] centers = new int[n];
+        Arrays.fill(centers, -1);
+        if (n == 0)
+            return centers;
+
+        //cell size: the radius in projected coordinates, at the highest latitude reached
+        TileSystem tileSystem = MapView.getTileSystem();
+        double maxLatitude = 0.0;
+        for (GeoPoint p : positions)
+            maxLatitude = Math.max(maxLatitude, Math.abs(p.getLatitude()));
+        maxLatitude = Math.min(maxLatitude + Math.toDegrees(radiusInMeters / TileSystem.EarthRadius), TileSystem.MaxLatitude);
+        double cellSize = 1.01 * radiusInMeters / (2 * Math.PI * TileSystem.EarthRadius * Math.cos(Math.toRadians(maxLatitude)));
+
+        GridIndex grid = new GridIndex(cellSize, n);
+        long[] columns = new long[n];
+        long[] rows = new long[n];
+        for (int i = 0; i < n; i++) {
+            GeoPoint p = positions.get(i);
+            double x = tileSystem.getX01FromLongitude(p.getLongitude(), true);
+            double y = tileSystem.getY01FromLatitude(p.getLatitude(), true);
+            columns[i] = grid.getColumn(x);
+            rows[i] = grid.getRow(y);
+            grid.add(i, x, y);
         }
 
-        return cluster;
+        for (int i = 0; i < n; i++) {
+            if (centers[i] != -1)
+                continue; //already in a cluster
+            centers[i] = i;
+            GeoPoint clusterPosition = positions.get(i);
+            for (long row = rows[i] - 1; row <= rows[i] + 1; row++) {
+                for (long column = columns[i] - 1; column <= columns[i] + 1; column++) {
+                    GridIndex.Cell cell = grid.getCell(column, row);
+                    if (cell == null)
+                        continue;
+                    //take the neighbours, and drop all clustered items from the cell:
+                    int remaining = 0;
+                    for (int c = 0; c < cell.mSize; c++) {
+                        int neighbour = cell.mItems[c];
+                        if (centers[neighbour] != -1)
+                            continue;
+                        if (clusterPosition.distanceToAsDouble(positions.get(neighbour)) <= radiusInMeters) {
+                            centers[neighbour] = i;
+                            continue;
+                        }
+                        cell.mItems[remaining++] = neighbour;
+                    }
+                    cell.mSize = remaining;
+                }
+            }
+        }
+        return centers;
     }
 
+    /**
+     * Build the marker for a cluster, reusing the cluster markers of the previous rendering.
+     * The marker belongs to this clusterer: it may be reused for another cluster at the next rendering.
+     */
     @Override public Marker buildClusterMarker(StaticCluster cluster, MapView mapView) {
-        Marker m = new Marker(mapView);
+        Marker m;
+        if (mUsedClusterMarkers < mClusterMarkers.size()) {
+            m = mClusterMarkers.get(mUsedClusterMarkers);
+        } else {
+            m = new Marker(mapView);
+            m.setInfoWindow(null);
+            mClusterMarkers.add(m);
+        }
+        mUsedClusterMarkers++;
         m.setPosition(cluster.getPosition());
-        m.setInfoWindow(null);
         m.setAnchor(mAnchorU, mAnchorV);
+        m.setIcon(getClusterIcon(getClusterText(cluster.getSize()), mapView));
+        return m;
+    }
+
+    /** @return the text displayed on the icon of a cluster of this size */
+    protected String getClusterText(int size) {
+        if (mCountBuckets != null) {
+            for (int i = mCountBuckets.length - 1; i >= 0; i--) {
+                if (size >= mCountBuckets[i])
+                    return mCountBuckets[i] + "+";
+            }
+        }
+        return "" + size;
+    }
+
+    /** @return the cluster icon with this text, from the cache if possible */
+    protected BitmapDrawable getClusterIcon(String text, MapView mapView) {
+        //the text paint can be changed at any time with getTextPaint:
+        String key = mTextPaint.getColor() + "|" + mTextPaint.getTextSize() + "|"
+                + System.identityHashCode(mTextPaint.getTypeface()) + "|" + mTextPaint.isFakeBoldText() + "|"
+                + mTextAnchorU + "|" + mTextAnchorV + "|" + mDensityDpi + "|" + text;
+        BitmapDrawable icon = mIconCache.get(key);
+        if (icon == null) {
+            icon = buildClusterIcon(text, mapView);
+            mIconCache.put(key, icon);
+        }
+        return icon;
+    }
 
+    protected BitmapDrawable buildClusterIcon(String text, MapView mapView) {
         Bitmap finalIcon = Bitmap.createBitmap(mClusterIcon.getScaledWidth(mDensityDpi),
                 mClusterIcon.getScaledHeight(mDensityDpi), mClusterIcon.getConfig());
         Canvas iconCanvas = new Canvas(finalIcon);
         iconCanvas.drawBitmap(mClusterIcon, 0, 0, null);
-        String text = "" + cluster.getSize();
         int textHeight = (int) (mTextPaint.descent() + mTextPaint.ascent());
         iconCanvas.drawText(text,
                 mTextAnchorU * finalIcon.getWidth(),
                 mTextAnchorV * finalIcon.getHeight() - textHeight / 2,
                 mTextPaint);
-        m.setIcon(new BitmapDrawable(mapView.getContext().getResources(), finalIcon));
-
-        return m;
+        return new BitmapDrawable(mapView.getContext().getResources(), finalIcon);
     }
 
     @Override public void renderer(ArrayList<StaticCluster> clusters, Canvas canvas, MapView mapView) {
+        //all cluster markers of the previous rendering can be reused:
+        mUsedClusterMarkers = 0;
         for (StaticCluster cluster : clusters) {
             if (cluster.getSize() == 1) {
                 //cluster has only 1 marker => use it as it is:
@@ -152,6 +387,10 @@ public class RadiusMarkerClusterer extends MarkerClusterer {
                 cluster.setMarker(m);
             }
         }
+        //keep a reserve for next rendering, but release the markers of a past dense view:
+        int keep = Math.max(2 * mUsedClusterMarkers, 16);
+        while (mClusterMarkers.size() > keep)
+            mClusterMarkers.remove(mClusterMarkers.size() - 1);
     }
 
     private void convertRadiusToMeters(MapView mapView) {
@@ -184,7 +423,7 @@ public class RadiusMarkerClusterer extends MarkerClusterer {
     }
 
     @Override public boolean onSingleTapConfirmed(final MotionEvent event, final MapView mapView){
-        for (final StaticCluster cluster : reversedClusters()) {
+        for (final StaticCluster cluster : reversedVisibleClusters(mapView)) {
             if (cluster.getMarker().onSingleTapConfirmed(event, mapView)) {
                 if (mAnimated && cluster.getSize() > 1)
                     zoomOnCluster(mapView, cluster);
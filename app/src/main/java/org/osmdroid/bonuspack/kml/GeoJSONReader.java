@@ -0,0 +1,446 @@
+package org.osmdroid.bonuspack.kml;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming GeoJSON importer: reads a GeoJSON FeatureCollection or Feature with a JsonReader,
+ * building the KmlPlacemarks one feature at a time, without the whole JsonElement tree. <br>
+ *
+ * Coordinates of a feature are first read in primitive buffers, as GeoJSON members can come in any order.
+ * The KmlGeometry is built only if the feature is in the area of interest, so features outside are skipped
+ * without allocating their geometry. <br>
+ *
+ * The result is the same as KmlFeature.parseGeoJSON, except that unsupported features and geometries are skipped
+ * instead of being added as null items. <br>
+ *
+ * Not thread-safe.
+ *
+ * @see KmlDocument#parseGeoJSONStream(java.io.InputStream, BoundingBox, KmlDocument.FeatureListener)
+ */
+public class GeoJSONReader {
+
+	/** tokens of the coordinates structure: start or end of an array, else index of a position */
+	protected static final int START = -1;
+	protected static final int END = -2;
+
+	/** raw GeoJSON geometry, with its coordinates as a range of tokens */
+	protected static class RawGeometry {
+		String mType;
+		int mTokenStart, mTokenEnd;
+		ArrayList<RawGeometry> mGeometries;
+	}
+
+	protected final BoundingBox mArea;
+	protected final KmlDocument.FeatureListener mListener;
+	protected final KmlFolder mRoot;
+
+	/** lon, lat, alt of positions */
+	protected double[] mValues = new double[3*256];
+	protected int mPositions;
+	protected int[] mTokens = new int[512];
+	protected int mTokensSize;
+	protected int mCursor;
+
+	/**
+	 * @param area area of interest: features not intersecting it - or without geometry - are skipped. null for all features.
+	 * @param listener receives each Placemark as soon as it is read. Can be null.
+	 */
+	public GeoJSONReader(BoundingBox area, KmlDocument.FeatureListener listener){
+		mArea = area;
+		mListener = listener;
+		mRoot = new KmlFolder();
+	}
+
+	/** @return the root folder, filled by read */
+	public KmlFolder getRoot(){
+		return mRoot;
+	}
+
+	/**
+	 * Read a GeoJSON FeatureCollection or Feature.
+	 * @return the root folder, or null if the content is not a JSON object.
+	 */
+	public KmlFolder read(Reader reader) throws IOException {
+		JsonReader in = new JsonReader(reader);
+		in.setLenient(true);
+		if (in.peek() != JsonToken.BEGIN_OBJECT)
+			return null;
+		KmlFeature feature = readFeature(in, mRoot);
+		if (feature instanceof KmlPlacemark)
+			addFeature(mRoot, feature);
+		return mRoot;
+	}
+
+	protected void addFeature(KmlFolder parent, KmlFeature feature){
+		boolean keep = true;
+		if (mListener != null && feature instanceof KmlPlacemark)
+			keep = mListener.onFeature(feature, parent);
+		if (keep)
+			parent.add(feature);
+	}
+
+	/**
+	 * @param folder folder to fill if this is a FeatureCollection, or null to create one.
+	 * @return a KmlFolder for a FeatureCollection, a KmlPlacemark for a Feature,
+	 * or null if not supported or filtered out.
+	 */
+	protected KmlFeature readFeature(JsonReader in, KmlFolder folder) throws IOException {
+		int positionsStart = mPositions;
+		int tokensStart = mTokensSize;
+		String type = null, id = null;
+		RawGeometry geometry = null;
+		LinkedHashMap<String, String> properties = null;
+		boolean isCollection = false;
+		in.beginObject();
+		while (in.hasNext()){
+			String name = in.nextName();
+			JsonToken token = in.peek();
+			if (token == JsonToken.NULL){
+				in.nextNull();
+				continue;
+			}
+			if ("type".equals(name) && token == JsonToken.STRING)
+				type = in.nextString();
+			else if ("id".equals(name) && (token == JsonToken.STRING || token == JsonToken.NUMBER))
+				id = in.nextString();
+			else if ("geometry".equals(name) && token == JsonToken.BEGIN_OBJECT)
+				geometry = readGeometry(in);
+			else if ("properties".equals(name) && token == JsonToken.BEGIN_OBJECT)
+				properties = readProperties(in);
+			else if ("features".equals(name) && token == JsonToken.BEGIN_ARRAY){
+				isCollection = true;
+				if (folder == null)
+					folder = new KmlFolder();
+				in.beginArray();
+				while (in.hasNext()){
+					if (in.peek() != JsonToken.BEGIN_OBJECT){
+						in.skipValue();
+						continue;
+					}
+					KmlFeature feature = readFeature(in, null);
+					if (feature != null)
+						addFeature(folder, feature);
+				}
+				in.endArray();
+			} else
+				in.skipValue();
+		}
+		in.endObject();
+
+		KmlFeature result = null;
+		if ("FeatureCollection".equals(type) || (type == null && isCollection)){
+			result = (folder != null ? folder : new KmlFolder());
+		} else if ("Feature".equals(type) && (mArea == null || (geometry != null && intersects(geometry)))){
+			KmlPlacemark placemark = new KmlPlacemark();
+			placemark.mId = id;
+			if (geometry != null)
+				placemark.mGeometry = buildGeometry(geometry);
+			if (properties != null){
+				for (Map.Entry<String, String> entry : properties.entrySet())
+					placemark.setExtendedData(entry.getKey(), entry.getValue());
+				//Put "name" property in standard KML format:
+				if (placemark.mExtendedData != null && placemark.mExtendedData.containsKey("name")){
+					placemark.mName = placemark.mExtendedData.get("name");
+					placemark.mExtendedData.remove("name");
+				}
+			}
+			result = placemark;
+		}
+		//the buffers are only needed for this feature:
+		mPositions = positionsStart;
+		mTokensSize = tokensStart;
+		return result;
+	}
+
+	/** properties values as strings, as KmlPlacemark GeoJSON constructor */
+	protected LinkedHashMap<String, String> readProperties(JsonReader in) throws IOException {
+		LinkedHashMap<String, String> properties = new LinkedHashMap<>();
+		in.beginObject();
+		while (in.hasNext()){
+			String name = in.nextName();
+			String value;
+			switch (in.peek()){
+				case STRING:
+				case NUMBER:
+					value = in.nextString();
+					break;
+				case BOOLEAN:
+					value = Boolean.toString(in.nextBoolean());
+					break;
+				case NULL:
+					in.nextNull();
+					value = "null";
+					break;
+				default:
+					//object or array: kept as JSON text
+					value = JsonParser.parseReader(in).toString();
+					break;
+			}
+			properties.put(name, value);
+		}
+		in.endObject();
+		return properties;
+	}
+
+	protected RawGeometry readGeometry(JsonReader in) throws IOException {
+		RawGeometry geometry = new RawGeometry();
+		geometry.mTokenStart = geometry.mTokenEnd = mTokensSize;
+		in.beginObject();
+		while (in.hasNext()){
+			String name = in.nextName();
+			JsonToken token = in.peek();
+			if ("type".equals(name) && token == JsonToken.STRING)
+				geometry.mType = in.nextString();
+			else if ("coordinates".equals(name) && token == JsonToken.BEGIN_ARRAY){
+				geometry.mTokenStart = mTokensSize;
+				readCoordinates(in);
+				geometry.mTokenEnd = mTokensSize;
+			} else if ("geometries".equals(name) && token == JsonToken.BEGIN_ARRAY){
+				geometry.mGeometries = new ArrayList<>();
+				in.beginArray();
+				while (in.hasNext()){
+					if (in.peek() == JsonToken.BEGIN_OBJECT)
+						geometry.mGeometries.add(readGeometry(in));
+					else
+						in.skipValue();
+				}
+				in.endArray();
+			} else
+				in.skipValue();
+		}
+		in.endObject();
+		return geometry;
+	}
+
+	/** read an array of coordinates, at any depth, as tokens */
+	protected void readCoordinates(JsonReader in) throws IOException {
+		in.beginArray();
+		if (in.peek() == JsonToken.NUMBER){
+			//position: [longitude, latitude, altitude(optional)]
+			double lon = 0.0, lat = 0.0, alt = 0.0;
+			int n = 0;
+			while (in.hasNext()){
+				if (n < 3 && in.peek() == JsonToken.NUMBER){
+					double value = in.nextDouble();
+					if (n == 0)
+						lon = value;
+					else if (n == 1)
+						lat = value;
+					else
+						alt = value;
+					n++;
+				} else
+					in.skipValue();
+			}
+			if (n >= 2)
+				addPosition(lon, lat, alt);
+		} else {
+			addToken(START);
+			while (in.hasNext()){
+				if (in.peek() == JsonToken.BEGIN_ARRAY)
+					readCoordinates(in);
+				else
+					in.skipValue();
+			}
+			addToken(END);
+		}
+		in.endArray();
+	}
+
+	protected void addToken(int token){
+		if (mTokensSize == mTokens.length)
+			mTokens = Arrays.copyOf(mTokens, mTokensSize*2);
+		mTokens[mTokensSize++] = token;
+	}
+
+	protected void addPosition(double lon, double lat, double alt){
+		if (3*mPositions+3 > mValues.length)
+			mValues = Arrays.copyOf(mValues, mValues.length*2);
+		mValues[3*mPositions] = lon;
+		mValues[3*mPositions+1] = lat;
+		mValues[3*mPositions+2] = alt;
+		addToken(mPositions++);
+	}
+
+	//--- Area filter
+
+	/** @return true if the bounding box of the geometry intersects the area */
+	protected boolean intersects(RawGeometry geometry){
+		double[] bounds = {-Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE};
+		if (!computeBounds(geometry, bounds))
+			return false;
+		double north = bounds[0], south = bounds[1], east = bounds[2], west = bounds[3];
+		if (north < mArea.getLatSouth() || south > mArea.getLatNorth())
+			return false;
+		if (mArea.getLonWest() <= mArea.getLonEast())
+			return east >= mArea.getLonWest() && west <= mArea.getLonEast();
+		else //area across the date line
+			return east >= mArea.getLonWest() || west <= mArea.getLonEast();
+	}
+
+	/**
+	 * @param bounds north, south, east, west, enlarged with the geometry positions
+	 * @return true if the geometry has positions
+	 */
+	protected boolean computeBounds(RawGeometry geometry, double[] bounds){
+		boolean found = false;
+		for (int t = geometry.mTokenStart; t < geometry.mTokenEnd; t++){
+			int token = mTokens[t];
+			if (token >= 0){
+				double lon = mValues[3*token], lat = mValues[3*token+1];
+				bounds[0] = Math.max(bounds[0], lat);
+				bounds[1] = Math.min(bounds[1], lat);
+				bounds[2] = Math.max(bounds[2], lon);
+				bounds[3] = Math.min(bounds[3], lon);
+				found = true;
+			}
+		}
+		if (geometry.mGeometries != null){
+			for (RawGeometry g : geometry.mGeometries)
+				found |= computeBounds(g, bounds);
+		}
+		return found;
+	}
+
+	//--- Geometries building
+
+	/** @return the KmlGeometry, or null if the type is not supported */
+	protected KmlGeometry buildGeometry(RawGeometry raw){
+		String type = raw.mType;
+		boolean hasCoordinates = (raw.mTokenStart < raw.mTokenEnd);
+		mCursor = raw.mTokenStart;
+		if ("Point".equals(type)){
+			KmlPoint point = new KmlPoint();
+			GeoPoint position = (hasCoordinates ? readPosition() : null);
+			if (position != null)
+				point.setPosition(position);
+			return point;
+		} else if ("LineString".equals(type)){
+			KmlLineString lineString = new KmlLineString();
+			if (hasCoordinates)
+				lineString.mCoordinates = readPositions();
+			return lineString;
+		} else if ("Polygon".equals(type)){
+			return (hasCoordinates ? buildPolygon(readRings()) : new KmlPolygon());
+		} else if ("MultiPoint".equals(type) || "MultiLineString".equals(type) || "MultiPolygon".equals(type)){
+			KmlMultiGeometry multiGeometry = new KmlMultiGeometry();
+			if (!hasCoordinates)
+				return multiGeometry;
+			if ("MultiPoint".equals(type)){
+				ArrayList<GeoPoint> positions = readPositions();
+				if (positions != null){
+					for (GeoPoint p : positions)
+						multiGeometry.addItem(new KmlPoint(p));
+				}
+			} else if ("MultiLineString".equals(type)){
+				ArrayList<ArrayList<GeoPoint>> lines = readRings();
+				if (lines != null){
+					for (ArrayList<GeoPoint> line : lines){
+						KmlLineString lineString = new KmlLineString();
+						lineString.mCoordinates = line;
+						multiGeometry.addItem(lineString);
+					}
+				}
+			} else if (mTokens[mCursor] == START){
+				mCursor++;
+				while (mTokens[mCursor] != END){
+					ArrayList<ArrayList<GeoPoint>> rings = readRings();
+					if (rings != null)
+						multiGeometry.addItem(buildPolygon(rings));
+				}
+			}
+			return multiGeometry;
+		} else if ("GeometryCollection".equals(type)){
+			KmlMultiGeometry multiGeometry = new KmlMultiGeometry();
+			if (raw.mGeometries != null){
+				for (RawGeometry g : raw.mGeometries){
+					KmlGeometry item = buildGeometry(g);
+					if (item != null)
+						multiGeometry.addItem(item);
+				}
+			}
+			return multiGeometry;
+		} else
+			return null;
+	}
+
+	protected KmlPolygon buildPolygon(ArrayList<ArrayList<GeoPoint>> rings){
+		KmlPolygon polygon = new KmlPolygon();
+		if (rings == null || rings.isEmpty())
+			return polygon;
+		//ring #0 is the polygon border, next rings are the holes:
+		polygon.mCoordinates = rings.get(0);
+		if (rings.size() > 1)
+			polygon.mHoles = new ArrayList<>(rings.subList(1, rings.size()));
+		return polygon;
+	}
+
+	/** skip the value at cursor */
+	protected void skipToken(){
+		int depth = 0;
+		do {
+			int token = mTokens[mCursor++];
+			if (token == START)
+				depth++;
+			else if (token == END)
+				depth--;
+		} while (depth > 0);
+	}
+
+	/** @return the position at cursor, or null if this is not a position */
+	protected GeoPoint readPosition(){
+		int token = mTokens[mCursor];
+		if (token < 0){
+			skipToken();
+			return null;
+		}
+		mCursor++;
+		return new GeoPoint(mValues[3*token+1], mValues[3*token], mValues[3*token+2]);
+	}
+
+	/** @return the array of positions at cursor, or null if this is not an array */
+	protected ArrayList<GeoPoint> readPositions(){
+		if (mTokens[mCursor] != START){
+			skipToken();
+			return null;
+		}
+		mCursor++;
+		ArrayList<GeoPoint> positions = new ArrayList<>();
+		while (mTokens[mCursor] != END){
+			GeoPoint p = readPosition();
+			if (p != null)
+				positions.add(p);
+		}
+		mCursor++;
+		return positions;
+	}
+
+	/** @return the array of arrays of positions at cursor, or null if this is not an array */
+	protected ArrayList<ArrayList<GeoPoint>> readRings(){
+		if (mTokens[mCursor] != START){
+			skipToken();
+			return null;
+		}
+		mCursor++;
+		ArrayList<ArrayList<GeoPoint>> rings = new ArrayList<>();
+		while (mTokens[mCursor] != END){
+			ArrayList<GeoPoint> ring = readPositions();
+			if (ring != null)
+				rings.add(ring);
+		}
+		mCursor++;
+		return rings;
+	}
+}
@@ -0,0 +1,187 @@
+package org.osmdroid.bonuspack.kml;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Streaming GeoJSON exporter: writes a KmlFeature tree with a JsonWriter, one feature and one position at a time,
+ * without building the JsonObject tree of asGeoJSON. <br>
+ *
+ * The output is the same as serializing KmlFeature.asGeoJSON(true) with Gson: sub-folders are flattened
+ * in the root FeatureCollection, GroundOverlays are skipped, and positions have no altitude. <br>
+ *
+ * Features and geometries of other classes (sub-classes overriding asGeoJSON) are written from their asGeoJSON. <br>
+ *
+ * Not thread-safe.
+ *
+ * @see KmlDocument#saveAsGeoJSON(Writer)
+ */
+public class GeoJSONWriter {
+
+	protected JsonWriter mOut;
+	protected Gson mGson;
+
+	/**
+	 * Write a feature as GeoJSON. The writer is flushed, not closed.
+	 * @param feature typically the root folder of a KmlDocument
+	 * @return false if the feature has no GeoJSON representation
+	 */
+	public boolean write(KmlFeature feature, Writer writer) throws IOException {
+		mOut = new JsonWriter(writer);
+		//same settings as Gson.toJson:
+		mOut.setLenient(true);
+		mOut.setHtmlSafe(true);
+		mOut.setSerializeNulls(false);
+		try {
+			if (feature.getClass() == KmlFolder.class)
+				writeFolder((KmlFolder)feature);
+			else if (feature.getClass() == KmlPlacemark.class)
+				writePlacemark((KmlPlacemark)feature);
+			else {
+				JsonObject json = feature.asGeoJSON(true);
+				if (json == null)
+					return false;
+				writeElement(json);
+			}
+			mOut.flush();
+			return true;
+		} finally {
+			mOut = null;
+		}
+	}
+
+	protected void writeFolder(KmlFolder folder) throws IOException {
+		mOut.beginObject();
+		mOut.name("crs").beginObject();
+		mOut.name("type").value("name");
+		mOut.name("properties").beginObject();
+		mOut.name("name").value("urn:ogc:def:crs:OGC:1.3:CRS84");
+		mOut.endObject();
+		mOut.endObject();
+		mOut.name("features").beginArray();
+		writeFolderItems(folder);
+		mOut.endArray();
+		mOut.name("type").value("FeatureCollection");
+		mOut.endObject();
+	}
+
+	/** write the features of the folder and of its sub-folders */
+	protected void writeFolderItems(KmlFolder folder) throws IOException {
+		for (KmlFeature item : folder.mItems){
+			if (item.getClass() == KmlFolder.class)
+				writeFolderItems((KmlFolder)item);
+			else if (item.getClass() == KmlPlacemark.class)
+				writePlacemark((KmlPlacemark)item);
+			else {
+				JsonObject json = item.asGeoJSON(false);
+				if (json == null)
+					continue;
+				if (item instanceof KmlFolder){
+					//flatten what it produces:
+					JsonArray subFeatures = json.getAsJsonArray("features");
+					if (subFeatures != null){
+						for (JsonElement subFeature : subFeatures)
+							writeElement(subFeature);
+					}
+				} else
+					writeElement(json);
+			}
+		}
+	}
+
+	protected void writePlacemark(KmlPlacemark placemark) throws IOException {
+		mOut.beginObject();
+		mOut.name("type").value("Feature");
+		if (placemark.mId != null)
+			mOut.name("id").value(placemark.mId);
+		if (placemark.mGeometry != null){
+			mOut.name("geometry");
+			writeGeometry(placemark.mGeometry);
+		}
+		mOut.name("properties").beginObject();
+		if (placemark.mName != null)
+			mOut.name("name").value(placemark.mName);
+		if (placemark.mExtendedData != null){
+			for (Map.Entry<String, String> entry : placemark.mExtendedData.entrySet()){
+				if (entry.getValue() != null)
+					mOut.name(entry.getKey()).value(entry.getValue());
+			}
+		}
+		mOut.endObject();
+		mOut.endObject();
+	}
+
+	protected void writeGeometry(KmlGeometry geometry) throws IOException {
+		Class<?> c = geometry.getClass();
+		if (c == KmlPoint.class){
+			mOut.beginObject();
+			mOut.name("type").value("Point");
+			mOut.name("coordinates");
+			writePosition(geometry.mCoordinates.get(0));
+			mOut.endObject();
+		} else if (c == KmlLineString.class || c == KmlTrack.class){
+			mOut.beginObject();
+			mOut.name("type").value("LineString");
+			mOut.name("coordinates");
+			writeCoordinates(geometry.mCoordinates);
+			mOut.endObject();
+		} else if (c == KmlPolygon.class){
+			KmlPolygon polygon = (KmlPolygon)geometry;
+			mOut.beginObject();
+			mOut.name("type").value("Polygon");
+			mOut.name("coordinates").beginArray();
+			writeCoordinates(polygon.mCoordinates);
+			if (polygon.mHoles != null){
+				for (ArrayList<GeoPoint> hole : polygon.mHoles)
+					writeCoordinates(hole);
+			}
+			mOut.endArray();
+			mOut.endObject();
+		} else if (c == KmlMultiGeometry.class){
+			mOut.beginObject();
+			mOut.name("type").value("GeometryCollection");
+			mOut.name("geometries").beginArray();
+			for (KmlGeometry item : ((KmlMultiGeometry)geometry).mItems)
+				writeGeometry(item);
+			mOut.endArray();
+			mOut.endObject();
+		} else
+			writeElement(geometry.asGeoJSON());
+	}
+
+	protected void writeCoordinates(ArrayList<GeoPoint> coordinates) throws IOException {
+		mOut.beginArray();
+		for (GeoPoint position : coordinates)
+			writePosition(position);
+		mOut.endArray();
+	}
+
+	/** as KmlGeometry.geoJSONPosition: longitude and latitude only */
+	protected void writePosition(GeoPoint position) throws IOException {
+		mOut.beginArray();
+		mOut.value(position.getLongitude());
+		mOut.value(position.getLatitude());
+		mOut.endArray();
+	}
+
+	protected void writeElement(JsonElement element) throws IOException {
+		if (element == null){
+			mOut.nullValue();
+			return;
+		}
+		if (mGson == null)
+			mGson = new GsonBuilder().create();
+		mGson.toJson(element, mOut);
+	}
+}
@@ -10,7 +10,7 @@ import android.os.Parcelable;
 import android.util.Log;
 
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
-import org.osmdroid.bonuspack.utils.WebImageCache;
+import org.osmdroid.bonuspack.utils.ImageCache;
 import org.osmdroid.views.overlay.Marker;
 
 import java.io.File;
@@ -29,12 +29,6 @@ public class IconStyle extends ColorStyle implements Parcelable {
 	public Bitmap mIcon;
 	public HotSpot mHotSpot;
 
-	private static WebImageCache mIconCache;
-	static {
-		//one common memory cache for all icons:
-		mIconCache = new WebImageCache(100);
-	}
-
 	public IconStyle(){
 		super();
 		mScale = 1.0f;
@@ -52,7 +46,8 @@ public class IconStyle extends ColorStyle implements Parcelable {
 		if (mHref == null) {
 			mIcon = null;
 		} else if (mHref.startsWith("http://") || mHref.startsWith("https://")) {
-			mIcon = mIconCache.get(mHref);
+			//one common cache for all icons:
+			mIcon = ImageCache.getDefault().get(mHref);
 		} else if (kmzContainer == null){
 			if (containerFile != null){
 				String actualFullPath = containerFile.getParent()+'/'+mHref;
@@ -0,0 +1,189 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tokenizer of KML coordinates: lon,lat{,alt} tuples separated by white spaces. <br>
+ * Works on the chars as they come - typically the SAX characters() chunks - without creating a String per tuple,
+ * and stores the values in a growable array of doubles. <br>
+ *
+ * Numbers are parsed directly from their digits when this is exact (up to 15 digits, no exponent),
+ * and with Double.parseDouble otherwise. Invalid tuples are skipped, as in KmlDocument.parseKmlCoord. <br>
+ *
+ * Reusable after reset(). Not thread-safe.
+ */
+public class KmlCoordinatesParser {
+
+	/** exact powers of ten as doubles */
+	protected static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	protected static final int MAX_FAST_DIGITS = 15;
+
+	/** lon, lat, alt of each point */
+	protected double[] mValues;
+	protected int mSize;
+
+	//current tuple:
+	protected double[] mTuple = new double[3];
+	protected int mComponent;
+	protected boolean mInTuple, mInvalidTuple;
+
+	//current number:
+	protected char[] mChars = new char[32];
+	protected int mLength;
+	protected long mMantissa;
+	protected int mDigits, mFractionDigits;
+	protected boolean mNegative, mInFraction, mSlowPath;
+
+	public KmlCoordinatesParser(){
+		mValues = new double[3*64];
+		reset();
+	}
+
+	/** start a new list of coordinates */
+	public void reset(){
+		mSize = 0;
+		mInTuple = false;
+	}
+
+	public void append(char[] ch, int start, int length){
+		int end = start + length;
+		for (int i = start; i < end; i++)
+			accept(ch[i]);
+	}
+
+	public void append(CharSequence s){
+		int length = s.length();
+		for (int i = 0; i < length; i++)
+			accept(s.charAt(i));
+	}
+
+	/** end the current tuple, if any. To call once all chars have been given. */
+	public void finish(){
+		if (mInTuple)
+			endTuple();
+	}
+
+	/** @return the number of points */
+	public int size(){
+		return mSize;
+	}
+
+	/** @return lon, lat, alt of each point. The array may be longer than 3*size(). */
+	public double[] getValues(){
+		return mValues;
+	}
+
+	public ArrayList<GeoPoint> getGeoPoints(){
+		ArrayList<GeoPoint> coordinates = new ArrayList<>(mSize);
+		for (int i = 0; i < mSize; i++)
+			coordinates.add(new GeoPoint(mValues[3*i+1], mValues[3*i], mValues[3*i+2]));
+		return coordinates;
+	}
+
+	protected void accept(char c){
+		if (c <= ' '){
+			if (mInTuple)
+				endTuple();
+		} else {
+			if (!mInTuple)
+				startTuple();
+			if (c == ',')
+				endComponent();
+			else if (!mInvalidTuple)
+				acceptNumberChar(c);
+		}
+	}
+
+	protected void startTuple(){
+		mInTuple = true;
+		mInvalidTuple = false;
+		mComponent = 0;
+		mTuple[2] = 0.0;
+		startNumber();
+	}
+
+	protected void endComponent(){
+		if (!mInvalidTuple){
+			if (mComponent == 2)
+				mInvalidTuple = true; //more than 3 values
+			else
+				endNumber();
+		}
+		mComponent++;
+		startNumber();
+	}
+
+	protected void endTuple(){
+		mInTuple = false;
+		if (mInvalidTuple || mComponent == 0)
+			return;
+		endNumber();
+		if (mInvalidTuple)
+			return;
+		if (3*mSize+3 > mValues.length)
+			mValues = Arrays.copyOf(mValues, mValues.length*2);
+		mValues[3*mSize] = mTuple[0];
+		mValues[3*mSize+1] = mTuple[1];
+		mValues[3*mSize+2] = mTuple[2];
+		mSize++;
+	}
+
+	protected void startNumber(){
+		mLength = 0;
+		mMantissa = 0;
+		mDigits = 0;
+		mFractionDigits = 0;
+		mNegative = false;
+		mInFraction = false;
+		mSlowPath = false;
+	}
+
+	protected void acceptNumberChar(char c){
+		if (mLength == mChars.length)
+			mChars = Arrays.copyOf(mChars, mLength*2);
+		mChars[mLength++] = c;
+		if (mSlowPath)
+			return;
+		if (c >= '0' && c <= '9'){
+			if (mMantissa != 0 || c != '0')
+				mDigits++; //leading zeros are not significant
+			mMantissa = mMantissa*10 + (c - '0');
+			if (mInFraction)
+				mFractionDigits++;
+			if (mDigits > MAX_FAST_DIGITS || mFractionDigits >= POWERS_OF_TEN.length)
+				mSlowPath = true;
+		} else if (c == '.' && !mInFraction)
+			mInFraction = true;
+		else if ((c == '-' || c == '+') && mLength == 1)
+			mNegative = (c == '-');
+		else
+			//exponent, or anything unusual: let Double.parseDouble decide.
+			mSlowPath = true;
+	}
+
+	/** store the current number in the tuple, or set the tuple invalid */
+	protected void endNumber(){
+		double value;
+		int signLength = (mLength > 0 && (mChars[0] == '-' || mChars[0] == '+') ? 1 : 0);
+		int dotLength = (mInFraction ? 1 : 0);
+		if (!mSlowPath && mLength - signLength - dotLength > 0){
+			//mantissa and power of ten are exact doubles, so the division is correctly rounded:
+			value = mMantissa / POWERS_OF_TEN[mFractionDigits];
+			if (mNegative)
+				value = -value;
+		} else {
+			try {
+				value = Double.parseDouble(new String(mChars, 0, mLength));
+			} catch (NumberFormatException e){
+				mInvalidTuple = true;
+				return;
+			}
+		}
+		mTuple[mComponent] = value;
+	}
+}
@@ -0,0 +1,231 @@
+package org.osmdroid.bonuspack.kml;
+
+import java.util.TimeZone;
+
+/**
+ * Parser and formatter of KML dateTime values (XML Schema dateTime, ISO 8601), as epoch milliseconds. <br>
+ *
+ * Supported: yyyy, yyyy-MM, yyyy-MM-dd, yyyy-MM-ddThh:mm:ss with optional fraction of seconds,
+ * and optional time zone: Z, +hh:mm, -hh:mm (also +hhmm and +hh). Values without time zone are in local time,
+ * see {@link #setLocalTimeZone(TimeZone)}. 24:00:00 is the midnight ending the day. <br>
+ *
+ * Hand-written, without SimpleDateFormat or Calendar: thread-safe, and creates no object for UTC and offset values.
+ */
+public class KmlDateTime {
+
+	/** undefined or invalid dateTime */
+	public static final long UNDEFINED = Long.MIN_VALUE;
+
+	protected static final long MILLIS_PER_DAY = 86400000L;
+
+	/** time zone of values without time zone; null until first used */
+	protected static volatile TimeZone sLocalTimeZone;
+
+	/**
+	 * Set the time zone of values without time zone.
+	 * @param zone the time zone, or null to use the default time zone again (read once, on next use) - e.g. after it changed.
+	 */
+	public static void setLocalTimeZone(TimeZone zone){
+		sLocalTimeZone = zone;
+	}
+
+	/** @return the time zone of values without time zone */
+	public static TimeZone getLocalTimeZone(){
+		TimeZone zone = sLocalTimeZone;
+		if (zone == null){
+			//TimeZone.getDefault returns a new clone on each call:
+			zone = TimeZone.getDefault();
+			sLocalTimeZone = zone;
+		}
+		return zone;
+	}
+
+	/** @return the epoch milliseconds, or UNDEFINED if s is not a valid KML dateTime. White spaces around are ignored. */
+	public static long parse(CharSequence s){
+		int start = 0, end = s.length();
+		while (start < end && s.charAt(start) <= ' ')
+			start++;
+		while (end > start && s.charAt(end-1) <= ' ')
+			end--;
+		return parse(s, start, end);
+	}
+
+	/** @return the epoch milliseconds of s[start, end[, or UNDEFINED if not a valid KML dateTime. */
+	public static long parse(CharSequence s, int start, int end){
+		int i = start;
+		//date:
+		int year = digits(s, i, 4, end);
+		if (year < 0)
+			return UNDEFINED;
+		i += 4;
+		int month = 1, day = 1;
+		if (i < end && s.charAt(i) == '-'){
+			month = digits(s, i+1, 2, end);
+			if (month < 1 || month > 12)
+				return UNDEFINED;
+			i += 3;
+			if (i < end && s.charAt(i) == '-'){
+				day = digits(s, i+1, 2, end);
+				if (day < 1 || day > daysInMonth(year, month))
+					return UNDEFINED;
+				i += 3;
+			}
+		}
+		long time = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+		if (i == end)
+			return toUTC(time); //date only: midnight, local time
+		//time:
+		if (s.charAt(i) != 'T' || i != start+10)
+			return UNDEFINED;
+		int hours = digits(s, i+1, 2, end);
+		if (i+3 >= end || s.charAt(i+3) != ':')
+			return UNDEFINED;
+		int minutes = digits(s, i+4, 2, end);
+		if (i+6 >= end || s.charAt(i+6) != ':')
+			return UNDEFINED;
+		int seconds = digits(s, i+7, 2, end);
+		if (hours < 0 || hours > 24 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 60)
+			return UNDEFINED;
+		time += ((hours*60L + minutes)*60L + seconds)*1000L;
+		i += 9;
+		//fraction of seconds, rounded down to milliseconds:
+		boolean fractionIsZero = true;
+		if (i < end && s.charAt(i) == '.'){
+			i++;
+			int fractionStart = i;
+			int millis = 0;
+			while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9'){
+				if (i - fractionStart < 3)
+					millis = millis*10 + (s.charAt(i) - '0');
+				if (s.charAt(i) != '0')
+					fractionIsZero = false;
+				i++;
+			}
+			if (i == fractionStart)
+				return UNDEFINED;
+			for (int n = i - fractionStart; n < 3; n++)
+				millis *= 10;
+			time += millis;
+		}
+		if (hours == 24 && (minutes != 0 || seconds != 0 || !fractionIsZero))
+			return UNDEFINED;
+		//time zone:
+		if (i == end)
+			return toUTC(time);
+		char c = s.charAt(i);
+		if (c == 'Z')
+			return (i+1 == end ? time : UNDEFINED);
+		if (c != '+' && c != '-')
+			return UNDEFINED;
+		int offsetHours = digits(s, i+1, 2, end);
+		int offsetMinutes = 0;
+		i += 3;
+		boolean colon = (i < end && s.charAt(i) == ':');
+		if (colon)
+			i++;
+		if (i < end || colon){
+			offsetMinutes = digits(s, i, 2, end);
+			i += 2;
+		}
+		if (i != end || offsetHours < 0 || offsetHours > 14 || offsetMinutes < 0 || offsetMinutes > 59)
+			return UNDEFINED;
+		long offset = (offsetHours*60L + offsetMinutes)*60000L;
+		return (c == '+' ? time - offset : time + offset);
+	}
+
+	/**
+	 * Append the dateTime in UTC: yyyy-MM-ddThh:mm:ssZ, with milliseconds if not 0.
+	 * Nothing is appended for UNDEFINED.
+	 */
+	public static void format(long time, StringBuilder sb){
+		if (time == UNDEFINED)
+			return;
+		long days = Math.floorDiv(time, MILLIS_PER_DAY);
+		int millisOfDay = (int)Math.floorMod(time, MILLIS_PER_DAY);
+		//civil from days (H. Hinnant):
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		int dayOfEra = (int)(z - era*146097);
+		int yearOfEra = (dayOfEra - dayOfEra/1460 + dayOfEra/36524 - dayOfEra/146096) / 365;
+		int dayOfYear = dayOfEra - (365*yearOfEra + yearOfEra/4 - yearOfEra/100);
+		int mp = (5*dayOfYear + 2)/153;
+		int day = dayOfYear - (153*mp + 2)/5 + 1;
+		int month = (mp < 10 ? mp + 3 : mp - 9);
+		long year = yearOfEra + era*400 + (month <= 2 ? 1 : 0);
+		if (year >= 0 && year < 1000)
+			pad(sb, (int)year, 4);
+		else
+			sb.append(year);
+		sb.append('-');
+		pad(sb, month, 2);
+		sb.append('-');
+		pad(sb, day, 2);
+		sb.append('T');
+		pad(sb, millisOfDay/3600000, 2);
+		sb.append(':');
+		pad(sb, (millisOfDay/60000)%60, 2);
+		sb.append(':');
+		pad(sb, (millisOfDay/1000)%60, 2);
+		int millis = millisOfDay%1000;
+		if (millis != 0){
+			sb.append('.');
+			pad(sb, millis, 3);
+		}
+		sb.append('Z');
+	}
+
+	/** @return the dateTime in UTC, or null for UNDEFINED */
+	public static String format(long time){
+		if (time == UNDEFINED)
+			return null;
+		StringBuilder sb = new StringBuilder(24);
+		format(time, sb);
+		return sb.toString();
+	}
+
+	/** @return the value of n decimal digits at s[i], or -1 if they are not all digits */
+	protected static int digits(CharSequence s, int i, int n, int end){
+		if (i < 0 || i + n > end)
+			return -1;
+		int value = 0;
+		for (int k = i; k < i + n; k++){
+			char c = s.charAt(k);
+			if (c < '0' || c > '9')
+				return -1;
+			value = value*10 + (c - '0');
+		}
+		return value;
+	}
+
+	protected static void pad(StringBuilder sb, int value, int width){
+		for (int p = (width == 4 ? 1000 : width == 3 ? 100 : 10); p > 1 && value < p; p /= 10)
+			sb.append('0');
+		sb.append(value);
+	}
+
+	protected static int daysInMonth(int year, int month){
+		switch (month){
+			case 2: return ((year%4 == 0 && year%100 != 0) || year%400 == 0) ? 29 : 28;
+			case 4: case 6: case 9: case 11: return 30;
+			default: return 31;
+		}
+	}
+
+	/** days since 1970-01-01 of a date in the proleptic Gregorian calendar (H. Hinnant) */
+	protected static long daysFromCivil(int year, int month, int day){
+		int y = (month <= 2 ? year - 1 : year);
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era*400;
+		int dayOfYear = (153*(month > 2 ? month - 3 : month + 9) + 2)/5 + day - 1;
+		int dayOfEra = yearOfEra*365 + yearOfEra/4 - yearOfEra/100 + dayOfYear;
+		return era*146097L + dayOfEra - 719468;
+	}
+
+	/** @return the epoch milliseconds of a local time, given as milliseconds since 1970-01-01T00:00:00 local */
+	protected static long toUTC(long localTime){
+		TimeZone zone = getLocalTimeZone();
+		long utc = localTime - zone.getRawOffset();
+		//adjust for daylight saving time at that instant:
+		return localTime - zone.getOffset(utc);
+	}
+}
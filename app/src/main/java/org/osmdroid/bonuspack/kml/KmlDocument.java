@@ -7,16 +7,11 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.stream.JsonWriter;
 
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
 import org.osmdroid.bonuspack.utils.HttpConnection;
+import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -27,18 +22,20 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -75,6 +72,87 @@ public class KmlDocument implements Parcelable {
 	
 	/** Local File that has been loaded. null if this is not a local file. */
 	protected File mLocalFile;
+	/** true if a NetworkLink has been loaded in this document */
+	protected boolean mHasNetworkLinks;
+
+	/** executor loading links and images while parsing. null to load them synchronously. */
+	protected Executor mLoadingExecutor;
+	/** for a linked sub-document being parsed: the loading stage of its top-level document */
+	protected KmlLinkLoader mLinkLoader;
+	/** for a linked sub-document: its parsing, whose links are not yet stitched */
+	protected KmlSaxHandler mPendingHandler;
+
+	/** size of the buffers used when saving */
+	protected static final int WRITER_BUFFER_SIZE = 65536;
+
+	/** cache of parsed files. null if none. */
+	protected KmlFileCache mFileCache;
+
+	/**
+	 * Set the cache used by parseKMLFile, parseKMZFile and parseGeoJSON(File),
+	 * so that opening the same file again doesn't parse it. A same cache can be shared by several documents. <br>
+	 * Documents with NetworkLinks are not cached, as their linked content may change.
+	 * @param cache the cache, or null to disable caching (default).
+	 */
+	public void setFileCache(KmlFileCache cache){
+		mFileCache = cache;
+	}
+
+	public KmlFileCache getFileCache(){
+		return mFileCache;
+	}
+
+	/** @return the key of this file in the file cache, or null if no cache */
+	protected String getFileCacheKey(File file, String format){
+		KmlFileCache cache = mFileCache;
+		return (cache != null ? cache.getKey(file, format) : null);
+	}
+
+	/** @return true if the document has been loaded from the file cache */
+	protected boolean loadFromFileCache(String key){
+		KmlFileCache cache = mFileCache;
+		if (key == null || cache == null || !cache.get(key, this))
+			return false;
+		Log.d(BonusPackHelper.LOG_TAG, "KmlDocument: loaded from cache "+key);
+		return true;
+	}
+
+	protected void saveInFileCache(String key){
+		KmlFileCache cache = mFileCache;
+		if (key != null && cache != null && !mHasNetworkLinks && mPendingHandler == null)
+			cache.put(key, this);
+	}
+
+	/**
+	 * Set the executor used to load NetworkLinks, GroundOverlay images and IconStyle icons while parsing. <br>
+	 * They are then fetched in parallel, and a parsing takes about the time of its slowest link,
+	 * instead of the sum of all links. The parse methods still return once everything is loaded,
+	 * with linked documents in document order. <br>
+	 * Use a bounded executor, such as Executors.newFixedThreadPool(4), and don't parse from one of its threads. <br>
+	 * With a FeatureListener, features are given to it before their loading is done: a NetworkLink folder is still empty -
+	 * its linked document is added when the parse method returns -, and IconStyle icons and GroundOverlay images
+	 * may not be loaded yet. <br>
+	 * If the parsing thread is interrupted, the loadings are cancelled, and the parse method fails once they are stopped.
+	 * @param executor the executor, or null to load them synchronously in the parsing (default).
+	 */
+	public void setLoadingExecutor(Executor executor){
+		mLoadingExecutor = executor;
+	}
+
+	/**
+	 * Receives the features of a KML stream as soon as they are read, to build and show overlays progressively.
+	 * Called on the parsing thread.
+	 * @see #parseKMLStream(InputStream, ZipFile, FeatureListener)
+	 */
+	public interface FeatureListener {
+		/**
+		 * @param feature a complete Placemark, GroundOverlay or NetworkLink (as a Folder). Shared styles declared before it are available.
+		 * With a loading executor, its linked document, icons or image may still be loading: see setLoadingExecutor.
+		 * @param parent Folder containing this feature in the document
+		 * @return true to keep the feature in its parent, false to drop it, so that memory is only used by the features in progress.
+		 */
+		boolean onFeature(KmlFeature feature, KmlFolder parent);
+	}
 
 	/** default constructor, with the kmlRoot as an empty Folder */
 	public KmlDocument(){
@@ -159,40 +237,15 @@ public class KmlDocument implements Parcelable {
 		}
 	}
 	
-	/** KML coordinates are: lon,lat{,alt} tuples separated by separators (space, tab, cr). */
+	/**
+	 * KML coordinates are: lon,lat{,alt} tuples separated by separators (space, tab, cr).
+	 * @see KmlCoordinatesParser
+	 */
 	protected static ArrayList<GeoPoint> parseKmlCoordinates(String input){
-		LinkedList<GeoPoint> tmpCoords = new LinkedList<GeoPoint>();
-		int i = 0;
-		int tupleStart = 0;
-		int length = input.length();
-		boolean startReadingTuple = false;
-		while (i<length){
-			char c = input.charAt(i);
-			if (c==' '|| c=='\n' || c=='\t'){
-				if (startReadingTuple){ //just ending coords portion:
-					String tuple = input.substring(tupleStart, i);
-					GeoPoint p = parseKmlCoord(tuple);
-					if (p != null)
-						tmpCoords.add(p);
-					startReadingTuple = false;
-				}
-			} else { //data
-				if (!startReadingTuple){ //just ending space portion
-					startReadingTuple = true;
-					tupleStart = i;
-				}
-				if (i == length-1){ //at the end => handle last tuple:
-					String tuple = input.substring(tupleStart, i+1);
-					GeoPoint p = parseKmlCoord(tuple);
-					if (p != null)
-						tmpCoords.add(p);
-				}
-			}
-			i++;
-		}
-		ArrayList<GeoPoint> coordinates = new ArrayList<GeoPoint>(tmpCoords.size());
-		coordinates.addAll(tmpCoords);
-		return coordinates;
+		KmlCoordinatesParser parser = new KmlCoordinatesParser();
+		parser.append(input);
+		parser.finish();
+		return parser.getGeoPoints();
 	}
 	
 	/**
@@ -205,15 +258,18 @@ public class KmlDocument implements Parcelable {
 	public boolean parseKMLUrl(String url){
 		Log.d(BonusPackHelper.LOG_TAG, "KmlProvider.parseKMLUrl:"+url);
 		HttpConnection connection = new HttpConnection();
-		connection.doGet(url);
-		InputStream stream = connection.getStream();
 		boolean ok;
-		if (stream == null){
-			ok = false;
-		} else {
-			ok = parseKMLStream(stream, null);
+		try {
+			connection.doGet(url);
+			InputStream stream = connection.getStream();
+			if (stream == null){
+				ok = false;
+			} else {
+				ok = parseKMLStream(stream, null);
+			}
+		} finally {
+			connection.close();
 		}
-		connection.close();
 		//Log.d(BonusPackHelper.LOG_TAG, "KmlProvider.parseKMLUrl - end");
 		return ok;
 	}
@@ -247,18 +303,35 @@ public class KmlDocument implements Parcelable {
 	 * @see #parseKMLUrl
 	 */
 	public boolean parseKMLFile(File file){
+		return parseKMLFile(file, null);
+	}
+
+	/**
+	 * Parse a KML document from a file, giving each feature to the listener as soon as it is read.
+	 * @param file full file path
+	 * @param listener listener of features, or null
+	 * @return true if OK, false if any error.
+	 * @see #parseKMLStream(InputStream, ZipFile, FeatureListener)
+	 */
+	public boolean parseKMLFile(File file, FeatureListener listener){
 		mLocalFile = file;
 		Log.d(BonusPackHelper.LOG_TAG, "KmlProvider.parseKMLFile:"+mLocalFile.getAbsolutePath());
+		//features can only be given to the listener by parsing:
+		String cacheKey = (listener == null ? getFileCacheKey(file, "kml") : null);
+		if (loadFromFileCache(cacheKey))
+			return true;
 		InputStream stream;
 		boolean ok;
 		try {
 			stream = new BufferedInputStream(new FileInputStream(mLocalFile));
-			ok = parseKMLStream(stream, null);
+			ok = parseKMLStream(stream, null, listener);
 			stream.close();
 		} catch (Exception e){
 			e.printStackTrace();
 			ok = false;
 		}
+		if (ok)
+			saveInFileCache(cacheKey);
 		Log.d(BonusPackHelper.LOG_TAG, "KmlProvider.parseFile - end");
 		return ok;
 	}
@@ -271,6 +344,9 @@ public class KmlDocument implements Parcelable {
 	public boolean parseKMZFile(File file){
 		mLocalFile = file;
 		Log.d(BonusPackHelper.LOG_TAG, "KmlProvider.parseKMZFile:"+mLocalFile.getAbsolutePath());
+		String cacheKey = getFileCacheKey(file, "kmz");
+		if (loadFromFileCache(cacheKey))
+			return true;
 		try {
 			ZipFile kmzFile = new ZipFile(mLocalFile);
 			String rootFileName = null;
@@ -293,6 +369,8 @@ public class KmlDocument implements Parcelable {
 				result = false;
 			}
 			kmzFile.close();
+			if (result)
+				saveInFileCache(cacheKey);
 			return result;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -307,7 +385,29 @@ public class KmlDocument implements Parcelable {
 	 * @return true if OK, false if any error. 
 	 */
 	public boolean parseKMLStream(InputStream stream, ZipFile kmzContainer){
+		return parseKMLStream(stream, kmzContainer, null);
+	}
+
+	/**
+	 * Parse a KML content from an InputStream, giving each feature to the listener as soon as it is read,
+	 * instead of waiting for the whole document. <br>
+	 * Folders are not given to the listener: their features are. During parsing, kmlRoot is the root being built.
+	 * @param stream the InputStream
+	 * @param kmzContainer KMZ file containing this KML file - or null if not applicable.
+	 * @param listener listener of features, or null
+	 * @return true if OK, false if any error.
+	 */
+	public boolean parseKMLStream(InputStream stream, ZipFile kmzContainer, FeatureListener listener){
 		KmlSaxHandler handler = new KmlSaxHandler(mLocalFile, kmzContainer);
+		handler.mListener = listener;
+		//linked sub-documents share the loading stage of their top-level document:
+		boolean isTopLevel = (mLinkLoader == null);
+		if (isTopLevel && mLoadingExecutor != null)
+			handler.mLoader = new KmlLinkLoader(mLoadingExecutor);
+		else
+			handler.mLoader = mLinkLoader;
+		if (listener != null)
+			mKmlRoot = handler.mKmlRoot;
 		boolean ok;
 		try {
 			SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
@@ -318,6 +418,16 @@ public class KmlDocument implements Parcelable {
 			e.printStackTrace();
 			ok = false;
 		}
+		if (handler.mLoader != null){
+			if (isTopLevel){
+				//tasks may still use the stream container, so wait for them even after an error:
+				if (handler.mLoader.await())
+					handler.resolveLinks();
+				else
+					ok = false;
+			} else if (handler.hasPendingTasks())
+				mPendingHandler = handler;
+		}
 		return ok;
 	}
 	
@@ -375,6 +485,24 @@ public class KmlDocument implements Parcelable {
 		KEYWORDS_DICTIONARY.put("value", KmlKeywords.value);
 	}
 
+	/** a NetworkLink being loaded by a KmlLinkLoader */
+	protected static class PendingLink {
+		final String mHref;
+		/** the NetworkLink folder, receiving the linked document root */
+		final KmlFolder mFolder;
+		final KmlDocument mDocument;
+		/** number of styles declared before the link */
+		final int mStyleCount;
+		boolean mOk;
+
+		PendingLink(String href, KmlFolder folder, int styleCount){
+			mHref = href;
+			mFolder = folder;
+			mDocument = new KmlDocument();
+			mStyleCount = styleCount;
+		}
+	}
+
 	protected class KmlSaxHandler extends DefaultHandler {
 		
 		private StringBuilder mStringBuilder = new StringBuilder(1024);
@@ -394,7 +522,15 @@ public class KmlDocument implements Parcelable {
 		boolean mIsInnerBoundary;
 		File mFile; //to get the path of relative sub-files
 		ZipFile mKMZFile;
+		FeatureListener mListener;
+		KmlCoordinatesParser mCoordinatesParser = new KmlCoordinatesParser();
+		boolean mIsCoordinates; //chars go to the coordinates parser, not to the string builder
 		double mNorth, mEast, mSouth, mWest;
+		KmlLinkLoader mLoader; //null if links are loaded synchronously
+		ArrayList<PendingLink> mPendingLinks = new ArrayList<>();
+		boolean mHasPendingImages;
+		HashMap<String, Integer> mStyleDeclarations = new HashMap<>(); //styleId => last declaration index
+		int mStyleCount;
 		
 		public KmlSaxHandler(File file, ZipFile kmzContainer){
 			mFile = file;
@@ -407,24 +543,40 @@ public class KmlDocument implements Parcelable {
 			mIsInnerBoundary = false;
 		}
 		
-		protected void loadNetworkLink(String href, ZipFile kmzContainer){
-			KmlDocument subDocument = new KmlDocument();
-			boolean ok;
+		protected boolean loadLinkedDocument(KmlDocument subDocument, String href, ZipFile kmzContainer){
 			if (href.startsWith("http://") || href.startsWith("https://") )
-				ok = subDocument.parseKMLUrl(href);
+				return subDocument.parseKMLUrl(href);
 			else if (kmzContainer == null){
 				File subFile = new File(mFile.getParent()+'/'+href);
-				ok = subDocument.parseKMLFile(subFile);
+				return subDocument.parseKMLFile(subFile);
 			} else {
 				try {
 					final ZipEntry fileEntry = kmzContainer.getEntry(href);
 					InputStream stream = kmzContainer.getInputStream(fileEntry);
 					Log.d(BonusPackHelper.LOG_TAG, "Load NetworkLink:"+href);
-					ok = subDocument.parseKMLStream(stream, kmzContainer);
+					return subDocument.parseKMLStream(stream, kmzContainer);
 				} catch (Exception e) {
-					ok = false;
+					return false;
 				}
 			}
+		}
+
+		protected void loadNetworkLink(final String href, final ZipFile kmzContainer){
+			mHasNetworkLinks = true;
+			if (mLoader != null){
+				//load it in parallel, it will be stitched in resolveLinks:
+				final PendingLink link = new PendingLink(href, (KmlFolder)mKmlCurrentFeature, mStyleCount);
+				link.mDocument.mLinkLoader = mLoader;
+				mPendingLinks.add(link);
+				mLoader.submit(new Runnable() {
+					@Override public void run(){
+						link.mOk = loadLinkedDocument(link.mDocument, href, kmzContainer);
+					}
+				});
+				return;
+			}
+			KmlDocument subDocument = new KmlDocument();
+			boolean ok = loadLinkedDocument(subDocument, href, kmzContainer);
 			if (ok){
 				//add subDoc root to the current feature, which is -normally- the NetworkLink:
 				((KmlFolder)mKmlCurrentFeature).add(subDocument.mKmlRoot);
@@ -435,6 +587,73 @@ public class KmlDocument implements Parcelable {
 			}
 		}
 
+		/**
+		 * Once all loading tasks are done: add the linked documents - and their own links - to their NetworkLink folder,
+		 * in document order, and merge their styles as a synchronous loading would.
+		 */
+		protected void resolveLinks(){
+			for (PendingLink link : mPendingLinks){
+				KmlDocument subDocument = link.mDocument;
+				if (subDocument.mPendingHandler != null){
+					subDocument.mPendingHandler.resolveLinks();
+					subDocument.mPendingHandler = null;
+				}
+				subDocument.mLinkLoader = null;
+				if (link.mOk){
+					link.mFolder.add(subDocument.mKmlRoot);
+					for (Map.Entry<String, StyleSelector> entry : subDocument.mStyles.entrySet()){
+						//styles declared after the link override the linked ones:
+						Integer declaration = mStyleDeclarations.get(entry.getKey());
+						if (declaration == null || declaration < link.mStyleCount)
+							mStyles.put(entry.getKey(), entry.getValue());
+					}
+				} else {
+					Log.e(BonusPackHelper.LOG_TAG, "Error reading NetworkLink:"+link.mHref);
+				}
+			}
+			mPendingLinks.clear();
+		}
+
+		boolean hasPendingTasks(){
+			return mHasPendingImages || !mPendingLinks.isEmpty();
+		}
+
+		protected void declareStyle(String styleId){
+			mStyleDeclarations.put(styleId, mStyleCount++);
+		}
+
+		protected void loadIcon(final IconStyle iconStyle, final String href){
+			if (mLoader == null){
+				iconStyle.setIcon(href, mFile, mKMZFile);
+				return;
+			}
+			iconStyle.mHref = href;
+			mHasPendingImages = true;
+			final File file = mFile;
+			final ZipFile kmzContainer = mKMZFile;
+			mLoader.submit(new Runnable() {
+				@Override public void run(){
+					iconStyle.setIcon(href, file, kmzContainer);
+				}
+			});
+		}
+
+		protected void loadGroundOverlayIcon(final KmlGroundOverlay groundOverlay, final String href){
+			if (mLoader == null){
+				groundOverlay.setIcon(href, mFile, mKMZFile);
+				return;
+			}
+			groundOverlay.mIconHref = href;
+			mHasPendingImages = true;
+			final File file = mFile;
+			final ZipFile kmzContainer = mKMZFile;
+			mLoader.submit(new Runnable() {
+				@Override public void run(){
+					groundOverlay.setIcon(href, file, kmzContainer);
+				}
+			});
+		}
+
 		public void startElement(String uri, String localName, String name,
 								 Attributes attributes) throws SAXException {
 			KmlKeywords element = KEYWORDS_DICTIONARY.get(name);
@@ -549,6 +768,11 @@ public class KmlDocument implements Parcelable {
 						mDataName = attributes.getValue("name");
 						break;
 					}
+					case coordinates: {
+						mCoordinatesParser.reset();
+						mIsCoordinates = true;
+						break;
+					}
 					default:
 						break;
 				} //switch
@@ -558,7 +782,10 @@ public class KmlDocument implements Parcelable {
 
 		public @Override void characters(char[] ch, int start, int length)
 				throws SAXException {
-			mStringBuilder.append(ch, start, length);
+			if (mIsCoordinates)
+				mCoordinatesParser.append(ch, start, length);
+			else
+				mStringBuilder.append(ch, start, length);
 		}
 
 		public void endElement(String uri, String localName, String name)
@@ -577,7 +804,11 @@ public class KmlDocument implements Parcelable {
 				case GroundOverlay: {
 					//this was a Feature:
 					KmlFolder parent = (KmlFolder) mKmlFeatureStack.get(mKmlFeatureStack.size() - 2); //get parent
-					parent.add(mKmlCurrentFeature); //add current in its parent
+					boolean keep = true;
+					if (mListener != null && element != KmlKeywords.Folder)
+						keep = mListener.onFeature(mKmlCurrentFeature, parent);
+					if (keep)
+						parent.add(mKmlCurrentFeature); //add current in its parent
 					mKmlFeatureStack.remove(mKmlFeatureStack.size() - 1); //pop current from stack
 					mKmlCurrentFeature = mKmlFeatureStack.get(mKmlFeatureStack.size() - 1); //set current to top of stack
 					if (element == KmlKeywords.NetworkLink)
@@ -630,19 +861,21 @@ public class KmlDocument implements Parcelable {
 					break;
 				}
 				case coordinates: {
+					mIsCoordinates = false;
+					mCoordinatesParser.finish();
 					if (mKmlCurrentFeature instanceof KmlPlacemark) {
 						if (!mIsInnerBoundary) {
-							mKmlCurrentGeometry.mCoordinates = parseKmlCoordinates(mStringBuilder.toString());
+							mKmlCurrentGeometry.mCoordinates = mCoordinatesParser.getGeoPoints();
 						} else { //inside a Polygon innerBoundaryIs element: new hole
 							KmlPolygon polygon = (KmlPolygon) mKmlCurrentGeometry;
 							if (polygon.mHoles == null)
 								polygon.mHoles = new ArrayList<ArrayList<GeoPoint>>();
-							ArrayList<GeoPoint> hole = parseKmlCoordinates(mStringBuilder.toString());
+							ArrayList<GeoPoint> hole = mCoordinatesParser.getGeoPoints();
 							polygon.mHoles.add(hole);
 						}
 					} else if (mKmlCurrentGroundOverlay != null) {
 						//gx:LatLonQuad coordinates:
-						mKmlCurrentGroundOverlay.setLatLonQuad(parseKmlCoordinates(mStringBuilder.toString()));
+						mKmlCurrentGroundOverlay.setLatLonQuad(mCoordinatesParser.getGeoPoints());
 					}
 					break;
 				}
@@ -653,7 +886,7 @@ public class KmlDocument implements Parcelable {
 				}
 				case when: {
 					if (mKmlCurrentGeometry != null && mKmlCurrentGeometry instanceof KmlTrack)
-						((KmlTrack) mKmlCurrentGeometry).addWhen(mStringBuilder.toString());
+						((KmlTrack) mKmlCurrentGeometry).addWhen(mStringBuilder);
 					break;
 				}
 				case styleUrl: {
@@ -711,14 +944,16 @@ public class KmlDocument implements Parcelable {
 					if (mCurrentStyle != null && mColorStyle != null && mColorStyle instanceof IconStyle) {
 						//href of an Icon in an IconStyle:
 						String href = mStringBuilder.toString();
-						mCurrentStyle.setIcon(href, mFile, mKMZFile);
+						if (mCurrentStyle.mIconStyle == null)
+							mCurrentStyle.mIconStyle = new IconStyle();
+						loadIcon(mCurrentStyle.mIconStyle, href);
 					} else if (mIsNetworkLink) {
 						//href of a NetworkLink:
 						String href = mStringBuilder.toString();
 						loadNetworkLink(href, mKMZFile);
 					} else if (mKmlCurrentGroundOverlay != null) {
 						//href of a GroundOverlay Icon:
-						mKmlCurrentGroundOverlay.setIcon(mStringBuilder.toString(), mFile, mKMZFile);
+						loadGroundOverlayIcon(mKmlCurrentGroundOverlay, mStringBuilder.toString());
 					}
 					break;
 				}
@@ -734,6 +969,7 @@ public class KmlDocument implements Parcelable {
 					else {
 						mCurrentStyleId = addStyle(mCurrentStyle);
 					}
+					declareStyle(mCurrentStyleId);
 					if (mKmlCurrentFeature != null && mKmlCurrentFeature != mKmlRoot) {
 						//this is an inline style. Set its style id to the KmlObject container:
 						mKmlCurrentFeature.mStyle = mCurrentStyleId;
@@ -743,8 +979,10 @@ public class KmlDocument implements Parcelable {
 					break;
 				}
 				case StyleMap: {
-					if (mCurrentStyleId != null)
+					if (mCurrentStyleId != null){
 						putStyle(mCurrentStyleId, mCurrentStyleMap);
+						declareStyle(mCurrentStyleId);
+					}
 					//TODO: inline StyleMap ???
 					mCurrentStyleMap = null;
 					mCurrentStyleId = null;
@@ -797,18 +1035,22 @@ public class KmlDocument implements Parcelable {
 	} //KmlSaxHandler class
 
 	/**
-	 * save the document as a KML file on writer
+	 * save the document as a KML file on writer. 
+	 * The writer is buffered if it is not a BufferedWriter, and flushed at the end. 
 	 * @param writer
 	 * @return false if error
 	 */
 	public boolean saveAsKML(Writer writer){
 		try {
+			if (!(writer instanceof BufferedWriter))
+				writer = new BufferedWriter(writer, WRITER_BUFFER_SIZE);
 			writer.write("<?xml version='1.0' encoding='UTF-8'?>\n");
 			writer.write("<kml xmlns='http://www.opengis.net/kml/2.2' xmlns:gx='http://www.google.com/kml/ext/2.2'>\n");
 			boolean result = true;
 			if (mKmlRoot != null)
 				result = mKmlRoot.writeAsKML(writer, true, this);
 			writer.write("</kml>\n");
+			writer.flush();
 			return result;
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -834,7 +1076,7 @@ public class KmlDocument implements Parcelable {
 			Log.d(BonusPackHelper.LOG_TAG, "Saving "+file.getAbsolutePath());
 			//FileWriter fw = new FileWriter(file);
 			OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
-			BufferedWriter writer = new BufferedWriter(out, 8192);
+			BufferedWriter writer = new BufferedWriter(out, WRITER_BUFFER_SIZE);
 			boolean result = saveAsKML(writer);
 			writer.close();
 			Log.d(BonusPackHelper.LOG_TAG, "Saved.");
@@ -845,15 +1087,17 @@ public class KmlDocument implements Parcelable {
 		}
 	}
 
+	/**
+	 * Save the document as GeoJSON on writer, streaming the features with a GeoJSONWriter. 
+	 * The writer is buffered if it is not a BufferedWriter, and flushed at the end. 
+	 * @param writer
+	 * @return false if error
+	 */
 	public boolean saveAsGeoJSON(Writer writer){
-		JsonObject json = mKmlRoot.asGeoJSON(true);
-		if (json == null)
-			return false;
 		try {
-			Gson gson = new GsonBuilder().create();
-			JsonWriter jsonWriter = new JsonWriter(writer);
-			gson.toJson(json, jsonWriter);
-			return true;
+			if (!(writer instanceof BufferedWriter))
+				writer = new BufferedWriter(writer, WRITER_BUFFER_SIZE);
+			return new GeoJSONWriter().write(mKmlRoot, writer);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return false;
@@ -861,15 +1105,15 @@ public class KmlDocument implements Parcelable {
 	}
 	
 	/**
-	 * Save the document as a GeoJSON file
+	 * Save the document as a GeoJSON file, in UTF-8
 	 * @param file full path of the destination file
 	 * @return false if error
 	 * @see <a href="http://geojson.org">GeoJSON</a>
 	 */
 	public boolean saveAsGeoJSON(File file){
 		try {
-			FileWriter fw = new FileWriter(file);
-			BufferedWriter writer = new BufferedWriter(fw, 8192);
+			OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+			BufferedWriter writer = new BufferedWriter(out, WRITER_BUFFER_SIZE);
 			boolean result = saveAsGeoJSON(writer);
 			writer.close();
 			return result;
@@ -893,28 +1137,64 @@ public class KmlDocument implements Parcelable {
 	
 	/** Parse a GeoJSON String */
 	public boolean parseGeoJSON(String jsonString){
-		try {
-			JsonElement json = JsonParser.parseString(jsonString);
-			return parseGeoJSON(json.getAsJsonObject());
-		} catch (JsonSyntaxException e) {
-			e.printStackTrace();
-			return false;
-		}
+		return parseGeoJSON(new StringReader(jsonString), null, null);
 	}
 
 	/** Parse a GeoJSON stream */
 	public boolean parseGeoJSONStream(InputStream stream) {
-		JsonElement json = JsonParser.parseReader(new InputStreamReader(stream));
-		return parseGeoJSON(json.getAsJsonObject());
+		return parseGeoJSONStream(stream, null, null);
+	}
+
+	/**
+	 * Parse a GeoJSON stream feature by feature, without building the whole JSON tree in memory.
+	 * @param stream the InputStream, in UTF-8
+	 * @param area area of interest: features not intersecting it - or without geometry - are skipped, without building their geometry.
+	 *             null for all features.
+	 * @param listener receives each Placemark as soon as it is read, or null. During parsing, kmlRoot is the root being built.
+	 * @return true if OK, false if any error.
+	 * @see GeoJSONReader
+	 */
+	public boolean parseGeoJSONStream(InputStream stream, BoundingBox area, FeatureListener listener){
+		return parseGeoJSON(new InputStreamReader(stream, StandardCharsets.UTF_8), area, listener);
+	}
+
+	protected boolean parseGeoJSON(Reader reader, BoundingBox area, FeatureListener listener){
+		GeoJSONReader geoJSONReader = new GeoJSONReader(area, listener);
+		if (listener != null)
+			mKmlRoot = geoJSONReader.getRoot();
+		try {
+			KmlFolder root = geoJSONReader.read(reader);
+			if (root == null)
+				return false;
+			mKmlRoot = root;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			return false;
+		}
 	}
 
 	/** Parse a GeoJSON File */
 	public boolean parseGeoJSON(File file){
+		return parseGeoJSON(file, null, null);
+	}
+
+	/**
+	 * Parse a GeoJSON File feature by feature.
+	 * @see #parseGeoJSONStream(InputStream, BoundingBox, FeatureListener)
+	 */
+	public boolean parseGeoJSON(File file, BoundingBox area, FeatureListener listener){
 		mLocalFile = file;
+		//only the whole content is cached, and features can only be given to the listener by parsing:
+		String cacheKey = (area == null && listener == null ? getFileCacheKey(file, "geojson") : null);
+		if (loadFromFileCache(cacheKey))
+			return true;
 		try {
-			FileInputStream input = new FileInputStream(mLocalFile);
-			boolean ok = parseGeoJSONStream(input);
+			InputStream input = new BufferedInputStream(new FileInputStream(mLocalFile), 65536);
+			boolean ok = parseGeoJSONStream(input, area, listener);
 			input.close();
+			if (ok)
+				saveInFileCache(cacheKey);
 			return ok;
 		} catch (Exception e) {
 			e.printStackTrace();
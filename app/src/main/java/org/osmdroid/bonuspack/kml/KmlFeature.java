@@ -85,7 +85,11 @@ public abstract class KmlFeature implements Parcelable, Cloneable {
 			for (Map.Entry<String, String> entry : mExtendedData.entrySet()) {
 				String name = escapeXml(entry.getKey());
 				String value = escapeXml(entry.getValue());
-				writer.write("<Data name=\"" + name + "\"><value>" + value + "</value></Data>\n");
+				writer.write("<Data name=\"");
+				writer.write(name);
+				writer.write("\"><value>");
+				writer.write(value);
+				writer.write("</value></Data>\n");
 			}
 			writer.write("</ExtendedData>\n");
 			return true;
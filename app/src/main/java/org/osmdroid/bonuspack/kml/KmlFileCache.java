@@ -0,0 +1,519 @@
+package org.osmdroid.bonuspack.kml;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.DiskLruCache;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent store of parsed KmlDocuments, in a directory of compact binary files (one file per entry),
+ * so that re-opening the same KML, KMZ or GeoJSON file doesn't parse it again. <br>
+ *
+ * Entries are keyed by the hash of the source file content: an updated file gets a new entry,
+ * and the old one is evicted in LRU order when the total size of the files exceeds the byte budget.
+ * Files are read through memory-mapping, and decoded directly from the mapped buffer.
+ * The whole tree is decoded at once: geometries expose their coordinates as public lists of GeoPoints. <br>
+ *
+ * Stores the folder tree, the shared styles, the geometries (coordinates as packed doubles) and the icons (as PNG).
+ * Only the standard KML classes are supported: a document with other feature or geometry classes is not stored. <br>
+ *
+ * Can be called by multiple threads.
+ *
+ * @see KmlDocument#setFileCache
+ */
+public class KmlFileCache extends DiskLruCache {
+
+	protected static final int MAGIC = 0x4B4D4C43; //"KMLC"
+	protected static final int VERSION = 2;
+
+	//feature, geometry and style types:
+	protected static final byte FOLDER = 1, PLACEMARK = 2, GROUND_OVERLAY = 3;
+	protected static final byte POINT = 1, LINE_STRING = 2, POLYGON = 3, MULTI_GEOMETRY = 4, TRACK = 5;
+	protected static final byte STYLE = 1, STYLE_MAP = 2;
+	protected static final byte NONE = 0;
+	/** max number of source file hashes remembered */
+	protected static final int MAX_HASHES = 256;
+
+	/** "path:length:lastModified" of source files => content hash, to hash each file only once. In LRU order. */
+	protected final LinkedHashMap<String, String> mHashes;
+
+	/**
+	 * @param directory where to store the files. Created if necessary.
+	 * @param maxBytes byte budget of the whole store.
+	 */
+	public KmlFileCache(File directory, long maxBytes){
+		super(directory, maxBytes);
+		mHashes = new LinkedHashMap<String, String>(16, 0.75f, true){
+			@Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest){
+				return size() > MAX_HASHES;
+			}
+		};
+	}
+
+	/**
+	 * @param file source file
+	 * @param format how the file is parsed ("kml", "kmz", "geojson"...)
+	 * @return the key of this file content in this format, or null if the file cannot be read.
+	 */
+	public String getKey(File file, String format){
+		String signature = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+		String hash;
+		synchronized (mHashes){
+			hash = mHashes.get(signature);
+		}
+		if (hash == null){
+			hash = hashFile(file);
+			if (hash == null)
+				return null;
+			synchronized (mHashes){
+				mHashes.put(signature, hash);
+			}
+		}
+		return format + ':' + hash;
+	}
+
+	/**
+	 * Fill kmlDocument with the entry for this key: root, shared styles and max style id.
+	 * @return true if found, false if not found or error (kmlDocument unchanged).
+	 */
+	public boolean get(String key, KmlDocument kmlDocument){
+		File file = getFile(key);
+		if (file == null)
+			return false;
+		boolean ok = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.getInt() == MAGIC && buffer.getInt() == VERSION && key.equals(readString(buffer))){
+					HashMap<String, StyleSelector> styles = readStyles(buffer);
+					int maxStyleId = buffer.getInt();
+					KmlFeature root = readFeature(buffer);
+					kmlDocument.mStyles = styles;
+					kmlDocument.mMaxStyleId = maxStyleId;
+					kmlDocument.mKmlRoot = (KmlFolder)root;
+					ok = true;
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			//corrupted file: removed
+			Log.e(BonusPackHelper.LOG_TAG, "KmlFileCache: cannot read "+file.getName()+": "+e);
+		}
+		if (!ok)
+			remove(key);
+		return ok;
+	}
+
+	/** store the content of kmlDocument for this key, replacing any previous entry. */
+	public void put(String key, KmlDocument kmlDocument){
+		File tmpFile = newTempFile(key);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 65536));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, key);
+				writeStyles(out, kmlDocument.mStyles);
+				out.writeInt(kmlDocument.mMaxStyleId);
+				writeFeature(out, kmlDocument.mKmlRoot);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			Log.e(BonusPackHelper.LOG_TAG, "KmlFileCache: cannot write "+tmpFile.getName()+": "+e);
+			tmpFile.delete();
+			return;
+		}
+		commit(key, tmpFile);
+	}
+
+	/** @return SHA-1 of the file content, in hexa, or null if error */
+	protected static String hashFile(File file){
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				byte[] buffer = new byte[65536];
+				int n;
+				while ((n = in.read(buffer)) != -1)
+					digest.update(buffer, 0, n);
+			} finally {
+				in.close();
+			}
+			return toHex(digest.digest());
+		} catch (IOException | NoSuchAlgorithmException e){
+			Log.e(BonusPackHelper.LOG_TAG, "KmlFileCache: cannot hash "+file.getAbsolutePath()+": "+e);
+			return null;
+		}
+	}
+
+	//--- Binary format
+
+	protected static void writeBitmap(DataOutputStream out, Bitmap bitmap) throws IOException {
+		if (bitmap == null){
+			out.writeInt(-1);
+			return;
+		}
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+		out.writeInt(png.size());
+		png.writeTo(out);
+	}
+
+	protected static Bitmap readBitmap(ByteBuffer in) throws IOException {
+		int length = in.getInt();
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[checkCount(in, length, 1)];
+		in.get(bytes);
+		return BitmapFactory.decodeByteArray(bytes, 0, length);
+	}
+
+	/** coordinates as: count (-1 if null), altitude flag, then lat, lon {, alt} doubles */
+	protected static void writeCoordinates(DataOutputStream out, ArrayList<GeoPoint> coordinates) throws IOException {
+		if (coordinates == null){
+			out.writeInt(-1);
+			return;
+		}
+		boolean hasAltitude = false;
+		for (GeoPoint p : coordinates){
+			if (p.getAltitude() != 0.0){
+				hasAltitude = true;
+				break;
+			}
+		}
+		out.writeInt(coordinates.size());
+		out.writeBoolean(hasAltitude);
+		for (GeoPoint p : coordinates){
+			out.writeDouble(p.getLatitude());
+			out.writeDouble(p.getLongitude());
+			if (hasAltitude)
+				out.writeDouble(p.getAltitude());
+		}
+	}
+
+	protected static ArrayList<GeoPoint> readCoordinates(ByteBuffer in) throws IOException {
+		int n = in.getInt();
+		if (n == -1)
+			return null;
+		boolean hasAltitude = (in.get() != 0);
+		int stride = (hasAltitude ? 3 : 2);
+		checkCount(in, n, stride*8);
+		//read in place, without copying the values:
+		DoubleBuffer values = in.asDoubleBuffer();
+		int length = n*stride;
+		ArrayList<GeoPoint> coordinates = new ArrayList<>(n);
+		for (int i = 0; i < length; i += stride){
+			if (hasAltitude)
+				coordinates.add(new GeoPoint(values.get(i), values.get(i+1), values.get(i+2)));
+			else
+				coordinates.add(new GeoPoint(values.get(i), values.get(i+1)));
+		}
+		in.position(in.position() + length*8);
+		return coordinates;
+	}
+
+	protected static void writeStyles(DataOutputStream out, HashMap<String, StyleSelector> styles) throws IOException {
+		out.writeInt(styles.size());
+		for (Map.Entry<String, StyleSelector> entry : styles.entrySet()){
+			writeString(out, entry.getKey());
+			StyleSelector selector = entry.getValue();
+			if (selector instanceof StyleMap){
+				out.writeByte(STYLE_MAP);
+				HashMap<String, String> pairs = ((StyleMap)selector).mPairs;
+				out.writeInt(pairs.size());
+				for (Map.Entry<String, String> pair : pairs.entrySet()){
+					writeString(out, pair.getKey());
+					writeString(out, pair.getValue());
+				}
+			} else if (selector instanceof Style){
+				out.writeByte(STYLE);
+				writeStyle(out, (Style)selector);
+			} else
+				throw new IOException("unsupported StyleSelector: "+selector);
+		}
+	}
+
+	protected static HashMap<String, StyleSelector> readStyles(ByteBuffer in) throws IOException {
+		int n = checkCount(in, in.getInt(), 5);
+		HashMap<String, StyleSelector> styles = new HashMap<>(Math.max(16, n*2));
+		for (int i = 0; i < n; i++){
+			String id = readString(in);
+			if (in.get() == STYLE_MAP){
+				StyleMap styleMap = new StyleMap();
+				int pairs = checkCount(in, in.getInt(), 8);
+				for (int j = 0; j < pairs; j++){
+					String key = readString(in);
+					styleMap.setPair(key, readString(in));
+				}
+				styles.put(id, styleMap);
+			} else
+				styles.put(id, readStyle(in));
+		}
+		return styles;
+	}
+
+	protected static void writeStyle(DataOutputStream out, Style style) throws IOException {
+		out.writeBoolean(style.mLineStyle != null);
+		if (style.mLineStyle != null){
+			out.writeInt(style.mLineStyle.mColor);
+			out.writeInt(style.mLineStyle.mColorMode);
+			out.writeFloat(style.mLineStyle.mWidth);
+		}
+		out.writeBoolean(style.mPolyStyle != null);
+		if (style.mPolyStyle != null){
+			out.writeInt(style.mPolyStyle.mColor);
+			out.writeInt(style.mPolyStyle.mColorMode);
+		}
+		IconStyle iconStyle = style.mIconStyle;
+		out.writeBoolean(iconStyle != null);
+		if (iconStyle != null){
+			out.writeInt(iconStyle.mColor);
+			out.writeInt(iconStyle.mColorMode);
+			out.writeFloat(iconStyle.mScale);
+			out.writeFloat(iconStyle.mHeading);
+			writeString(out, iconStyle.mHref);
+			writeBitmap(out, iconStyle.mIcon);
+			HotSpot hotSpot = iconStyle.mHotSpot;
+			out.writeBoolean(hotSpot != null);
+			if (hotSpot != null){
+				out.writeFloat(hotSpot.mx);
+				out.writeFloat(hotSpot.my);
+				out.writeInt(hotSpot.mXUnits.ordinal());
+				out.writeInt(hotSpot.mYUnits.ordinal());
+			}
+		}
+	}
+
+	protected static Style readStyle(ByteBuffer in) throws IOException {
+		Style style = new Style();
+		if (in.get() != 0){
+			style.mLineStyle = new LineStyle();
+			style.mLineStyle.mColor = in.getInt();
+			style.mLineStyle.mColorMode = in.getInt();
+			style.mLineStyle.mWidth = in.getFloat();
+		}
+		if (in.get() != 0){
+			style.mPolyStyle = new ColorStyle();
+			style.mPolyStyle.mColor = in.getInt();
+			style.mPolyStyle.mColorMode = in.getInt();
+		}
+		if (in.get() != 0){
+			IconStyle iconStyle = new IconStyle();
+			iconStyle.mColor = in.getInt();
+			iconStyle.mColorMode = in.getInt();
+			iconStyle.mScale = in.getFloat();
+			iconStyle.mHeading = in.getFloat();
+			iconStyle.mHref = readString(in);
+			iconStyle.mIcon = readBitmap(in);
+			if (in.get() != 0){
+				HotSpot hotSpot = new HotSpot();
+				hotSpot.mx = in.getFloat();
+				hotSpot.my = in.getFloat();
+				hotSpot.mXUnits = readUnits(in);
+				hotSpot.mYUnits = readUnits(in);
+				iconStyle.mHotSpot = hotSpot;
+			} else
+				iconStyle.mHotSpot = null;
+			style.mIconStyle = iconStyle;
+		}
+		return style;
+	}
+
+	protected static HotSpot.Units readUnits(ByteBuffer in) throws IOException {
+		int ordinal = in.getInt();
+		HotSpot.Units[] units = HotSpot.Units.values();
+		if (ordinal < 0 || ordinal >= units.length)
+			throw new IOException("invalid hotSpot units: "+ordinal);
+		return units[ordinal];
+	}
+
+	protected static void writeFeature(DataOutputStream out, KmlFeature feature) throws IOException {
+		Class<?> c = feature.getClass();
+		if (c == KmlFolder.class)
+			out.writeByte(FOLDER);
+		else if (c == KmlPlacemark.class)
+			out.writeByte(PLACEMARK);
+		else if (c == KmlGroundOverlay.class)
+			out.writeByte(GROUND_OVERLAY);
+		else
+			throw new IOException("unsupported KmlFeature: "+c.getName());
+		writeString(out, feature.mId);
+		writeString(out, feature.mName);
+		writeString(out, feature.mDescription);
+		out.writeBoolean(feature.mVisibility);
+		out.writeBoolean(feature.mOpen);
+		writeString(out, feature.mStyle);
+		if (feature.mExtendedData == null)
+			out.writeInt(-1);
+		else {
+			out.writeInt(feature.mExtendedData.size());
+			for (Map.Entry<String, String> data : feature.mExtendedData.entrySet()){
+				writeString(out, data.getKey());
+				writeString(out, data.getValue());
+			}
+		}
+		if (c == KmlFolder.class){
+			ArrayList<KmlFeature> items = ((KmlFolder)feature).mItems;
+			out.writeInt(items.size());
+			for (KmlFeature item : items)
+				writeFeature(out, item);
+		} else if (c == KmlPlacemark.class){
+			writeGeometry(out, ((KmlPlacemark)feature).mGeometry);
+		} else {
+			KmlGroundOverlay groundOverlay = (KmlGroundOverlay)feature;
+			writeString(out, groundOverlay.mIconHref);
+			writeBitmap(out, groundOverlay.mIcon);
+			out.writeInt(groundOverlay.mColor);
+			out.writeFloat(groundOverlay.mRotation);
+			writeCoordinates(out, groundOverlay.mCoordinates);
+		}
+	}
+
+	protected static KmlFeature readFeature(ByteBuffer in) throws IOException {
+		byte type = in.get();
+		KmlFeature feature;
+		switch (type){
+			case FOLDER: feature = new KmlFolder(); break;
+			case PLACEMARK: feature = new KmlPlacemark(); break;
+			case GROUND_OVERLAY: feature = new KmlGroundOverlay(); break;
+			default: throw new IOException("invalid feature type: "+type);
+		}
+		feature.mId = readString(in);
+		feature.mName = readString(in);
+		feature.mDescription = readString(in);
+		feature.mVisibility = (in.get() != 0);
+		feature.mOpen = (in.get() != 0);
+		feature.mStyle = readString(in);
+		int n = in.getInt();
+		if (n != -1){
+			feature.mExtendedData = new HashMap<>(Math.max(16, checkCount(in, n, 8)*2));
+			for (int i = 0; i < n; i++){
+				String name = readString(in);
+				feature.mExtendedData.put(name, readString(in));
+			}
+		}
+		if (type == FOLDER){
+			KmlFolder folder = (KmlFolder)feature;
+			n = checkCount(in, in.getInt(), 1);
+			folder.mItems.ensureCapacity(n);
+			for (int i = 0; i < n; i++)
+				folder.mItems.add(readFeature(in));
+		} else if (type == PLACEMARK){
+			((KmlPlacemark)feature).mGeometry = readGeometry(in);
+		} else {
+			KmlGroundOverlay groundOverlay = (KmlGroundOverlay)feature;
+			groundOverlay.mIconHref = readString(in);
+			groundOverlay.mIcon = readBitmap(in);
+			groundOverlay.mColor = in.getInt();
+			groundOverlay.mRotation = in.getFloat();
+			groundOverlay.mCoordinates = readCoordinates(in);
+		}
+		return feature;
+	}
+
+	protected static void writeGeometry(DataOutputStream out, KmlGeometry geometry) throws IOException {
+		if (geometry == null){
+			out.writeByte(NONE);
+			return;
+		}
+		Class<?> c = geometry.getClass();
+		if (c == KmlPoint.class)
+			out.writeByte(POINT);
+		else if (c == KmlLineString.class)
+			out.writeByte(LINE_STRING);
+		else if (c == KmlPolygon.class)
+			out.writeByte(POLYGON);
+		else if (c == KmlMultiGeometry.class)
+			out.writeByte(MULTI_GEOMETRY);
+		else if (c == KmlTrack.class)
+			out.writeByte(TRACK);
+		else
+			throw new IOException("unsupported KmlGeometry: "+c.getName());
+		writeString(out, geometry.mId);
+		writeCoordinates(out, geometry.mCoordinates);
+		if (c == KmlPolygon.class){
+			ArrayList<ArrayList<GeoPoint>> holes = ((KmlPolygon)geometry).mHoles;
+			out.writeInt(holes == null ? -1 : holes.size());
+			if (holes != null){
+				for (ArrayList<GeoPoint> hole : holes)
+					writeCoordinates(out, hole);
+			}
+		} else if (c == KmlMultiGeometry.class){
+			ArrayList<KmlGeometry> items = ((KmlMultiGeometry)geometry).mItems;
+			out.writeInt(items.size());
+			for (KmlGeometry item : items)
+				writeGeometry(out, item);
+		} else if (c == KmlTrack.class){
+			KmlTrack track = (KmlTrack)geometry;
+			out.writeInt(track.mWhenCount);
+			for (int i = 0; i < track.mWhenCount; i++)
+				out.writeLong(track.mWhen[i]);
+		}
+	}
+
+	protected static KmlGeometry readGeometry(ByteBuffer in) throws IOException {
+		byte type = in.get();
+		KmlGeometry geometry;
+		switch (type){
+			case NONE: return null;
+			case POINT: geometry = new KmlPoint(); break;
+			case LINE_STRING: geometry = new KmlLineString(); break;
+			case POLYGON: geometry = new KmlPolygon(); break;
+			case MULTI_GEOMETRY: geometry = new KmlMultiGeometry(); break;
+			case TRACK: geometry = new KmlTrack(); break;
+			default: throw new IOException("invalid geometry type: "+type);
+		}
+		geometry.mId = readString(in);
+		geometry.mCoordinates = readCoordinates(in);
+		if (type == POLYGON){
+			int n = in.getInt();
+			if (n != -1){
+				checkCount(in, n, 4);
+				KmlPolygon polygon = (KmlPolygon)geometry;
+				polygon.mHoles = new ArrayList<>(n);
+				for (int i = 0; i < n; i++)
+					polygon.mHoles.add(readCoordinates(in));
+			}
+		} else if (type == MULTI_GEOMETRY){
+			KmlMultiGeometry multiGeometry = (KmlMultiGeometry)geometry;
+			int n = checkCount(in, in.getInt(), 1);
+			for (int i = 0; i < n; i++)
+				multiGeometry.mItems.add(readGeometry(in));
+		} else if (type == TRACK){
+			KmlTrack track = (KmlTrack)geometry;
+			int n = checkCount(in, in.getInt(), 8);
+			track.mWhen = new long[Math.max(16, n)];
+			in.asLongBuffer().get(track.mWhen, 0, n);
+			in.position(in.position() + 8*n);
+			track.mWhenCount = n;
+		}
+		return geometry;
+	}
+}
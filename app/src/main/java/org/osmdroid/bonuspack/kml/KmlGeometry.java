@@ -43,8 +43,12 @@ public abstract class KmlGeometry implements Cloneable, Parcelable {
 	public KmlGeometry(){
 	}
 
+	/** number of chars of coordinates written at once */
+	protected static final int WRITE_CHUNK = 4096;
+
 	/**
 	 * Write a list of coordinates in KML format. 
+	 * Numbers are appended to a chunk of chars, without creating a String per coordinate. 
 	 * @param writer
 	 * @param coordinates
 	 * @return false if error
@@ -52,10 +56,16 @@ public abstract class KmlGeometry implements Cloneable, Parcelable {
 	public static boolean writeKMLCoordinates(Writer writer, ArrayList<GeoPoint> coordinates){
 		try {
 			writer.write("<coordinates>");
+			StringBuilder chunk = new StringBuilder(Math.min(WRITE_CHUNK, 64*coordinates.size()) + 64);
+			char[] buffer = null;
 			for (GeoPoint coord:coordinates){
-				writer.write(coord.toInvertedDoubleString());
-				writer.write(' ');
+				chunk.append(coord.getLongitude()).append(',')
+						.append(coord.getLatitude()).append(',')
+						.append(coord.getAltitude()).append(' ');
+				if (chunk.length() >= WRITE_CHUNK)
+					buffer = writeChunk(writer, chunk, buffer);
 			}
+			writeChunk(writer, chunk, buffer);
 			writer.write("</coordinates>\n");
 			return true;
 		} catch (IOException e) {
@@ -64,6 +74,21 @@ public abstract class KmlGeometry implements Cloneable, Parcelable {
 		}
 	}
 
+	/**
+	 * Write the chunk content and clear it. 
+	 * @param buffer to copy the chars, null to allocate one
+	 * @return the buffer to use next time
+	 */
+	protected static char[] writeChunk(Writer writer, StringBuilder chunk, char[] buffer) throws IOException {
+		int length = chunk.length();
+		if (buffer == null || buffer.length < length)
+			buffer = new char[Math.max(length, chunk.capacity())];
+		chunk.getChars(0, length, buffer, 0);
+		writer.write(buffer, 0, length);
+		chunk.setLength(0);
+		return buffer;
+	}
+
 	/**
 	 * Build a Position in GeoJSON format. 
 	 * @param position
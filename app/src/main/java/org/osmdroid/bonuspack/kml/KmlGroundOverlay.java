@@ -9,7 +9,7 @@ import android.os.Parcelable;
 import com.google.gson.JsonObject;
 
 import org.osmdroid.bonuspack.overlays.GroundOverlay;
-import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.ImageCache;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
@@ -53,7 +53,7 @@ public class KmlGroundOverlay extends KmlFeature implements Cloneable, Parcelabl
 	public void setIcon(String href, File containerFile, ZipFile kmzContainer) {
 		mIconHref = href;
 		if (mIconHref.startsWith("http://") || mIconHref.startsWith("https://")) {
-			mIcon = BonusPackHelper.loadBitmap(mIconHref);
+			mIcon = ImageCache.getDefault().get(mIconHref);
 		} else if (kmzContainer == null) {
 			if (containerFile != null) {
 				String actualFullPath = containerFile.getParent() + '/' + mIconHref;
@@ -5,6 +5,7 @@ import android.os.Parcel;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.osmdroid.bonuspack.kml.KmlFeature.Styler;
+import org.osmdroid.bonuspack.overlays.LevelOfDetailPolyline;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
@@ -65,7 +66,7 @@ public class KmlLineString extends KmlGeometry {
 	/** Build the corresponding Polyline overlay */	
 	@Override public Overlay buildOverlay(MapView map, Style defaultStyle, Styler styler, KmlPlacemark kmlPlacemark, 
 			KmlDocument kmlDocument){
-		Polyline lineStringOverlay = new Polyline();
+		Polyline lineStringOverlay = new LevelOfDetailPolyline();
 		lineStringOverlay.setGeodesic(true);
 		lineStringOverlay.setPoints(mCoordinates);
 		lineStringOverlay.setTitle(kmlPlacemark.mName);
@@ -0,0 +1,111 @@
+package org.osmdroid.bonuspack.kml;
+
+import android.util.Log;
+
+import org.osmdroid.bonuspack.utils.BonusPackHelper;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous resolution stage of a KML parsing: loading of NetworkLinks, GroundOverlay images and IconStyle icons
+ * is submitted to an executor, so that they are fetched in parallel while the parsing goes on. <br>
+ *
+ * A stage is shared by a document and all its linked sub-documents: tasks may submit other tasks, and never wait
+ * for them. Only the top-level parsing waits for all of them, so a bounded executor cannot dead-lock -
+ * as long as this top-level parsing is not itself running on a thread of the executor. <br>
+ *
+ * Tasks only fill the objects they are given, which the parsing doesn't read. Linked documents are stitched
+ * in the feature tree, in document order, once all the tasks are done. <br>
+ *
+ * When the waiting parsing is interrupted, the tasks are cancelled, and still waited for: they may use a KMZ container
+ * which is closed once the parsing returns.
+ *
+ * @see KmlDocument#setLoadingExecutor(Executor)
+ */
+public class KmlLinkLoader {
+
+	protected final Executor mExecutor;
+	protected int mPending;
+	protected volatile boolean mCancelled;
+	/** threads running a task */
+	protected final ArrayList<Thread> mRunning = new ArrayList<>();
+
+	public KmlLinkLoader(Executor executor){
+		mExecutor = executor;
+	}
+
+	/** run the task on the executor - or directly if the executor rejects it. Ignored once cancelled. */
+	public void submit(final Runnable task){
+		synchronized (this){
+			if (mCancelled)
+				return;
+			mPending++;
+		}
+		Runnable wrapper = new Runnable() {
+			@Override public void run(){
+				Thread thread = Thread.currentThread();
+				synchronized (KmlLinkLoader.this){
+					if (mCancelled){
+						done();
+						return;
+					}
+					mRunning.add(thread);
+				}
+				try {
+					task.run();
+				} catch (Exception e){
+					Log.e(BonusPackHelper.LOG_TAG, "KmlLinkLoader: task failed", e);
+				} finally {
+					synchronized (KmlLinkLoader.this){
+						mRunning.remove(thread);
+					}
+					if (mCancelled)
+						Thread.interrupted(); //the interruption was for the task, not for the executor thread
+					done();
+				}
+			}
+		};
+		try {
+			mExecutor.execute(wrapper);
+		} catch (RejectedExecutionException e){
+			wrapper.run();
+		}
+	}
+
+	protected synchronized void done(){
+		mPending--;
+		if (mPending == 0)
+			notifyAll();
+	}
+
+	/** Skip the tasks not started yet, and interrupt the running ones. */
+	public synchronized void cancel(){
+		mCancelled = true;
+		for (Thread thread : mRunning)
+			thread.interrupt();
+	}
+
+	/**
+	 * Wait for all the tasks, including the ones submitted by tasks.
+	 * If interrupted, the tasks are cancelled, and this still waits for the running ones to finish.
+	 * @return false if interrupted - the interrupt status is then set again.
+	 */
+	public synchronized boolean await(){
+		boolean interrupted = false;
+		while (mPending > 0){
+			try {
+				wait();
+			} catch (InterruptedException e){
+				if (!interrupted){
+					interrupted = true;
+					cancel();
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		return !interrupted;
+	}
+}
@@ -7,6 +7,7 @@ import android.os.Parcelable;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.osmdroid.bonuspack.kml.KmlFeature.Styler;
+import org.osmdroid.bonuspack.overlays.LevelOfDetailPolygon;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
@@ -68,7 +69,7 @@ public class KmlPolygon extends KmlGeometry {
 	/** Build the corresponding Polygon overlay */
 	@Override public Overlay buildOverlay(MapView map, Style defaultStyle, Styler styler, KmlPlacemark kmlPlacemark, 
 			KmlDocument kmlDocument){
-		Polygon polygonOverlay = new Polygon();
+		Polygon polygonOverlay = new LevelOfDetailPolygon();
 		polygonOverlay.setPoints(mCoordinates);
 		if (mHoles != null)
 			polygonOverlay.setHoles(mHoles);
@@ -4,6 +4,7 @@ import android.content.Context;
 import android.os.Parcel;
 import com.google.gson.JsonObject;
 import org.osmdroid.bonuspack.kml.KmlFeature.Styler;
+import org.osmdroid.bonuspack.overlays.LevelOfDetailPolyline;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
@@ -13,9 +14,9 @@ import org.osmdroid.views.overlay.Polyline;
 import org.osmdroid.views.overlay.infowindow.BasicInfoWindow;
 import java.io.IOException;
 import java.io.Writer;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 
 /**
@@ -25,13 +26,20 @@ import java.util.Date;
 public class KmlTrack extends KmlGeometry {
 	static int mDefaultLayoutResId = BonusPackHelper.UNDEFINED_RES_ID;
 
-	public ArrayList<Date> mWhen;
+	/** "when" of each coord, as epoch milliseconds (KmlDateTime.UNDEFINED if unknown). Only the first mWhenCount are used. */
+	public long[] mWhen;
+	public int mWhenCount;
 	//public ArrayList<GeoPoint> mAngles; //TODO later...
 
+	//time index: coords having a "when", sorted by time. Built when needed, null if to rebuild.
+	protected long[] mIndexTimes;
+	protected int[] mIndexPoints;
+	protected int mIndexSize;
+
 	public KmlTrack(){
 		super();
 		mCoordinates = new ArrayList<>();
-		mWhen = new ArrayList<>();
+		mWhen = new long[16];
 	}
 
 	/**
@@ -58,55 +66,69 @@ public class KmlTrack extends KmlGeometry {
 	}
 
 	/**
-	 * @param sWhen "when" string, in one of the KML dateTime formats. Local time format not supported yet.
+	 * @param sWhen "when" string, in one of the KML dateTime formats.
 	 * @return java Date if success, or null
+	 * @see KmlDateTime#parse(CharSequence)
      */
 	public static Date parseKmlWhen(String sWhen) {
-		SimpleDateFormat ft;
-		switch (sWhen.length()) {
-			case 4: ft = new SimpleDateFormat("yyyy"); break;
-			case 7:
-				ft = new SimpleDateFormat("yyyy-MM");
-				break;
-			case 10:
-				ft = new SimpleDateFormat("yyyy-MM-dd");
-				break;
-			case 19:
-				ft = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-				break;
-			case 20:
-				ft = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-				break;
-			default:
-				return null;
-		}
-		Date when;
-		try {
-			when = ft.parse(sWhen);
-			return when;
-		} catch (ParseException e) {
-			return null;
-		}
+		long when = KmlDateTime.parse(sWhen);
+		return (when != KmlDateTime.UNDEFINED ? new Date(when) : null);
+	}
+
+	/** @param sWhen "when" string, in one of the KML dateTime formats. */
+	public void addWhen(CharSequence sWhen){
+		addWhen(KmlDateTime.parse(sWhen));
+	}
+
+	/** @param when epoch milliseconds, or KmlDateTime.UNDEFINED */
+	public void addWhen(long when){
+		if (mWhenCount == mWhen.length)
+			mWhen = Arrays.copyOf(mWhen, Math.max(16, mWhenCount*2));
+		mWhen[mWhenCount++] = when;
+		mIndexTimes = null;
+	}
+
+	/** @return the number of "when" elements */
+	public int getWhenCount(){
+		return mWhenCount;
+	}
+
+	/** @return the "when" of the coord at this index, as epoch milliseconds, or KmlDateTime.UNDEFINED */
+	public long getWhen(int index){
+		if (index >= mWhenCount)
+			throw new IndexOutOfBoundsException("when "+index+" of "+mWhenCount);
+		return mWhen[index];
 	}
 
-	public void addWhen(String sWhen){
-		if (mWhen == null)
-			mWhen = new ArrayList<>();
-		mWhen.add(parseKmlWhen(sWhen));
+	/** @return the "when" of the coord at this index as a Date, or null if undefined */
+	public Date getWhenDate(int index){
+		long when = getWhen(index);
+		return (when != KmlDateTime.UNDEFINED ? new Date(when) : null);
 	}
 
 	/**
 	 * Add a time element (coord+when) to the track.
 	 *
 	 * @param coord
-	 * @param when
+	 * @param when epoch milliseconds, or KmlDateTime.UNDEFINED
 	 */
-	public void add(GeoPoint coord, Date when) {
+	public void add(GeoPoint coord, long when) {
 		if (coord == null)
 			mCoordinates.add(coord);
 		else
 			mCoordinates.add(coord.clone());
-		mWhen.add(when);
+		addWhen(when);
+		mIndexTimes = null;
+	}
+
+	/**
+	 * Add a time element (coord+when) to the track.
+	 *
+	 * @param coord
+	 * @param when
+	 */
+	public void add(GeoPoint coord, Date when) {
+		add(coord, when != null ? when.getTime() : KmlDateTime.UNDEFINED);
 	}
 
 	public void applyDefaultStyling(Polyline lineStringOverlay, Style defaultStyle, KmlPlacemark kmlPlacemark,
@@ -137,7 +159,7 @@ public class KmlTrack extends KmlGeometry {
 	 * Currently: a Polyline of gx:coords */
 	@Override public Overlay buildOverlay(MapView map, Style defaultStyle, Styler styler, KmlPlacemark kmlPlacemark,
 			KmlDocument kmlDocument){
-		Polyline lineStringOverlay = new Polyline();
+		Polyline lineStringOverlay = new LevelOfDetailPolyline();
 		lineStringOverlay.setGeodesic(true);
 		lineStringOverlay.setPoints(mCoordinates);
 		lineStringOverlay.setTitle(kmlPlacemark.mName);
@@ -153,25 +175,31 @@ public class KmlTrack extends KmlGeometry {
 		return lineStringOverlay;
 	}
 
-	static final SimpleDateFormat KML_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-
 	@Override public void saveAsKML(Writer writer){
 		try {
 			writer.write("<gx:Track>\n");
+			StringBuilder chunk = new StringBuilder(WRITE_CHUNK + 128);
+			char[] buffer = null;
 			//write when:
-			for (Date when:mWhen){
-				writer.write("<when>");
-				if (when != null)
-					writer.write(KML_DATE_FORMAT.format(when));
-				writer.write("</when>\n");
+			for (int i=0; i<mWhenCount; i++){
+				chunk.append("<when>");
+				KmlDateTime.format(mWhen[i], chunk);
+				chunk.append("</when>\n");
+				if (chunk.length() >= WRITE_CHUNK)
+					buffer = writeChunk(writer, chunk, buffer);
 			}
 			//write coords:
 			for (GeoPoint coord:mCoordinates){
-				writer.write("<gx:coord>");
+				chunk.append("<gx:coord>");
 				if (coord != null)
-					writer.write(coord.getLongitude() + " " + coord.getLatitude() + " " + coord.getAltitude());
-				writer.write("</gx:coord>\n");
+					chunk.append(coord.getLongitude()).append(' ')
+							.append(coord.getLatitude()).append(' ')
+							.append(coord.getAltitude());
+				chunk.append("</gx:coord>\n");
+				if (chunk.length() >= WRITE_CHUNK)
+					buffer = writeChunk(writer, chunk, buffer);
 			}
+			writeChunk(writer, chunk, buffer);
 			writer.write("</gx:Track>\n");
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -189,13 +217,196 @@ public class KmlTrack extends KmlGeometry {
 		return BoundingBox.fromGeoPoints(mCoordinates);
 	}
 
+	//Time queries ------------------------------------
+
+	/** To call after changing mCoordinates or mWhen directly, so that time queries see the changes. */
+	public void invalidateTimeIndex(){
+		mIndexTimes = null;
+	}
+
+	/** build the time index if needed: O(n) for a track in chronological order, O(n.log(n)) else */
+	protected void buildTimeIndex(){
+		if (mIndexTimes != null)
+			return;
+		int n = Math.min(mWhenCount, mCoordinates.size());
+		long[] times = new long[n];
+		int[] points = new int[n];
+		int size = 0;
+		boolean sorted = true;
+		for (int i=0; i<n; i++){
+			long when = mWhen[i];
+			if (when == KmlDateTime.UNDEFINED || mCoordinates.get(i) == null)
+				continue;
+			if (size > 0 && when < times[size-1])
+				sorted = false;
+			times[size] = when;
+			points[size] = i;
+			size++;
+		}
+		if (!sorted){
+			Integer[] order = new Integer[size];
+			for (int k=0; k<size; k++)
+				order[k] = k;
+			final long[] unsortedTimes = times;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override public int compare(Integer a, Integer b){
+					return Long.compare(unsortedTimes[a], unsortedTimes[b]);
+				}
+			});
+			long[] sortedTimes = new long[size];
+			int[] sortedPoints = new int[size];
+			for (int k=0; k<size; k++){
+				sortedTimes[k] = times[order[k]];
+				sortedPoints[k] = points[order[k]];
+			}
+			times = sortedTimes;
+			points = sortedPoints;
+		}
+		mIndexPoints = points;
+		mIndexSize = size;
+		mIndexTimes = times;
+	}
+
+	/** @return the number of coords in the time index: those having a time */
+	public int getTimeIndexSize(){
+		buildTimeIndex();
+		return mIndexSize;
+	}
+
+	/** @return the coord at position k in the time index - in chronological order */
+	public GeoPoint getTimeIndexPoint(int k){
+		buildTimeIndex();
+		return mCoordinates.get(mIndexPoints[k]);
+	}
+
+	/** @return position in the time index of the last coord at or before time, -1 if none */
+	public int floorTimeIndex(long time){
+		buildTimeIndex();
+		int low = 0, high = mIndexSize - 1;
+		while (low <= high){
+			int mid = (low + high) >>> 1;
+			if (mIndexTimes[mid] <= time)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return high;
+	}
+
+	/** @return the time of the first coord, or KmlDateTime.UNDEFINED if no coord has a time */
+	public long getStartTime(){
+		buildTimeIndex();
+		return (mIndexSize > 0 ? mIndexTimes[0] : KmlDateTime.UNDEFINED);
+	}
+
+	/** @return the time of the last coord, or KmlDateTime.UNDEFINED if no coord has a time */
+	public long getEndTime(){
+		buildTimeIndex();
+		return (mIndexSize > 0 ? mIndexTimes[mIndexSize-1] : KmlDateTime.UNDEFINED);
+	}
+
+	/**
+	 * Position at a time, linearly interpolated between the coords around it - in O(log(n)).
+	 * Before the start or after the end, this is the first or last coord.
+	 * @param time epoch milliseconds
+	 * @param result GeoPoint to set, to avoid an allocation. Can be null.
+	 * @return result - or a new GeoPoint if result was null - or null if no coord has a time.
+	 */
+	public GeoPoint getPositionAt(long time, GeoPoint result){
+		buildTimeIndex();
+		if (mIndexSize == 0)
+			return null;
+		if (result == null)
+			result = new GeoPoint(0.0, 0.0);
+		int k = floorTimeIndex(time);
+		if (k < 0)
+			return setPosition(result, mCoordinates.get(mIndexPoints[0]));
+		if (k == mIndexSize-1 || mIndexTimes[k] == time)
+			return setPosition(result, mCoordinates.get(mIndexPoints[k]));
+		GeoPoint p1 = mCoordinates.get(mIndexPoints[k]);
+		GeoPoint p2 = mCoordinates.get(mIndexPoints[k+1]);
+		double ratio = (double)(time - mIndexTimes[k]) / (mIndexTimes[k+1] - mIndexTimes[k]);
+		double dLon = p2.getLongitude() - p1.getLongitude();
+		//shortest way, across the date line if needed:
+		if (dLon > 180.0)
+			dLon -= 360.0;
+		else if (dLon < -180.0)
+			dLon += 360.0;
+		double lon = p1.getLongitude() + dLon*ratio;
+		if (lon > 180.0)
+			lon -= 360.0;
+		else if (lon < -180.0)
+			lon += 360.0;
+		result.setCoords(p1.getLatitude() + (p2.getLatitude() - p1.getLatitude())*ratio, lon);
+		result.setAltitude(p1.getAltitude() + (p2.getAltitude() - p1.getAltitude())*ratio);
+		return result;
+	}
+
+	protected static GeoPoint setPosition(GeoPoint result, GeoPoint p){
+		result.setCoords(p.getLatitude(), p.getLongitude());
+		result.setAltitude(p.getAltitude());
+		return result;
+	}
+
+	/**
+	 * Positions during a time window, in O(log(n) + size of the result):
+	 * interpolated position at start, coords strictly inside the window, interpolated position at end.
+	 * The window is clipped to the track start and end times.
+	 * @param result list to fill - cleared first. Coords of the track are put as is, not copied.
+	 * @param startPosition, endPosition GeoPoints to set with the positions at start and end, and put in result -
+	 * to avoid allocations at each call. Can be null.
+	 * @return result - empty if the window doesn't intersect the track.
+	 */
+	public ArrayList<GeoPoint> getWindow(long start, long end, ArrayList<GeoPoint> result,
+			GeoPoint startPosition, GeoPoint endPosition){
+		result.clear();
+		buildTimeIndex();
+		if (mIndexSize == 0 || start > end)
+			return result;
+		start = Math.max(start, mIndexTimes[0]);
+		end = Math.min(end, mIndexTimes[mIndexSize-1]);
+		if (start > end)
+			return result;
+		result.add(getPositionAt(start, startPosition));
+		for (int k = floorTimeIndex(start) + 1; k < mIndexSize && mIndexTimes[k] < end; k++)
+			result.add(mCoordinates.get(mIndexPoints[k]));
+		if (end > start)
+			result.add(getPositionAt(end, endPosition));
+		return result;
+	}
+
+	/** Same as getWindow(start, end, result, null, null): the positions at start and end are new GeoPoints. */
+	public ArrayList<GeoPoint> getWindow(long start, long end, ArrayList<GeoPoint> result){
+		return getWindow(start, end, result, null, null);
+	}
+
+	/**
+	 * Downsampling by time: keeps the first coord of each interval since the start, and the last coord.
+	 * Coords without time are dropped.
+	 * @param interval in milliseconds
+	 * @return a new track, in chronological order
+	 */
+	public KmlTrack downsample(long interval){
+		buildTimeIndex();
+		KmlTrack track = new KmlTrack();
+		if (mIndexSize == 0)
+			return track;
+		long nextTime = Long.MIN_VALUE;
+		for (int k=0; k<mIndexSize; k++){
+			long time = mIndexTimes[k];
+			if (time >= nextTime || k == mIndexSize-1){
+				track.add(mCoordinates.get(mIndexPoints[k]), time);
+				nextTime = time + interval;
+			}
+		}
+		return track;
+	}
+
 	//Cloneable implementation ------------------------------------
 
 	@Override public KmlTrack clone(){
 		KmlTrack cloned = (KmlTrack) super.clone();
-		cloned.mWhen = new ArrayList<>(mWhen.size());
-		for (Date d : mWhen)
-			cloned.mWhen.add((Date) d.clone());
+		cloned.mWhen = mWhen.clone();
 		return cloned;
 	}
 
@@ -207,7 +418,9 @@ public class KmlTrack extends KmlGeometry {
 
 	@Override public void writeToParcel(Parcel out, int flags) {
 		super.writeToParcel(out, flags);
-		out.writeList(mWhen);
+		out.writeInt(mWhenCount);
+		for (int i=0; i<mWhenCount; i++)
+			out.writeLong(mWhen[i]);
 	}
 
 	public static final Creator<KmlTrack> CREATOR = new Creator<KmlTrack>() {
@@ -221,6 +434,9 @@ public class KmlTrack extends KmlGeometry {
 
 	public KmlTrack(Parcel in){
 		super(in);
-		mWhen = in.readArrayList(Date.class.getClassLoader());
+		mWhenCount = in.readInt();
+		mWhen = new long[Math.max(16, mWhenCount)];
+		for (int i=0; i<mWhenCount; i++)
+			mWhen[i] = in.readLong();
 	}
 }
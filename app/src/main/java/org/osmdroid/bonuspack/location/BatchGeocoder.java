@@ -0,0 +1,198 @@
+package org.osmdroid.bonuspack.location;
+
+import android.location.Address;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Asynchronous geocoding of many addresses - a delivery manifest for instance - through a GeocoderNominatim. <br>
+ *
+ * Requests are run by a pool of maxParallel threads, and spaced by the minimum request interval of the geocoder service -
+ * shared with the other geocoders using this service.
+ * With the public Nominatim service, its usage policy is enforced: 1 request at a time, at most 1 per second.
+ * For a self-hosted instance, choose the parallelism it can stand. <br>
+ *
+ * Queries are normalized (case, spaces), and a query already pending is not requested again: its callers share the result.
+ * Set a cache on the geocoder (GeocoderNominatim.setCache) to also keep the results across batches and sessions. <br>
+ *
+ * Results may be shared between callers: they must not be modified.
+ */
+public class BatchGeocoder {
+
+	/** minimum interval between requests to the public Nominatim service, in ms */
+	public static final long NOMINATIM_MIN_INTERVAL = 1000;
+
+	protected final GeocoderNominatim mGeocoder;
+	protected final ExecutorService mExecutor;
+	/** queries pending, by normalized query */
+	protected final ConcurrentHashMap<String, CompletableFuture<List<Address>>> mPending;
+	protected final AtomicLong mQueries, mSharedQueries;
+
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+	private static final Pattern COMMAS = Pattern.compile("\\s*,[\\s,]*");
+
+	/**
+	 * @param geocoder to use. With the public Nominatim service, the minimum request interval of the service is set to 1 second if shorter.
+	 * @param maxParallel maximum number of requests in progress. Forced to 1 with the public Nominatim service.
+	 */
+	public BatchGeocoder(GeocoderNominatim geocoder, int maxParallel){
+		mGeocoder = geocoder;
+		if (geocoder.isPublicService()){
+			maxParallel = 1;
+			if (geocoder.getMinRequestInterval() < NOMINATIM_MIN_INTERVAL)
+				geocoder.setMinRequestInterval(NOMINATIM_MIN_INTERVAL);
+		}
+		mExecutor = Executors.newFixedThreadPool(Math.max(1, maxParallel), new ThreadFactory() {
+			private final AtomicInteger mCount = new AtomicInteger();
+			@Override public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "BatchGeocoder-" + mCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		mPending = new ConcurrentHashMap<>();
+		mQueries = new AtomicLong();
+		mSharedQueries = new AtomicLong();
+	}
+
+	/** @return the query in lower case, trimmed, with single spaces and ", " separators */
+	public static String normalize(String locationName){
+		String s = SPACES.matcher(locationName.trim()).replaceAll(" ");
+		s = COMMAS.matcher(s).replaceAll(", ");
+		if (s.endsWith(", "))
+			s = s.substring(0, s.length() - 2);
+		if (s.startsWith(", "))
+			s = s.substring(2);
+		return s.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Asynchronous equivalent of GeocoderNominatim.getFromLocationName(String locationName, int maxResults).
+	 * @return the future addresses found. Completed exceptionally with an IOException if the request failed.
+	 */
+	public CompletableFuture<List<Address>> getFromLocationName(String locationName, final int maxResults){
+		final String query = normalize(locationName);
+		return submit(query + '|' + maxResults, new Callable<List<Address>>() {
+			@Override public List<Address> call() throws IOException {
+				return mGeocoder.getFromLocationName(query, maxResults);
+			}
+		});
+	}
+
+	/**
+	 * Geocode all these addresses.
+	 * @return the future addresses found, in the same order as locationNames.
+	 */
+	public List<CompletableFuture<List<Address>>> getFromLocationNames(List<String> locationNames, int maxResults){
+		List<CompletableFuture<List<Address>>> results = new ArrayList<>(locationNames.size());
+		for (String locationName : locationNames)
+			results.add(getFromLocationName(locationName, maxResults));
+		return results;
+	}
+
+	/**
+	 * Geocode all these addresses.
+	 * @return a future completed when all the addresses are geocoded, with the addresses found in the same order as locationNames -
+	 * an empty list for those which failed.
+	 */
+	public CompletableFuture<List<List<Address>>> getAllFromLocationNames(List<String> locationNames, int maxResults){
+		final List<CompletableFuture<List<Address>>> futures = getFromLocationNames(locationNames, maxResults);
+		final List<CompletableFuture<List<Address>>> handled = new ArrayList<>(futures.size());
+		for (CompletableFuture<List<Address>> future : futures){
+			handled.add(future.exceptionally(new Function<Throwable, List<Address>>() {
+				@Override public List<Address> apply(Throwable t) {
+					return new ArrayList<>(0);
+				}
+			}));
+		}
+		return CompletableFuture.allOf(handled.toArray(new CompletableFuture[0])).thenApply(
+			new Function<Void, List<List<Address>>>() {
+				@Override public List<List<Address>> apply(Void v) {
+					List<List<Address>> results = new ArrayList<>(handled.size());
+					for (CompletableFuture<List<Address>> future : handled)
+						results.add(future.join());
+					return results;
+				}
+			});
+	}
+
+	/**
+	 * Asynchronous equivalent of GeocoderNominatim.getFromLocation(double latitude, double longitude, int maxResults).
+	 */
+	public CompletableFuture<List<Address>> getFromLocation(final double latitude, final double longitude, final int maxResults){
+		return submit(latitude + "," + longitude + '|' + maxResults, new Callable<List<Address>>() {
+			@Override public List<Address> call() throws IOException {
+				return mGeocoder.getFromLocation(latitude, longitude, maxResults);
+			}
+		});
+	}
+
+	/** run the call in the pool - unless the same key is pending: then return its future */
+	protected CompletableFuture<List<Address>> submit(final String key, final Callable<List<Address>> call){
+		final CompletableFuture<List<Address>> future = new CompletableFuture<>();
+		CompletableFuture<List<Address>> pending = mPending.putIfAbsent(key, future);
+		if (pending != null){
+			mSharedQueries.incrementAndGet();
+			return pending;
+		}
+		mQueries.incrementAndGet();
+		try {
+			mExecutor.execute(new Runnable() {
+				@Override public void run() {
+					List<Address> result = null;
+					Throwable failure = null;
+					try {
+						result = call.call();
+					} catch (Throwable t){
+						//any failure must complete the future, else its callers would wait forever
+						failure = t;
+					}
+					//no longer pending once known, so that a later query is sent again - or taken from the cache:
+					mPending.remove(key, future);
+					if (failure != null)
+						future.completeExceptionally(failure);
+					else
+						future.complete(result);
+				}
+			});
+		} catch (RuntimeException e){
+			//rejected: shutdown
+			mPending.remove(key, future);
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/** @return the number of queries sent to the geocoder */
+	public long getQueryCount(){
+		return mQueries.get();
+	}
+
+	/** @return the number of duplicate queries avoided: served by a query already pending */
+	public long getSharedQueryCount(){
+		return mSharedQueries.get();
+	}
+
+	/** @return the number of queries not completed yet */
+	public int getPendingCount(){
+		return mPending.size();
+	}
+
+	/** stop the threads once the pending queries are done. No more queries are accepted. */
+	public void shutdown(){
+		mExecutor.shutdown();
+	}
+}
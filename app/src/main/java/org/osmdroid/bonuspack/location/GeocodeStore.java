@@ -0,0 +1,838 @@
+package org.osmdroid.bonuspack.location;
+
+import android.location.Address;
+import android.os.Bundle;
+import android.util.Log;
+
+import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.RTree;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * On-device store of geocoding results, filled with the queries sent to the geocoding service and the addresses found. <br>
+ *
+ * Addresses are found by prefix, in a trie of normalized strings (lower case, without accents nor punctuation):
+ * the past queries, and the words of the addresses - so that "hoan k" finds "Hồ Hoàn Kiếm, Hà Nội". This is fast enough
+ * to be called at each keystroke, from the UI thread. Most recently used addresses come first. <br>
+ *
+ * Reverse geocoding returns the stored addresses nearest to a position, within a small distance. <br>
+ *
+ * The number of addresses is bounded: the least recently used are evicted, with the queries which found them.
+ * The store is saved in a file shortly after a change - once for all the changes made meanwhile - and reloaded at creation.
+ * Call save() when the application goes to the background, so that the last changes are not lost. <br>
+ *
+ * Can be called by multiple threads.
+ *
+ * @see GeocoderNominatim#setStore(GeocodeStore)
+ */
+public class GeocodeStore {
+
+	public static final int DEFAULT_MAX_PLACES = 2000;
+	/** default max distance of reverse geocoding, in meters */
+	public static final double DEFAULT_REVERSE_DISTANCE = 30.0;
+	/** default delay between a change and the save of the store, in ms */
+	public static final long DEFAULT_SAVE_DELAY = 2000;
+	protected static final int MAGIC = 0x47454F43; //"GEOC"
+	protected static final int VERSION = 1;
+	/** longer keys are truncated in the trie, and the matches are then checked on the full strings */
+	protected static final int MAX_KEY_LENGTH = 24;
+	/** number of words of an address indexed - the first ones, the most specific */
+	protected static final int MAX_INDEXED_WORDS = 8;
+	protected static final double METERS_PER_DEGREE = 111319.49;
+
+	//Address fields kept, as indexes in Place.mFields:
+	protected static final int FEATURE_NAME = 0, THOROUGHFARE = 1, SUB_THOROUGHFARE = 2, SUB_LOCALITY = 3,
+		LOCALITY = 4, SUB_ADMIN_AREA = 5, ADMIN_AREA = 6, POSTAL_CODE = 7, COUNTRY_NAME = 8, COUNTRY_CODE = 9,
+		DISPLAY_NAME = 10, OSM_TYPE = 11, FIELDS = 12;
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	/** runs the delayed saves of all the stores */
+	private static final ScheduledExecutorService sSaver = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "GeocodeStore-save");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** an address found */
+	protected static class Place {
+		String mId;
+		double mLatitude, mLongitude;
+		String mLocale;
+		String[] mLines;
+		String[] mFields;
+		long mOsmId;
+		/** normalized address */
+		String mText;
+		/** trie keys of this place, including duplicates */
+		ArrayList<String> mKeys = new ArrayList<>();
+		/** normalized queries which found it */
+		ArrayList<String> mQueries = new ArrayList<>(1);
+		long mLastUse;
+	}
+
+	/** a query sent, with the places found, in the order of the service */
+	protected static class Query {
+		String mText;
+		Place[] mPlaces;
+		int mMaxResults;
+	}
+
+	protected static class TrieNode {
+		static final char[] NO_CHARS = new char[0];
+		static final TrieNode[] NO_NODES = new TrieNode[0];
+		/** sorted */
+		char[] mChars = NO_CHARS;
+		TrieNode[] mChildren = NO_NODES;
+		/** places with a key ending here, or null */
+		ArrayList<Place> mPlaces;
+
+		TrieNode getChild(char c){
+			int i = Arrays.binarySearch(mChars, c);
+			return (i >= 0 ? mChildren[i] : null);
+		}
+
+		TrieNode getOrAddChild(char c){
+			int i = Arrays.binarySearch(mChars, c);
+			if (i >= 0)
+				return mChildren[i];
+			i = -i-1;
+			int n = mChars.length;
+			char[] chars = new char[n+1];
+			TrieNode[] children = new TrieNode[n+1];
+			System.arraycopy(mChars, 0, chars, 0, i);
+			System.arraycopy(mChildren, 0, children, 0, i);
+			System.arraycopy(mChars, i, chars, i+1, n-i);
+			System.arraycopy(mChildren, i, children, i+1, n-i);
+			chars[i] = c;
+			children[i] = new TrieNode();
+			mChars = chars;
+			mChildren = children;
+			return children[i];
+		}
+
+		void removeChild(char c){
+			int i = Arrays.binarySearch(mChars, c);
+			if (i < 0)
+				return;
+			int n = mChars.length;
+			char[] chars = new char[n-1];
+			TrieNode[] children = new TrieNode[n-1];
+			System.arraycopy(mChars, 0, chars, 0, i);
+			System.arraycopy(mChildren, 0, children, 0, i);
+			System.arraycopy(mChars, i+1, chars, i, n-i-1);
+			System.arraycopy(mChildren, i+1, children, i, n-i-1);
+			mChars = chars;
+			mChildren = children;
+		}
+
+		boolean isEmpty(){
+			return mChars.length == 0 && (mPlaces == null || mPlaces.isEmpty());
+		}
+	}
+
+	protected final File mFile;
+	protected final int mMaxPlaces;
+	protected double mReverseDistance;
+	/** places by id, in LRU order (eldest first) */
+	protected final LinkedHashMap<String, Place> mPlaces;
+	/** queries by normalized text, in LRU order */
+	protected final LinkedHashMap<String, Query> mQueries;
+	protected final TrieNode mTrie;
+	protected final RTree<Place> mPositions;
+	protected long mClock;
+	protected long mSaveDelay;
+	/** number of changes, and if a save is scheduled - under the store lock */
+	protected long mVersion;
+	protected boolean mSavePending;
+	/** version in the file - written under mFileLock */
+	protected volatile long mSavedVersion;
+	protected final Object mFileLock = new Object();
+
+	/**
+	 * @param file where to save the store, and from where it is reloaded. null for a store in memory only.
+	 * @param maxPlaces max number of addresses kept.
+	 */
+	public GeocodeStore(File file, int maxPlaces){
+		mFile = file;
+		mMaxPlaces = maxPlaces;
+		mReverseDistance = DEFAULT_REVERSE_DISTANCE;
+		mSaveDelay = DEFAULT_SAVE_DELAY;
+		mPlaces = new LinkedHashMap<>(64, 0.75f, true);
+		mQueries = new LinkedHashMap<>(64, 0.75f, true);
+		mTrie = new TrieNode();
+		mPositions = new RTree<>();
+		if (mFile != null)
+			load();
+	}
+
+	/** @param distance max distance in meters between a position and the addresses found by reverse geocoding */
+	public synchronized void setReverseDistance(double distance){
+		mReverseDistance = distance;
+	}
+
+	/** @param delay between a change and the save of the store, in ms. 0 to save at each change, in the calling thread. */
+	public synchronized void setSaveDelay(long delay){
+		mSaveDelay = delay;
+	}
+
+	/** @return the string in lower case, without accents, with words separated by single spaces */
+	public static String normalize(String s){
+		if (s == null)
+			return "";
+		s = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+		//not a letter with an accent, but a letter on its own:
+		s = s.replace('\u0111', 'd').replace('\u0110', 'D');
+		s = SEPARATORS.matcher(s.toLowerCase(Locale.ROOT)).replaceAll(" ");
+		return s.trim();
+	}
+
+	//--- Queries
+
+	/**
+	 * @return the addresses matching this beginning of query, up to maxResults:
+	 * first those found by this exact query, then the most recently used. Never requests the service.
+	 */
+	public List<Address> getFromLocationName(String locationName, int maxResults){
+		return toAddresses(getPlacesFromLocationName(locationName, maxResults));
+	}
+
+	protected synchronized List<Place> getPlacesFromLocationName(String locationName, int maxResults){
+		String q = normalize(locationName);
+		ArrayList<Place> result = new ArrayList<>(Math.max(maxResults, 0));
+		if (q.isEmpty() || maxResults <= 0)
+			return result;
+		LinkedHashSet<Place> places = new LinkedHashSet<>();
+		Query query = mQueries.get(q);
+		if (query != null){
+			for (Place p : query.mPlaces){
+				if (places.size() < maxResults)
+					places.add(p);
+			}
+		}
+		if (places.size() < maxResults){
+			ArrayList<Place> candidates = search(q, Math.max(maxResults*8, 32));
+			Collections.sort(candidates, new Comparator<Place>() {
+				@Override public int compare(Place p1, Place p2) {
+					return Long.compare(p2.mLastUse, p1.mLastUse);
+				}
+			});
+			for (Place p : candidates){
+				if (places.size() >= maxResults)
+					break;
+				places.add(p);
+			}
+		}
+		for (Place p : places){
+			touch(p);
+			result.add(p);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the addresses the service gave for this exact query (once normalized), up to maxResults -
+	 * or null if this query was not sent, or for less results. Never requests the service.
+	 */
+	public List<Address> getFromQuery(String locationName, int maxResults){
+		List<Place> places = getPlacesFromQuery(locationName, maxResults);
+		return (places != null ? toAddresses(places) : null);
+	}
+
+	protected synchronized List<Place> getPlacesFromQuery(String locationName, int maxResults){
+		String q = normalize(locationName);
+		if (q.isEmpty() || maxResults <= 0)
+			return null;
+		Query query = mQueries.get(q);
+		if (!isComplete(query, maxResults))
+			return null;
+		int n = Math.min(maxResults, query.mPlaces.length);
+		ArrayList<Place> result = new ArrayList<>(n);
+		for (int i = 0; i < n; i++){
+			touch(query.mPlaces[i]);
+			result.add(query.mPlaces[i]);
+		}
+		return result;
+	}
+
+	/** @return true if the query was sent for at least maxResults, or the service found less than asked: it has no more */
+	protected static boolean isComplete(Query query, int maxResults){
+		return query != null && (query.mMaxResults >= maxResults || query.mPlaces.length < query.mMaxResults);
+	}
+
+	/**
+	 * For suggestions while typing: true if getFromLocationName(locationName, maxResults) already gives enough addresses -
+	 * the same query was sent for as many results, or the store has maxResults addresses starting with it.
+	 * These may differ from what the service would give for this query: to get them, use getFromQuery.
+	 */
+	public synchronized boolean canAnswer(String locationName, int maxResults){
+		String q = normalize(locationName);
+		if (q.isEmpty())
+			return false;
+		if (isComplete(mQueries.get(q), maxResults))
+			return true;
+		return search(q, maxResults).size() >= maxResults;
+	}
+
+	/** @return the places with a key starting with q, up to limit, in trie order */
+	protected ArrayList<Place> search(String q, int limit){
+		ArrayList<Place> result = new ArrayList<>();
+		String prefix = (q.length() > MAX_KEY_LENGTH ? q.substring(0, MAX_KEY_LENGTH) : q);
+		TrieNode node = mTrie;
+		for (int i = 0; i < prefix.length() && node != null; i++)
+			node = node.getChild(prefix.charAt(i));
+		if (node == null)
+			return result;
+		LinkedHashSet<Place> found = new LinkedHashSet<>();
+		ArrayList<TrieNode> stack = new ArrayList<>();
+		stack.add(node);
+		while (!stack.isEmpty() && found.size() < limit){
+			TrieNode n = stack.remove(stack.size()-1);
+			if (n.mPlaces != null){
+				for (Place p : n.mPlaces){
+					//a truncated key only tells that the match is possible:
+					if (prefix.length() == q.length() || matches(p, q))
+						found.add(p);
+				}
+			}
+			for (int i = n.mChildren.length-1; i >= 0; i--)
+				stack.add(n.mChildren[i]);
+		}
+		result.addAll(found);
+		return result;
+	}
+
+	/** @return true if q starts a word of the place address, or one of its queries */
+	protected static boolean matches(Place p, String q){
+		for (String query : p.mQueries){
+			if (query.startsWith(q))
+				return true;
+		}
+		int i = p.mText.indexOf(q);
+		while (i >= 0){
+			if (i == 0 || p.mText.charAt(i-1) == ' ')
+				return true;
+			i = p.mText.indexOf(q, i+1);
+		}
+		return false;
+	}
+
+	/**
+	 * Keep the result of a query.
+	 * @param locationName the query sent, or null for a reverse geocoding result.
+	 * @param maxResults the max number of results asked.
+	 * @param addresses the addresses found.
+	 */
+	public void put(String locationName, int maxResults, List<Address> addresses){
+		ArrayList<Place> places = new ArrayList<>(addresses.size());
+		for (Address address : addresses)
+			places.add(toPlace(address));
+		putPlaces(locationName, maxResults, places);
+	}
+
+	protected void putPlaces(String locationName, int maxResults, List<Place> found){
+		synchronized (this){
+			String q = (locationName != null ? normalize(locationName) : null);
+			if (q != null && q.isEmpty())
+				return;
+			//the same place may be found twice:
+			LinkedHashMap<String, Place> places = new LinkedHashMap<>(found.size()*2);
+			for (Place place : found){
+				place = putPlace(place);
+				places.put(place.mId, place);
+			}
+			if (q != null)
+				putQuery(q, maxResults, places.values().toArray(new Place[0]));
+			trimToSize();
+		}
+		changed();
+	}
+
+	protected Place putPlace(Place place){
+		Place previous = mPlaces.get(place.mId);
+		if (previous != null){
+			//updated fields and position, same index:
+			removePlace(previous);
+			place.mQueries = previous.mQueries;
+			for (String query : place.mQueries)
+				addKey(query, place);
+			replaceInQueries(previous, place);
+		}
+		indexPlace(place);
+		return place;
+	}
+
+	/** add a place to mPlaces, as the most recently used, and index its words and position */
+	protected void indexPlace(Place place){
+		mPlaces.put(place.mId, place);
+		int words = 0;
+		for (int i = 0; i < place.mText.length() && words < MAX_INDEXED_WORDS; i++){
+			if (i == 0 || place.mText.charAt(i-1) == ' '){
+				addKey(place.mText.substring(i), place);
+				words++;
+			}
+		}
+		mPositions.insert(place, place.mLongitude, place.mLatitude, place.mLongitude, place.mLatitude);
+		place.mLastUse = ++mClock;
+	}
+
+	protected void replaceInQueries(Place previous, Place place){
+		for (String q : place.mQueries){
+			Query query = mQueries.get(q);
+			if (query == null)
+				continue;
+			for (int i = 0; i < query.mPlaces.length; i++){
+				if (query.mPlaces[i] == previous)
+					query.mPlaces[i] = place;
+			}
+		}
+	}
+
+	protected void putQuery(String q, int maxResults, Place[] places){
+		removeQuery(q);
+		Query query = new Query();
+		query.mText = q;
+		query.mMaxResults = maxResults;
+		query.mPlaces = places;
+		mQueries.put(q, query);
+		for (Place p : places){
+			p.mQueries.add(q);
+			addKey(q, p);
+		}
+	}
+
+	protected void removeQuery(String q){
+		Query query = mQueries.remove(q);
+		if (query == null)
+			return;
+		for (Place p : query.mPlaces){
+			p.mQueries.remove(q);
+			removeKey(q, p);
+		}
+	}
+
+	/** remove a place from the indexes, and from mPlaces if still there */
+	protected void removePlace(Place place){
+		if (mPlaces.get(place.mId) == place)
+			mPlaces.remove(place.mId);
+		while (!place.mKeys.isEmpty())
+			removeKey(place.mKeys.get(place.mKeys.size()-1), place);
+		mPositions.remove(place, place.mLongitude, place.mLatitude, place.mLongitude, place.mLatitude);
+	}
+
+	protected void addKey(String key, Place place){
+		if (key.length() > MAX_KEY_LENGTH)
+			key = key.substring(0, MAX_KEY_LENGTH);
+		TrieNode node = mTrie;
+		for (int i = 0; i < key.length(); i++)
+			node = node.getOrAddChild(key.charAt(i));
+		if (node.mPlaces == null)
+			node.mPlaces = new ArrayList<>(1);
+		node.mPlaces.add(place);
+		place.mKeys.add(key);
+	}
+
+	/** remove one occurrence of key for place, and the nodes left empty */
+	protected void removeKey(String key, Place place){
+		if (key.length() > MAX_KEY_LENGTH)
+			key = key.substring(0, MAX_KEY_LENGTH);
+		place.mKeys.remove(key);
+		TrieNode[] path = new TrieNode[key.length()+1];
+		path[0] = mTrie;
+		for (int i = 0; i < key.length(); i++){
+			path[i+1] = path[i].getChild(key.charAt(i));
+			if (path[i+1] == null)
+				return;
+		}
+		TrieNode node = path[key.length()];
+		if (node.mPlaces != null){
+			for (int i = 0; i < node.mPlaces.size(); i++){
+				if (node.mPlaces.get(i) == place){
+					node.mPlaces.remove(i);
+					break;
+				}
+			}
+			if (node.mPlaces.isEmpty())
+				node.mPlaces = null;
+		}
+		for (int i = key.length(); i > 0 && path[i].isEmpty(); i--)
+			path[i-1].removeChild(key.charAt(i-1));
+	}
+
+	/** evict the least recently used places, and the queries which found them */
+	protected void trimToSize(){
+		Iterator<Map.Entry<String, Place>> it = mPlaces.entrySet().iterator();
+		while (mPlaces.size() > mMaxPlaces && it.hasNext()){
+			Place eldest = it.next().getValue();
+			it.remove();
+			for (String q : new ArrayList<>(eldest.mQueries))
+				removeQuery(q);
+			removePlace(eldest);
+		}
+		//queries which found nothing:
+		Iterator<Map.Entry<String, Query>> itq = mQueries.entrySet().iterator();
+		while (mQueries.size() > mMaxPlaces && itq.hasNext()){
+			Query eldest = itq.next().getValue();
+			if (eldest.mPlaces.length == 0)
+				itq.remove();
+		}
+	}
+
+	protected void touch(Place p){
+		p.mLastUse = ++mClock;
+		mPlaces.get(p.mId);
+	}
+
+	//--- Reverse geocoding
+
+	/**
+	 * @return the stored addresses within the reverse distance of this position, nearest first, up to maxResults.
+	 * Never requests the service.
+	 */
+	public List<Address> getFromLocation(double latitude, double longitude, int maxResults){
+		return toAddresses(getPlacesFromLocation(latitude, longitude, maxResults));
+	}
+
+	protected synchronized List<Place> getPlacesFromLocation(double latitude, double longitude, int maxResults){
+		double dLat = mReverseDistance / METERS_PER_DEGREE;
+		final double kx = Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+		double dLon = dLat / kx;
+		ArrayList<Place> places = new ArrayList<>();
+		mPositions.search(longitude - dLon, latitude - dLat, longitude + dLon, latitude + dLat, places);
+		final HashMap<Place, Double> distances = new HashMap<>(places.size()*2);
+		Iterator<Place> it = places.iterator();
+		while (it.hasNext()){
+			Place p = it.next();
+			double dx = (p.mLongitude - longitude) * kx * METERS_PER_DEGREE;
+			double dy = (p.mLatitude - latitude) * METERS_PER_DEGREE;
+			double d = Math.sqrt(dx*dx + dy*dy);
+			if (d > mReverseDistance)
+				it.remove();
+			else
+				distances.put(p, d);
+		}
+		Collections.sort(places, new Comparator<Place>() {
+			@Override public int compare(Place p1, Place p2) {
+				return Double.compare(distances.get(p1), distances.get(p2));
+			}
+		});
+		ArrayList<Place> result = new ArrayList<>(Math.max(0, Math.min(maxResults, places.size())));
+		for (int i = 0; i < places.size() && i < maxResults; i++){
+			touch(places.get(i));
+			result.add(places.get(i));
+		}
+		return result;
+	}
+
+	//--- Conversions
+
+	protected static Place toPlace(Address address){
+		String[] lines = new String[address.getMaxAddressLineIndex()+1];
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = address.getAddressLine(i);
+		String[] f = new String[FIELDS];
+		f[FEATURE_NAME] = address.getFeatureName();
+		f[THOROUGHFARE] = address.getThoroughfare();
+		f[SUB_THOROUGHFARE] = address.getSubThoroughfare();
+		f[SUB_LOCALITY] = address.getSubLocality();
+		f[LOCALITY] = address.getLocality();
+		f[SUB_ADMIN_AREA] = address.getSubAdminArea();
+		f[ADMIN_AREA] = address.getAdminArea();
+		f[POSTAL_CODE] = address.getPostalCode();
+		f[COUNTRY_NAME] = address.getCountryName();
+		f[COUNTRY_CODE] = address.getCountryCode();
+		long osmId = 0;
+		Bundle extras = address.getExtras();
+		if (extras != null){
+			f[DISPLAY_NAME] = extras.getString("display_name");
+			f[OSM_TYPE] = extras.getString("osm_type");
+			osmId = extras.getLong("osm_id", 0);
+		}
+		String locale = (address.getLocale() != null ? address.getLocale().toLanguageTag() : "");
+		return newPlace(address.getLatitude(), address.getLongitude(), locale, osmId, lines, f);
+	}
+
+	/** @param fields Address fields, indexed by FEATURE_NAME... OSM_TYPE */
+	protected static Place newPlace(double latitude, double longitude, String locale, long osmId, String[] lines, String[] fields){
+		Place p = new Place();
+		p.mLatitude = latitude;
+		p.mLongitude = longitude;
+		p.mLocale = locale;
+		p.mOsmId = osmId;
+		p.mLines = lines;
+		p.mFields = fields;
+		p.mText = normalize(fields[DISPLAY_NAME] != null ? fields[DISPLAY_NAME] : joinLines(lines));
+		setId(p);
+		return p;
+	}
+
+	protected static void setId(Place p){
+		if (p.mFields[OSM_TYPE] != null && p.mOsmId != 0)
+			p.mId = p.mFields[OSM_TYPE] + ':' + p.mOsmId;
+		else if (!p.mText.isEmpty())
+			p.mId = p.mText;
+		else
+			p.mId = p.mLatitude + "," + p.mLongitude;
+	}
+
+	protected static String joinLines(String[] lines){
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines){
+			if (line == null)
+				continue;
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(line);
+		}
+		return sb.toString();
+	}
+
+	protected static List<Address> toAddresses(List<Place> places){
+		ArrayList<Address> addresses = new ArrayList<>(places.size());
+		for (Place p : places)
+			addresses.add(toAddress(p));
+		return addresses;
+	}
+
+	/** @return a new Address - callers may modify it */
+	protected static Address toAddress(Place p){
+		Address address = new Address(Locale.forLanguageTag(p.mLocale));
+		address.setLatitude(p.mLatitude);
+		address.setLongitude(p.mLongitude);
+		for (int i = 0; i < p.mLines.length; i++){
+			if (p.mLines[i] != null)
+				address.setAddressLine(i, p.mLines[i]);
+		}
+		String[] f = p.mFields;
+		address.setFeatureName(f[FEATURE_NAME]);
+		address.setThoroughfare(f[THOROUGHFARE]);
+		address.setSubThoroughfare(f[SUB_THOROUGHFARE]);
+		address.setSubLocality(f[SUB_LOCALITY]);
+		address.setLocality(f[LOCALITY]);
+		address.setSubAdminArea(f[SUB_ADMIN_AREA]);
+		address.setAdminArea(f[ADMIN_AREA]);
+		address.setPostalCode(f[POSTAL_CODE]);
+		address.setCountryName(f[COUNTRY_NAME]);
+		address.setCountryCode(f[COUNTRY_CODE]);
+		Bundle extras = new Bundle();
+		if (f[DISPLAY_NAME] != null)
+			extras.putString("display_name", f[DISPLAY_NAME]);
+		if (f[OSM_TYPE] != null)
+			extras.putString("osm_type", f[OSM_TYPE]);
+		if (p.mOsmId != 0)
+			extras.putLong("osm_id", p.mOsmId);
+		address.setExtras(extras);
+		return address;
+	}
+
+	//--- Persistence
+
+	/** @return the number of addresses stored */
+	public synchronized int size(){
+		return mPlaces.size();
+	}
+
+	/** @return the number of queries stored */
+	public synchronized int getQueryCount(){
+		return mQueries.size();
+	}
+
+	/** remove everything */
+	public void clear(){
+		synchronized (this){
+			reset();
+		}
+		changed();
+	}
+
+	protected void reset(){
+		mPlaces.clear();
+		mQueries.clear();
+		mTrie.mChars = TrieNode.NO_CHARS;
+		mTrie.mChildren = TrieNode.NO_NODES;
+		mTrie.mPlaces = null;
+		mPositions.clear();
+	}
+
+	/** after a change: save now, or schedule a save unless one is already scheduled */
+	protected void changed(){
+		long delay;
+		synchronized (this){
+			mVersion++;
+			if (mFile == null || mSavePending)
+				return;
+			delay = mSaveDelay;
+			mSavePending = (delay > 0);
+		}
+		if (delay <= 0){
+			save();
+			return;
+		}
+		sSaver.schedule(new Runnable() {
+			@Override public void run() {
+				synchronized (GeocodeStore.this){
+					mSavePending = false;
+				}
+				save();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Write the store in its file now, if changed since the last save.
+	 * The content is serialized under the store lock, and written outside of it - unless a more recent content was written meanwhile.
+	 */
+	public void save(){
+		if (mFile == null)
+			return;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+		long version;
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			synchronized (this){
+				version = mVersion;
+				if (version <= mSavedVersion)
+					return;
+				write(out);
+			}
+			out.flush();
+		} catch (IOException e){
+			//not for a ByteArrayOutputStream
+			return;
+		}
+		synchronized (mFileLock){
+			if (version <= mSavedVersion)
+				return;
+			File tmpFile = new File(mFile.getPath() + ".tmp");
+			try {
+				FileOutputStream fos = new FileOutputStream(tmpFile);
+				try {
+					bytes.writeTo(fos);
+				} finally {
+					fos.close();
+				}
+				if (!tmpFile.renameTo(mFile))
+					throw new IOException("cannot rename " + tmpFile);
+				mSavedVersion = version;
+			} catch (IOException e){
+				Log.e(BonusPackHelper.LOG_TAG, "GeocodeStore: cannot save: " + e);
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/** places in LRU order, then queries with the indexes of their places */
+	protected void write(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(mPlaces.size());
+		HashMap<Place, Integer> indexes = new HashMap<>(mPlaces.size()*2);
+		for (Place p : mPlaces.values()){
+			indexes.put(p, indexes.size());
+			out.writeDouble(p.mLatitude);
+			out.writeDouble(p.mLongitude);
+			out.writeUTF(p.mLocale);
+			out.writeLong(p.mOsmId);
+			out.writeShort(p.mLines.length);
+			for (String line : p.mLines)
+				writeString(out, line);
+			for (String field : p.mFields)
+				writeString(out, field);
+		}
+		out.writeInt(mQueries.size());
+		for (Query query : mQueries.values()){
+			out.writeUTF(query.mText);
+			out.writeInt(query.mMaxResults);
+			out.writeShort(query.mPlaces.length);
+			for (Place p : query.mPlaces)
+				out.writeInt(indexes.get(p));
+		}
+	}
+
+	protected static void writeString(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null)
+			out.writeUTF(s);
+	}
+
+	protected static String readString(DataInputStream in) throws IOException {
+		return (in.readBoolean() ? in.readUTF() : null);
+	}
+
+	protected synchronized void load(){
+		if (!mFile.exists())
+			return;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION)
+					return;
+				int placeCount = in.readInt();
+				Place[] places = new Place[placeCount];
+				for (int i = 0; i < placeCount; i++){
+					double latitude = in.readDouble();
+					double longitude = in.readDouble();
+					String locale = in.readUTF();
+					long osmId = in.readLong();
+					String[] lines = new String[in.readShort()];
+					for (int l = 0; l < lines.length; l++)
+						lines[l] = readString(in);
+					String[] fields = new String[FIELDS];
+					for (int f = 0; f < FIELDS; f++)
+						fields[f] = readString(in);
+					places[i] = newPlace(latitude, longitude, locale, osmId, lines, fields);
+				}
+				int queryCount = in.readInt();
+				Query[] queries = new Query[queryCount];
+				for (int i = 0; i < queryCount; i++){
+					Query query = new Query();
+					query.mText = in.readUTF();
+					query.mMaxResults = in.readInt();
+					query.mPlaces = new Place[in.readShort()];
+					for (int j = 0; j < query.mPlaces.length; j++)
+						query.mPlaces[j] = places[in.readInt()];
+					queries[i] = query;
+				}
+				//all read: now index them, in the same LRU order
+				for (Place p : places)
+					indexPlace(p);
+				for (Query query : queries)
+					putQuery(query.mText, query.mMaxResults, query.mPlaces);
+				trimToSize();
+			} finally {
+				in.close();
+			}
+		} catch (IOException | RuntimeException e){
+			Log.e(BonusPackHelper.LOG_TAG, "GeocodeStore: cannot load " + mFile + ": " + e);
+			reset();
+		}
+	}
+}
@@ -7,18 +7,25 @@ import android.util.Log;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.DiskLruCache;
+import org.osmdroid.bonuspack.utils.SingleFlight;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements an equivalent to Android Geocoder class, based on OpenStreetMap data and Nominatim API. <br>
@@ -38,6 +45,45 @@ public class GeocoderNominatim {
 	protected String mServiceUrl, mKey;
 	protected String mUserAgent;
 	protected boolean mPolygon;
+	protected DiskLruCache mCache;
+	protected GeocodeStore mStore;
+
+	/** spacing of the requests to a service, shared by all the geocoders using this service */
+	protected static class RequestThrottle {
+		/** minimum delay between the starts of 2 requests, in ns */
+		protected long mMinInterval;
+		/** earliest start of the next request, in System.nanoTime */
+		protected long mNextRequestTime;
+
+		protected synchronized void setMinInterval(long minInterval){
+			mMinInterval = minInterval;
+		}
+
+		protected synchronized long getMinInterval(){
+			return mMinInterval;
+		}
+
+		/** wait until the minimum delay since the previous request is elapsed, and book the next slot */
+		protected void await() throws InterruptedException {
+			long wait;
+			synchronized (this){
+				if (mMinInterval <= 0)
+					return;
+				long now = System.nanoTime();
+				long start = (mNextRequestTime - now > 0 ? mNextRequestTime : now);
+				mNextRequestTime = start + mMinInterval;
+				wait = start - now;
+			}
+			if (wait > 0)
+				TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/** request throttles, by service url */
+	protected static final ConcurrentHashMap<String, RequestThrottle> sThrottles = new ConcurrentHashMap<>();
+
+	/** requests in progress, for all geocoders, by url */
+	protected static final SingleFlight<String, JsonElement> sRequests = new SingleFlight<>();
 
 	public GeocoderNominatim(Locale locale, String userAgent) {
 		mLocale = locale;
@@ -63,6 +109,15 @@ public class GeocoderNominatim {
 		mServiceUrl = serviceUrl;
 	}
 
+	public String getService(){
+		return mServiceUrl;
+	}
+
+	/** @return true if the service is the public Nominatim service, subject to its usage policy */
+	public boolean isPublicService(){
+		return NOMINATIM_SERVICE_URL.equals(mServiceUrl);
+	}
+
 	/**
 	 * Set AppKey for MapQuest open service
 	 */
@@ -76,7 +131,114 @@ public class GeocoderNominatim {
 	public void setOptions(boolean polygon){
 		mPolygon = polygon;
 	}
-	
+
+	/**
+	 * Keep the responses in a persistent cache, so that a same request is never sent twice. <br>
+	 * Failed requests are not cached; empty results ("address not found") are.
+	 * @param cache the cache, or null for none (default).
+	 */
+	public void setCache(DiskLruCache cache){
+		mCache = cache;
+	}
+
+	public DiskLruCache getCache(){
+		return mCache;
+	}
+
+	/**
+	 * Answer from an on-device store of the past results when it can, and keep the new results in it. <br>
+	 * Applies to getFromLocationName(locationName, maxResults) - not to the view box variants -, only when the same query
+	 * was already sent, and to getFromLocation.
+	 * Addresses from the store have no "boundingbox" nor "polygonpoints" extras.
+	 * @param store the store, or null for none (default).
+	 */
+	public void setStore(GeocodeStore store){
+		mStore = store;
+	}
+
+	public GeocodeStore getStore(){
+		return mStore;
+	}
+
+	protected static RequestThrottle getThrottle(String serviceUrl){
+		RequestThrottle throttle = sThrottles.get(serviceUrl);
+		if (throttle == null){
+			RequestThrottle created = new RequestThrottle();
+			throttle = sThrottles.putIfAbsent(serviceUrl, created);
+			if (throttle == null)
+				throttle = created;
+		}
+		return throttle;
+	}
+
+	/**
+	 * Set a minimum delay between the starts of 2 requests to a service, by all the geocoders using it:
+	 * calls are delayed as needed. Cached responses are not delayed. <br>
+	 * The public Nominatim service allows at most 1 request per second.
+	 * @param serviceUrl url of the service, as given to setService
+	 * @param minInterval in ms. 0 for no delay (default).
+	 */
+	public static void setMinRequestInterval(String serviceUrl, long minInterval){
+		getThrottle(serviceUrl).setMinInterval(TimeUnit.MILLISECONDS.toNanos(minInterval));
+	}
+
+	/** @return the minimum delay between the starts of 2 requests to this service, in ms */
+	public static long getMinRequestInterval(String serviceUrl){
+		return TimeUnit.NANOSECONDS.toMillis(getThrottle(serviceUrl).getMinInterval());
+	}
+
+	/** Same as setMinRequestInterval(getService(), minInterval): applies to all the geocoders using the current service. */
+	public void setMinRequestInterval(long minInterval){
+		setMinRequestInterval(mServiceUrl, minInterval);
+	}
+
+	/** @return the minimum delay between the starts of 2 requests to the current service, in ms */
+	public long getMinRequestInterval(){
+		return getMinRequestInterval(mServiceUrl);
+	}
+
+	/**
+	 * Get the response from the cache, or request the service - unless the same url is already requested:
+	 * then wait for it and share its response.
+	 * @return the JSON response, or null if any issue. A shared response must not be modified.
+	 */
+	protected JsonElement requestJson(final String url){
+		final DiskLruCache cache = mCache;
+		final RequestThrottle throttle = getThrottle(mServiceUrl);
+		if (cache != null){
+			byte[] data = cache.get(url);
+			if (data != null){
+				try {
+					return JsonParser.parseString(new String(data, StandardCharsets.UTF_8));
+				} catch (JsonParseException e){
+					cache.remove(url);
+				}
+			}
+		}
+		try {
+			return sRequests.execute(url, new Callable<JsonElement>() {
+				@Override public JsonElement call() throws InterruptedException {
+					throttle.await();
+					JsonElement json = BonusPackHelper.requestJsonFromUrl(url, mUserAgent);
+					if (json != null && cache != null)
+						cache.put(url, json.toString().getBytes(StandardCharsets.UTF_8));
+					return json;
+				}
+			});
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (Exception e){
+			Log.e(BonusPackHelper.LOG_TAG, "GeocoderNominatim: request failed " + url, e);
+			return null;
+		}
+	}
+
+	/** @return the geocoding requests in progress, with the count of redundant requests avoided */
+	public static SingleFlight<String, JsonElement> getRequests(){
+		return sRequests;
+	}
+
 	/** 
 	 * Build an Android Address object from the Nominatim address in JSON format. 
 	 * Current implementation is mainly targeting french addresses,
@@ -189,6 +351,12 @@ public class GeocoderNominatim {
 	 */
 	public List<Address> getFromLocation(double latitude, double longitude, int maxResults) 
 	throws IOException {
+		GeocodeStore store = mStore;
+		if (store != null){
+			List<Address> stored = store.getFromLocation(latitude, longitude, maxResults);
+			if (!stored.isEmpty())
+				return stored;
+		}
 		String url = mServiceUrl + "reverse.php?";
 		if (mKey != null)
 			url += "key=" + mKey + "&";
@@ -198,17 +366,17 @@ public class GeocoderNominatim {
 			+ "&lat=" + latitude 
 			+ "&lon=" + longitude;
 		Log.d(BonusPackHelper.LOG_TAG, "GeocoderNominatim::getFromLocation:"+url);
-		String result = BonusPackHelper.requestStringFromUrl(url, mUserAgent);
-		if (result == null)
+		JsonElement json = requestJson(url);
+		if (json == null)
 			throw new IOException();
 		try {
-			JsonParser parser = new JsonParser();
-			JsonElement json = parser.parse(result);
 			JsonObject jResult = json.getAsJsonObject();
 			Address gAddress = buildAndroidAddress(jResult);
 			List<Address> list = new ArrayList<Address>(1);
 			if (gAddress != null)
 				list.add(gAddress);
+			if (store != null)
+				store.put(null, maxResults, list);
 			return list;
 		} catch (JsonSyntaxException e) {
 			throw new IOException();
@@ -248,12 +416,10 @@ public class GeocoderNominatim {
 			//Upgrade is on hold, waiting for MapQuest service to become compatible. 
 		}
 		Log.d(BonusPackHelper.LOG_TAG, "GeocoderNominatim::getFromLocationName:"+url);
-		String result = BonusPackHelper.requestStringFromUrl(url, mUserAgent);
-		//Log.d(BonusPackHelper.LOG_TAG, result);
-		if (result == null)
+		JsonElement json = requestJson(url);
+		if (json == null)
 			throw new IOException();
 		try {
-			JsonElement json = JsonParser.parseString(result);
 			JsonArray jResults = json.getAsJsonArray();
 			List<Address> list = new ArrayList<Address>(jResults.size());
 			for (int i=0; i<jResults.size(); i++){
@@ -294,7 +460,16 @@ public class GeocoderNominatim {
 	 */
 	public List<Address> getFromLocationName(String locationName, int maxResults)
 	throws IOException {
-		return getFromLocationName(locationName, maxResults, 0.0, 0.0, 0.0, 0.0, false);
+		GeocodeStore store = mStore;
+		if (store != null){
+			List<Address> stored = store.getFromQuery(locationName, maxResults);
+			if (stored != null)
+				return stored;
+		}
+		List<Address> list = getFromLocationName(locationName, maxResults, 0.0, 0.0, 0.0, 0.0, false);
+		if (store != null)
+			store.put(locationName, maxResults, list);
+		return list;
 	}
 	
 }
@@ -7,6 +7,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.ImageCache;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 
@@ -102,7 +103,7 @@ public class NominatimPOIProvider {
 				poi.mThumbnailPath = jPlace.optString("icon", null);
 	    		if (i==0 && poi.mThumbnailPath != null) {
 	    			//first POI, and we have a thumbnail: load it
-	    			thumbnail = BonusPackHelper.loadBitmap(poi.mThumbnailPath);
+	    			thumbnail = ImageCache.getDefault().get(poi.mThumbnailPath);
 				}
 	    		poi.mThumbnail = thumbnail;
 				pois.add(poi);
@@ -7,7 +7,7 @@ import android.os.Parcelable;
 import android.view.View;
 import android.widget.ImageView;
 
-import org.osmdroid.bonuspack.utils.WebImageCache;
+import org.osmdroid.bonuspack.utils.ImageCache;
 import org.osmdroid.util.GeoPoint;
 
 /**
@@ -24,12 +24,6 @@ public class POI implements Parcelable {
 	public static int POI_SERVICE_PICASA = 400;
 	public static int POI_SERVICE_OVERPASS_API = 500;
 	
-	private static WebImageCache mThumbnailCache;
-	static {
-		//one common cache for all POI thumbnails:
-		mThumbnailCache = new WebImageCache(300);
-	}
-	
 	/** Identifies the service provider of this POI. */
 	public int mServiceId;
 	/** Nominatim: OSM ID. GeoNames: 0 */
@@ -70,8 +64,8 @@ public class POI implements Parcelable {
 			Log.d(BonusPackHelper.LOG_TAG, "POI:load thumbnail:"+mThumbnailPath);
 			mThumbnail = BonusPackHelper.loadBitmap(mThumbnailPath);
 			*/
-			//now we use WebImageCache to share thumbnail loading done at various places:
-			mThumbnail = mThumbnailCache.get(mThumbnailPath);
+			//now we use ImageCache to share thumbnail loading done at various places, and across launches:
+			mThumbnail = ImageCache.getDefault().get(mThumbnailPath);
 			if (mThumbnail == null){
 				mThumbnailLoadingFailures++;
 				if (mThumbnailLoadingFailures >= MAX_LOADING_ATTEMPTS){
@@ -58,13 +58,13 @@ import javax.xml.parsers.SAXParserFactory;
 	public ArrayList<POI> getThem(String fullUrl){
 		Log.d(BonusPackHelper.LOG_TAG, "PicasaPOIProvider:get:"+fullUrl);
 		HttpConnection connection = new HttpConnection();
-		connection.doGet(fullUrl);
-		InputStream stream = connection.getStream();
-		if (stream == null){
-			return null;
-		}
 		PicasaXMLHandler handler = new PicasaXMLHandler();
 		try {
+			connection.doGet(fullUrl);
+			InputStream stream = connection.getStream();
+			if (stream == null){
+				return null;
+			}
 			SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
 			parser.getXMLReader().setFeature("http://xml.org/sax/features/namespaces", false);
 			parser.getXMLReader().setFeature("http://xml.org/sax/features/namespace-prefixes", true);
@@ -75,8 +75,9 @@ import javax.xml.parsers.SAXParserFactory;
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			connection.close();
 		}
-		connection.close();
 		if (handler.mPOIs != null)
 			Log.d(BonusPackHelper.LOG_TAG, "done:"+handler.mPOIs.size()+" got, on a total of:"+handler.mTotalResults);
 		return handler.mPOIs;
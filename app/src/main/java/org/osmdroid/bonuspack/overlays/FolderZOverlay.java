@@ -1,13 +1,19 @@
 package org.osmdroid.bonuspack.overlays;
 
 import android.graphics.Canvas;
+import android.view.MotionEvent;
 
-import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.RTree;
 import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.TileSystem;
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Overlay;
-import java.util.Comparator;
-import java.util.Iterator;
+import org.osmdroid.views.overlay.OverlayWithIW;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.TreeSet;
 
 /**
@@ -16,74 +22,65 @@ import java.util.TreeSet;
  * 1) Z-Index to all overlays that it contains.
  * Like Google Maps Android API:
  * "An overlay with a larger z-index is drawn over overlays with smaller z-indices.
- * The order of overlays with the same z-index value is arbitrary.
  * The default is 0."
  * Unlike Google Maps Android API, this applies to all overlays, including Markers.
+ * Overlays with the same z-index are drawn in the order they were added.
  *
  * 2) Drawing optimization based on Bounding Box culling.
+ * Bounding boxes are kept in an R-tree, so only the overlays intersecting the map view are considered.
+ * Culling uses the bounding box of the map view, which covers the whole view when the map is rotated.
  *
- * TODO - DO NOT USE YET. WORK IN PROGRESS.
+ * Events are dispatched to the overlays drawn, from the top one to the bottom one.
  *
  * @author M.Kergall
  */
 
 public class FolderZOverlay extends Overlay {
+    /** all overlays, ordered by z-index */
     protected TreeSet<ZOverlay> mList;
+    protected IdentityHashMap<Overlay, ZOverlay> mItems;
+    /** bounding boxes of the overlays having one */
+    protected RTree<ZOverlay> mIndex;
+    /** overlays without bounding box set, never culled */
+    protected LinkedHashSet<ZOverlay> mUnbounded;
+    /** overlays drawn at last draw, ordered by z-index */
+    protected ArrayList<ZOverlay> mDrawn;
+    protected long mSequence;
+    protected int mCullingMargin;
     protected String mName, mDescription;
 
-    protected class ZOverlay implements Comparator<ZOverlay> {
+    protected static class ZOverlay implements Comparable<ZOverlay> {
         float mZIndex;
+        /** insertion order, to keep overlays with the same z-index */
+        final long mSequence;
         BoundingBox mBoundingBox;
         boolean mBoundingBoxSet;
         Overlay mOverlay;
 
-        public ZOverlay(Overlay o, float zIndex){
+        public ZOverlay(Overlay o, float zIndex, long sequence){
             mOverlay = o;
             mZIndex = zIndex;
+            mSequence = sequence;
             mBoundingBoxSet = false;
         }
 
-        @Override public int compare(ZOverlay o1, ZOverlay o2){
-            return (int)Math.signum(o1.mZIndex - o2.mZIndex);
-        }
-
-        public void setBoundingBox(BoundingBox bb){
-            mBoundingBox = bb.clone();
-            mBoundingBoxSet = true;
-        }
-
-        public void unsetBoundingBox(){
-            mBoundingBox = null;
-            mBoundingBoxSet = false;
-        }
-
-        /**
-         * @param mapBB bounding box of the map view
-         * @param mapOrientation orientation of the map view
-         * @return true if the overlay should be drawn.
-         */
-        public boolean shouldBeDrawn(BoundingBox mapBB, float mapOrientation){
-            if (!mBoundingBoxSet)
-                return true;
-            if (mBoundingBox == null)
-                //null bounding box means overlay is empty, so nothing to draw:
-                return false;
-            if (mapOrientation != 0.0f)
-                //TODO - handle map rotation...
-                return true;
-            if (mBoundingBox.getLatSouth() > mapBB.getLatNorth()
-                || mBoundingBox.getLatNorth() < mapBB.getLatSouth()
-                || mBoundingBox.getLonWest() > mapBB.getLonEast()
-                || mBoundingBox.getLonEast() < mapBB.getLonWest())
-                //completely outside the map view:
-                return false;
-            return true;
+        @Override public int compareTo(ZOverlay other){
+            int c = Float.compare(mZIndex, other.mZIndex);
+            if (c != 0)
+                return c;
+            return Long.compare(mSequence, other.mSequence);
         }
     }
 
     public FolderZOverlay(){
         super();
         mList = new TreeSet<>();
+        mItems = new IdentityHashMap<>();
+        mIndex = new RTree<>();
+        mUnbounded = new LinkedHashSet<>();
+        mDrawn = new ArrayList<>();
+        mSequence = 0;
+        mCullingMargin = 128;
         mName = "";
         mDescription = "";
     }
@@ -104,8 +101,29 @@ public class FolderZOverlay extends Overlay {
         return mDescription;
     }
 
+    /**
+     * Margin around the map view for culling, so that overlays drawn beyond their bounding box
+     * (like Marker icons) are not culled while partly visible.
+     * @param margin in pixels. Default is 128.
+     */
+    public void setCullingMargin(int margin){
+        mCullingMargin = margin;
+    }
+
+    /**
+     * @param item overlay to add. If already in this folder, only its z-index is changed.
+     * @param zIndex z-index of the overlay
+     * @return true if the overlay has been added
+     */
     public boolean add(Overlay item, float zIndex){
-        return mList.add(new ZOverlay(item, zIndex));
+        if (mItems.containsKey(item)){
+            setZIndex(item, zIndex);
+            return false;
+        }
+        ZOverlay z = new ZOverlay(item, zIndex, mSequence++);
+        mItems.put(item, z);
+        mUnbounded.add(z);
+        return mList.add(z);
     }
 
     public boolean add(Overlay item){
@@ -113,26 +131,29 @@ public class FolderZOverlay extends Overlay {
     }
 
     protected ZOverlay get(Overlay overlay){
-        Iterator<ZOverlay> itr = mList.iterator();
-        while (itr.hasNext()) {
-            ZOverlay item = itr.next();
-            if (item.mOverlay == overlay) {
-                mList.remove(item);
-                return item;
-            }
-        }
-        return null;
+        return mItems.get(overlay);
     }
 
     public boolean remove(Overlay overlay) {
-        ZOverlay item = get(overlay);
-        if (item != null) {
-            mList.remove(item);
-            return true;
-        }
-        else
+        ZOverlay item = mItems.remove(overlay);
+        if (item == null)
             return false;
-   }
+        mList.remove(item);
+        if (item.mBoundingBoxSet)
+            unindex(item);
+        else
+            mUnbounded.remove(item);
+        mDrawn.remove(item);
+        return true;
+    }
+
+    /** @return the overlays, ordered by z-index */
+    public ArrayList<Overlay> getItems(){
+        ArrayList<Overlay> items = new ArrayList<>(mList.size());
+        for (ZOverlay item:mList)
+            items.add(item.mOverlay);
+        return items;
+    }
 
     /**
      * Change the Z-Index of an overlay.
@@ -143,49 +164,197 @@ public class FolderZOverlay extends Overlay {
         ZOverlay item = get(overlay);
         if (item == null)
             return;
+        //the order must be updated, so remove before changing:
         mList.remove(item);
-        item.mZIndex = zIndex; //TODO Check if removal/addition is really necessary.
+        item.mZIndex = zIndex;
         mList.add(item);
+        Collections.sort(mDrawn);
+    }
+
+    /** @return the z-index of this overlay, or 0 if not in this folder */
+    public float getZIndex(Overlay overlay){
+        ZOverlay item = get(overlay);
+        return (item != null ? item.mZIndex : 0.0f);
+    }
+
+    /** @return the highest z-index, or 0 if the folder is empty */
+    public float getMaxZIndex(){
+        return (mList.isEmpty() ? 0.0f : mList.last().mZIndex);
     }
 
     /**
      * Define the bounding box of this overlay.
      * This may dramatically increase drawing performance when the overlay is completely outside the current view.
      * @param overlay
-     * @param bb the bounding box of this overlay.
+     * @param bb the bounding box of this overlay. A null bounding box means the overlay is empty, so it is never drawn.
      */
     public void setBoundingBox(Overlay overlay, BoundingBox bb){
         ZOverlay item = get(overlay);
         if (item == null)
             return;
-        item.setBoundingBox(bb);
+        if (item.mBoundingBoxSet)
+            unindex(item);
+        else
+            mUnbounded.remove(item);
+        item.mBoundingBox = (bb != null ? bb.clone() : null);
+        item.mBoundingBoxSet = true;
+        index(item);
     }
 
     public void unsetBoundingBox(Overlay overlay){
         ZOverlay item = get(overlay);
-        if (item == null)
+        if (item == null || !item.mBoundingBoxSet)
+            return;
+        unindex(item);
+        item.mBoundingBox = null;
+        item.mBoundingBoxSet = false;
+        mUnbounded.add(item);
+    }
+
+    /** put the bounding box in the R-tree, as 2 boxes if it crosses the date line */
+    protected void index(ZOverlay item){
+        BoundingBox bb = item.mBoundingBox;
+        if (bb == null)
+            return;
+        if (bb.getLonWest() <= bb.getLonEast())
+            mIndex.insert(item, bb.getLonWest(), bb.getLatSouth(), bb.getLonEast(), bb.getLatNorth());
+        else {
+            mIndex.insert(item, bb.getLonWest(), bb.getLatSouth(), 180.0, bb.getLatNorth());
+            mIndex.insert(item, -180.0, bb.getLatSouth(), bb.getLonEast(), bb.getLatNorth());
+        }
+    }
+
+    protected void unindex(ZOverlay item){
+        BoundingBox bb = item.mBoundingBox;
+        if (bb == null)
             return;
-        item.unsetBoundingBox();
+        if (bb.getLonWest() <= bb.getLonEast())
+            mIndex.remove(item, bb.getLonWest(), bb.getLatSouth(), bb.getLonEast(), bb.getLatNorth());
+        else {
+            mIndex.remove(item, bb.getLonWest(), bb.getLatSouth(), 180.0, bb.getLatNorth());
+            mIndex.remove(item, -180.0, bb.getLatSouth(), bb.getLonEast(), bb.getLatNorth());
+        }
     }
 
-    //TODO:
-    //get highest z-index => getMaxZIndex
+    /** @return the overlays intersecting the map view, ordered by z-index */
+    protected ArrayList<ZOverlay> getVisibleItems(MapView mapView){
+        ArrayList<ZOverlay> visible = new ArrayList<>(mUnbounded);
+        if (mIndex.size() == 0)
+            return visible;
+        //already covers the whole view when the map is rotated:
+        BoundingBox mapBB = mapView.getProjection().getBoundingBox();
+        //degrees per pixel on longitude, an upper bound for latitude:
+        double margin = mCullingMargin * 360.0 / TileSystem.MapSize(mapView.getZoomLevelDouble());
+        double south = mapBB.getLatSouth() - margin;
+        double north = mapBB.getLatNorth() + margin;
+        double west = mapBB.getLonWest() - margin;
+        double east = mapBB.getLonEast() + margin;
+        ArrayList<ZOverlay> found = new ArrayList<>();
+        if (mapBB.getLonWest() > mapBB.getLonEast())
+            east += 360.0; //view across the date line
+        if (east - west >= 360.0)
+            mIndex.search(-180.0, south, 180.0, north, found);
+        else {
+            if (west < -180.0){
+                west += 360.0;
+                east += 360.0;
+            }
+            mIndex.search(west, south, Math.min(east, 180.0), north, found);
+            if (east > 180.0)
+                mIndex.search(-180.0, south, east - 360.0, north, found);
+        }
+        //overlays across the date line may be found twice:
+        IdentityHashMap<ZOverlay, Boolean> seen = new IdentityHashMap<>(found.size());
+        for (ZOverlay item:found){
+            if (seen.put(item, Boolean.TRUE) == null)
+                visible.add(item);
+        }
+        Collections.sort(visible);
+        return visible;
+    }
 
     @Override public void draw(Canvas canvas, MapView mapView, boolean shadow) {
         if (shadow)
             return;
-
-        Iterator<ZOverlay> itr=mList.iterator();
-        while(itr.hasNext()){
-            ZOverlay item = itr.next();
+        mDrawn = getVisibleItems(mapView);
+        for (ZOverlay item:mDrawn){
             Overlay overlay = item.mOverlay;
-            if (overlay!=null && overlay.isEnabled()) {
-                if (item.shouldBeDrawn(mapView.getBoundingBox(), mapView.getMapOrientation())) {
-                    overlay.draw(canvas, mapView, false);
-                }
-            }
+            if (overlay!=null && overlay.isEnabled())
+                overlay.draw(canvas, mapView, false);
         }
     }
 
-    //TODO Implement events
+    /** @return the overlays drawn and enabled, from the top one to the bottom one */
+    protected ArrayList<Overlay> getTouchableItems(){
+        ArrayList<Overlay> items = new ArrayList<>(mDrawn.size());
+        for (int i = mDrawn.size()-1; i >= 0; i--){
+            Overlay overlay = mDrawn.get(i).mOverlay;
+            if (overlay!=null && overlay.isEnabled())
+                items.add(overlay);
+        }
+        return items;
+    }
+
+    @Override public boolean onSingleTapUp(MotionEvent e, MapView mapView){
+        if (!isEnabled())
+            return false;
+        for (Overlay overlay:getTouchableItems()){
+            if (overlay.onSingleTapUp(e, mapView))
+                return true;
+        }
+        return false;
+    }
+
+    @Override public boolean onSingleTapConfirmed(MotionEvent e, MapView mapView){
+        if (!isEnabled())
+            return false;
+        for (Overlay overlay:getTouchableItems()){
+            if (overlay.onSingleTapConfirmed(e, mapView))
+                return true;
+        }
+        return false;
+    }
+
+    @Override public boolean onLongPress(MotionEvent e, MapView mapView){
+        if (!isEnabled())
+            return false;
+        for (Overlay overlay:getTouchableItems()){
+            if (overlay.onLongPress(e, mapView))
+                return true;
+        }
+        return false;
+    }
+
+    @Override public boolean onTouchEvent(MotionEvent e, MapView mapView){
+        if (!isEnabled())
+            return false;
+        for (Overlay overlay:getTouchableItems()){
+            if (overlay.onTouchEvent(e, mapView))
+                return true;
+        }
+        return false;
+    }
+
+    @Override public boolean onDoubleTap(MotionEvent e, MapView mapView){
+        if (!isEnabled())
+            return false;
+        for (Overlay overlay:getTouchableItems()){
+            if (overlay.onDoubleTap(e, mapView))
+                return true;
+        }
+        return false;
+    }
+
+    public void closeAllInfoWindows(){
+        for (ZOverlay item:mList){
+            if (item.mOverlay instanceof OverlayWithIW)
+                ((OverlayWithIW)item.mOverlay).closeInfoWindow();
+        }
+    }
+
+    @Override public void onDetach(MapView mapView){
+        for (ZOverlay item:mList)
+            item.mOverlay.onDetach(mapView);
+        mDrawn.clear();
+    }
 }
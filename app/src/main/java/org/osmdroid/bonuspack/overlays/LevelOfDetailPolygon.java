@@ -0,0 +1,98 @@
+package org.osmdroid.bonuspack.overlays;
+
+import android.graphics.Canvas;
+
+import org.osmdroid.bonuspack.utils.PolylinePyramid;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Polygon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polygon drawing, at each zoom level, only the points visible at this zoom - for its outline and its holes. <br>
+ *
+ * As LevelOfDetailPolyline, with one PolylinePyramid per ring, built at the first draw.
+ * The rings are replaced only when the integer zoom level changes.
+ */
+public class LevelOfDetailPolygon extends Polygon {
+
+	protected List<GeoPoint> mFullPoints;
+	protected List<List<GeoPoint>> mFullHoles;
+	protected PolylinePyramid mPyramid;
+	protected PolylinePyramid[] mHolePyramids;
+	protected int mLevel;
+
+	public LevelOfDetailPolygon(){
+		super();
+		mLevel = -1;
+	}
+
+	public LevelOfDetailPolygon(MapView mapView){
+		super(mapView);
+		mLevel = -1;
+	}
+
+	/** @param points the full outline. They are copied. */
+	@Override public void setPoints(List<GeoPoint> points){
+		mFullPoints = new ArrayList<>(points);
+		mPyramid = null;
+		mLevel = -1;
+		super.setPoints(points);
+	}
+
+	/** @param holes the full holes. They are copied. */
+	@Override public void setHoles(List<? extends List<GeoPoint>> holes){
+		mFullHoles = new ArrayList<>(holes.size());
+		for (List<GeoPoint> hole : holes)
+			mFullHoles.add(new ArrayList<>(hole));
+		mHolePyramids = null;
+		mLevel = -1;
+		super.setHoles(holes);
+	}
+
+	/** @return the full outline, whatever the level drawn */
+	public List<GeoPoint> getFullPoints(){
+		return mFullPoints;
+	}
+
+	/** @return the full holes, or null if none was set */
+	public List<List<GeoPoint>> getFullHoles(){
+		return mFullHoles;
+	}
+
+	@Override public void draw(Canvas canvas, Projection pj){
+		if (mPyramid == null && mFullPoints != null && mFullPoints.size() >= LevelOfDetailPolyline.MIN_POINTS)
+			mPyramid = new PolylinePyramid(mFullPoints);
+		if (mHolePyramids == null && mFullHoles != null){
+			mHolePyramids = new PolylinePyramid[mFullHoles.size()];
+			for (int i = 0; i < mHolePyramids.length; i++){
+				List<GeoPoint> hole = mFullHoles.get(i);
+				if (hole.size() >= LevelOfDetailPolyline.MIN_POINTS)
+					mHolePyramids[i] = new PolylinePyramid(hole);
+			}
+		}
+		int level = PolylinePyramid.getLevel(pj.getZoomLevel());
+		if (level != mLevel){
+			mLevel = level;
+			if (mPyramid != null)
+				super.setPoints(mPyramid.getPoints(level));
+			if (mHolePyramids != null){
+				List<List<GeoPoint>> holes = new ArrayList<>(mHolePyramids.length);
+				boolean simplified = false;
+				for (int i = 0; i < mHolePyramids.length; i++){
+					if (mHolePyramids[i] != null){
+						holes.add(mHolePyramids[i].getPoints(level));
+						simplified = true;
+					} else
+						holes.add(mFullHoles.get(i));
+				}
+				if (simplified)
+					super.setHoles(holes);
+			}
+		}
+		super.draw(canvas, pj);
+	}
+}
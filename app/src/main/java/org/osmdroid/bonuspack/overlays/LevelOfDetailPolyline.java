@@ -0,0 +1,83 @@
+package org.osmdroid.bonuspack.overlays;
+
+import android.graphics.Canvas;
+
+import org.osmdroid.bonuspack.utils.PolylinePyramid;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Polyline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polyline drawing, at each zoom level, only the points visible at this zoom. <br>
+ *
+ * The levels come from a PolylinePyramid, built at the first draw - or given with setPyramid.
+ * The points of the overlay are replaced only when the integer zoom level changes,
+ * so panning and fractional zooming keep the same points. <br>
+ *
+ * getActualPoints returns the points of the current level; getFullPoints the full polyline.
+ */
+public class LevelOfDetailPolyline extends Polyline {
+
+	/** polylines with less points are drawn as they are */
+	public static final int MIN_POINTS = 64;
+
+	protected List<GeoPoint> mFullPoints;
+	protected PolylinePyramid mPyramid;
+	protected int mLevel;
+
+	public LevelOfDetailPolyline(){
+		super();
+		mLevel = -1;
+	}
+
+	public LevelOfDetailPolyline(MapView mapView){
+		super(mapView);
+		mLevel = -1;
+	}
+
+	/** @param points the full polyline. They are copied. */
+	@Override public void setPoints(List<GeoPoint> points){
+		mFullPoints = new ArrayList<>(points);
+		mPyramid = null;
+		mLevel = -1;
+		super.setPoints(points);
+	}
+
+	/**
+	 * Set the polyline from an existing pyramid, which can be shared by several overlays.
+	 * The full points are set until the first draw.
+	 */
+	public void setPyramid(PolylinePyramid pyramid){
+		List<GeoPoint> points = pyramid.getPoints(PolylinePyramid.MAX_LEVEL);
+		mFullPoints = points;
+		mPyramid = pyramid;
+		mLevel = PolylinePyramid.MAX_LEVEL;
+		super.setPoints(points);
+	}
+
+	public PolylinePyramid getPyramid(){
+		return mPyramid;
+	}
+
+	/** @return the full polyline, whatever the level drawn */
+	public List<GeoPoint> getFullPoints(){
+		return mFullPoints;
+	}
+
+	@Override public void draw(Canvas canvas, Projection pj){
+		if (mPyramid == null && mFullPoints != null && mFullPoints.size() >= MIN_POINTS)
+			mPyramid = new PolylinePyramid(mFullPoints);
+		if (mPyramid != null){
+			int level = PolylinePyramid.getLevel(pj.getZoomLevel());
+			if (level != mLevel){
+				mLevel = level;
+				super.setPoints(mPyramid.getPoints(level));
+			}
+		}
+		super.draw(canvas, pj);
+	}
+}
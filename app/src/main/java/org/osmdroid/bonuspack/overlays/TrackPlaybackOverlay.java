@@ -0,0 +1,231 @@
+package org.osmdroid.bonuspack.overlays;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Point;
+import android.os.SystemClock;
+
+import org.osmdroid.bonuspack.kml.KmlDateTime;
+import org.osmdroid.bonuspack.kml.KmlTrack;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.PointL;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+/**
+ * Replay of a KmlTrack: draws the current position at the playback time, and the trail before it. <br>
+ *
+ * While playing, the time advances with the display frames, at a given speed, and the map is redrawn at each frame.
+ * The time can also be set directly, e.g. from a seek bar. <br>
+ *
+ * Each frame uses the time index of the track: a binary search for the position, and only the trail coords
+ * for the path - skipping those falling on the same pixel - so scrubbing stays smooth on long tracks.
+ * The coords are projected once for the track, and each frame only scales and shifts them to the screen. <br>
+ *
+ * After changing the track coords or times, call setTrack again.
+ */
+public class TrackPlaybackOverlay extends Overlay {
+
+	/** Receives the playback time at each frame, on the UI thread. */
+	public interface PlaybackListener {
+		void onTimeChanged(TrackPlaybackOverlay overlay, long time);
+	}
+
+	protected KmlTrack mTrack;
+	protected long mTime;
+	protected float mSpeed;
+	protected long mTrailDuration;
+	protected boolean mPlaying;
+	/** uptime of the last frame while playing, -1 if none yet */
+	protected long mLastFrameTime;
+	protected PlaybackListener mListener;
+	protected Paint mTrailPaint, mPositionPaint;
+	protected float mPositionRadius;
+
+	/** projected pixels (x, y) of the track coords, in time index order - independent of zoom and scroll. null if to compute. */
+	protected long[] mProjected;
+
+	//reused at each frame:
+	protected final GeoPoint mPosition = new GeoPoint(0.0, 0.0);
+	protected final GeoPoint mTrailStart = new GeoPoint(0.0, 0.0);
+	protected final Path mPath = new Path();
+	protected final Point mPixel = new Point();
+	protected final PointL mProjectedPixel = new PointL();
+	protected final PointL mLongPixel = new PointL();
+
+	public TrackPlaybackOverlay(){
+		super();
+		mSpeed = 60.0f;
+		mTrailDuration = 0;
+		mTrailPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		mTrailPaint.setStyle(Paint.Style.STROKE);
+		mTrailPaint.setStrokeWidth(6.0f);
+		mTrailPaint.setStrokeJoin(Paint.Join.ROUND);
+		mTrailPaint.setStrokeCap(Paint.Cap.ROUND);
+		mTrailPaint.setColor(Color.BLUE);
+		mPositionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		mPositionPaint.setColor(Color.RED);
+		mPositionRadius = 12.0f;
+	}
+
+	/** set the track to replay, and the time to its start */
+	public void setTrack(KmlTrack track){
+		mTrack = track;
+		mProjected = null;
+		mTime = (track != null ? track.getStartTime() : KmlDateTime.UNDEFINED);
+	}
+
+	public KmlTrack getTrack(){
+		return mTrack;
+	}
+
+	/** set the playback time, clipped to the track. The map view must then be invalidated. */
+	public void setTime(long time){
+		if (mTrack == null)
+			return;
+		long start = mTrack.getStartTime();
+		if (start == KmlDateTime.UNDEFINED)
+			return;
+		mTime = Math.min(Math.max(time, start), mTrack.getEndTime());
+	}
+
+	/** @return the playback time, in epoch milliseconds */
+	public long getTime(){
+		return mTime;
+	}
+
+	/** @param speed track milliseconds per real millisecond. Default is 60: a minute per second. */
+	public void setSpeed(float speed){
+		mSpeed = speed;
+	}
+
+	public float getSpeed(){
+		return mSpeed;
+	}
+
+	/** @param duration of the trail drawn before the current position, in milliseconds. 0 for the whole track since the start (default). */
+	public void setTrailDuration(long duration){
+		mTrailDuration = duration;
+	}
+
+	public void setListener(PlaybackListener listener){
+		mListener = listener;
+	}
+
+	public Paint getTrailPaint(){
+		return mTrailPaint;
+	}
+
+	public Paint getPositionPaint(){
+		return mPositionPaint;
+	}
+
+	public void setPositionRadius(float radius){
+		mPositionRadius = radius;
+	}
+
+	/** start playing from the current time - from the start if at the end. */
+	public void play(MapView mapView){
+		if (mTrack == null || mTrack.getStartTime() == KmlDateTime.UNDEFINED)
+			return;
+		if (mTime >= mTrack.getEndTime())
+			mTime = mTrack.getStartTime();
+		mPlaying = true;
+		mLastFrameTime = -1;
+		mapView.postInvalidate();
+	}
+
+	public void pause(){
+		mPlaying = false;
+	}
+
+	public boolean isPlaying(){
+		return mPlaying;
+	}
+
+	/** advance the time of a playing frame, stopping at the end of the track */
+	protected void advance(long frameTime){
+		if (mLastFrameTime >= 0){
+			long time = mTime + (long)((frameTime - mLastFrameTime) * mSpeed);
+			long end = mTrack.getEndTime();
+			if (time >= end){
+				time = end;
+				mPlaying = false;
+			}
+			mTime = time;
+		}
+		mLastFrameTime = frameTime;
+	}
+
+	@Override public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+		if (shadow || mTrack == null || mTime == KmlDateTime.UNDEFINED)
+			return;
+		if (mPlaying){
+			advance(SystemClock.uptimeMillis());
+			if (mListener != null)
+				mListener.onTimeChanged(this, mTime);
+		}
+		Projection pj = mapView.getProjection();
+		if (mTrack.getPositionAt(mTime, mPosition) != null){
+			long start = (mTrailDuration > 0 ? mTime - mTrailDuration : Long.MIN_VALUE);
+			drawTrail(canvas, pj, Math.max(start, mTrack.getStartTime()), mTime);
+			pj.toPixels(mPosition, mPixel);
+			canvas.drawCircle(mPixel.x, mPixel.y, mPositionRadius, mPositionPaint);
+		}
+		if (mPlaying)
+			mapView.postInvalidateOnAnimation();
+	}
+
+	/** project the track coords, once for all frames */
+	protected void projectTrack(Projection pj){
+		int n = mTrack.getTimeIndexSize();
+		long[] projected = new long[n*2];
+		for (int k=0; k<n; k++){
+			GeoPoint p = mTrack.getTimeIndexPoint(k);
+			pj.toProjectedPixels(p.getLatitude(), p.getLongitude(), mProjectedPixel);
+			projected[2*k] = mProjectedPixel.x;
+			projected[2*k+1] = mProjectedPixel.y;
+		}
+		mProjected = projected;
+	}
+
+	/** draw the trail from start to end - the current position, already set - skipping coords falling on the same pixel */
+	protected void drawTrail(Canvas canvas, Projection pj, long start, long end){
+		if (start >= end)
+			return;
+		if (mProjected == null || mProjected.length != 2*mTrack.getTimeIndexSize())
+			projectTrack(pj);
+		mPath.rewind();
+		mTrack.getPositionAt(start, mTrailStart);
+		pj.toPixels(mTrailStart, mPixel);
+		mPath.moveTo(mPixel.x, mPixel.y);
+		int lastX = mPixel.x, lastY = mPixel.y;
+		double powerDifference = pj.getProjectedPowerDifference();
+		int last = mTrack.floorTimeIndex(end);
+		for (int k = mTrack.floorTimeIndex(start) + 1; k <= last; k++){
+			mProjectedPixel.x = mProjected[2*k];
+			mProjectedPixel.y = mProjected[2*k+1];
+			pj.getLongPixelsFromProjected(mProjectedPixel, powerDifference, true, mLongPixel);
+			int x = TileSystem.truncateToInt(mLongPixel.x);
+			int y = TileSystem.truncateToInt(mLongPixel.y);
+			if (x != lastX || y != lastY){
+				mPath.lineTo(x, y);
+				lastX = x;
+				lastY = y;
+			}
+		}
+		pj.toPixels(mPosition, mPixel);
+		if (mPixel.x != lastX || mPixel.y != lastY)
+			mPath.lineTo(mPixel.x, mPixel.y);
+		canvas.drawPath(mPath, mTrailPaint);
+	}
+
+	@Override public void onDetach(MapView mapView){
+		mPlaying = false;
+		super.onDetach(mapView);
+	}
+}
@@ -0,0 +1,283 @@
+package org.osmdroid.bonuspack.routing;
+
+import android.util.Log;
+
+import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.Distance;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * RoadManager decorator, keeping the roads found by any other RoadManager in a persistent RoadFileCache. <br>
+ * Only roads properly retrieved (STATUS_OK) are cached. <br>
+ *
+ * Each mean of transportation has its own time-to-live: a car road may change with traffic restrictions
+ * much more often than a footpath. <br>
+ *
+ * Waypoints are snapped to a grid before building the cache key, so that requests from nearby positions
+ * share the same entry. A cached road is reused only if its shape passes within a tolerance
+ * of all the requested waypoints, in the requested order. <br>
+ *
+ * Usage: <br>
+ * RoadManager roadManager = new CachingRoadManager(new OSRMRoadManager(context, userAgent), context.getCacheDir()); <br>
+ * This is blocking, as all RoadManagers: call it from a background thread.
+ *
+ * @see RoadFileCache
+ */
+public class CachingRoadManager extends RoadManager {
+
+	/** mean used for RoadManagers not exposing their mean of transportation */
+	public static final String MEAN_DEFAULT = "";
+
+	public static final long DEFAULT_MAX_BYTES = 20L*1024*1024;
+	public static final long HOUR = 3600L*1000;
+	public static final double DEFAULT_CELL_SIZE = 30.0;
+	public static final double DEFAULT_TOLERANCE = 50.0;
+	protected static final double METERS_PER_DEGREE = 111319.49;
+
+	protected final RoadManager mRoadManager;
+	protected final RoadFileCache mCache;
+	protected final HashMap<String, Long> mTimeToLive;
+	protected long mDefaultTimeToLive;
+	/** grid cell size in meters, 0 for exact waypoints in keys */
+	protected double mCellSize;
+	/** max distance in meters between a waypoint and the shape of a cached road */
+	protected double mTolerance;
+
+	/**
+	 * @param roadManager the RoadManager actually requesting the routing service.
+	 * @param cacheDir directory where the "roads" sub-directory will be created.
+	 * @param maxBytes byte budget of the cache on disk.
+	 */
+	public CachingRoadManager(RoadManager roadManager, File cacheDir, long maxBytes){
+		super();
+		mRoadManager = roadManager;
+		mCache = new RoadFileCache(new File(cacheDir, "roads"), maxBytes);
+		mTimeToLive = new HashMap<>();
+		mTimeToLive.put(OSRMRoadManager.MEAN_BY_CAR, 24*HOUR);
+		mTimeToLive.put(OSRMRoadManager.MEAN_BY_BIKE, 7*24*HOUR);
+		mTimeToLive.put(OSRMRoadManager.MEAN_BY_FOOT, 7*24*HOUR);
+		mDefaultTimeToLive = 24*HOUR;
+		mCellSize = DEFAULT_CELL_SIZE;
+		mTolerance = DEFAULT_TOLERANCE;
+	}
+
+	public CachingRoadManager(RoadManager roadManager, File cacheDir){
+		this(roadManager, cacheDir, DEFAULT_MAX_BYTES);
+	}
+
+	/** @return the decorated RoadManager, for instance to change its mean */
+	public RoadManager getRoadManager(){
+		return mRoadManager;
+	}
+
+	public RoadFileCache getCache(){
+		return mCache;
+	}
+
+	/**
+	 * Set how long a road remains valid in the cache, for a mean of transportation.
+	 * @param mean OSRMRoadManager.MEAN_BY_CAR, MEAN_BY_BIKE, MEAN_BY_FOOT, or MEAN_DEFAULT.
+	 * @param timeToLive in ms
+	 */
+	public void setTimeToLive(String mean, long timeToLive){
+		if (MEAN_DEFAULT.equals(mean))
+			mDefaultTimeToLive = timeToLive;
+		else
+			mTimeToLive.put(mean, timeToLive);
+	}
+
+	public long getTimeToLive(String mean){
+		Long ttl = mTimeToLive.get(mean);
+		return (ttl != null ? ttl : mDefaultTimeToLive);
+	}
+
+	/**
+	 * Set how waypoints are snapped in cache keys. Default is a 30m grid, with a 50m tolerance.
+	 * @param cellSize grid cell size in meters. 0 means exact waypoints: no reuse for nearby positions.
+	 * @param tolerance max distance in meters between a requested waypoint and the shape of a cached road.
+	 * Should be greater than the cell diagonal.
+	 */
+	public void setQuantization(double cellSize, double tolerance){
+		mCellSize = cellSize;
+		mTolerance = tolerance;
+	}
+
+	/** Options are passed to the decorated RoadManager, and are part of the cache key. */
+	@Override public void addRequestOption(String requestOption){
+		mRoadManager.addRequestOption(requestOption);
+	}
+
+	/** @return the mean of transportation currently used by the decorated RoadManager */
+	protected String getMean(){
+		if (mRoadManager instanceof OSRMRoadManager)
+			return ((OSRMRoadManager)mRoadManager).mMeanUrl;
+		else
+			return MEAN_DEFAULT;
+	}
+
+	/**
+	 * @return the part of the cache key which does not depend on waypoints.
+	 * It includes the RoadManager class and options, as the same waypoints may give different roads.
+	 */
+	protected String getKeyPrefix(boolean getAlternate){
+		return mRoadManager.getClass().getSimpleName() + '|' + getMean() + '|' + mRoadManager.mOptions
+				+ '|' + (getAlternate ? 'A' : 'S');
+	}
+
+	/** @return the grid cell containing p, as "latIndex:lonIndex", or the exact position if quantization is disabled. */
+	protected String getCell(GeoPoint p){
+		if (mCellSize <= 0.0)
+			return geoPointAsString(p);
+		double cellLat = mCellSize / METERS_PER_DEGREE;
+		long latIndex = (long)Math.floor(p.getLatitude() / cellLat);
+		//cells have the same width in meters, using the latitude of the cell row:
+		double cos = Math.max(Math.cos(Math.toRadians((latIndex+0.5)*cellLat)), 0.01);
+		long lonIndex = (long)Math.floor(p.getLongitude() / (cellLat / cos));
+		return latIndex + ":" + lonIndex;
+	}
+
+	/** @return the cells around p (including the cell of p), to find entries stored from the other side of a cell border */
+	protected ArrayList<String> getNeighbourCells(GeoPoint p){
+		LinkedHashSet<String> cells = new LinkedHashSet<>(9);
+		cells.add(getCell(p));
+		if (mCellSize > 0.0){
+			double dLat = mCellSize / METERS_PER_DEGREE;
+			double dLon = dLat / Math.max(Math.cos(Math.toRadians(p.getLatitude())), 0.01);
+			for (int i=-1; i<=1; i++){
+				for (int j=-1; j<=1; j++)
+					cells.add(getCell(new GeoPoint(p.getLatitude() + i*dLat, p.getLongitude() + j*dLon)));
+			}
+		}
+		return new ArrayList<>(cells);
+	}
+
+	/** @return the cache key for this request, with waypoints snapped to the grid. */
+	protected String getKey(ArrayList<GeoPoint> waypoints, boolean getAlternate){
+		StringBuilder key = new StringBuilder(getKeyPrefix(getAlternate));
+		for (GeoPoint p : waypoints)
+			key.append('|').append(getCell(p));
+		return key.toString();
+	}
+
+	/**
+	 * @return the candidate keys for this request: exact cells first,
+	 * then the neighbour cells of the start and destination (intermediate waypoints must be in the exact cell).
+	 */
+	protected ArrayList<String> getCandidateKeys(ArrayList<GeoPoint> waypoints, boolean getAlternate){
+		ArrayList<String> keys = new ArrayList<>();
+		String exactKey = getKey(waypoints, getAlternate);
+		keys.add(exactKey);
+		int n = waypoints.size();
+		if (mCellSize <= 0.0 || n < 2)
+			return keys;
+		StringBuilder middle = new StringBuilder();
+		for (int i=1; i<n-1; i++)
+			middle.append('|').append(getCell(waypoints.get(i)));
+		String prefix = getKeyPrefix(getAlternate);
+		ArrayList<String> startCells = getNeighbourCells(waypoints.get(0));
+		ArrayList<String> endCells = getNeighbourCells(waypoints.get(n-1));
+		for (String startCell : startCells){
+			for (String endCell : endCells){
+				String key = prefix + '|' + startCell + middle + '|' + endCell;
+				if (!key.equals(exactKey))
+					keys.add(key);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * @return true if the road shape passes within the tolerance of all the waypoints, in the same order.
+	 */
+	protected boolean matches(Road road, ArrayList<GeoPoint> waypoints){
+		PackedPolyline shape = road.mRouteHigh;
+		if (shape == null || shape.isEmpty())
+			return false;
+		double lastPosition = 0.0;
+		for (GeoPoint waypoint : waypoints){
+			double position = getPosition(shape, road.mBoundingBox, waypoint, lastPosition);
+			if (position < 0.0)
+				return false;
+			lastPosition = position;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the position of p along the shape, as a segment index plus the fraction of this segment,
+	 * on the first segment from fromPosition which is within the tolerance of p, or -1 if none.
+	 * On the segment of fromPosition, p may not be before fromPosition by more than the tolerance.
+	 */
+	protected double getPosition(PackedPolyline shape, BoundingBox bb, GeoPoint p, double fromPosition){
+		double lat0 = p.getLatitude();
+		double lon0 = p.getLongitude();
+		double toleranceLat = mTolerance / METERS_PER_DEGREE;
+		if (bb != null && (lat0 > bb.getLatNorth() + toleranceLat || lat0 < bb.getLatSouth() - toleranceLat))
+			return -1.0;
+		//local equirectangular projection around p, in meters:
+		double kx = Math.cos(Math.toRadians(lat0)) * METERS_PER_DEGREE;
+		double toleranceSquared = mTolerance * mTolerance;
+		int n = shape.size();
+		if (n == 1){
+			double ax = (shape.getLongitude(0) - lon0) * kx;
+			double ay = (shape.getLatitude(0) - lat0) * METERS_PER_DEGREE;
+			return (ax*ax + ay*ay <= toleranceSquared ? 0.0 : -1.0);
+		}
+		//the end of the last segment is in this segment:
+		int fromSegment = Math.min((int)fromPosition, n-2);
+		double ax = (shape.getLongitude(fromSegment) - lon0) * kx;
+		double ay = (shape.getLatitude(fromSegment) - lat0) * METERS_PER_DEGREE;
+		for (int i=fromSegment; i<n-1; i++){
+			double bx = (shape.getLongitude(i+1) - lon0) * kx;
+			double by = (shape.getLatitude(i+1) - lat0) * METERS_PER_DEGREE;
+			if (Distance.getSquaredDistanceToSegment(0, 0, ax, ay, bx, by) <= toleranceSquared){
+				double factor = Distance.getProjectionFactorToSegment(0, 0, ax, ay, bx, by);
+				if (i > fromSegment)
+					return i + factor;
+				double back = (fromPosition - i - factor) * Math.sqrt((bx-ax)*(bx-ax) + (by-ay)*(by-ay));
+				if (back <= mTolerance)
+					return i + factor;
+			}
+			ax = bx;
+			ay = by;
+		}
+		return -1.0;
+	}
+
+	protected Road[] getRoads(ArrayList<GeoPoint> waypoints, boolean getAlternate){
+		long timeToLive = getTimeToLive(getMean());
+		ArrayList<String> keys = getCandidateKeys(waypoints, getAlternate);
+		for (String key : keys){
+			if (!mCache.contains(key))
+				continue;
+			Road[] roads = mCache.get(key, timeToLive);
+			if (roads != null && (mCellSize <= 0.0 || matches(roads[0], waypoints))){
+				Log.d(BonusPackHelper.LOG_TAG, "CachingRoadManager: cache hit");
+				return roads;
+			}
+		}
+		Road[] roads;
+		if (getAlternate)
+			roads = mRoadManager.getRoads(waypoints);
+		else
+			roads = new Road[]{ mRoadManager.getRoad(waypoints) };
+		if (roads.length > 0 && roads[0].mStatus == Road.STATUS_OK)
+			mCache.put(keys.get(0), roads);
+		return roads;
+	}
+
+	@Override public Road[] getRoads(ArrayList<GeoPoint> waypoints){
+		return getRoads(waypoints, true);
+	}
+
+	@Override public Road getRoad(ArrayList<GeoPoint> waypoints){
+		return getRoads(waypoints, false)[0];
+	}
+}
@@ -4,6 +4,7 @@ import android.util.Log;
 
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
 import org.osmdroid.bonuspack.utils.HttpConnection;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
 import org.osmdroid.bonuspack.utils.PolylineEncoder;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
@@ -15,6 +16,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -66,16 +68,33 @@ public class GoogleRoadManager extends RoadManager {
 	 * @param waypoints list of GeoPoints. Must have at least 2 entries, start and end points. 
 	 * @return the roads
 	 */
-	protected Road[] getRoads(ArrayList<GeoPoint> waypoints, boolean getAlternate) {
-		String url = getUrl(waypoints, getAlternate);
+	protected Road[] getRoads(final ArrayList<GeoPoint> waypoints, boolean getAlternate) {
+		final String url = getUrl(waypoints, getAlternate);
 		Log.d(BonusPackHelper.LOG_TAG, "GoogleRoadManager.getRoads:" + url);
+		Road[] roads = requestRoads(url, new Callable<Road[]>() {
+			@Override public Road[] call() {
+				return fetchRoads(url, waypoints);
+			}
+		});
+		if (roads == null){
+			roads = new Road[1];
+			roads[0] = new Road(waypoints);
+		}
+		return roads;
+	}
+
+	/** request the Google service, and parse its response */
+	protected Road[] fetchRoads(String url, ArrayList<GeoPoint> waypoints) {
 		Road[] roads = null;
 		HttpConnection connection = new HttpConnection();
-		connection.doGet(url);
-		InputStream stream = connection.getStream();
-		if (stream != null)
-			roads = getRoadsXML(stream);
-		connection.close();
+		try {
+			connection.doGet(url);
+			InputStream stream = connection.getStream();
+			if (stream != null)
+				roads = getRoadsXML(stream);
+		} finally {
+			connection.close();
+		}
 		if (roads == null || roads.length==0){
 			//Create default road:
 			roads = new Road[1];
@@ -178,7 +197,7 @@ class GoogleDirectionsHandler extends DefaultHandler {
 		if (localName.equals("points")) {
 			if (isPolyline) {
 				//detailed piece of road for the step, to add:
-				ArrayList<GeoPoint> polyLine = PolylineEncoder.decode(mStringBuilder.toString(), 10, false);
+				PackedPolyline polyLine = PolylineEncoder.decodePacked(mStringBuilder.toString(), 10, false);
 				mCurrentRoad.mRouteHigh.addAll(polyLine);
 			} else if (isOverviewPolyline){
 				//low-def polyline for the whole road:
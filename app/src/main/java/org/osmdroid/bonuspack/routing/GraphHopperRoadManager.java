@@ -12,6 +12,7 @@ import org.osmdroid.util.GeoPoint;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 /** get a route between a start and a destination point, going through a list of waypoints.
  * It uses GraphHopper, an open source routing service based on OpenSteetMap data. <br>
@@ -90,9 +91,19 @@ public class GraphHopperRoadManager extends RoadManager {
 		return roads;
 	}
 
-	public Road[] getRoads(ArrayList<GeoPoint> waypoints, boolean getAlternate) {
-		String url = getUrl(waypoints, getAlternate);
+	public Road[] getRoads(final ArrayList<GeoPoint> waypoints, boolean getAlternate) {
+		final String url = getUrl(waypoints, getAlternate);
 		Log.d(BonusPackHelper.LOG_TAG, "GraphHopper.getRoads:" + url);
+		Road[] roads = requestRoads(url, new Callable<Road[]>() {
+			@Override public Road[] call() {
+				return fetchRoads(url, waypoints);
+			}
+		});
+		return (roads != null ? roads : defaultRoad(waypoints));
+	}
+
+	/** request the GraphHopper service, and parse its response */
+	protected Road[] fetchRoads(String url, ArrayList<GeoPoint> waypoints) {
 		String jString = BonusPackHelper.requestStringFromUrl(url);
 		if (jString == null) {
 			return defaultRoad(waypoints);
@@ -114,7 +125,7 @@ public class GraphHopperRoadManager extends RoadManager {
 				String route_geometry = jPath.getString("points");
 				Road road = new Road();
 				roads[r] = road;
-				road.mRouteHigh = PolylineEncoder.decode(route_geometry, 10, mWithElevation);
+				road.mRouteHigh = PolylineEncoder.decodePacked(route_geometry, 10, mWithElevation);
 				JSONArray jInstructions = jPath.getJSONArray("instructions");
 				int n = jInstructions.length();
 				for (int i = 0; i < n; i++) {
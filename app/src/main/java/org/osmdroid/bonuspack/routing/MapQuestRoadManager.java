@@ -5,9 +5,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
 
 /** class to get a route between a start and a destination point, going through a list of waypoints.
  *
@@ -70,9 +72,21 @@ public class MapQuestRoadManager extends RoadManager {
      * @param waypoints list of GeoPoints. Must have at least 2 entries, start and end points.
      * @return the road
      */
-    @Override public Road getRoad(ArrayList<GeoPoint> waypoints) {
-        String url = getUrl(waypoints);
+    @Override public Road getRoad(final ArrayList<GeoPoint> waypoints) {
+        final String url = getUrl(waypoints);
         Log.d(BonusPackHelper.LOG_TAG, "MapQuestRoadManager.getRoute:"+url);
+        Road[] roads = requestRoads(url, new Callable<Road[]>() {
+            @Override public Road[] call() {
+                Road[] result = new Road[1];
+                result[0] = fetchRoad(url, waypoints);
+                return result;
+            }
+        });
+        return (roads != null ? roads[0] : new Road(waypoints));
+    }
+
+    /** request the MapQuest service, and parse its response */
+    protected Road fetchRoad(String url, ArrayList<GeoPoint> waypoints) {
         String jString = BonusPackHelper.requestStringFromUrl(url);
         if (jString == null) {
             return new Road(waypoints);
@@ -119,12 +133,11 @@ public class MapQuestRoadManager extends RoadManager {
             //road.mRouteHigh = PolylineEncoder.decode(shape, 1, false);
             JSONArray jShape = jGuidance.getJSONArray("shapePoints");
             n = jShape.length();
-            road.mRouteHigh = new ArrayList<>(n);
+            road.mRouteHigh = new PackedPolyline(n/2);
             for (int i=0; i<n/2; i++){
                 double lat = jShape.getDouble(i*2);
                 double lng = jShape.getDouble(i*2+1);
-                GeoPoint p = new GeoPoint(lat, lng);
-                road.mRouteHigh.add(p);
+                road.mRouteHigh.add(PackedPolyline.toE6(lat), PackedPolyline.toE6(lng));
             }
 
             JSONObject jSummary = jGuidance.getJSONObject("summary");
@@ -158,7 +171,7 @@ public class MapQuestRoadManager extends RoadManager {
     }
 
     protected ArrayList<RoadNode> finalizeNodes(ArrayList<RoadNode> mNodes,
-                                                ArrayList<RoadLink> mLinks, ArrayList<GeoPoint> polyline){
+                                                ArrayList<RoadLink> mLinks, PackedPolyline polyline){
         int n = mNodes.size();
         if (n == 0)
             return mNodes;
@@ -190,14 +203,14 @@ public class MapQuestRoadManager extends RoadManager {
      * Clean-up 2 useless portions of MapQuest road shape: before start node, and after end node.
      * @return new road shape
      */
-    public ArrayList<GeoPoint> finalizeRoadShape(Road road, ArrayList<RoadLink> links){
-        ArrayList<GeoPoint> newShape = new ArrayList<GeoPoint>(road.mRouteHigh.size());
+    public PackedPolyline finalizeRoadShape(Road road, ArrayList<RoadLink> links){
+        PackedPolyline newShape = new PackedPolyline(road.mRouteHigh.size());
         RoadNode nodeStart = road.mNodes.get(0);
         RoadNode nodeEnd = road.mNodes.get(road.mNodes.size()-1);
         int shapeIndexStart = links.get(nodeStart.mNextRoadLink).mShapeIndex;
         int shapeIndexEnd = links.get(nodeEnd.mNextRoadLink).mShapeIndex;
         for (int i=shapeIndexStart; i<=shapeIndexEnd; i++){
-            newShape.add(road.mRouteHigh.get(i));
+            newShape.add(road.mRouteHigh.getLatitudeE6(i), road.mRouteHigh.getLongitudeE6(i));
         }
         return newShape;
     }
@@ -3,17 +3,23 @@ package org.osmdroid.bonuspack.routing;
 import android.content.Context;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 import com.example.minideliveryapp.R;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.HttpConnection;
 import org.osmdroid.bonuspack.utils.PolylineEncoder;
-import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 /** get a route between a start and a destination point, going through a list of waypoints.
  * It uses OSRM, a free open source routing service based on OpenSteetMap data. <br>
@@ -63,6 +69,7 @@ public class OSRMRoadManager extends RoadManager {
 		MANEUVERS.put("roundabout-6", 32);
 		MANEUVERS.put("roundabout-7", 33);
 		MANEUVERS.put("roundabout-8", 34); //Round-about, 8th exit
+		MANEUVERS.put("roundabout", 35); //Round-about, exit not given
 		//TODO: other OSRM types to handle properly:
 		MANEUVERS.put("merge-left", 20);
 		MANEUVERS.put("merge-sharp left", 20);
@@ -115,6 +122,7 @@ public class OSRMRoadManager extends RoadManager {
 		DIRECTIONS.put(32, R.string.osmbonuspack_directions_32);
 		DIRECTIONS.put(33, R.string.osmbonuspack_directions_33);
 		DIRECTIONS.put(34, R.string.osmbonuspack_directions_34);
+		DIRECTIONS.put(35, R.string.osmbonuspack_directions_35);
 	}
 
 	public OSRMRoadManager(Context context, String userAgent){
@@ -188,94 +196,194 @@ public class OSRMRoadManager extends RoadManager {
 		return roads;
 	}
 
-	protected Road[] getRoads(ArrayList<GeoPoint> waypoints, boolean getAlternate) {
-		String url = getUrl(waypoints, getAlternate);
+	protected Road[] getRoads(final ArrayList<GeoPoint> waypoints, boolean getAlternate) {
+		final String url = getUrl(waypoints, getAlternate);
 		Log.d(BonusPackHelper.LOG_TAG, "OSRMRoadManager.getRoads:" + url);
-		String jString = BonusPackHelper.requestStringFromUrl(url, mUserAgent);
-		if (jString == null) {
-			Log.e(BonusPackHelper.LOG_TAG, "OSRMRoadManager::getRoad: request failed.");
-			return defaultRoad(waypoints);
+		Road[] roads = requestRoads(url, new Callable<Road[]>() {
+			@Override public Road[] call() {
+				return fetchRoads(url, waypoints);
+			}
+		});
+		return (roads != null ? roads : defaultRoad(waypoints));
+	}
+
+	/** request the OSRM service, and parse its response */
+	protected Road[] fetchRoads(String url, ArrayList<GeoPoint> waypoints) {
+		HttpConnection connection = new HttpConnection();
+		try {
+			if (mUserAgent != null)
+				connection.setUserAgent(mUserAgent);
+			connection.doGet(url);
+			InputStream stream = connection.getStream();
+			if (stream == null) {
+				Log.e(BonusPackHelper.LOG_TAG, "OSRMRoadManager::getRoad: request failed.");
+				return defaultRoad(waypoints);
+			}
+			return getRoadsFromStream(new InputStreamReader(stream, StandardCharsets.UTF_8), waypoints);
+		} finally {
+			connection.close();
 		}
+	}
 
+	/**
+	 * Parse an OSRM response while reading it, without building an intermediate JSON tree.
+	 * Members can come in any order. Unused members (steps geometries, intersections, waypoints...) are skipped.
+	 * @param reader the OSRM response
+	 * @param waypoints the requested waypoints, to build a default road in case of error.
+	 */
+	protected Road[] getRoadsFromStream(Reader reader, ArrayList<GeoPoint> waypoints) {
+		JsonReader jReader = new JsonReader(reader);
+		String jCode = null;
+		ArrayList<Road> roads = new ArrayList<>(1);
 		try {
-			JSONObject jObject = new JSONObject(jString);
-			String jCode = jObject.getString("code");
-			if (!"Ok".equals(jCode)) {
-				Log.e(BonusPackHelper.LOG_TAG, "OSRMRoadManager::getRoad: error code=" + jCode);
-				Road[] roads = defaultRoad(waypoints);
-				if ("NoRoute".equals(jCode)) {
-					roads[0].mStatus = Road.STATUS_INVALID;
-				}
-				return roads;
-			} else {
-				JSONArray jRoutes = jObject.getJSONArray("routes");
-				Road[] roads = new Road[jRoutes.length()];
-				for (int i=0; i<jRoutes.length(); i++){
-					Road road = new Road();
-					roads[i] = road;
-					road.mStatus = Road.STATUS_OK;
-					JSONObject jRoute = jRoutes.getJSONObject(i);
-					String route_geometry = jRoute.getString("geometry");
-					road.mRouteHigh = PolylineEncoder.decode(route_geometry, 10, false);
-					road.mBoundingBox = BoundingBox.fromGeoPoints(road.mRouteHigh);
-					road.mLength = jRoute.getDouble("distance") / 1000.0;
-					road.mDuration = jRoute.getDouble("duration");
-					//legs:
-					JSONArray jLegs = jRoute.getJSONArray("legs");
-					for (int l=0; l<jLegs.length(); l++) {
-						//leg:
-						JSONObject jLeg = jLegs.getJSONObject(l);
-						RoadLeg leg = new RoadLeg();
-						road.mLegs.add(leg);
-						leg.mLength = jLeg.getDouble("distance");
-						leg.mDuration = jLeg.getDouble("duration");
-						//steps:
-						JSONArray jSteps = jLeg.getJSONArray("steps");
-						RoadNode lastNode = null;
-						String lastRoadName = "";
-						for (int s=0; s<jSteps.length(); s++) {
-							JSONObject jStep = jSteps.getJSONObject(s);
-							RoadNode node = new RoadNode();
-							node.mLength = jStep.getDouble("distance") / 1000.0;
-							node.mDuration = jStep.getDouble("duration");
-							JSONObject jStepManeuver = jStep.getJSONObject("maneuver");
-							JSONArray jLocation = jStepManeuver.getJSONArray("location");
-							node.mLocation = new GeoPoint(jLocation.getDouble(1), jLocation.getDouble(0));
-							String direction = jStepManeuver.getString("type");
-							if (direction.equals("turn") || direction.equals("ramp") || direction.equals("merge")){
-								String modifier = jStepManeuver.getString("modifier");
-								direction = direction + '-' + modifier;
-							} else if (direction.equals("roundabout")){
-								int exit = jStepManeuver.getInt("exit");
-								direction = direction + '-' + exit;
-							} else if (direction.equals("rotary")) {
-								int exit = jStepManeuver.getInt("exit");
-								direction = "roundabout" + '-' + exit; //convert rotary in roundabout...
-							}
-							node.mManeuverType = getManeuverCode(direction);
-							String roadName = jStep.optString("name", "");
-							node.mInstructions = buildInstructions(node.mManeuverType, roadName);
-							if (lastNode != null && node.mManeuverType == 2 && lastRoadName.equals(roadName)) {
-								//workaround for https://github.com/Project-OSRM/osrm-backend/issues/2273
-								//"new name", but identical to previous name:
-								//skip, but update values of last node:
-								lastNode.mDuration += node.mDuration;
-								lastNode.mLength += node.mLength;
-							} else {
-								road.mNodes.add(node);
-								lastNode = node;
-								lastRoadName = roadName;
-							}
-						} //steps
-					} //legs
-				} //routes
-				Log.d(BonusPackHelper.LOG_TAG, "OSRMRoadManager.getRoads - finished");
-				return roads;
-			} //if code is Ok
-		} catch (JSONException e) {
+			jReader.beginObject();
+			while (jReader.hasNext()) {
+				String name = jReader.nextName();
+				if ("code".equals(name)) {
+					jCode = jReader.nextString();
+				} else if ("routes".equals(name)) {
+					jReader.beginArray();
+					while (jReader.hasNext())
+						roads.add(readRoute(jReader));
+					jReader.endArray();
+				} else
+					jReader.skipValue();
+			}
+			jReader.endObject();
+		} catch (IOException | IllegalStateException | NumberFormatException e) {
 			e.printStackTrace();
 			return defaultRoad(waypoints);
 		}
+		if (!"Ok".equals(jCode)) {
+			Log.e(BonusPackHelper.LOG_TAG, "OSRMRoadManager::getRoad: error code=" + jCode);
+			Road[] defaultRoads = defaultRoad(waypoints);
+			if ("NoRoute".equals(jCode)) {
+				defaultRoads[0].mStatus = Road.STATUS_INVALID;
+			}
+			return defaultRoads;
+		}
+		Log.d(BonusPackHelper.LOG_TAG, "OSRMRoadManager.getRoads - finished");
+		return roads.toArray(new Road[0]);
+	}
+
+	protected Road readRoute(JsonReader jReader) throws IOException {
+		Road road = new Road();
+		road.mStatus = Road.STATUS_OK;
+		jReader.beginObject();
+		while (jReader.hasNext()) {
+			String name = jReader.nextName();
+			if ("geometry".equals(name)) {
+				road.mRouteHigh = PolylineEncoder.decodePacked(jReader.nextString(), 10, false);
+				road.mBoundingBox = road.mRouteHigh.getBoundingBox();
+			} else if ("distance".equals(name)) {
+				road.mLength = jReader.nextDouble() / 1000.0;
+			} else if ("duration".equals(name)) {
+				road.mDuration = jReader.nextDouble();
+			} else if ("legs".equals(name)) {
+				jReader.beginArray();
+				while (jReader.hasNext())
+					readLeg(jReader, road);
+				jReader.endArray();
+			} else
+				jReader.skipValue();
+		}
+		jReader.endObject();
+		return road;
+	}
+
+	protected void readLeg(JsonReader jReader, Road road) throws IOException {
+		RoadLeg leg = new RoadLeg();
+		road.mLegs.add(leg);
+		jReader.beginObject();
+		while (jReader.hasNext()) {
+			String name = jReader.nextName();
+			if ("distance".equals(name)) {
+				leg.mLength = jReader.nextDouble();
+			} else if ("duration".equals(name)) {
+				leg.mDuration = jReader.nextDouble();
+			} else if ("steps".equals(name)) {
+				RoadNode lastNode = null;
+				String lastRoadName = "";
+				jReader.beginArray();
+				while (jReader.hasNext()) {
+					RoadNode node = new RoadNode();
+					String roadName = "";
+					String direction = "";
+					jReader.beginObject();
+					while (jReader.hasNext()) {
+						String stepName = jReader.nextName();
+						if ("distance".equals(stepName)) {
+							node.mLength = jReader.nextDouble() / 1000.0;
+						} else if ("duration".equals(stepName)) {
+							node.mDuration = jReader.nextDouble();
+						} else if ("name".equals(stepName)) {
+							roadName = nextStringOrEmpty(jReader);
+						} else if ("maneuver".equals(stepName)) {
+							direction = readManeuver(jReader, node);
+						} else
+							jReader.skipValue();
+					}
+					jReader.endObject();
+					node.mManeuverType = getManeuverCode(direction);
+					node.mInstructions = buildInstructions(node.mManeuverType, roadName);
+					if (lastNode != null && node.mManeuverType == 2 && lastRoadName.equals(roadName)) {
+						//workaround for https://github.com/Project-OSRM/osrm-backend/issues/2273
+						lastNode.mDuration += node.mDuration;
+						lastNode.mLength += node.mLength;
+					} else {
+						road.mNodes.add(node);
+						lastNode = node;
+						lastRoadName = roadName;
+					}
+				}
+				jReader.endArray();
+			} else
+				jReader.skipValue();
+		}
+		jReader.endObject();
+	}
+
+	/**
+	 * Read a StepManeuver object, setting the node location.
+	 * @return the direction, as a key of MANEUVERS
+	 */
+	protected String readManeuver(JsonReader jReader, RoadNode node) throws IOException {
+		String type = "";
+		String modifier = null;
+		int exit = 0;
+		jReader.beginObject();
+		while (jReader.hasNext()) {
+			String name = jReader.nextName();
+			if ("type".equals(name)) {
+				type = jReader.nextString();
+			} else if ("modifier".equals(name)) {
+				modifier = nextStringOrEmpty(jReader);
+			} else if ("exit".equals(name)) {
+				exit = jReader.nextInt();
+			} else if ("location".equals(name)) {
+				jReader.beginArray();
+				double lon = jReader.nextDouble();
+				double lat = jReader.nextDouble();
+				jReader.endArray();
+				node.mLocation = new GeoPoint(lat, lon);
+			} else
+				jReader.skipValue();
+		}
+		jReader.endObject();
+		if (type.equals("turn") || type.equals("ramp") || type.equals("merge"))
+			return (modifier != null && !modifier.isEmpty() ? type + '-' + modifier : type); //no modifier: plain type
+		else if (type.equals("roundabout") || type.equals("rotary"))
+			return (exit > 0 ? "roundabout" + '-' + exit : "roundabout"); //convert rotary in roundabout...
+		else
+			return type;
+	}
+
+	protected static String nextStringOrEmpty(JsonReader jReader) throws IOException {
+		if (jReader.peek() == JsonToken.NULL) {
+			jReader.nextNull();
+			return "";
+		}
+		return jReader.nextString();
 	}
 
 	@Override public Road[] getRoads(ArrayList<GeoPoint> waypoints) {
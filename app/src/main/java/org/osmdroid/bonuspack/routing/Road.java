@@ -7,11 +7,14 @@ import android.util.Log;
 
 import com.example.minideliveryapp.R;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
+import org.osmdroid.bonuspack.utils.PolylinePyramid;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.util.PointReducer;
 
 import java.util.ArrayList;
+import java.util.List;
 
 
 /** describes the way to go from a position to an other. 
@@ -39,10 +42,19 @@ public class Road  implements Parcelable {
 	public ArrayList<RoadNode> mNodes;
 	/** there is one leg between each waypoint */
 	public ArrayList<RoadLeg> mLegs; 
-	/** full shape: polyline, as an array of GeoPoints */
-	public ArrayList<GeoPoint> mRouteHigh; 
-	/** the same, in low resolution (less points) */
+	/**
+	 * full shape: polyline, packed in primitive arrays. Also usable as a List of GeoPoints. <br>
+	 * It used to be an ArrayList of GeoPoints: code using it as an ArrayList must use it as a List,
+	 * or use getRouteHigh and setRouteHigh.
+	 */
+	public PackedPolyline mRouteHigh; 
+	/** the same, in low resolution (less points). Built when needed, guarded by this. */
 	private ArrayList<GeoPoint> mRouteLow; 
+	/**
+	 * the same, at each zoom level. Built when needed, not parcelled. Guarded by this:
+	 * a same Road can be shared by threads, as the result of coalesced requests.
+	 */
+	private PolylinePyramid mRoutePyramid;
 	/** road bounding box */
 	public BoundingBox mBoundingBox;
 	
@@ -55,8 +67,9 @@ public class Road  implements Parcelable {
 		mLength = 0.0;
 		mDuration = 0.0;
 		mNodes = new ArrayList<>();
-		mRouteHigh = new ArrayList<>();
+		mRouteHigh = new PackedPolyline();
 		mRouteLow = null;
+		mRoutePyramid = null;
 		mLegs = new ArrayList<>();
 		mBoundingBox = null;
 	}
@@ -80,24 +93,46 @@ public class Road  implements Parcelable {
 			RoadLeg leg = new RoadLeg(/*i, i+1, mLinks*/);
 			mLegs.add(leg);
 		}
-		mBoundingBox = BoundingBox.fromGeoPoints(mRouteHigh);
+		mBoundingBox = mRouteHigh.getBoundingBox();
 		mStatus = STATUS_TECHNICAL_ISSUE;
 	}
 	
 	/**
 	 * @return the road shape in "low resolution" = simplified by around 10 factor. 
 	 */
-	public ArrayList<GeoPoint> getRouteLow(){
+	public synchronized ArrayList<GeoPoint> getRouteLow(){
 		if (mRouteLow == null){
 			//Simplify the route (divide number of points by around 10):
 			int n = mRouteHigh.size();
-			mRouteLow = PointReducer.reduceWithTolerance(mRouteHigh, 1500.0);
+			mRouteLow = PointReducer.reduceWithTolerance(mRouteHigh.toGeoPoints(), 1500.0);
 			Log.d(BonusPackHelper.LOG_TAG, "Road reduced from "+n+" to "+mRouteLow.size()+ " points");
 		}
 		return mRouteLow;
 	}
 	
-	public void setRouteLow(ArrayList<GeoPoint> route){
+	/**
+	 * @return the road shape simplified for each zoom level, as drawn by RoadManager.buildRoadOverlay.
+	 * mRouteHigh must not be changed afterwards.
+	 */
+	public synchronized PolylinePyramid getRoutePyramid(){
+		if (mRoutePyramid == null)
+			mRoutePyramid = new PolylinePyramid(mRouteHigh);
+		return mRoutePyramid;
+	}
+	
+	/** @return the full shape, as a new ArrayList of GeoPoints. For loops over the points, use mRouteHigh directly. */
+	public ArrayList<GeoPoint> getRouteHigh(){
+		return mRouteHigh.toGeoPoints();
+	}
+
+	/** set the full shape - packed if not already a PackedPolyline */
+	public synchronized void setRouteHigh(List<GeoPoint> route){
+		mRouteHigh = (route instanceof PackedPolyline ? (PackedPolyline)route : new PackedPolyline(route));
+		mRouteLow = null;
+		mRoutePyramid = null;
+	}
+
+	public synchronized void setRouteLow(ArrayList<GeoPoint> route){
 		mRouteLow = route;
 	}
 	
@@ -194,7 +229,7 @@ public class Road  implements Parcelable {
 		out.writeDouble(mDuration);
 		out.writeList(mNodes);
 		out.writeList(mLegs);
-		out.writeList(mRouteHigh);
+		out.writeParcelable(mRouteHigh, flags);
 		out.writeParcelable(mBoundingBox, 0);
 	}
 	
@@ -213,7 +248,7 @@ public class Road  implements Parcelable {
 		mDuration = in.readDouble();
 		mNodes = in.readArrayList(RoadNode.class.getClassLoader());
 		mLegs = in.readArrayList(RoadLeg.class.getClassLoader());
-		mRouteHigh = in.readArrayList(GeoPoint.class.getClassLoader());
+		mRouteHigh = in.readParcelable(PackedPolyline.class.getClassLoader());
 		mBoundingBox = in.readParcelable(BoundingBox.class.getClassLoader());
 	}
 }
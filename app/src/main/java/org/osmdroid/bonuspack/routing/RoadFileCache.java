@@ -0,0 +1,211 @@
+package org.osmdroid.bonuspack.routing;
+
+import android.util.Log;
+
+import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.DiskLruCache;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent store of Roads, in a directory of compact binary files (one file per entry). <br>
+ *
+ * Entries are evicted in LRU order as soon as the total size of the files exceeds the byte budget.
+ * Files are read through memory-mapping, and decoded directly from the mapped buffer. <br>
+ *
+ * Can be called by multiple threads.
+ *
+ * @see CachingRoadManager
+ */
+public class RoadFileCache extends DiskLruCache {
+
+	protected static final int MAGIC = 0x524F4144; //"ROAD"
+	protected static final int VERSION = 1;
+
+	/**
+	 * @param directory where to store the files. Created if necessary.
+	 * @param maxBytes byte budget of the whole store.
+	 */
+	public RoadFileCache(File directory, long maxBytes){
+		super(directory, maxBytes);
+	}
+
+	/**
+	 * @param key entry key
+	 * @param maxAge in ms. Older entries are considered as missing, and removed.
+	 * @return the Roads stored for this key, or null if none (or too old).
+	 */
+	public Road[] get(String key, long maxAge){
+		File file = getFile(key);
+		if (file == null)
+			return null;
+		Road[] roads = null;
+		boolean expired = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.getInt() == MAGIC && buffer.getInt() == VERSION && key.equals(readString(buffer))){
+					long writeTime = buffer.getLong();
+					if (System.currentTimeMillis() - writeTime > maxAge)
+						expired = true;
+					else
+						roads = readRoads(buffer);
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			//corrupted file: removed
+			Log.e(BonusPackHelper.LOG_TAG, "RoadFileCache: cannot read "+file.getName()+": "+e);
+		}
+		if (roads == null){
+			if (expired)
+				Log.d(BonusPackHelper.LOG_TAG, "RoadFileCache: expired entry "+file.getName());
+			remove(key);
+		}
+		return roads;
+	}
+
+	/** store the Roads for this key, replacing any previous entry. */
+	public void put(String key, Road[] roads){
+		File tmpFile = newTempFile(key);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 8192));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, key);
+				out.writeLong(System.currentTimeMillis());
+				writeRoads(out, roads);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			Log.e(BonusPackHelper.LOG_TAG, "RoadFileCache: cannot write "+tmpFile.getName()+": "+e);
+			tmpFile.delete();
+			return;
+		}
+		commit(key, tmpFile);
+	}
+
+	//--- Binary format
+
+	protected static void writeRoads(DataOutputStream out, Road[] roads) throws IOException {
+		out.writeInt(roads.length);
+		for (Road road : roads){
+			out.writeInt(road.mStatus);
+			out.writeDouble(road.mLength);
+			out.writeDouble(road.mDuration);
+
+			out.writeInt(road.mNodes.size());
+			for (RoadNode node : road.mNodes){
+				out.writeInt(node.mManeuverType);
+				writeString(out, node.mInstructions);
+				out.writeDouble(node.mLength);
+				out.writeDouble(node.mDuration);
+				out.writeBoolean(node.mLocation != null);
+				if (node.mLocation != null){
+					out.writeDouble(node.mLocation.getLatitude());
+					out.writeDouble(node.mLocation.getLongitude());
+				}
+			}
+
+			out.writeInt(road.mLegs.size());
+			for (RoadLeg leg : road.mLegs){
+				out.writeDouble(leg.mLength);
+				out.writeDouble(leg.mDuration);
+				out.writeInt(leg.mStartNodeIndex);
+				out.writeInt(leg.mEndNodeIndex);
+			}
+
+			//shape, as E6 integers: lossless for all providers polyline encodings
+			PackedPolyline shape = road.mRouteHigh;
+			boolean hasAltitude = shape.hasAltitude();
+			int n = shape.size();
+			out.writeInt(n);
+			out.writeBoolean(hasAltitude);
+			for (int i=0; i<n; i++){
+				out.writeInt(shape.getLatitudeE6(i));
+				out.writeInt(shape.getLongitudeE6(i));
+				if (hasAltitude)
+					out.writeFloat((float)shape.getAltitude(i));
+			}
+
+			BoundingBox bb = road.mBoundingBox;
+			out.writeBoolean(bb != null);
+			if (bb != null){
+				out.writeDouble(bb.getLatNorth());
+				out.writeDouble(bb.getLonEast());
+				out.writeDouble(bb.getLatSouth());
+				out.writeDouble(bb.getLonWest());
+			}
+		}
+	}
+
+	protected static Road[] readRoads(ByteBuffer in) throws IOException {
+		Road[] roads = new Road[checkCount(in, in.getInt(), 20)];
+		for (int r=0; r<roads.length; r++){
+			Road road = new Road();
+			roads[r] = road;
+			road.mStatus = in.getInt();
+			road.mLength = in.getDouble();
+			road.mDuration = in.getDouble();
+
+			int n = checkCount(in, in.getInt(), 25);
+			road.mNodes.ensureCapacity(n);
+			for (int i=0; i<n; i++){
+				RoadNode node = new RoadNode();
+				node.mManeuverType = in.getInt();
+				node.mInstructions = readString(in);
+				node.mLength = in.getDouble();
+				node.mDuration = in.getDouble();
+				if (in.get() != 0){
+					double lat = in.getDouble();
+					double lon = in.getDouble();
+					node.mLocation = new GeoPoint(lat, lon);
+				}
+				road.mNodes.add(node);
+			}
+
+			n = checkCount(in, in.getInt(), 24);
+			for (int i=0; i<n; i++){
+				RoadLeg leg = new RoadLeg();
+				leg.mLength = in.getDouble();
+				leg.mDuration = in.getDouble();
+				leg.mStartNodeIndex = in.getInt();
+				leg.mEndNodeIndex = in.getInt();
+				road.mLegs.add(leg);
+			}
+
+			n = in.getInt();
+			boolean hasAltitude = (in.get() != 0);
+			road.mRouteHigh = new PackedPolyline(checkCount(in, n, hasAltitude ? 12 : 8));
+			for (int i=0; i<n; i++){
+				int lat = in.getInt();
+				int lon = in.getInt();
+				road.mRouteHigh.add(lat, lon, hasAltitude ? in.getFloat() : 0.0);
+			}
+
+			if (in.get() != 0){
+				double north = in.getDouble();
+				double east = in.getDouble();
+				double south = in.getDouble();
+				double west = in.getDouble();
+				road.mBoundingBox = new BoundingBox(north, east, south, west);
+			}
+		}
+		return roads;
+	}
+}
@@ -1,11 +1,17 @@
 package org.osmdroid.bonuspack.routing;
 
+import android.util.Log;
+
+import org.osmdroid.bonuspack.overlays.LevelOfDetailPolyline;
+import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.SingleFlight;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.overlay.Polyline;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 /**
  * Generic class to get a route between a start and a destination point, 
@@ -21,6 +27,9 @@ public abstract class RoadManager {
 
   protected String mOptions;
 
+	/** route requests in progress, for all RoadManagers, by url */
+	protected static final SingleFlight<String, Road[]> sRoadRequests = new SingleFlight<>();
+
 	/**
 	 * @param waypoints
 	 * @return the road found.
@@ -51,6 +60,27 @@ public abstract class RoadManager {
 		mOptions += "&" + requestOption;
 	}
 	
+	/**
+	 * Run the request of a routing service - unless the same url is already requested, for instance
+	 * by a fast repeated UI action: then wait for it and share its roads.
+	 * @param url the request url, identifying the request
+	 * @param request the actual service call and parsing
+	 * @return the roads, or null if interrupted. Shared roads must not be modified.
+	 */
+	protected Road[] requestRoads(String url, Callable<Road[]> request){
+		try {
+			return sRoadRequests.execute(url, request);
+		} catch (Exception e){
+			Log.e(BonusPackHelper.LOG_TAG, "RoadManager.requestRoads: failed " + url, e);
+			return null;
+		}
+	}
+
+	/** @return the route requests in progress, with the count of redundant requests avoided */
+	public static SingleFlight<String, Road[]> getRoadRequests(){
+		return sRoadRequests;
+	}
+
 	/**
 	 * @return the GeoPoint as a string, properly formatted: lat,lon
 	 */
@@ -74,12 +104,12 @@ public abstract class RoadManager {
 	 * @param width in pixels.
 	 */
 	public static Polyline buildRoadOverlay(Road road, int color, float width){
-		Polyline roadOverlay = new Polyline();
+		LevelOfDetailPolyline roadOverlay = new LevelOfDetailPolyline();
 		roadOverlay.setColor(color);
 		roadOverlay.setWidth(width);
 		if (road != null) {
-			ArrayList<GeoPoint> polyline = road.mRouteHigh;
-			roadOverlay.setPoints(polyline);
+			//only the points visible at the current zoom are drawn:
+			roadOverlay.setPyramid(road.getRoutePyramid());
 		}
 		return roadOverlay;
 	}
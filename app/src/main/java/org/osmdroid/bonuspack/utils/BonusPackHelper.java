@@ -11,12 +11,16 @@ import android.util.DisplayMetrics;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.drawable.DrawableCompat;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
 import org.osmdroid.util.BoundingBox;
 
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.Reader;
 import java.util.HashMap;
 
 /** Useful functions and common constants. 
@@ -56,10 +60,12 @@ public class BonusPackHelper {
 		HttpConnection connection = new HttpConnection();
 		if (userAgent != null)
 			connection.setUserAgent(userAgent);
-		connection.doGet(url);
-		String result = connection.getContentAsString();
-		connection.close();
-		return result;
+		try {
+			connection.doGet(url);
+			return connection.getContentAsString();
+		} finally {
+			connection.close();
+		}
 	}
 
 	/** sends an http request, and returns the whole content result in a String.
@@ -70,6 +76,29 @@ public class BonusPackHelper {
 		return requestStringFromUrl(url, null);
 	}
 
+	/** sends an http request, and parses the content as JSON while it is received, without building a String.
+	 * @param url
+	 * @param userAgent
+	 * @return the JSON content, or null if any issue.
+	 */
+	public static JsonElement requestJsonFromUrl(String url, String userAgent) {
+		HttpConnection connection = new HttpConnection();
+		if (userAgent != null)
+			connection.setUserAgent(userAgent);
+		JsonElement result = null;
+		try {
+			connection.doGet(url);
+			Reader reader = connection.getReader();
+			if (reader != null)
+				result = JsonParser.parseReader(reader);
+		} catch (JsonParseException e) {
+			e.printStackTrace();
+		} finally {
+			connection.close();
+		}
+		return result;
+	}
+
 	/**
 	 * Loads a bitmap from a url. 
 	 * @param url
@@ -77,11 +106,15 @@ public class BonusPackHelper {
 	 */
 	public static Bitmap loadBitmap(String url) {
 		Bitmap bitmap;
+		HttpConnection connection = new HttpConnection();
 		try {
-			InputStream is = (InputStream) new URL(url).getContent();
+			connection.doGet(url);
+			InputStream is = connection.getStream();
 			if (is == null)
 				return null;
 			bitmap = BitmapFactory.decodeStream(new FlushedInputStream(is));
+			if (bitmap == null)
+				return null;
 			//Alternative providing better handling on loading errors?
 			/*
 			Drawable d = Drawable.createFromStream(new FlushedInputStream(is), null);
@@ -95,6 +128,8 @@ public class BonusPackHelper {
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
+		} finally {
+			connection.close();
 		}
 		return bitmap;
 	}
@@ -0,0 +1,402 @@
+package org.osmdroid.bonuspack.utils;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent store of byte arrays by key, in a directory of files (one file per entry). <br>
+ *
+ * Entries are evicted in LRU order as soon as the total size of the files exceeds the byte budget.
+ * The LRU order is kept across sessions in a journal: an append-only log of the writes, reads and removals,
+ * replayed at opening, and compacted when it gets much longer than the index. <br>
+ *
+ * Subclasses can store entries in their own format, read in place (e.g. memory-mapped) through getFile,
+ * and written through newTempFile and commit. <br>
+ *
+ * Can be called by multiple threads.
+ *
+ * @see ImageDiskCache
+ */
+public class DiskLruCache {
+
+	protected static final String JOURNAL = "journal";
+	protected static final String JOURNAL_HEADER = "DISKLRUCACHE 1";
+	protected static final String FILE_SUFFIX = ".dat";
+	/** journal lines above which it is compacted - if also more than twice the number of entries */
+	protected static final int COMPACT_THRESHOLD = 2000;
+
+	protected final File mDirectory;
+	protected final long mMaxBytes;
+	protected long mCurrentBytes;
+	/** file name => file size, in access order (eldest first) */
+	protected final LinkedHashMap<String, Long> mIndex;
+	protected Writer mJournal;
+	protected int mJournalLines;
+
+	/**
+	 * @param directory where to store the files. Created if necessary.
+	 * @param maxBytes byte budget of the whole store.
+	 */
+	public DiskLruCache(File directory, long maxBytes){
+		mDirectory = directory;
+		mMaxBytes = maxBytes;
+		mIndex = new LinkedHashMap<>(64, 0.75f, true);
+		mCurrentBytes = 0;
+		open();
+	}
+
+	/** rebuild the index from the journal, then drop the files it doesn't know */
+	protected synchronized void open(){
+		if (!mDirectory.isDirectory() && !mDirectory.mkdirs()){
+			Log.e(BonusPackHelper.LOG_TAG, "DiskLruCache: cannot create "+mDirectory.getAbsolutePath());
+			return;
+		}
+		readJournal();
+		File[] files = mDirectory.listFiles();
+		if (files != null){
+			//looked up in a copy, as a get on the index would change its LRU order:
+			HashMap<String, Long> sizes = new HashMap<>(mIndex);
+			for (File f : files){
+				String name = f.getName();
+				if (name.equals(JOURNAL))
+					continue;
+				Long size = sizes.get(name);
+				if (size == null || size != f.length()){
+					//unfinished write, or not committed to the journal:
+					f.delete();
+					if (size != null){
+						mIndex.remove(name);
+						mCurrentBytes -= size;
+					}
+				}
+			}
+		}
+		//entries whose file has been lost:
+		Iterator<Map.Entry<String, Long>> it = mIndex.entrySet().iterator();
+		while (it.hasNext()){
+			Map.Entry<String, Long> entry = it.next();
+			if (!new File(mDirectory, entry.getKey()).exists()){
+				mCurrentBytes -= entry.getValue();
+				it.remove();
+			}
+		}
+		compactJournal();
+		trimToSize();
+	}
+
+	protected void readJournal(){
+		File file = new File(mDirectory, JOURNAL);
+		if (!file.exists())
+			return;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				if (!JOURNAL_HEADER.equals(reader.readLine()))
+					return;
+				String line;
+				while ((line = reader.readLine()) != null){
+					//"P name size", "R name" or "D name". A truncated last line is ignored.
+					String[] parts = line.split(" ");
+					if (parts.length < 2)
+						continue;
+					String name = parts[1];
+					if ("P".equals(parts[0]) && parts.length == 3){
+						long size;
+						try {
+							size = Long.parseLong(parts[2]);
+						} catch (NumberFormatException e){
+							continue;
+						}
+						Long previous = mIndex.put(name, size);
+						if (previous != null)
+							mCurrentBytes -= previous;
+						mCurrentBytes += size;
+					} else if ("R".equals(parts[0])){
+						mIndex.get(name);
+					} else if ("D".equals(parts[0])){
+						Long previous = mIndex.remove(name);
+						if (previous != null)
+							mCurrentBytes -= previous;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e){
+			Log.e(BonusPackHelper.LOG_TAG, "DiskLruCache: cannot read journal: "+e);
+		}
+	}
+
+	/** rewrite the journal with only the current entries, in LRU order */
+	protected void compactJournal(){
+		closeJournal();
+		File file = new File(mDirectory, JOURNAL);
+		File tmpFile = new File(mDirectory, JOURNAL + ".tmp");
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8));
+			try {
+				writer.write(JOURNAL_HEADER);
+				writer.write('\n');
+				for (Map.Entry<String, Long> entry : mIndex.entrySet()){
+					writer.write("P ");
+					writer.write(entry.getKey());
+					writer.write(' ');
+					writer.write(Long.toString(entry.getValue()));
+					writer.write('\n');
+				}
+			} finally {
+				writer.close();
+			}
+			if (!tmpFile.renameTo(file))
+				throw new IOException("cannot rename journal");
+			mJournal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+			mJournalLines = mIndex.size();
+		} catch (IOException e){
+			Log.e(BonusPackHelper.LOG_TAG, "DiskLruCache: cannot write journal: "+e);
+			tmpFile.delete();
+			mJournal = null;
+		}
+	}
+
+	/**
+	 * Append an operation to the journal.
+	 * @param flush false for reads: losing them only affects the LRU order.
+	 */
+	protected void journal(char operation, String fileName, long size, boolean flush){
+		if (mJournal == null)
+			return;
+		try {
+			mJournal.write(operation);
+			mJournal.write(' ');
+			mJournal.write(fileName);
+			if (operation == 'P'){
+				mJournal.write(' ');
+				mJournal.write(Long.toString(size));
+			}
+			mJournal.write('\n');
+			if (flush)
+				mJournal.flush();
+			mJournalLines++;
+		} catch (IOException e){
+			Log.e(BonusPackHelper.LOG_TAG, "DiskLruCache: cannot write journal: "+e);
+			closeJournal();
+			return;
+		}
+		if (mJournalLines > COMPACT_THRESHOLD && mJournalLines > 2*mIndex.size())
+			compactJournal();
+	}
+
+	protected void closeJournal(){
+		if (mJournal != null){
+			try {
+				mJournal.close();
+			} catch (IOException e){
+				//nothing more to do
+			}
+			mJournal = null;
+		}
+	}
+
+	/** @return the total size of the stored entries, in bytes */
+	public synchronized long size(){
+		return mCurrentBytes;
+	}
+
+	/** @return the number of stored entries */
+	public synchronized int count(){
+		return mIndex.size();
+	}
+
+	/** @return true if an entry exists for this key - without marking it as used */
+	public synchronized boolean contains(String key){
+		return mIndex.containsKey(fileName(key));
+	}
+
+	/**
+	 * @return the file of the entry for this key, marked as recently used - or null if none.
+	 * If it cannot be read, remove the entry.
+	 */
+	protected File getFile(String key){
+		String fileName = fileName(key);
+		synchronized (this){
+			if (mIndex.get(fileName) == null)
+				return null;
+			journal('R', fileName, 0, false);
+		}
+		return new File(mDirectory, fileName);
+	}
+
+	/** @return a file where to write an entry for this key, then given to commit - or deleted if the write fails */
+	protected File newTempFile(String key){
+		return new File(mDirectory, fileName(key) + "." + Thread.currentThread().getId() + ".tmp");
+	}
+
+	/** make the written tmpFile the entry for this key, replacing any previous entry */
+	protected synchronized void commit(String key, File tmpFile){
+		String fileName = fileName(key);
+		File file = new File(mDirectory, fileName);
+		if (!tmpFile.renameTo(file)){
+			tmpFile.delete();
+			return;
+		}
+		long size = file.length();
+		Long previousSize = mIndex.put(fileName, size);
+		if (previousSize != null)
+			mCurrentBytes -= previousSize;
+		mCurrentBytes += size;
+		journal('P', fileName, size, true);
+		trimToSize();
+	}
+
+	/** @return the stored bytes for this key, or null if none */
+	public byte[] get(String key){
+		File file = getFile(key);
+		if (file == null)
+			return null;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				byte[] data = new byte[(int)raf.length()];
+				raf.readFully(data);
+				return data;
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e){
+			Log.e(BonusPackHelper.LOG_TAG, "DiskLruCache: cannot read "+file.getName()+": "+e);
+			remove(key);
+			return null;
+		}
+	}
+
+	/** store the bytes for this key, replacing any previous entry. */
+	public void put(String key, byte[] data){
+		File tmpFile = newTempFile(key);
+		try {
+			FileOutputStream out = new FileOutputStream(tmpFile);
+			try {
+				out.write(data);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e){
+			Log.e(BonusPackHelper.LOG_TAG, "DiskLruCache: cannot write "+tmpFile.getName()+": "+e);
+			tmpFile.delete();
+			return;
+		}
+		commit(key, tmpFile);
+	}
+
+	public synchronized void remove(String key){
+		String fileName = fileName(key);
+		Long size = mIndex.remove(fileName);
+		if (size != null){
+			mCurrentBytes -= size;
+			new File(mDirectory, fileName).delete();
+			journal('D', fileName, 0, true);
+		}
+	}
+
+	/** remove all entries */
+	public synchronized void clear(){
+		for (String fileName : mIndex.keySet())
+			new File(mDirectory, fileName).delete();
+		mIndex.clear();
+		mCurrentBytes = 0;
+		compactJournal();
+	}
+
+	/** write the pending journal lines. The cache can still be used afterwards. */
+	public synchronized void flush(){
+		if (mJournal != null){
+			try {
+				mJournal.flush();
+			} catch (IOException e){
+				Log.e(BonusPackHelper.LOG_TAG, "DiskLruCache: cannot write journal: "+e);
+			}
+		}
+	}
+
+	/** evict the least recently used entries until the store fits in its byte budget */
+	protected synchronized void trimToSize(){
+		Iterator<Map.Entry<String, Long>> it = mIndex.entrySet().iterator();
+		while (mCurrentBytes > mMaxBytes && it.hasNext()){
+			Map.Entry<String, Long> eldest = it.next();
+			new File(mDirectory, eldest.getKey()).delete();
+			mCurrentBytes -= eldest.getValue();
+			it.remove();
+			journal('D', eldest.getKey(), 0, true);
+		}
+	}
+
+	//--- Helpers for the binary formats of subclasses
+
+	/**
+	 * Check a count read from an entry: a corrupted file must not cause huge allocations.
+	 * @param itemBytes minimal size of an item, in bytes
+	 * @return n, if the items can fit in what remains
+	 */
+	protected static int checkCount(ByteBuffer in, int n, int itemBytes) throws IOException {
+		if (n < 0 || (long)n*itemBytes > in.remaining())
+			throw new IOException("invalid count: "+n);
+		return n;
+	}
+
+	/** write s as its UTF-8 length (-1 if null) then bytes */
+	protected static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null){
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	protected static String readString(ByteBuffer in) throws IOException {
+		int length = in.getInt();
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[checkCount(in, length, 1)];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	protected static String toHex(byte[] hash){
+		StringBuilder sb = new StringBuilder(hash.length*2);
+		for (byte b : hash){
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	protected static String fileName(String key){
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return toHex(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + FILE_SUFFIX;
+		} catch (NoSuchAlgorithmException e){
+			//SHA-1 is always available on Android
+			return Integer.toHexString(key.hashCode()) + FILE_SUFFIX;
+		}
+	}
+}
@@ -1,80 +1,174 @@
 package org.osmdroid.bonuspack.utils;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
 
+/**
+ * A GET request through an HttpTransport - the default one if not specified. <br>
+ * Always close it, even when doGet failed: this keeps the connection alive for the next requests.
+ */
 public class HttpConnection {
 
+    private final HttpTransport mTransport;
     private HttpURLConnection mConnection;
+    /** response body, as received */
+    private InputStream mBody;
+    /** response body, decoded */
     private InputStream mStream;
+    private Semaphore mHost;
+    private boolean mBroken;
     private String mUserAgent;
 
+    public HttpConnection() {
+        this(HttpTransport.getDefault());
+    }
+
+    public HttpConnection(HttpTransport transport) {
+        mTransport = transport;
+    }
+
     public void setUserAgent(String userAgent) {
         mUserAgent = userAgent;
     }
 
     public boolean doGet(String urlString) {
+        close();
         try {
             URL url = new URL(urlString);
-            mConnection = (HttpURLConnection) url.openConnection();
-            mConnection.setConnectTimeout(30000);
-            mConnection.setReadTimeout(30000);
-            mConnection.setRequestMethod("GET");
-
-            if (mUserAgent != null) {
-                mConnection.setRequestProperty("User-Agent", mUserAgent);
+            mHost = mTransport.acquire(url);
+            if (mHost == null) {
+                return false;
             }
+            mConnection = mTransport.open(url, mUserAgent);
 
             int responseCode = mConnection.getResponseCode();
             if (responseCode != HttpURLConnection.HTTP_OK) {
+                //the error body is drained on close, to reuse the connection:
+                mBody = mConnection.getErrorStream();
                 return false;
             }
 
-            mStream = mConnection.getInputStream();
+            mBody = mConnection.getInputStream();
+            mStream = new BodyInputStream(mTransport.decode(mConnection, mBody));
             return true;
         } catch (IOException e) {
             e.printStackTrace();
+            mBroken = true;
             return false;
         }
     }
 
+    /** @return the decoded response body, or null if the request failed */
     public InputStream getStream() {
         return mStream;
     }
 
-    public String getContentAsString() {
+    /** @return the response body as characters, in the charset of the response - UTF-8 by default */
+    public Reader getReader() {
         if (mStream == null) return null;
+        return new InputStreamReader(mStream, getCharset());
+    }
+
+    public String getContentAsString() {
+        Reader reader = getReader();
+        if (reader == null) return null;
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(mStream));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+            int length = mConnection.getContentLength();
+            StringBuilder sb = new StringBuilder(length > 0 && mConnection.getContentEncoding() == null ? length : 8192);
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, n);
             }
-            reader.close();
             return sb.toString();
         } catch (IOException e) {
             e.printStackTrace();
+            mBroken = true;
             return null;
         }
     }
 
+    protected Charset getCharset() {
+        String contentType = mConnection.getContentType();
+        if (contentType != null) {
+            int i = contentType.toLowerCase().indexOf("charset=");
+            if (i >= 0) {
+                String name = contentType.substring(i + 8).trim();
+                int end = name.indexOf(';');
+                if (end >= 0) name = name.substring(0, end).trim();
+                name = name.replace("\"", "");
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException e) {
+                    //unknown charset: use the default
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /** let other requests to the host go on */
+    private void releaseHost() {
+        if (mHost != null) {
+            mHost.release();
+            mHost = null;
+        }
+    }
+
     public void close() {
-        try {
-            if (mStream != null) {
-                mStream.close();
-                mStream = null;
+        if (mConnection != null) {
+            boolean reusable = !mBroken && mBody != null && HttpTransport.drain(mBody);
+            try {
+                if (mStream != null) {
+                    mStream.close();
+                } else if (mBody != null) {
+                    mBody.close();
+                }
+            } catch (IOException e) {
+                reusable = false;
             }
-            if (mConnection != null) {
+            //disconnecting closes the socket, so only when it can't be reused:
+            if (!reusable) {
                 mConnection.disconnect();
-                mConnection = null;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+        mConnection = null;
+        mBody = null;
+        mStream = null;
+        mBroken = false;
+        releaseHost();
+    }
+
+    /** Releases the host as soon as the body is read to the end, even before close. */
+    private class BodyInputStream extends FilterInputStream {
+
+        BodyInputStream(InputStream in) {
+            super(in);
+        }
+
+        private int atEnd(int n) {
+            if (n < 0 && mHost != null) {
+                //the decoder may stop before the end of the body, as with a gzip trailer:
+                if (!HttpTransport.drain(mBody)) mBroken = true;
+                releaseHost();
+            }
+            return n;
+        }
+
+        @Override public int read() throws IOException {
+            return atEnd(super.read());
+        }
+
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            return atEnd(super.read(b, off, len));
         }
     }
 }
@@ -0,0 +1,156 @@
+package org.osmdroid.bonuspack.utils;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP transport shared by all the providers, through HttpConnection. <br>
+ *
+ * Connections are kept alive and reused by the HttpURLConnection pool, as long as each response is read
+ * to the end and closed - not disconnected. So successive requests to a service don't pay TCP and TLS setup again. <br>
+ *
+ * Responses are requested with gzip or deflate encoding, and decoded while read. <br>
+ *
+ * Concurrent connections to a same host are limited: above the limit, requests wait for a connection to be released.
+ * A connection is released when its response is read to the end, or closed. A request waiting longer than
+ * the connect and read timeouts together fails, as a connection which cannot be established.
+ *
+ * @see HttpConnection
+ */
+public class HttpTransport {
+
+	public static final int DEFAULT_TIMEOUT = 30000;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+	/** bytes left in a response which are still read on close, to keep the connection alive. Above, it is dropped. */
+	public static final int MAX_DRAIN = 65536;
+
+	private static HttpTransport sDefault;
+
+	protected final ConcurrentHashMap<String, Semaphore> mHosts;
+	protected final int mMaxConnectionsPerHost;
+	protected int mConnectTimeout, mReadTimeout;
+
+	/** @param maxConnectionsPerHost maximal number of concurrent connections to a host */
+	public HttpTransport(int maxConnectionsPerHost){
+		mHosts = new ConcurrentHashMap<>();
+		mMaxConnectionsPerHost = maxConnectionsPerHost;
+		mConnectTimeout = DEFAULT_TIMEOUT;
+		mReadTimeout = DEFAULT_TIMEOUT;
+	}
+
+	/** @return the transport used by default by HttpConnection */
+	public static synchronized HttpTransport getDefault(){
+		if (sDefault == null)
+			sDefault = new HttpTransport(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+		return sDefault;
+	}
+
+	/** Replace the default transport, e.g. to change the limit per host. Connections in progress are not affected. */
+	public static synchronized void setDefault(HttpTransport transport){
+		sDefault = transport;
+	}
+
+	/** @param connectTimeout, readTimeout in milliseconds. Both are 30s by default. */
+	public void setTimeouts(int connectTimeout, int readTimeout){
+		mConnectTimeout = connectTimeout;
+		mReadTimeout = readTimeout;
+	}
+
+	public int getMaxConnectionsPerHost(){
+		return mMaxConnectionsPerHost;
+	}
+
+	/**
+	 * Wait until a connection to the host of the url is allowed - at most the connect and read timeouts together.
+	 * @return the permits of the host, to release once the connection is done, or null if timed out or interrupted.
+	 */
+	protected Semaphore acquire(URL url){
+		int port = (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+		String key = url.getHost() + ':' + port;
+		Semaphore permits = mHosts.get(key);
+		if (permits == null){
+			Semaphore created = new Semaphore(mMaxConnectionsPerHost, true);
+			permits = mHosts.putIfAbsent(key, created);
+			if (permits == null)
+				permits = created;
+		}
+		try {
+			if (!permits.tryAcquire((long)mConnectTimeout + mReadTimeout, TimeUnit.MILLISECONDS)){
+				Log.e(BonusPackHelper.LOG_TAG, "HttpTransport: no connection available to " + key);
+				return null;
+			}
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return permits;
+	}
+
+	/** @return a GET connection to the url, not yet connected */
+	protected HttpURLConnection open(URL url, String userAgent) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+		connection.setConnectTimeout(mConnectTimeout);
+		connection.setReadTimeout(mReadTimeout);
+		connection.setRequestMethod("GET");
+		//set explicitly, so that decoding is the same on Android and on a JVM:
+		connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+		if (userAgent != null)
+			connection.setRequestProperty("User-Agent", userAgent);
+		return connection;
+	}
+
+	/** @return the response body, decoded as given by the Content-Encoding of the connection */
+	protected InputStream decode(HttpURLConnection connection, InputStream body) throws IOException {
+		String encoding = connection.getContentEncoding();
+		if ("gzip".equalsIgnoreCase(encoding))
+			return new GZIPInputStream(body, 8192);
+		if ("deflate".equalsIgnoreCase(encoding)){
+			//"deflate" should be zlib-wrapped, but some servers send raw deflate:
+			BufferedInputStream buffered = new BufferedInputStream(body, 8192);
+			buffered.mark(2);
+			int cmf = buffered.read();
+			int flg = buffered.read();
+			buffered.reset();
+			boolean zlib = (cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0);
+			final Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(buffered, inflater, 8192){
+				@Override public void close() throws IOException {
+					super.close();
+					inflater.end();
+				}
+			};
+		}
+		return body;
+	}
+
+	/**
+	 * Read and drop what is left in a response body, so that its connection can be reused.
+	 * @return true if the end was reached
+	 */
+	protected static boolean drain(InputStream body){
+		byte[] buffer = new byte[4096];
+		int total = 0;
+		try {
+			while (total <= MAX_DRAIN){
+				int n = body.read(buffer);
+				if (n < 0)
+					return true;
+				total += n;
+			}
+		} catch (IOException e){
+			//the connection is broken anyway
+		}
+		return false;
+	}
+}
@@ -0,0 +1,271 @@
+package org.osmdroid.bonuspack.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of images loaded from the web: decoded bitmaps in memory, and downloaded bytes on disk,
+ * so that images are not downloaded again at each launch. The url is the key. <br>
+ *
+ * The memory tier is a StripedLruCache of bitmaps: an LRU with a byte budget, split in stripes with their own lock,
+ * so that threads loading different images don't wait for each other. <br>
+ *
+ * Images can be decoded with downsampling to a target size. Bitmaps known to be no longer displayed
+ * can be given back with release: they are then reused to decode other images (inBitmap). <br>
+ *
+ * Concurrent requests for the same image share a single load. The disk tier is optional: see setDiskCache. <br>
+ *
+ * Can be called by multiple threads. Evicted bitmaps are not recycled, as they may still be displayed.
+ */
+public class ImageCache {
+
+	protected static final int STRIPES = 8;
+
+	private static ImageCache sDefault;
+
+	protected final StripedLruCache<Bitmap> mMemory;
+	protected volatile ImageDiskCache mDiskCache;
+	protected final SingleFlight<String, Bitmap> mLoads;
+	/** released bitmaps, available for inBitmap */
+	protected final ArrayList<Bitmap> mReusable;
+	protected final long mMaxReusableBytes;
+	protected long mReusableBytes;
+	protected final AtomicLong mMemoryHits, mDiskHits, mDownloads;
+
+	/** @param maxMemoryBytes byte budget of the bitmaps kept in memory */
+	public ImageCache(long maxMemoryBytes){
+		mMemory = new StripedLruCache<Bitmap>(maxMemoryBytes, STRIPES){
+			@Override protected long sizeOf(Bitmap bitmap){
+				return bitmap.getAllocationByteCount();
+			}
+		};
+		mLoads = new SingleFlight<>();
+		mReusable = new ArrayList<>();
+		mMaxReusableBytes = maxMemoryBytes / 4;
+		mMemoryHits = new AtomicLong();
+		mDiskHits = new AtomicLong();
+		mDownloads = new AtomicLong();
+	}
+
+	/** @return the cache shared by POI thumbnails, KML icons and ground overlays: 1/16 of the heap, memory only until setDiskCache. */
+	public static synchronized ImageCache getDefault(){
+		if (sDefault == null)
+			sDefault = new ImageCache(Runtime.getRuntime().maxMemory() / 16);
+		return sDefault;
+	}
+
+	/**
+	 * Enable the disk tier. Typically, at application start: <br>
+	 * ImageCache.getDefault().setDiskCache(new ImageDiskCache(new File(context.getCacheDir(), "images"), ImageDiskCache.DEFAULT_MAX_BYTES));
+	 * @param diskCache the disk cache, or null for none (default).
+	 */
+	public void setDiskCache(ImageDiskCache diskCache){
+		mDiskCache = diskCache;
+	}
+
+	public ImageDiskCache getDiskCache(){
+		return mDiskCache;
+	}
+
+	/**
+	 * get the image in its original size, from memory, disk or web.
+	 * @return the image, or null if any failure.
+	 */
+	public Bitmap get(String url){
+		return get(url, 0, 0);
+	}
+
+	/**
+	 * get the image, from memory, disk or web, decoded with downsampling: the smallest power-of-2 reduction
+	 * still at least as large as the target size.
+	 * @param width, height target size in pixels. 0 for no constraint.
+	 * @return the image, or null if any failure.
+	 */
+	public Bitmap get(final String url, final int width, final int height){
+		final String key = (width > 0 || height > 0 ? url + '#' + width + 'x' + height : url);
+		Bitmap image = mMemory.get(key);
+		if (image != null){
+			mMemoryHits.incrementAndGet();
+			return image;
+		}
+		try {
+			return mLoads.execute(key, new Callable<Bitmap>() {
+				@Override public Bitmap call() {
+					//it may have been loaded just before this call:
+					Bitmap cached = mMemory.get(key);
+					if (cached != null)
+						return cached;
+					Bitmap loaded = load(url, width, height);
+					if (loaded != null)
+						mMemory.put(key, loaded);
+					return loaded;
+				}
+			});
+		} catch (Exception e){
+			//interrupted while waiting for another thread loading it
+			return null;
+		}
+	}
+
+	/** load from disk or web, and decode */
+	protected Bitmap load(String url, int width, int height){
+		ImageDiskCache diskCache = mDiskCache;
+		byte[] data = (diskCache != null ? diskCache.get(url) : null);
+		if (data != null){
+			mDiskHits.incrementAndGet();
+		} else {
+			Log.d(BonusPackHelper.LOG_TAG, "ImageCache:load :"+url);
+			data = download(url);
+			if (data == null)
+				return null;
+			mDownloads.incrementAndGet();
+			if (diskCache != null)
+				diskCache.put(url, data);
+		}
+		Bitmap bitmap = decode(data, width, height);
+		if (bitmap != null){
+			//assume downloaded images are all designed for "medium" density screens:
+			bitmap.setDensity(DisplayMetrics.DENSITY_MEDIUM);
+		}
+		return bitmap;
+	}
+
+	/** @return the whole content at url, or null if any issue */
+	protected static byte[] download(String url){
+		HttpConnection connection = new HttpConnection();
+		try {
+			if (!connection.doGet(url))
+				return null;
+			InputStream stream = connection.getStream();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(16*1024);
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = stream.read(buffer)) != -1)
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		} catch (IOException e){
+			e.printStackTrace();
+			return null;
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Decode an encoded image, with downsampling to the target size, reusing a released bitmap if one fits.
+	 * @param width, height target size in pixels. 0 for no constraint.
+	 * @return the bitmap - mutable -, or null if the data is not a supported image.
+	 */
+	public Bitmap decode(byte[] data, int width, int height){
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0)
+			return null;
+		int sampleSize = getSampleSize(options.outWidth, options.outHeight, width, height);
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = sampleSize;
+		//mutable, so that it can be reused once released:
+		options.inMutable = true;
+		int decodedWidth = (options.outWidth + sampleSize - 1) / sampleSize;
+		int decodedHeight = (options.outHeight + sampleSize - 1) / sampleSize;
+		options.inBitmap = takeReusable((long)decodedWidth * decodedHeight * 4);
+		try {
+			return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		} catch (IllegalArgumentException e){
+			//the reused bitmap doesn't fit this image after all:
+			options.inBitmap = null;
+			return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		}
+	}
+
+	/** @return the largest power of 2 keeping the image at least as large as the target */
+	protected static int getSampleSize(int imageWidth, int imageHeight, int width, int height){
+		int sampleSize = 1;
+		if (width <= 0 && height <= 0)
+			return sampleSize;
+		while ((width <= 0 || imageWidth / (sampleSize*2) >= width)
+				&& (height <= 0 || imageHeight / (sampleSize*2) >= height))
+			sampleSize *= 2;
+		return sampleSize;
+	}
+
+	/**
+	 * Give back a bitmap which is no longer displayed nor used, so that its memory is reused for a next decoding.
+	 * It must not be in the cache anymore: see remove.
+	 */
+	public void release(Bitmap bitmap){
+		if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled())
+			return;
+		synchronized (mReusable){
+			long bytes = bitmap.getAllocationByteCount();
+			if (mReusableBytes + bytes > mMaxReusableBytes)
+				return;
+			mReusable.add(bitmap);
+			mReusableBytes += bytes;
+		}
+	}
+
+	/** @return the smallest released bitmap with at least this allocation size, or null if none */
+	protected Bitmap takeReusable(long bytes){
+		synchronized (mReusable){
+			int best = -1;
+			for (int i = 0; i < mReusable.size(); i++){
+				long size = mReusable.get(i).getAllocationByteCount();
+				if (size >= bytes && (best < 0 || size < mReusable.get(best).getAllocationByteCount()))
+					best = i;
+			}
+			if (best < 0)
+				return null;
+			Bitmap bitmap = mReusable.remove(best);
+			mReusableBytes -= bitmap.getAllocationByteCount();
+			return bitmap;
+		}
+	}
+
+	/** @return the image in memory, or null if not in memory. No disk or network access. */
+	public Bitmap getFromMemory(String url){
+		return mMemory.get(url);
+	}
+
+	/** remove the image, in its original size, from memory */
+	public void remove(String url){
+		mMemory.remove(url);
+	}
+
+	/** empty the memory tier. The disk tier is not changed. */
+	public void clearMemory(){
+		mMemory.clear();
+	}
+
+	/** @return the total size of the bitmaps in memory, in bytes */
+	public long memorySize(){
+		return mMemory.size();
+	}
+
+	public long getMemoryHitCount(){
+		return mMemoryHits.get();
+	}
+
+	public long getDiskHitCount(){
+		return mDiskHits.get();
+	}
+
+	public long getDownloadCount(){
+		return mDownloads.get();
+	}
+
+	/** @return the loads in progress, with the count of redundant loads avoided */
+	public SingleFlight<String, Bitmap> getLoads(){
+		return mLoads;
+	}
+}
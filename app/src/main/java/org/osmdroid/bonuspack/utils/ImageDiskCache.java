@@ -0,0 +1,20 @@
+package org.osmdroid.bonuspack.utils;
+
+import java.io.File;
+
+/**
+ * Persistent store of downloaded images, as received (encoded). The url is the key.
+ * @see ImageCache#setDiskCache(ImageDiskCache)
+ */
+public class ImageDiskCache extends DiskLruCache {
+
+	public static final long DEFAULT_MAX_BYTES = 20L*1024*1024;
+
+	/**
+	 * @param directory where to store the images. Created if necessary.
+	 * @param maxBytes byte budget of the whole store.
+	 */
+	public ImageDiskCache(File directory, long maxBytes){
+		super(directory, maxBytes);
+	}
+}
@@ -0,0 +1,261 @@
+package org.osmdroid.bonuspack.utils;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A polyline stored in primitive arrays: latitudes and longitudes as E6 integers, altitudes only if any. <br>
+ * Around 6 times smaller than an ArrayList of GeoPoints, and filled without any allocation per point. <br>
+ *
+ * It is also a List of GeoPoints, for compatibility: GeoPoints are created on the fly by get(index),
+ * so use getLatitude(index)/getLongitude(index) in loops over long polylines. <br>
+ *
+ * E6 precision (around 0.1m) is lossless for all Google-encoded polylines.
+ *
+ * @see PolylineEncoder#decodePacked
+ */
+public class PackedPolyline extends AbstractList<GeoPoint> implements RandomAccess, Parcelable {
+
+	/** latitude and longitude of each point, interleaved */
+	protected int[] mCoords;
+	/** altitude of each point, or null if all altitudes are 0 */
+	protected double[] mAltitudes;
+	protected int mSize;
+
+	public PackedPolyline(int capacity){
+		mCoords = new int[Math.max(capacity, 4)*2];
+		mAltitudes = null;
+		mSize = 0;
+	}
+
+	public PackedPolyline(){
+		this(16);
+	}
+
+	public PackedPolyline(Collection<? extends GeoPoint> points){
+		this(points.size());
+		for (GeoPoint p : points)
+			add(p);
+	}
+
+	@Override public int size(){
+		return mSize;
+	}
+
+	public int getLatitudeE6(int index){
+		checkIndex(index);
+		return mCoords[index*2];
+	}
+
+	public int getLongitudeE6(int index){
+		checkIndex(index);
+		return mCoords[index*2+1];
+	}
+
+	public double getLatitude(int index){
+		return getLatitudeE6(index) / 1E6;
+	}
+
+	public double getLongitude(int index){
+		return getLongitudeE6(index) / 1E6;
+	}
+
+	public double getAltitude(int index){
+		checkIndex(index);
+		return (mAltitudes == null ? 0.0 : mAltitudes[index]);
+	}
+
+	public boolean hasAltitude(){
+		return mAltitudes != null;
+	}
+
+	/** @return a new GeoPoint for this point */
+	@Override public GeoPoint get(int index){
+		checkIndex(index);
+		double lat = mCoords[index*2] / 1E6;
+		double lon = mCoords[index*2+1] / 1E6;
+		if (mAltitudes == null)
+			return new GeoPoint(lat, lon);
+		else
+			return new GeoPoint(lat, lon, mAltitudes[index]);
+	}
+
+	/** add a point at the end - without any allocation, except when growing */
+	public void add(int latitudeE6, int longitudeE6, double altitude){
+		ensureCapacity(mSize+1);
+		mCoords[mSize*2] = latitudeE6;
+		mCoords[mSize*2+1] = longitudeE6;
+		if (altitude != 0.0 || mAltitudes != null){
+			ensureAltitudes();
+			mAltitudes[mSize] = altitude;
+		}
+		mSize++;
+		modCount++;
+	}
+
+	public void add(int latitudeE6, int longitudeE6){
+		add(latitudeE6, longitudeE6, 0.0);
+	}
+
+	@Override public boolean add(GeoPoint p){
+		add(toE6(p.getLatitude()), toE6(p.getLongitude()), p.getAltitude());
+		return true;
+	}
+
+	@Override public void add(int index, GeoPoint p){
+		if (index == mSize){
+			add(p);
+			return;
+		}
+		checkIndex(index);
+		ensureCapacity(mSize+1);
+		System.arraycopy(mCoords, index*2, mCoords, index*2+2, (mSize-index)*2);
+		if (mAltitudes != null)
+			System.arraycopy(mAltitudes, index, mAltitudes, index+1, mSize-index);
+		mSize++;
+		setPoint(index, p);
+		modCount++;
+	}
+
+	@Override public GeoPoint set(int index, GeoPoint p){
+		GeoPoint previous = get(index);
+		setPoint(index, p);
+		return previous;
+	}
+
+	@Override public GeoPoint remove(int index){
+		GeoPoint previous = get(index);
+		System.arraycopy(mCoords, index*2+2, mCoords, index*2, (mSize-index-1)*2);
+		if (mAltitudes != null)
+			System.arraycopy(mAltitudes, index+1, mAltitudes, index, mSize-index-1);
+		mSize--;
+		modCount++;
+		return previous;
+	}
+
+	/** append all points of an other PackedPolyline, without creating GeoPoints */
+	public boolean addAll(PackedPolyline other){
+		if (other.mSize == 0)
+			return false;
+		ensureCapacity(mSize + other.mSize);
+		System.arraycopy(other.mCoords, 0, mCoords, mSize*2, other.mSize*2);
+		if (other.mAltitudes != null || mAltitudes != null){
+			ensureAltitudes();
+			if (other.mAltitudes != null)
+				System.arraycopy(other.mAltitudes, 0, mAltitudes, mSize, other.mSize);
+			else //the slots may hold altitudes of removed points
+				Arrays.fill(mAltitudes, mSize, mSize + other.mSize, 0.0);
+		}
+		mSize += other.mSize;
+		modCount++;
+		return true;
+	}
+
+	@Override public void clear(){
+		mSize = 0;
+		mAltitudes = null;
+		modCount++;
+	}
+
+	public void ensureCapacity(int capacity){
+		if (capacity*2 > mCoords.length){
+			int newCapacity = Math.max(capacity, mCoords.length); //x2
+			mCoords = Arrays.copyOf(mCoords, newCapacity*2);
+			if (mAltitudes != null)
+				mAltitudes = Arrays.copyOf(mAltitudes, newCapacity);
+		}
+	}
+
+	/** release the unused capacity */
+	public void trimToSize(){
+		if (mCoords.length > mSize*2){
+			mCoords = Arrays.copyOf(mCoords, mSize*2);
+			if (mAltitudes != null)
+				mAltitudes = Arrays.copyOf(mAltitudes, mSize);
+		}
+	}
+
+	/** @return the bounding box of all points, or null if empty. Computed without creating GeoPoints. */
+	public BoundingBox getBoundingBox(){
+		if (mSize == 0)
+			return null;
+		int minLat = Integer.MAX_VALUE, minLon = Integer.MAX_VALUE;
+		int maxLat = Integer.MIN_VALUE, maxLon = Integer.MIN_VALUE;
+		for (int i=0; i<mSize*2; i+=2){
+			int lat = mCoords[i];
+			int lon = mCoords[i+1];
+			if (lat < minLat) minLat = lat;
+			if (lat > maxLat) maxLat = lat;
+			if (lon < minLon) minLon = lon;
+			if (lon > maxLon) maxLon = lon;
+		}
+		return new BoundingBox(maxLat/1E6, maxLon/1E6, minLat/1E6, minLon/1E6);
+	}
+
+	/** @return a copy as an ArrayList of GeoPoints, for APIs requiring it */
+	public ArrayList<GeoPoint> toGeoPoints(){
+		return new ArrayList<>(this);
+	}
+
+	public static int toE6(double value){
+		return (int)Math.round(value*1E6);
+	}
+
+	protected void setPoint(int index, GeoPoint p){
+		mCoords[index*2] = toE6(p.getLatitude());
+		mCoords[index*2+1] = toE6(p.getLongitude());
+		if (p.getAltitude() != 0.0 || mAltitudes != null){
+			ensureAltitudes();
+			mAltitudes[index] = p.getAltitude();
+		}
+	}
+
+	protected void ensureAltitudes(){
+		if (mAltitudes == null)
+			mAltitudes = new double[mCoords.length/2];
+	}
+
+	protected void checkIndex(int index){
+		if (index < 0 || index >= mSize)
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+mSize);
+	}
+
+	//--- Parcelable implementation
+
+	@Override public int describeContents() {
+		return 0;
+	}
+
+	@Override public void writeToParcel(Parcel out, int flags) {
+		out.writeInt(mSize);
+		out.writeIntArray(Arrays.copyOf(mCoords, mSize*2));
+		out.writeInt(mAltitudes != null ? 1 : 0);
+		if (mAltitudes != null)
+			out.writeDoubleArray(Arrays.copyOf(mAltitudes, mSize));
+	}
+
+	public static final Creator<PackedPolyline> CREATOR = new Creator<PackedPolyline>() {
+		@Override public PackedPolyline createFromParcel(Parcel source) {
+			return new PackedPolyline(source);
+		}
+		@Override public PackedPolyline[] newArray(int size) {
+			return new PackedPolyline[size];
+		}
+	};
+
+	private PackedPolyline(Parcel in){
+		mSize = in.readInt();
+		mCoords = in.createIntArray();
+		if (in.readInt() != 0)
+			mAltitudes = in.createDoubleArray();
+	}
+}
@@ -49,6 +49,27 @@ public class PolylineEncoder {
 		}
 		return encodedPoints.toString();
 	}
+
+    /**
+     * Encode a packed polyline with Google polyline encoding method
+     * @param polyline the polyline
+     * @param precision 1 for a 6 digits encoding, 10 for a 5 digits encoding.
+     * @return the encoded polyline, as a String
+     */
+    public static String encode(PackedPolyline polyline, int precision) {
+        StringBuilder encodedPoints = new StringBuilder();
+        int prev_lat = 0, prev_lng = 0;
+        int n = polyline.size();
+        for (int i=0; i<n; i++) {
+            int lat = polyline.getLatitudeE6(i) / precision;
+            int lng = polyline.getLongitudeE6(i) / precision;
+            encodedPoints.append(encodeSignedNumber(lat - prev_lat));
+            encodedPoints.append(encodeSignedNumber(lng - prev_lng));
+            prev_lat = lat;
+            prev_lng = lng;
+        }
+        return encodedPoints.toString();
+    }
     
     /**
      * Decode a "Google-encoded" polyline
@@ -103,4 +124,51 @@ public class PolylineEncoder {
 
         return polyline;
     }
+
+    /**
+     * Decode a "Google-encoded" polyline directly in primitive arrays, without creating GeoPoints.
+     * @param encodedString
+     * @param precision 1 for a 6 digits encoding of lat and lon, 10 for a 5 digits encoding.
+     * @param hasAltitude if the polyline also contains altitude (GraphHopper routes, with altitude in cm).
+     * @return the polyline.
+     */
+    public static PackedPolyline decodePacked(String encodedString, int precision, boolean hasAltitude) {
+        int index = 0;
+        int len = encodedString.length();
+        int lat = 0, lng = 0, alt = 0;
+        PackedPolyline polyline = new PackedPolyline(len/3);
+
+        while (index < len) {
+            int b, shift, result;
+            shift = result = 0;
+            do {
+                b = encodedString.charAt(index++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lat += ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
+
+            shift = result = 0;
+            do {
+                b = encodedString.charAt(index++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lng += ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
+
+            if (hasAltitude){
+                shift = result = 0;
+                do {
+                    b = encodedString.charAt(index++) - 63;
+                    result |= (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                alt += ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
+            }
+
+            polyline.add(lat*precision, lng*precision, alt/100);
+        }
+        polyline.trimToSize();
+        return polyline;
+    }
 }
@@ -0,0 +1,177 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multi-resolution geometry of a polyline - or of a polygon ring: the points worth drawing at each zoom level. <br>
+ *
+ * Douglas-Peucker is run once, in Web Mercator coordinates, giving to each point the tolerance under which it is kept.
+ * The level of a zoom keeps the points whose tolerance is above a pixel at this zoom. So levels are nested,
+ * and each one is extracted in O(n) when first needed, then cached. <br>
+ *
+ * Levels share the GeoPoints of the source list - or, for a PackedPolyline, GeoPoints created once for all levels.
+ * Not thread-safe.
+ */
+public class PolylinePyramid {
+
+	/** levels are cached up to this zoom. Above, all points are kept. */
+	public static final int MAX_LEVEL = 29;
+	public static final double MAX_LATITUDE = 85.05112878;
+
+	protected final List<GeoPoint> mSource;
+	protected final int mSize;
+	/** for each point, the tolerance in Mercator units ([0, 1] for the world) under which it is kept */
+	protected final double[] mTolerances;
+	protected GeoPoint[] mPoints;
+	protected ArrayList<GeoPoint>[] mLevels;
+	protected double mPixelTolerance;
+
+	/**
+	 * @param points the full polyline. It must not be changed afterwards.
+	 */
+	@SuppressWarnings("unchecked")
+	public PolylinePyramid(List<GeoPoint> points){
+		mSource = points;
+		mSize = points.size();
+		mTolerances = new double[mSize];
+		mLevels = new ArrayList[MAX_LEVEL+1];
+		mPixelTolerance = 1.0;
+		computeTolerances();
+	}
+
+	/** @return the number of points of the full polyline */
+	public int size(){
+		return mSize;
+	}
+
+	/** @param pixels maximal distance, in pixels, between a level and the full polyline. 1 by default. */
+	public void setPixelTolerance(double pixels){
+		mPixelTolerance = pixels;
+		for (int z = 0; z <= MAX_LEVEL; z++)
+			mLevels[z] = null;
+	}
+
+	/** @return the level to draw at this zoom: the closest upper integer zoom */
+	public static int getLevel(double zoom){
+		int level = (int)Math.ceil(zoom);
+		return Math.max(0, Math.min(level, MAX_LEVEL));
+	}
+
+	/**
+	 * @param level integer zoom level, as given by getLevel
+	 * @return the simplified polyline at this level. Shared: don't modify it.
+	 */
+	public ArrayList<GeoPoint> getPoints(int level){
+		level = Math.max(0, Math.min(level, MAX_LEVEL));
+		ArrayList<GeoPoint> points = mLevels[level];
+		if (points == null){
+			double tolerance = (level == MAX_LEVEL ? 0.0 : mPixelTolerance / TileSystem.MapSize((double)level));
+			int count = 0;
+			for (int i = 0; i < mSize; i++){
+				if (mTolerances[i] >= tolerance)
+					count++;
+			}
+			points = new ArrayList<>(count);
+			for (int i = 0; i < mSize; i++){
+				if (mTolerances[i] >= tolerance)
+					points.add(getPoint(i));
+			}
+			mLevels[level] = points;
+		}
+		return points;
+	}
+
+	protected GeoPoint getPoint(int i){
+		if (!(mSource instanceof PackedPolyline))
+			return mSource.get(i);
+		if (mPoints == null)
+			mPoints = new GeoPoint[mSize];
+		GeoPoint p = mPoints[i];
+		if (p == null){
+			p = mSource.get(i);
+			mPoints[i] = p;
+		}
+		return p;
+	}
+
+	/** Douglas-Peucker on the whole polyline, recording the tolerance of each point instead of a result */
+	protected void computeTolerances(){
+		if (mSize == 0)
+			return;
+		double[] x = new double[mSize];
+		double[] y = new double[mSize];
+		PackedPolyline packed = (mSource instanceof PackedPolyline ? (PackedPolyline)mSource : null);
+		for (int i = 0; i < mSize; i++){
+			double lat, lon;
+			if (packed != null){
+				lat = packed.getLatitude(i);
+				lon = packed.getLongitude(i);
+			} else {
+				GeoPoint p = mSource.get(i);
+				lat = p.getLatitude();
+				lon = p.getLongitude();
+			}
+			lat = Math.max(-MAX_LATITUDE, Math.min(lat, MAX_LATITUDE));
+			double sinLat = Math.sin(Math.toRadians(lat));
+			x[i] = lon / 360.0 + 0.5;
+			y[i] = 0.5 - Math.log((1.0 + sinLat) / (1.0 - sinLat)) / (4.0 * Math.PI);
+		}
+		mTolerances[0] = Double.POSITIVE_INFINITY;
+		mTolerances[mSize-1] = Double.POSITIVE_INFINITY;
+		//explicit stack of segments, as a recursion could be too deep on long polylines:
+		int[] stack = new int[64];
+		double[] stackTolerances = new double[32];
+		int top = 0;
+		stack[top*2] = 0;
+		stack[top*2+1] = mSize-1;
+		stackTolerances[top] = Double.POSITIVE_INFINITY;
+		top++;
+		while (top > 0){
+			top--;
+			int first = stack[top*2];
+			int last = stack[top*2+1];
+			double parentTolerance = stackTolerances[top];
+			if (last - first < 2)
+				continue;
+			int farthest = -1;
+			double maxDistance = -1.0;
+			for (int i = first+1; i < last; i++){
+				double d = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+				if (d > maxDistance){
+					maxDistance = d;
+					farthest = i;
+				}
+			}
+			//a point is never kept without the points which made it the farthest:
+			double tolerance = Math.min(Math.sqrt(maxDistance), parentTolerance);
+			mTolerances[farthest] = tolerance;
+			if (top*2+4 > stack.length){
+				stack = Arrays.copyOf(stack, stack.length*2);
+				stackTolerances = Arrays.copyOf(stackTolerances, stackTolerances.length*2);
+			}
+			stack[top*2] = first;
+			stack[top*2+1] = farthest;
+			stackTolerances[top] = tolerance;
+			top++;
+			stack[top*2] = farthest;
+			stack[top*2+1] = last;
+			stackTolerances[top] = tolerance;
+			top++;
+		}
+	}
+
+	/** @return the squared distance from (px, py) to the segment (ax, ay)-(bx, by) */
+	protected static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by){
+		double dx = bx - ax, dy = by - ay;
+		double lengthSquared = dx*dx + dy*dy;
+		double t = (lengthSquared == 0.0 ? 0.0 : ((px - ax)*dx + (py - ay)*dy) / lengthSquared);
+		t = Math.max(0.0, Math.min(t, 1.0));
+		double ex = px - (ax + t*dx), ey = py - (ay + t*dy);
+		return ex*ex + ey*ey;
+	}
+}
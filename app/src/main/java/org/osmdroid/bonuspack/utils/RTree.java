@@ -0,0 +1,299 @@
+package org.osmdroid.bonuspack.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * R-tree of items with a bounding rectangle (Guttman, with quadratic split). <br>
+ * Allows to find the items intersecting a rectangle in O(log n), instead of checking all of them. <br>
+ *
+ * Coordinates are plain doubles: for geographic rectangles, x is the longitude and y the latitude,
+ * and rectangles across the date line must be inserted (and searched) as 2 rectangles. <br>
+ *
+ * An item may be inserted several times, with different rectangles: an entry is the item and its rectangle.
+ * Items are compared by identity. Not thread-safe.
+ */
+public class RTree<T> {
+
+	protected static final int MAX_ENTRIES = 16;
+	protected static final int MIN_ENTRIES = 4;
+
+	/** a node of the tree, or an entry (item + rectangle) when mChildren is null */
+	protected static class Node {
+		double mMinX, mMinY, mMaxX, mMaxY;
+		Object mItem;
+		ArrayList<Node> mChildren;
+		/** true if the children are entries */
+		boolean mLeaf;
+		Node mParent;
+
+		Node(boolean leaf){
+			mChildren = new ArrayList<>(MAX_ENTRIES+1);
+			mLeaf = leaf;
+			resetBounds();
+		}
+
+		Node(Object item, double minX, double minY, double maxX, double maxY){
+			mItem = item;
+			mMinX = minX;
+			mMinY = minY;
+			mMaxX = maxX;
+			mMaxY = maxY;
+		}
+
+		void resetBounds(){
+			mMinX = mMinY = Double.POSITIVE_INFINITY;
+			mMaxX = mMaxY = Double.NEGATIVE_INFINITY;
+		}
+
+		void include(Node n){
+			mMinX = Math.min(mMinX, n.mMinX);
+			mMinY = Math.min(mMinY, n.mMinY);
+			mMaxX = Math.max(mMaxX, n.mMaxX);
+			mMaxY = Math.max(mMaxY, n.mMaxY);
+		}
+
+		void computeBounds(){
+			resetBounds();
+			for (Node child : mChildren)
+				include(child);
+		}
+
+		void add(Node child){
+			mChildren.add(child);
+			child.mParent = this;
+			include(child);
+		}
+
+		double area(){
+			return (mMaxX - mMinX) * (mMaxY - mMinY);
+		}
+
+		/** @return the area of this node enlarged to include n */
+		double enlargedArea(Node n){
+			return (Math.max(mMaxX, n.mMaxX) - Math.min(mMinX, n.mMinX))
+					* (Math.max(mMaxY, n.mMaxY) - Math.min(mMinY, n.mMinY));
+		}
+
+		boolean intersects(double minX, double minY, double maxX, double maxY){
+			return mMinX <= maxX && mMaxX >= minX && mMinY <= maxY && mMaxY >= minY;
+		}
+
+		boolean contains(Node n){
+			return mMinX <= n.mMinX && mMaxX >= n.mMaxX && mMinY <= n.mMinY && mMaxY >= n.mMaxY;
+		}
+
+		/** @return true if this entry has the same item and rectangle as entry */
+		boolean isEntry(Node entry){
+			return mItem == entry.mItem && mMinX == entry.mMinX && mMinY == entry.mMinY
+					&& mMaxX == entry.mMaxX && mMaxY == entry.mMaxY;
+		}
+	}
+
+	protected Node mRoot;
+	protected int mSize;
+
+	public RTree(){
+		clear();
+	}
+
+	public void clear(){
+		mRoot = new Node(true);
+		mSize = 0;
+	}
+
+	/** @return the number of entries */
+	public int size(){
+		return mSize;
+	}
+
+	public void insert(T item, double minX, double minY, double maxX, double maxY){
+		insert(new Node(item, minX, minY, maxX, maxY));
+		mSize++;
+	}
+
+	/**
+	 * Remove an entry. The rectangle must be the one used for insertion.
+	 * @return true if the entry was found.
+	 */
+	public boolean remove(T item, double minX, double minY, double maxX, double maxY){
+		Node entry = new Node(item, minX, minY, maxX, maxY);
+		Node leaf = findLeaf(mRoot, entry);
+		if (leaf == null)
+			return false;
+		for (int i = 0; i < leaf.mChildren.size(); i++){
+			if (leaf.mChildren.get(i).isEntry(entry)){
+				leaf.mChildren.remove(i);
+				break;
+			}
+		}
+		mSize--;
+		condense(leaf);
+		return true;
+	}
+
+	/** add to result all the items whose rectangle intersects this rectangle */
+	@SuppressWarnings("unchecked")
+	public void search(double minX, double minY, double maxX, double maxY, Collection<? super T> result){
+		ArrayList<Node> stack = new ArrayList<>();
+		stack.add(mRoot);
+		while (!stack.isEmpty()){
+			Node node = stack.remove(stack.size()-1);
+			for (Node child : node.mChildren){
+				if (child.intersects(minX, minY, maxX, maxY)){
+					if (node.mLeaf)
+						result.add((T)child.mItem);
+					else
+						stack.add(child);
+				}
+			}
+		}
+	}
+
+	protected void insert(Node entry){
+		//choose the leaf needing the least enlargement:
+		Node node = mRoot;
+		while (!node.mLeaf){
+			Node best = null;
+			double bestEnlargement = 0.0, bestArea = 0.0;
+			for (Node child : node.mChildren){
+				double area = child.area();
+				double enlargement = child.enlargedArea(entry) - area;
+				if (best == null || enlargement < bestEnlargement
+						|| (enlargement == bestEnlargement && area < bestArea)){
+					best = child;
+					bestEnlargement = enlargement;
+					bestArea = area;
+				}
+			}
+			node = best;
+		}
+		node.add(entry);
+		//split overflowing nodes, and enlarge the ancestors:
+		while (node != null){
+			if (node.mChildren.size() > MAX_ENTRIES)
+				split(node);
+			else
+				node.include(entry);
+			node = node.mParent;
+		}
+	}
+
+	/** quadratic split of an overflowing node, adding the new sibling to its parent */
+	protected void split(Node node){
+		ArrayList<Node> children = new ArrayList<>(node.mChildren);
+		//seeds: the pair of children wasting the most area if put together
+		int seed1 = 0, seed2 = 1;
+		double worst = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < children.size(); i++){
+			for (int j = i+1; j < children.size(); j++){
+				Node a = children.get(i), b = children.get(j);
+				double waste = a.enlargedArea(b) - a.area() - b.area();
+				if (waste > worst){
+					worst = waste;
+					seed1 = i;
+					seed2 = j;
+				}
+			}
+		}
+		Node group1 = node;
+		Node group2 = new Node(node.mLeaf);
+		group1.mChildren.clear();
+		group1.resetBounds();
+		group1.add(children.get(seed1));
+		group2.add(children.get(seed2));
+		children.remove(seed2);
+		children.remove(seed1);
+		while (!children.isEmpty()){
+			//a group must get all remaining children to reach the minimum:
+			if (group1.mChildren.size() + children.size() == MIN_ENTRIES){
+				for (Node child : children)
+					group1.add(child);
+				break;
+			}
+			if (group2.mChildren.size() + children.size() == MIN_ENTRIES){
+				for (Node child : children)
+					group2.add(child);
+				break;
+			}
+			//next: the child with the greatest preference for a group
+			int next = 0;
+			double maxDifference = -1.0;
+			for (int i = 0; i < children.size(); i++){
+				Node child = children.get(i);
+				double d1 = group1.enlargedArea(child) - group1.area();
+				double d2 = group2.enlargedArea(child) - group2.area();
+				if (Math.abs(d1 - d2) > maxDifference){
+					maxDifference = Math.abs(d1 - d2);
+					next = i;
+				}
+			}
+			Node child = children.remove(next);
+			double d1 = group1.enlargedArea(child) - group1.area();
+			double d2 = group2.enlargedArea(child) - group2.area();
+			if (d1 < d2 || (d1 == d2 && (group1.area() < group2.area()
+					|| (group1.area() == group2.area() && group1.mChildren.size() <= group2.mChildren.size()))))
+				group1.add(child);
+			else
+				group2.add(child);
+		}
+		if (node == mRoot){
+			mRoot = new Node(false);
+			mRoot.add(group1);
+			mRoot.add(group2);
+		} else {
+			node.mParent.add(group2);
+			node.mParent.computeBounds();
+		}
+	}
+
+	protected Node findLeaf(Node node, Node entry){
+		if (node.mLeaf){
+			for (Node child : node.mChildren){
+				if (child.isEntry(entry))
+					return node;
+			}
+			return null;
+		}
+		for (Node child : node.mChildren){
+			if (child.contains(entry)){
+				Node leaf = findLeaf(child, entry);
+				if (leaf != null)
+					return leaf;
+			}
+		}
+		return null;
+	}
+
+	/** after a removal: remove the underflowing nodes, re-inserting their entries, and shrink the ancestors */
+	protected void condense(Node leaf){
+		ArrayList<Node> orphans = new ArrayList<>();
+		Node node = leaf;
+		while (node != mRoot){
+			Node parent = node.mParent;
+			if (node.mChildren.size() < MIN_ENTRIES){
+				parent.mChildren.remove(node);
+				collectEntries(node, orphans);
+			} else
+				node.computeBounds();
+			node = parent;
+		}
+		mRoot.computeBounds();
+		if (!mRoot.mLeaf && mRoot.mChildren.size() == 1){
+			mRoot = mRoot.mChildren.get(0);
+			mRoot.mParent = null;
+		} else if (!mRoot.mLeaf && mRoot.mChildren.isEmpty())
+			mRoot = new Node(true);
+		for (Node entry : orphans)
+			insert(entry);
+	}
+
+	protected static void collectEntries(Node node, ArrayList<Node> entries){
+		if (node.mLeaf)
+			entries.addAll(node.mChildren);
+		else {
+			for (Node child : node.mChildren)
+				collectEntries(child, entries);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.osmdroid.bonuspack.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalescing of identical calls in progress: while a call for a key is running, other callers asking for
+ * the same key wait for it and share its result, instead of running the call again. <br>
+ *
+ * The first caller runs the call in its own thread. Once it is done, the next caller for the key runs a new call:
+ * this is not a cache. <br>
+ *
+ * Results are shared, not copied: callers must not modify them - or must copy them. <br>
+ *
+ * Typical use: one instance per kind of service request, keyed by the request url.
+ */
+public class SingleFlight<K, V> {
+
+	protected final ConcurrentHashMap<K, FutureTask<V>> mInFlight;
+	protected final AtomicLong mCalls;
+	protected final AtomicLong mSharedCalls;
+
+	public SingleFlight(){
+		mInFlight = new ConcurrentHashMap<>();
+		mCalls = new AtomicLong();
+		mSharedCalls = new AtomicLong();
+	}
+
+	/**
+	 * Run the call, or wait for the same call already running for this key.
+	 * @return the result of the call
+	 * @throws Exception thrown by the call - to all the callers sharing it -, or InterruptedException if interrupted while waiting.
+	 */
+	public V execute(final K key, Callable<V> call) throws Exception {
+		FutureTask<V> task = new FutureTask<V>(call){
+			//no longer in flight once its result is known, so that later callers run a new call:
+			@Override protected void set(V result){
+				mInFlight.remove(key, this);
+				super.set(result);
+			}
+			@Override protected void setException(Throwable t){
+				mInFlight.remove(key, this);
+				super.setException(t);
+			}
+		};
+		FutureTask<V> running = mInFlight.putIfAbsent(key, task);
+		if (running != null){
+			mSharedCalls.incrementAndGet();
+			return await(running);
+		}
+		mCalls.incrementAndGet();
+		task.run();
+		return await(task);
+	}
+
+	protected V await(FutureTask<V> task) throws Exception {
+		try {
+			return task.get();
+		} catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw e;
+		}
+	}
+
+	/** @return the number of calls actually run */
+	public long getCallCount(){
+		return mCalls.get();
+	}
+
+	/** @return the number of redundant calls avoided: callers served by a call run for another caller */
+	public long getSharedCallCount(){
+		return mSharedCalls.get();
+	}
+
+	/** @return the number of calls currently running */
+	public int getInFlightCount(){
+		return mInFlight.size();
+	}
+}
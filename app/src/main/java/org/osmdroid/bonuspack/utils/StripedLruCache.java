@@ -0,0 +1,134 @@
+package org.osmdroid.bonuspack.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache with a byte budget, split in stripes with their own lock,
+ * so that threads using different keys don't wait for each other. <br>
+ *
+ * Each stripe has an equal part of the budget, and evicts its own least recently used entries.
+ * The size of a value is given by sizeOf. <br>
+ *
+ * Can be called by multiple threads.
+ *
+ * @see ImageCache
+ */
+public class StripedLruCache<V> {
+
+	protected final Stripe<V>[] mStripes;
+
+	/**
+	 * @param maxBytes byte budget of the whole cache.
+	 * @param stripes number of stripes.
+	 */
+	@SuppressWarnings("unchecked")
+	public StripedLruCache(long maxBytes, int stripes){
+		mStripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++)
+			mStripes[i] = new Stripe<>(this, maxBytes / stripes);
+	}
+
+	/** @return the size of value, in bytes. 1 by default: the budget is then a number of entries. */
+	protected long sizeOf(V value){
+		return 1;
+	}
+
+	/** @return the value, or null if not in the cache */
+	public V get(String key){
+		return getStripe(key).get(key);
+	}
+
+	/** put the value as the most recently used of its stripe, and evict the least recently used above the budget */
+	public void put(String key, V value){
+		getStripe(key).put(key, value);
+	}
+
+	public void remove(String key){
+		getStripe(key).remove(key);
+	}
+
+	public void clear(){
+		for (Stripe<V> stripe : mStripes)
+			stripe.clear();
+	}
+
+	/** @return the total size of the values, in bytes */
+	public long size(){
+		long size = 0;
+		for (Stripe<V> stripe : mStripes)
+			size += stripe.size();
+		return size;
+	}
+
+	/** @return the number of entries */
+	public int count(){
+		int count = 0;
+		for (Stripe<V> stripe : mStripes)
+			count += stripe.count();
+		return count;
+	}
+
+	/** @return the index of the stripe of this key */
+	protected int getStripeIndex(String key){
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return (h & 0x7FFFFFFF) % mStripes.length;
+	}
+
+	protected Stripe<V> getStripe(String key){
+		return mStripes[getStripeIndex(key)];
+	}
+
+	/** one part of the cache: an LRU with its own byte budget and lock */
+	protected static class Stripe<V> {
+
+		protected final StripedLruCache<V> mCache;
+		protected final LinkedHashMap<String, V> mValues;
+		protected final long mMaxBytes;
+		protected long mCurrentBytes;
+
+		Stripe(StripedLruCache<V> cache, long maxBytes){
+			mCache = cache;
+			mMaxBytes = maxBytes;
+			mValues = new LinkedHashMap<>(32, 0.75f, true);
+		}
+
+		synchronized V get(String key){
+			return mValues.get(key);
+		}
+
+		synchronized void put(String key, V value){
+			V previous = mValues.put(key, value);
+			if (previous != null)
+				mCurrentBytes -= mCache.sizeOf(previous);
+			mCurrentBytes += mCache.sizeOf(value);
+			Iterator<Map.Entry<String, V>> it = mValues.entrySet().iterator();
+			//the last one is kept even if alone above the budget:
+			while (mCurrentBytes > mMaxBytes && mValues.size() > 1){
+				mCurrentBytes -= mCache.sizeOf(it.next().getValue());
+				it.remove();
+			}
+		}
+
+		synchronized void remove(String key){
+			V previous = mValues.remove(key);
+			if (previous != null)
+				mCurrentBytes -= mCache.sizeOf(previous);
+		}
+
+		synchronized void clear(){
+			mValues.clear();
+			mCurrentBytes = 0;
+		}
+
+		synchronized long size(){
+			return mCurrentBytes;
+		}
+
+		synchronized int count(){
+			return mValues.size();
+		}
+	}
+}
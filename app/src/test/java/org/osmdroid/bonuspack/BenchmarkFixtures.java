@@ -0,0 +1,251 @@
+package org.osmdroid.bonuspack;
+
+import org.osmdroid.bonuspack.utils.PolylineEncoder;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Synthetic, but realistically shaped, data sets for the JMH benchmarks.
+ * Generated with fixed seeds, so that runs can be compared.
+ */
+public class BenchmarkFixtures {
+
+	/** Hanoi, where our couriers ride */
+	public static final double START_LAT = 21.0285, START_LON = 105.8542;
+
+	/** @return a random walk of n points, with steps of around 10m, like a road shape at 5 digits precision */
+	public static ArrayList<GeoPoint> randomWalk(int n, long seed){
+		Random random = new Random(seed);
+		ArrayList<GeoPoint> points = new ArrayList<>(n);
+		double lat = START_LAT, lon = START_LON;
+		double heading = 0.0;
+		for (int i=0; i<n; i++){
+			points.add(new GeoPoint(Math.round(lat*1E5)/1E5, Math.round(lon*1E5)/1E5));
+			heading += random.nextGaussian() * 0.3;
+			lat += Math.cos(heading) * 0.0001;
+			lon += Math.sin(heading) * 0.0001;
+		}
+		return points;
+	}
+
+	/**
+	 * @return an OSRM v5 "route" response (overview=full, steps=true), with the same members as the real service:
+	 * per-step geometries, intersections, waypoints hints...
+	 */
+	public static String osrmResponse(int legs, int stepsPerLeg, int verticesPerStep, long seed){
+		Random random = new Random(seed);
+		int n = legs * stepsPerLeg * verticesPerStep + 1;
+		ArrayList<GeoPoint> shape = randomWalk(n, seed);
+		String[] types = {"turn", "new name", "continue", "roundabout", "merge", "end of road"};
+		String[] modifiers = {"left", "right", "slight left", "slight right", "straight", "sharp left"};
+		StringBuilder sb = new StringBuilder(n * 64);
+		sb.append("{\"code\":\"Ok\",\"routes\":[{\"geometry\":");
+		appendString(sb, PolylineEncoder.encode(shape, 10));
+		sb.append(",\"legs\":[");
+		int vertex = 0;
+		double routeDistance = 0.0;
+		for (int l=0; l<legs; l++){
+			if (l > 0)
+				sb.append(',');
+			sb.append("{\"steps\":[");
+			double legDistance = 0.0;
+			for (int s=0; s<stepsPerLeg; s++){
+				if (s > 0)
+					sb.append(',');
+				ArrayList<GeoPoint> stepShape = new ArrayList<>(shape.subList(vertex, vertex + verticesPerStep + 1));
+				GeoPoint location = shape.get(vertex);
+				double distance = verticesPerStep * 11.1;
+				legDistance += distance;
+				String type = (s == 0 ? "depart" : types[random.nextInt(types.length)]);
+				sb.append("{\"geometry\":");
+				appendString(sb, PolylineEncoder.encode(stepShape, 10));
+				sb.append(",\"maneuver\":{\"bearing_after\":").append(random.nextInt(360));
+				sb.append(",\"bearing_before\":").append(random.nextInt(360));
+				sb.append(",\"location\":[").append(coord(location.getLongitude())).append(',').append(coord(location.getLatitude())).append(']');
+				if (type.equals("roundabout"))
+					sb.append(",\"exit\":").append(1 + random.nextInt(4));
+				else if (!type.equals("depart"))
+					sb.append(",\"modifier\":\"").append(modifiers[random.nextInt(modifiers.length)]).append('"');
+				sb.append(",\"type\":\"").append(type).append("\"},");
+				sb.append("\"mode\":\"driving\",\"driving_side\":\"right\",\"name\":\"Phố ").append(random.nextInt(50)).append("\",");
+				sb.append("\"intersections\":[");
+				for (int i=0; i<3; i++){
+					if (i > 0)
+						sb.append(',');
+					GeoPoint p = shape.get(vertex + i*verticesPerStep/3);
+					sb.append("{\"out\":0,\"entry\":[true,false,true],\"bearings\":[")
+						.append(random.nextInt(360)).append(',').append(random.nextInt(360)).append(',').append(random.nextInt(360))
+						.append("],\"location\":[").append(coord(p.getLongitude())).append(',').append(coord(p.getLatitude())).append("]}");
+				}
+				sb.append("],\"weight\":").append(String.format(Locale.US, "%.1f", distance/8.0));
+				sb.append(",\"duration\":").append(String.format(Locale.US, "%.1f", distance/8.0));
+				sb.append(",\"distance\":").append(String.format(Locale.US, "%.1f", distance)).append('}');
+				vertex += verticesPerStep;
+			}
+			routeDistance += legDistance;
+			sb.append("],\"summary\":\"\",\"weight\":").append(String.format(Locale.US, "%.1f", legDistance/8.0));
+			sb.append(",\"duration\":").append(String.format(Locale.US, "%.1f", legDistance/8.0));
+			sb.append(",\"distance\":").append(String.format(Locale.US, "%.1f", legDistance)).append('}');
+		}
+		sb.append("],\"weight_name\":\"routability\",\"weight\":").append(String.format(Locale.US, "%.1f", routeDistance/8.0));
+		sb.append(",\"duration\":").append(String.format(Locale.US, "%.1f", routeDistance/8.0));
+		sb.append(",\"distance\":").append(String.format(Locale.US, "%.1f", routeDistance)).append("}],");
+		sb.append("\"waypoints\":[");
+		for (int l=0; l<=legs; l++){
+			if (l > 0)
+				sb.append(',');
+			GeoPoint p = shape.get(l * stepsPerLeg * verticesPerStep);
+			sb.append("{\"hint\":\"x0sHgP___3-MAAAAHQAAAAAAAAAAAAAAZqL0QiVrk0EAAAAAAAAAAIwAAAAdAAAAAAAAAAAAAADP-gAA\",")
+				.append("\"distance\":2.5,\"name\":\"\",\"location\":[")
+				.append(coord(p.getLongitude())).append(',').append(coord(p.getLatitude())).append("]}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	/** @return the waypoints matching an osrmResponse */
+	public static ArrayList<GeoPoint> osrmWaypoints(int legs, int stepsPerLeg, int verticesPerStep, long seed){
+		ArrayList<GeoPoint> shape = randomWalk(legs * stepsPerLeg * verticesPerStep + 1, seed);
+		ArrayList<GeoPoint> waypoints = new ArrayList<>(legs+1);
+		for (int l=0; l<=legs; l++)
+			waypoints.add(shape.get(l * stepsPerLeg * verticesPerStep));
+		return waypoints;
+	}
+
+	/**
+	 * @return n delivery addresses around a few hubs (markets, office towers...) spread over ~20km,
+	 * like a city-wide daily dispatch: dense spots and scattered points.
+	 */
+	public static ArrayList<GeoPoint> deliveryPoints(int n, long seed){
+		Random random = new Random(seed);
+		int hubs = 20;
+		double[] hubLat = new double[hubs], hubLon = new double[hubs];
+		for (int h=0; h<hubs; h++){
+			hubLat[h] = START_LAT + (random.nextDouble()-0.5) * 0.18;
+			hubLon[h] = START_LON + (random.nextDouble()-0.5) * 0.18;
+		}
+		ArrayList<GeoPoint> points = new ArrayList<>(n);
+		for (int i=0; i<n; i++){
+			if (random.nextInt(4) == 0){
+				points.add(new GeoPoint(START_LAT + (random.nextDouble()-0.5) * 0.18,
+						START_LON + (random.nextDouble()-0.5) * 0.18));
+			} else {
+				int h = random.nextInt(hubs);
+				points.add(new GeoPoint(hubLat[h] + random.nextGaussian() * 0.005,
+						hubLon[h] + random.nextGaussian() * 0.005));
+			}
+		}
+		return points;
+	}
+
+	/** @return the content of a KML "coordinates" element: lon,lat,alt tuples, one per line, as exported by GPS tools */
+	public static String kmlCoordinates(ArrayList<GeoPoint> shape){
+		StringBuilder sb = new StringBuilder(shape.size() * 32);
+		sb.append('\n');
+		for (GeoPoint p : shape){
+			sb.append("\t\t\t").append(coord(p.getLongitude())).append(',').append(coord(p.getLatitude()))
+				.append(',').append(Math.round(p.getLatitude()*1E4) % 50).append('\n');
+		}
+		sb.append("\t\t");
+		return sb.toString();
+	}
+
+	/**
+	 * @return a KML document with a Folder of point Placemarks, each with name, description, styleUrl and ExtendedData,
+	 * like an export of all delivery addresses.
+	 */
+	public static String kmlDocument(int placemarks, long seed){
+		ArrayList<GeoPoint> points = deliveryPoints(placemarks, seed);
+		StringBuilder sb = new StringBuilder(placemarks * 400);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\" xmlns:gx=\"http://www.google.com/kml/ext/2.2\">\n");
+		sb.append("<Document>\n<name>Deliveries</name>\n");
+		sb.append("<Style id=\"delivery\"><IconStyle><color>ff00aaff</color><scale>1.1</scale></IconStyle></Style>\n");
+		sb.append("<Folder>\n<name>Addresses</name>\n");
+		for (int i=0; i<placemarks; i++){
+			GeoPoint p = points.get(i);
+			sb.append("<Placemark>\n<name>Order #").append(100000+i).append("</name>\n");
+			sb.append("<description><![CDATA[Số ").append(i % 300).append(" Phố ").append(i % 50)
+				.append(", Hà Nội<br/>COD: ").append((i*7919) % 500).append(".000 VND]]></description>\n");
+			sb.append("<styleUrl>#delivery</styleUrl>\n");
+			sb.append("<ExtendedData><Data name=\"phone\"><value>09").append(10000000 + i).append("</value></Data>");
+			sb.append("<Data name=\"slot\"><value>").append(8 + i % 12).append(":00</value></Data></ExtendedData>\n");
+			sb.append("<Point><coordinates>").append(coord(p.getLongitude())).append(',')
+				.append(coord(p.getLatitude())).append(",0</coordinates></Point>\n");
+			sb.append("</Placemark>\n");
+		}
+		sb.append("</Folder>\n</Document>\n</kml>\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return a KML document with a Folder of Polygon Placemarks around the delivery hubs, every 4th one with a hole,
+	 * like an export of delivery zones.
+	 */
+	public static String kmlZones(int zones, int vertices, long seed){
+		ArrayList<GeoPoint> centers = deliveryPoints(zones, seed);
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder(zones * vertices * 40);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n");
+		sb.append("<Document>\n<name>Zones</name>\n");
+		sb.append("<Style id=\"zone\"><LineStyle><color>ff0000ff</color><width>2</width></LineStyle>");
+		sb.append("<PolyStyle><color>400000ff</color></PolyStyle></Style>\n");
+		sb.append("<Folder>\n<name>Delivery zones</name>\n");
+		for (int i=0; i<zones; i++){
+			GeoPoint c = centers.get(i);
+			sb.append("<Placemark>\n<name>Zone ").append(i).append("</name>\n<styleUrl>#zone</styleUrl>\n");
+			sb.append("<Polygon><outerBoundaryIs><LinearRing><coordinates>");
+			appendRing(sb, c, 0.004 + random.nextDouble() * 0.004, vertices, random);
+			sb.append("</coordinates></LinearRing></outerBoundaryIs>\n");
+			if (i % 4 == 0){
+				sb.append("<innerBoundaryIs><LinearRing><coordinates>");
+				appendRing(sb, c, 0.001, vertices / 4, random);
+				sb.append("</coordinates></LinearRing></innerBoundaryIs>\n");
+			}
+			sb.append("</Polygon>\n</Placemark>\n");
+		}
+		sb.append("</Folder>\n</Document>\n</kml>\n");
+		return sb.toString();
+	}
+
+	private static void appendRing(StringBuilder sb, GeoPoint center, double radius, int vertices, Random random){
+		for (int v=0; v<=vertices; v++){
+			double angle = 2*Math.PI * (v % vertices) / vertices;
+			double r = radius * (0.8 + 0.2 * Math.abs(Math.sin(angle * 3)));
+			sb.append(coord(center.getLongitude() + r * Math.cos(angle))).append(',')
+				.append(coord(center.getLatitude() + r * Math.sin(angle))).append(",0 ");
+		}
+	}
+
+	/** @return n gx:Track "when" values, one every 5 seconds, in UTC ("Z") format */
+	public static String[] kmlWhens(int n){
+		String[] whens = new String[n];
+		for (int i=0; i<n; i++){
+			long s = i*5L; //from 2025-01-01T00:00:00Z
+			long days = s / 86400;
+			long secondsOfDay = s % 86400;
+			whens[i] = String.format(Locale.US, "2025-%02d-%02dT%02d:%02d:%02dZ", 1 + days/28, 1 + days%28,
+					secondsOfDay/3600, (secondsOfDay/60)%60, secondsOfDay%60);
+		}
+		return whens;
+	}
+
+	private static String coord(double value){
+		return String.format(Locale.US, "%.6f", value);
+	}
+
+	private static void appendString(StringBuilder sb, String s){
+		sb.append('"');
+		for (int i=0; i<s.length(); i++){
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\');
+			sb.append(c);
+		}
+		sb.append('"');
+	}
+}
@@ -0,0 +1,130 @@
+package org.osmdroid.bonuspack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the web services, on the loopback interface: serves fixed bodies, gzipped when accepted,
+ * with an optional latency per request. Counts requests, distinct client connections, and the peak of concurrent requests.
+ */
+public class LocalHttpServer {
+
+	private final HttpServer mServer;
+	private final ExecutorService mExecutor;
+	private final ConcurrentHashMap<String, byte[][]> mBodies = new ConcurrentHashMap<>();
+	private final Set<Integer> mClientPorts = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger mRequests = new AtomicInteger();
+	private final AtomicInteger mActive = new AtomicInteger();
+	private final AtomicInteger mMaxActive = new AtomicInteger();
+	private volatile int mLatency;
+
+	public LocalHttpServer(int threads) throws IOException {
+		//else headers and body are delayed by Nagle and delayed ACKs, 40ms per request:
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		mExecutor = Executors.newFixedThreadPool(threads);
+		mServer.setExecutor(mExecutor);
+		mServer.createContext("/", new HttpHandler() {
+			@Override public void handle(HttpExchange exchange) throws IOException {
+				handleRequest(exchange);
+			}
+		});
+		mServer.start();
+	}
+
+	/** serve body at path, as plain and gzipped bytes */
+	public void serve(String path, String body){
+		byte[] plain = body.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream(plain.length/4);
+		try (GZIPOutputStream out = new GZIPOutputStream(gzipped)){
+			out.write(plain);
+		} catch (IOException e){
+			throw new IllegalStateException(e);
+		}
+		mBodies.put(path, new byte[][]{plain, gzipped.toByteArray()});
+	}
+
+	/** @param latency in milliseconds, added to each request */
+	public void setLatency(int latency){
+		mLatency = latency;
+	}
+
+	public String getUrl(String path){
+		return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+	}
+
+	public int getRequestCount(){
+		return mRequests.get();
+	}
+
+	/** @return the number of distinct TCP connections used by the clients */
+	public int getConnectionCount(){
+		return mClientPorts.size();
+	}
+
+	public int getMaxConcurrentRequests(){
+		return mMaxActive.get();
+	}
+
+	public void resetCounts(){
+		mRequests.set(0);
+		mClientPorts.clear();
+		mMaxActive.set(0);
+	}
+
+	public void stop(){
+		mServer.stop(0);
+		mExecutor.shutdownNow();
+	}
+
+	private void handleRequest(HttpExchange exchange) throws IOException {
+		mRequests.incrementAndGet();
+		mClientPorts.add(exchange.getRemoteAddress().getPort());
+		int active = mActive.incrementAndGet();
+		mMaxActive.accumulateAndGet(active, Math::max);
+		boolean isActive = true;
+		try {
+			if (mLatency > 0)
+				Thread.sleep(mLatency);
+			byte[][] bodies = mBodies.get(exchange.getRequestURI().getPath());
+			byte[] body;
+			if (bodies == null){
+				body = "not found".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(404, body.length);
+			} else {
+				String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				boolean gzip = (accepted != null && accepted.contains("gzip"));
+				body = bodies[gzip ? 1 : 0];
+				exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+				if (gzip)
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(200, body.length);
+			}
+			//done before sending the body: the client can start its next request as soon as it has read it
+			mActive.decrementAndGet();
+			isActive = false;
+			try (OutputStream out = exchange.getResponseBody()){
+				out.write(body);
+			}
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		} finally {
+			if (isActive)
+				mActive.decrementAndGet();
+			exchange.close();
+		}
+	}
+}
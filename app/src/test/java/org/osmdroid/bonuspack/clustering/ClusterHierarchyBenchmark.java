@@ -0,0 +1,77 @@
+package org.osmdroid.bonuspack.clustering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical clustering (RadiusMarkerClusterer.setHierarchical):
+ * building all zoom levels, getting the clusters at a zoom change, and adding the last 1% of markers one by one.
+ * Compare zoomChange with RadiusClustererBenchmark.clusterer, which is what a zoom change costs without the hierarchy.
+ * ./gradlew :app:jmh -Pjmh.includes=ClusterHierarchyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterHierarchyBenchmark {
+
+	private static final int RADIUS = 100;
+	private static final int MAX_ZOOM = 17;
+
+	@Param({"1000", "10000", "100000"})
+	public int markers;
+
+	private ArrayList<GeoPoint> mPositions;
+	private ClusterHierarchy mHierarchy;
+	private ClusterHierarchy mPartialHierarchy;
+	private int mZoom;
+
+	@Setup public void setup(){
+		mPositions = BenchmarkFixtures.deliveryPoints(markers, 42);
+		mHierarchy = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		mHierarchy.setPositions(mPositions);
+		mHierarchy.getCenters(0);
+	}
+
+	/** a hierarchy built with 99% of the markers */
+	@Setup(Level.Invocation) public void setupPartialHierarchy(){
+		mPartialHierarchy = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		mPartialHierarchy.setPositions(mPositions.subList(0, markers - markers/100));
+		mPartialHierarchy.getCenters(0);
+	}
+
+	@Benchmark public int[] build(){
+		ClusterHierarchy hierarchy = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		hierarchy.setPositions(mPositions);
+		return hierarchy.getCenters(13);
+	}
+
+	/** pinch-zooming over the city: zoom levels 11 to 16 */
+	@Benchmark public int[] zoomChange(){
+		mZoom = (mZoom + 1) % 6;
+		return mHierarchy.getCenters(11 + mZoom);
+	}
+
+	@Benchmark public int[] addIncremental(){
+		for (int i = markers - markers/100; i < markers; i++)
+			mPartialHierarchy.add(mPositions.get(i));
+		return mPartialHierarchy.getCenters(13);
+	}
+}
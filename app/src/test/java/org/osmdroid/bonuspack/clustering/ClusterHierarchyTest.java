@@ -0,0 +1,129 @@
+package org.osmdroid.bonuspack.clustering;
+
+import org.junit.Test;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ClusterHierarchy: incremental additions give the same clusters as a full rebuild,
+ * and each level is the radius-based clustering of the level above.
+ */
+public class ClusterHierarchyTest {
+
+	private static final double RADIUS = 60;
+	private static final int MAX_ZOOM = 17;
+
+	/** @return the centers at all zoom levels, computed level by level without index */
+	private static int[][] bruteForce(ArrayList<GeoPoint> positions){
+		TileSystem tileSystem = MapView.getTileSystem();
+		int n = positions.size();
+		//nodes of the current level, as their center item:
+		ArrayList<Integer> nodes = new ArrayList<>();
+		int[] nodeOfItem = new int[n];
+		for (int i = 0; i < n; i++){
+			nodes.add(i);
+			nodeOfItem[i] = i;
+		}
+		int[][] centers = new int[MAX_ZOOM+2][];
+		centers[MAX_ZOOM+1] = new int[n];
+		for (int i = 0; i < n; i++)
+			centers[MAX_ZOOM+1][i] = i;
+		for (int z = MAX_ZOOM; z >= 0; z--){
+			double radius = RADIUS / TileSystem.MapSize((double)z);
+			ArrayList<Integer> level = new ArrayList<>();
+			int[] parents = new int[nodes.size()];
+			for (int j = 0; j < nodes.size(); j++){
+				GeoPoint p = positions.get(nodes.get(j));
+				double x = tileSystem.getX01FromLongitude(p.getLongitude(), true);
+				double y = tileSystem.getY01FromLatitude(p.getLatitude(), true);
+				int found = -1;
+				for (int k = 0; k < level.size() && found == -1; k++){
+					GeoPoint q = positions.get(level.get(k));
+					double dx = Math.abs(tileSystem.getX01FromLongitude(q.getLongitude(), true) - x);
+					if (dx > 0.5)
+						dx = 1.0 - dx;
+					double dy = tileSystem.getY01FromLatitude(q.getLatitude(), true) - y;
+					if (dx*dx + dy*dy <= radius*radius)
+						found = k;
+				}
+				if (found == -1){
+					found = level.size();
+					level.add(nodes.get(j));
+				}
+				parents[j] = found;
+			}
+			centers[z] = new int[n];
+			for (int i = 0; i < n; i++){
+				nodeOfItem[i] = parents[nodeOfItem[i]];
+				centers[z][i] = level.get(nodeOfItem[i]);
+			}
+			nodes = level;
+		}
+		return centers;
+	}
+
+	private static ArrayList<GeoPoint> positions(int n, long seed){
+		ArrayList<GeoPoint> positions = BenchmarkFixtures.deliveryPoints(n, seed);
+		Random random = new Random(seed);
+		//some around the date line:
+		for (int i = 0; i < n/10; i++){
+			double lon = random.nextDouble() * 0.5;
+			positions.set(random.nextInt(n), new GeoPoint(random.nextGaussian(), random.nextBoolean() ? 180.0 - lon : -180.0 + lon));
+		}
+		return positions;
+	}
+
+	@Test
+	public void levelsMatchBruteForce(){
+		ArrayList<GeoPoint> positions = positions(1500, 8);
+		ClusterHierarchy hierarchy = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		hierarchy.setPositions(positions);
+		int[][] expected = bruteForce(positions);
+		for (int z = 0; z <= MAX_ZOOM+1; z++)
+			assertArrayEquals("zoom " + z, expected[z], hierarchy.getCenters(z));
+		//beyond the levels:
+		assertArrayEquals(expected[0], hierarchy.getCenters(-3));
+		assertArrayEquals(expected[MAX_ZOOM+1], hierarchy.getCenters(25));
+	}
+
+	@Test
+	public void incrementalMatchesRebuild(){
+		ArrayList<GeoPoint> positions = positions(4000, 9);
+		ClusterHierarchy incremental = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		incremental.setPositions(positions.subList(0, 1000));
+		incremental.getCenters(0); //built
+		for (int i = 1000; i < positions.size(); i++){
+			incremental.add(positions.get(i));
+			if (i % 750 == 0){
+				ClusterHierarchy rebuilt = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+				rebuilt.setPositions(positions.subList(0, i+1));
+				for (int z = 0; z <= MAX_ZOOM+1; z++)
+					assertArrayEquals("zoom " + z + " after " + (i+1), rebuilt.getCenters(z), incremental.getCenters(z));
+			}
+		}
+		ClusterHierarchy rebuilt = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		rebuilt.setPositions(positions);
+		assertEquals(positions.size(), incremental.size());
+		for (int z = 0; z <= MAX_ZOOM+1; z++)
+			assertArrayEquals("zoom " + z, rebuilt.getCenters(z), incremental.getCenters(z));
+	}
+
+	@Test
+	public void addBeforeBuild(){
+		ArrayList<GeoPoint> positions = positions(500, 10);
+		ClusterHierarchy lazy = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		for (GeoPoint p : positions)
+			lazy.add(p);
+		ClusterHierarchy rebuilt = new ClusterHierarchy(RADIUS, MAX_ZOOM);
+		rebuilt.setPositions(positions);
+		for (int z = 0; z <= MAX_ZOOM+1; z++)
+			assertArrayEquals(rebuilt.getCenters(z), lazy.getCenters(z));
+	}
+}
@@ -0,0 +1,106 @@
+package org.osmdroid.bonuspack.clustering;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Culling with GridIndex.getItems, as in MarkerClusterer.getVisibleClusters, against a brute-force scan:
+ * every item inside the visible area must be found, and no item farther than a cell from it.
+ */
+public class GridIndexTest {
+
+	private static final int ITEMS = 5000;
+	private static final int RECTANGLES = 8000;
+
+	/** @return the distance from v to [min, max] on the x axis, which wraps around */
+	private static double xDistance(double v, double min, double max){
+		if (max < min)
+			max += 1.0;
+		double best = Double.MAX_VALUE;
+		for (int k = -2; k <= 2; k++){
+			double x = v + k;
+			best = Math.min(best, x < min ? min - x : x > max ? x - max : 0.0);
+		}
+		return best;
+	}
+
+	private static double yDistance(double v, double min, double max){
+		return (v < min ? min - v : v > max ? v - max : 0.0);
+	}
+
+	private static void check(double cellSize, double[] x, double[] y, Random random){
+		GridIndex index = new GridIndex(cellSize, x.length);
+		for (int i = 0; i < x.length; i++)
+			index.add(i, x[i], y[i]);
+		double cell = index.getCellSize();
+		for (int r = 0; r < RECTANGLES; r++){
+			//screens at various zooms, some across the date line or beyond the map edges:
+			double width = cellSize * (0.1 + random.nextDouble() * (r % 10 == 0 ? 500 : 6));
+			double height = width * (0.5 + random.nextDouble());
+			double west = random.nextDouble() * 1.2 - 0.1;
+			double north = random.nextDouble() * 1.2 - 0.1;
+			double east = west + width;
+			double south = north + height;
+			if (r % 3 == 0 && east > 1.0)
+				east -= 1.0; //given as across the date line
+			int[] items = index.getItems(west, north, east, south);
+			boolean[] found = new boolean[x.length];
+			for (int i : items){
+				assertFalse("item returned twice", found[i]);
+				found[i] = true;
+				//in a cell intersecting the rectangle:
+				assertTrue(xDistance(x[i], west, east) <= cell + 1e-12);
+				assertTrue(yDistance(y[i], north, south) <= cell + 1e-12);
+			}
+			for (int i = 0; i < x.length; i++){
+				boolean inside = (xDistance(x[i], west, east) == 0.0 && yDistance(y[i], north, south) == 0.0);
+				if (inside)
+					assertTrue("visible item " + i + " culled", found[i]);
+			}
+		}
+	}
+
+	@Test
+	public void uniformItems(){
+		Random random = new Random(10);
+		double[] x = new double[ITEMS], y = new double[ITEMS];
+		for (int i = 0; i < ITEMS; i++){
+			x[i] = random.nextDouble();
+			y[i] = random.nextDouble();
+		}
+		check(1.0 / 64, x, y, random);
+		check(1.0 / 4096, x, y, random);
+	}
+
+	@Test
+	public void denseItemsAndEdges(){
+		Random random = new Random(11);
+		double[] x = new double[ITEMS], y = new double[ITEMS];
+		for (int i = 0; i < ITEMS; i++){
+			switch (i % 4){
+				case 0: x[i] = 0.79 + random.nextGaussian() * 0.001; y[i] = 0.43 + random.nextGaussian() * 0.001; break;
+				case 1: x[i] = (random.nextBoolean() ? random.nextDouble() * 0.001 : 1.0 - random.nextDouble() * 0.001); y[i] = random.nextDouble(); break;
+				case 2: x[i] = random.nextDouble(); y[i] = (random.nextBoolean() ? 0.0 : 1.0); break;
+				default: x[i] = random.nextDouble(); y[i] = random.nextDouble();
+			}
+			x[i] = Math.max(0.0, Math.min(x[i], 1.0));
+			y[i] = Math.max(0.0, Math.min(y[i], 1.0));
+		}
+		check(1.0 / 1000, x, y, random);
+		check(1.0 / 262144, x, y, random);
+	}
+
+	@Test
+	public void wholeMap(){
+		GridIndex index = new GridIndex(1.0 / 256, 3);
+		index.add(0, 0.0, 0.0);
+		index.add(1, 0.5, 0.5);
+		index.add(2, 1.0, 1.0);
+		assertEquals(3, index.getItems(-2.0, -1.0, 3.0, 2.0).length);
+		assertEquals(3, index.getItems(0.9, 0.0, 0.8, 1.0).length);
+		assertEquals(0, index.getItems(0.2, 0.2, 0.3, 0.3).length);
+	}
+}
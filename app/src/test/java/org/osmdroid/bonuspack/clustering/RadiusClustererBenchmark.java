@@ -0,0 +1,50 @@
+package org.osmdroid.bonuspack.clustering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Radius-based clustering of the delivery addresses of a day, as done by RadiusMarkerClusterer.clusterer
+ * at each zoom change. Markers and MapView require Android: this measures the algorithm on their positions.
+ * Should scale near-linearly with the number of markers, thanks to the grid index.
+ * ./gradlew :app:jmh -Pjmh.includes=RadiusClustererBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RadiusClustererBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	public int markers;
+
+	/** 100px at zoom 16 (a district), 13 (the city) and 10 (the whole province) */
+	@Param({"225", "1800", "14000"})
+	public double radiusInMeters;
+
+	private ArrayList<GeoPoint> mPositions;
+
+	@Setup public void setup(){
+		mPositions = BenchmarkFixtures.deliveryPoints(markers, 42);
+	}
+
+	@Benchmark public int[] clusterer(){
+		return RadiusMarkerClusterer.clusterPositions(mPositions, radiusInMeters);
+	}
+}
@@ -0,0 +1,76 @@
+package org.osmdroid.bonuspack.clustering;
+
+import org.junit.Test;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * RadiusMarkerClusterer.clusterPositions, with its grid index, must give exactly the clusters
+ * of the original O(n²) algorithm.
+ */
+public class RadiusMarkerClustererTest {
+
+	/** the original algorithm: scan of the remaining positions for each cluster center */
+	private static int[] bruteForce(ArrayList<GeoPoint> positions, double radiusInMeters){
+		int[] centers = new int[positions.size()];
+		ArrayList<Integer> remaining = new ArrayList<>();
+		for (int i = 0; i < positions.size(); i++)
+			remaining.add(i);
+		while (!remaining.isEmpty()){
+			int center = remaining.remove(0);
+			centers[center] = center;
+			GeoPoint clusterPosition = positions.get(center);
+			for (int k = 0; k < remaining.size(); ){
+				int neighbour = remaining.get(k);
+				if (clusterPosition.distanceToAsDouble(positions.get(neighbour)) <= radiusInMeters){
+					centers[neighbour] = center;
+					remaining.remove(k);
+				} else
+					k++;
+			}
+		}
+		return centers;
+	}
+
+	private static void assertSameClusters(ArrayList<GeoPoint> positions, double radiusInMeters){
+		assertArrayEquals("radius " + radiusInMeters, bruteForce(positions, radiusInMeters),
+				RadiusMarkerClusterer.clusterPositions(positions, radiusInMeters));
+	}
+
+	@Test
+	public void deliveryPoints(){
+		ArrayList<GeoPoint> positions = BenchmarkFixtures.deliveryPoints(3000, 6);
+		for (double radius : new double[]{0.0, 20.0, 225.0, 1800.0, 14000.0, 1e7})
+			assertSameClusters(positions, radius);
+	}
+
+	@Test
+	public void dateLineAndHighLatitudes(){
+		Random random = new Random(6);
+		ArrayList<GeoPoint> positions = new ArrayList<>();
+		for (int i = 0; i < 1500; i++){
+			double lon = (random.nextBoolean() ? 179.9 : -179.9) + random.nextGaussian() * 0.05;
+			lon = Math.max(-180.0, Math.min(lon, 180.0));
+			double lat = (i % 2 == 0 ? random.nextGaussian() * 0.05 : 84.0 + random.nextDouble() * 1.0);
+			positions.add(new GeoPoint(lat, lon));
+		}
+		for (double radius : new double[]{500.0, 5000.0, 50000.0})
+			assertSameClusters(positions, radius);
+	}
+
+	@Test
+	public void duplicatesAndEmpty(){
+		ArrayList<GeoPoint> positions = new ArrayList<>();
+		assertEquals(0, RadiusMarkerClusterer.clusterPositions(positions, 100.0).length);
+		for (int i = 0; i < 50; i++)
+			positions.add(new GeoPoint(21.0285, 105.8542));
+		positions.add(new GeoPoint(21.1, 105.8542));
+		assertSameClusters(positions, 0.0);
+		assertSameClusters(positions, 100.0);
+	}
+}
@@ -0,0 +1,74 @@
+package org.osmdroid.bonuspack.kml;
+
+import com.google.gson.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GeoJSON import of 5k zone polygons: whole JsonElement tree, streaming, and streaming with an area of interest
+ * covering about a tenth of the zones.
+ * ./gradlew :app:jmh -Pjmh.includes="GeoJSONReaderBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class GeoJSONReaderBenchmark {
+
+	private static final int ZONES = 5000;
+	private static final int ZONE_VERTICES = 100;
+
+	private byte[] mGeoJSON;
+	private BoundingBox mArea;
+
+	@Setup public void setup(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseKMLStream(new ByteArrayInputStream(
+				BenchmarkFixtures.kmlZones(ZONES, ZONE_VERTICES, 42).getBytes(StandardCharsets.UTF_8)), null);
+		StringWriter writer = new StringWriter();
+		kmlDocument.saveAsGeoJSON(writer);
+		mGeoJSON = writer.toString().getBytes(StandardCharsets.UTF_8);
+		BoundingBox bb = kmlDocument.mKmlRoot.getBoundingBox();
+		double latSpan = bb.getLatitudeSpan() * 0.3, lonSpan = bb.getLongitudeSpan() * 0.3;
+		mArea = new BoundingBox(bb.getCenterLatitude() + latSpan/2, bb.getCenterLongitude() + lonSpan/2,
+				bb.getCenterLatitude() - latSpan/2, bb.getCenterLongitude() - lonSpan/2);
+	}
+
+	@Benchmark public KmlFolder parseGeoJSONTree(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseGeoJSON(JsonParser.parseReader(new InputStreamReader(
+				new ByteArrayInputStream(mGeoJSON), StandardCharsets.UTF_8)).getAsJsonObject());
+		return kmlDocument.mKmlRoot;
+	}
+
+	@Benchmark public KmlFolder parseGeoJSONStream(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseGeoJSONStream(new ByteArrayInputStream(mGeoJSON));
+		return kmlDocument.mKmlRoot;
+	}
+
+	@Benchmark public KmlFolder parseGeoJSONStreamInArea(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseGeoJSONStream(new ByteArrayInputStream(mGeoJSON), mArea, null);
+		return kmlDocument.mKmlRoot;
+	}
+}
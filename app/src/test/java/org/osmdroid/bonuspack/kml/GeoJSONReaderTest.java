@@ -0,0 +1,130 @@
+package org.osmdroid.bonuspack.kml;
+
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * The streaming GeoJSONReader must build the same document as the JsonElement tree path
+ * (KmlFeature.parseGeoJSON), compared through their GeoJSON export.
+ */
+public class GeoJSONReaderTest {
+
+	private static final String SAMPLE = "{\"type\":\"FeatureCollection\",\"features\":["
+			+ "{\"type\":\"Feature\",\"id\":\"depot\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[105.8542,21.0285,12.5]},"
+			+ "\"properties\":{\"name\":\"Kho Hoàn Kiếm\",\"capacity\":120,\"open\":true,\"manager\":null,"
+			+ "\"tags\":[\"a\",\"b\"],\"hours\":{\"from\":7,\"to\":22}}},"
+			+ "{\"properties\":{\"name\":\"route\"},\"type\":\"Feature\","
+			+ "\"geometry\":{\"coordinates\":[[105.80,21.00],[105.81,21.01],[105.82,21.005]],\"type\":\"LineString\"}},"
+			+ "{\"type\":\"Feature\",\"id\":7,\"geometry\":{\"type\":\"Polygon\",\"coordinates\":["
+			+ "[[105.7,20.9],[105.9,20.9],[105.9,21.1],[105.7,21.1],[105.7,20.9]],"
+			+ "[[105.75,20.95],[105.8,20.95],[105.8,21.0],[105.75,20.95]]]},\"properties\":{}},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPoint\",\"coordinates\":[[106.0,21.0],[106.1,21.1,5]]},\"properties\":null},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiLineString\",\"coordinates\":[[[106.0,20.0],[106.1,20.1]],[[106.2,20.2],[106.3,20.3]]]}},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":["
+			+ "[[[107.0,20.0],[107.1,20.0],[107.1,20.1],[107.0,20.0]]],"
+			+ "[[[108.0,20.0],[108.1,20.0],[108.1,20.1],[108.0,20.0]],[[108.02,20.01],[108.05,20.01],[108.05,20.02],[108.02,20.01]]]]}},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"GeometryCollection\",\"geometries\":["
+			+ "{\"type\":\"Point\",\"coordinates\":[-179.5,0.5]},{\"type\":\"LineString\",\"coordinates\":[[179.5,-0.5],[-179.9,-0.4]]}]}},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[1e1,-2.5E-1]},\"properties\":{\"name\":\"exponents\"}}"
+			+ "],\"name\":\"ignored\"}";
+
+	private static String export(KmlDocument kmlDocument){
+		StringWriter writer = new StringWriter();
+		assertTrue(kmlDocument.saveAsGeoJSON(writer));
+		return writer.toString();
+	}
+
+	private static KmlDocument tree(String geoJSON){
+		KmlDocument kmlDocument = new KmlDocument();
+		assertTrue(kmlDocument.parseGeoJSON(JsonParser.parseString(geoJSON).getAsJsonObject()));
+		return kmlDocument;
+	}
+
+	private static KmlDocument stream(String geoJSON, BoundingBox area, KmlDocument.FeatureListener listener){
+		KmlDocument kmlDocument = new KmlDocument();
+		assertTrue(kmlDocument.parseGeoJSONStream(new ByteArrayInputStream(geoJSON.getBytes(StandardCharsets.UTF_8)), area, listener));
+		return kmlDocument;
+	}
+
+	@Test
+	public void sameAsTree(){
+		assertEquals(export(tree(SAMPLE)), export(stream(SAMPLE, null, null)));
+		KmlDocument parsed = stream(SAMPLE, null, null);
+		assertEquals(8, parsed.mKmlRoot.mItems.size());
+		assertEquals("Kho Hoàn Kiếm", parsed.mKmlRoot.mItems.get(0).mName);
+		assertEquals("depot", parsed.mKmlRoot.mItems.get(0).mId);
+		assertEquals("7", parsed.mKmlRoot.mItems.get(2).mId);
+	}
+
+	@Test
+	public void singleFeature(){
+		String feature = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[2.2945,48.8583]},\"properties\":{\"name\":\"Tour\"}}";
+		assertEquals(export(tree(feature)), export(stream(feature, null, null)));
+	}
+
+	@Test
+	public void zonesSameAsTree(){
+		KmlDocument kml = new KmlDocument();
+		kml.parseKMLStream(new ByteArrayInputStream(BenchmarkFixtures.kmlZones(300, 20, 15).getBytes(StandardCharsets.UTF_8)), null);
+		String geoJSON = export(kml);
+		assertEquals(export(tree(geoJSON)), export(stream(geoJSON, null, null)));
+	}
+
+	@Test
+	public void areaFilter(){
+		KmlDocument kml = new KmlDocument();
+		kml.parseKMLStream(new ByteArrayInputStream(BenchmarkFixtures.kmlZones(300, 20, 15).getBytes(StandardCharsets.UTF_8)), null);
+		String geoJSON = export(kml);
+		BoundingBox bb = kml.mKmlRoot.getBoundingBox();
+		BoundingBox area = new BoundingBox(bb.getCenterLatitude() + bb.getLatitudeSpan()*0.15, bb.getCenterLongitude() + bb.getLongitudeSpan()*0.15,
+				bb.getCenterLatitude() - bb.getLatitudeSpan()*0.15, bb.getCenterLongitude() - bb.getLongitudeSpan()*0.15);
+		//the tree path, then filtered:
+		KmlDocument expected = tree(geoJSON);
+		ArrayList<KmlFeature> kept = new ArrayList<>();
+		for (KmlFeature feature : expected.mKmlRoot.mItems){
+			BoundingBox fb = feature.getBoundingBox();
+			if (fb.getLatSouth() <= area.getLatNorth() && fb.getLatNorth() >= area.getLatSouth()
+					&& fb.getLonWest() <= area.getLonEast() && fb.getLonEast() >= area.getLonWest())
+				kept.add(feature);
+		}
+		assertTrue(kept.size() > 0 && kept.size() < expected.mKmlRoot.mItems.size());
+		expected.mKmlRoot.mItems = kept;
+
+		final ArrayList<KmlFeature> received = new ArrayList<>();
+		KmlDocument filtered = stream(geoJSON, area, new KmlDocument.FeatureListener() {
+			@Override public boolean onFeature(KmlFeature feature, KmlFolder parent){
+				received.add(feature);
+				return true;
+			}
+		});
+		assertEquals(export(expected), export(filtered));
+		assertEquals(filtered.mKmlRoot.mItems, received);
+	}
+
+	@Test
+	public void listenerCanDropFeatures(){
+		KmlDocument kmlDocument = stream(SAMPLE, null, new KmlDocument.FeatureListener() {
+			@Override public boolean onFeature(KmlFeature feature, KmlFolder parent){
+				return !"route".equals(feature.mName);
+			}
+		});
+		assertEquals(7, kmlDocument.mKmlRoot.mItems.size());
+	}
+
+	@Test
+	public void notAnObject(){
+		KmlDocument kmlDocument = new KmlDocument();
+		assertFalse(kmlDocument.parseGeoJSON("[1, 2]"));
+		assertFalse(kmlDocument.parseGeoJSON("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":"));
+	}
+}
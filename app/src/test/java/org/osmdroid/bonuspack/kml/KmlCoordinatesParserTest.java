@@ -0,0 +1,153 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * KmlCoordinatesParser must give exactly the values of Double.parseDouble, bit for bit,
+ * and skip the tuples it rejects.
+ */
+public class KmlCoordinatesParserTest {
+
+	private static final String[] EDGE_CASES = {
+			"0", "-0", "+0", "0.0", "-0.0", "-.0", "00.000", "-0e0", "0e-400",
+			"1", "-1", "+1", ".5", "-.5", "5.", "-5.", "0.1", "0.2", "0.3",
+			"180", "-180", "179.99999999999997", "-89.999999999999999",
+			"123456789012345", "1234567890123456", "12345678901234567890",
+			"0.000000000000000000001", "0.0000000000000000000001", "0.00000000000000000000001",
+			"1.00000000000000000000", "9007199254740993", "0.30000000000000004",
+			"2.2250738585072011e-308", "4.9e-324", "1.7976931348623157e308", "1e309", "-1e309",
+			"1e5", "1E5", "1e+5", "1e-5", "-2.5E-3", "6.02214076e23",
+			"0x1p3", "NaN", "Infinity", "-Infinity", "1d", "1f",
+			"00000000000000000001.5", "105.85420000000000000001",
+	};
+
+	private static final String[] MALFORMED = {
+			"", ".", "-", "+", "-.", "+-1", "--1", "1.2.3", "1-", "1e", "e5", "1e5.5", "abc", "1,5x", "0x", "١٢",
+	};
+
+	/** @return the values parsed from text, or null if the tuple was skipped */
+	private static double[] parse(String text){
+		KmlCoordinatesParser parser = new KmlCoordinatesParser();
+		parser.append(text);
+		parser.finish();
+		if (parser.size() == 0)
+			return null;
+		assertEquals(1, parser.size());
+		double[] values = parser.getValues();
+		return new double[]{values[0], values[1], values[2]};
+	}
+
+	/** @return Double.parseDouble(s), or null if invalid */
+	private static Double reference(String s){
+		try {
+			return Double.parseDouble(s);
+		} catch (NumberFormatException e){
+			return null;
+		}
+	}
+
+	private static void assertSameAsParseDouble(String s){
+		Double expected = reference(s);
+		//as longitude, latitude and altitude:
+		double[] lon = parse(s + ",0");
+		double[] lat = parse("0," + s);
+		double[] alt = parse("0,0," + s);
+		if (expected == null){
+			assertNull(s, lon);
+			assertNull(s, lat);
+			assertNull(s, alt);
+		} else {
+			long bits = Double.doubleToLongBits(expected);
+			assertNotNull(s, lon);
+			assertEquals(s, bits, Double.doubleToLongBits(lon[0]));
+			assertEquals(s, bits, Double.doubleToLongBits(lat[1]));
+			assertEquals(s, bits, Double.doubleToLongBits(alt[2]));
+		}
+	}
+
+	@Test
+	public void edgeCases(){
+		for (String s : EDGE_CASES)
+			assertSameAsParseDouble(s);
+	}
+
+	@Test
+	public void malformedTuplesAreSkipped(){
+		for (String s : MALFORMED)
+			assertSameAsParseDouble(s);
+		assertNull(parse("1,2,3,4"));
+		assertNull(parse(","));
+		assertNull(parse("1,,2"));
+	}
+
+	@Test
+	public void signedZeros(){
+		double[] values = parse("-0,-0.0,0");
+		assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(values[0]));
+		assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(values[1]));
+		assertEquals(Double.doubleToLongBits(0.0), Double.doubleToLongBits(values[2]));
+	}
+
+	@Test
+	public void randomDoubles(){
+		Random random = new Random(13);
+		for (int i = 0; i < 20000; i++){
+			double d;
+			switch (i % 4){
+				case 0: d = random.nextDouble()*360.0 - 180.0; break;
+				case 1: d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20); break;
+				case 2: d = Double.longBitsToDouble(random.nextLong()); break;
+				default: d = Math.round(random.nextDouble()*1e7) / 1e7 * (random.nextBoolean() ? 1 : -1);
+			}
+			assertSameAsParseDouble(Double.toString(d));
+			assertSameAsParseDouble(String.format(Locale.ROOT, "%." + random.nextInt(25) + "f", d));
+		}
+	}
+
+	@Test
+	public void randomDigitStrings(){
+		Random random = new Random(17);
+		char[] alphabet = "0123456789012345678901234567890123456789.-+eE".toCharArray();
+		for (int i = 0; i < 50000; i++){
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(i % 2 == 0 ? 8 : 30);
+			for (int j = 0; j < length; j++){
+				//mostly digits, sometimes a dot, a sign or an exponent anywhere:
+				sb.append(random.nextInt(10) < 8 ? (char)('0' + random.nextInt(10)) : alphabet[random.nextInt(alphabet.length)]);
+			}
+			assertSameAsParseDouble(sb.toString());
+		}
+	}
+
+	@Test
+	public void chunksDoNotMatter(){
+		Random random = new Random(5);
+		StringBuilder sb = new StringBuilder();
+		List<String> numbers = new ArrayList<>();
+		for (int i = 0; i < 3000; i++){
+			String s = (i % 3 == 2 ? Double.toString(random.nextDouble()*1000) : String.format(Locale.ROOT, "%.9f", random.nextDouble()*180));
+			numbers.add(s);
+			sb.append(s).append(i % 3 == 2 ? (random.nextBoolean() ? " " : "\n\t") : ",");
+		}
+		char[] chars = sb.toString().toCharArray();
+		KmlCoordinatesParser parser = new KmlCoordinatesParser();
+		int start = 0;
+		while (start < chars.length){
+			int length = Math.min(chars.length - start, 1 + random.nextInt(40));
+			parser.append(chars, start, length);
+			start += length;
+		}
+		parser.finish();
+		assertEquals(1000, parser.size());
+		double[] values = parser.getValues();
+		for (int i = 0; i < numbers.size(); i++)
+			assertEquals(numbers.get(i), Double.doubleToLongBits(Double.parseDouble(numbers.get(i))), Double.doubleToLongBits(values[i]));
+	}
+}
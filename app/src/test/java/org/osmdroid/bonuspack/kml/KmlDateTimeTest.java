@@ -0,0 +1,89 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class KmlDateTimeTest {
+
+	private static final long UNDEFINED = KmlDateTime.UNDEFINED;
+
+	@After
+	public void tearDown(){
+		KmlDateTime.setLocalTimeZone(null);
+	}
+
+	private static long utc(String s){
+		return java.time.Instant.parse(s).toEpochMilli();
+	}
+
+	@Test
+	public void utcAndOffsets(){
+		assertEquals(utc("2020-09-13T12:26:40Z"), KmlDateTime.parse("2020-09-13T12:26:40Z"));
+		assertEquals(utc("2020-09-13T12:26:40.123Z"), KmlDateTime.parse("2020-09-13T12:26:40.123Z"));
+		assertEquals(utc("2020-09-13T12:26:40.100Z"), KmlDateTime.parse("2020-09-13T12:26:40.1Z"));
+		//rounded down to milliseconds:
+		assertEquals(utc("2020-09-13T12:26:40.999Z"), KmlDateTime.parse("2020-09-13T12:26:40.999999Z"));
+		assertEquals(utc("2020-09-13T05:26:40Z"), KmlDateTime.parse("2020-09-13T12:26:40+07:00"));
+		assertEquals(utc("2020-09-13T05:26:40Z"), KmlDateTime.parse("2020-09-13T12:26:40+0700"));
+		assertEquals(utc("2020-09-13T05:26:40Z"), KmlDateTime.parse("2020-09-13T12:26:40+07"));
+		assertEquals(utc("2020-09-13T17:56:40Z"), KmlDateTime.parse("2020-09-13T12:26:40-05:30"));
+		assertEquals(utc("2020-09-13T12:26:40Z"), KmlDateTime.parse("  2020-09-13T12:26:40Z\n"));
+		assertEquals(utc("1969-12-31T23:59:59Z"), KmlDateTime.parse("1969-12-31T23:59:59Z"));
+		assertEquals(utc("2020-02-29T00:00:00Z"), KmlDateTime.parse("2020-02-29T00:00:00Z"));
+	}
+
+	@Test
+	public void endOfDay(){
+		assertEquals(utc("2020-09-14T00:00:00Z"), KmlDateTime.parse("2020-09-13T24:00:00Z"));
+		assertEquals(utc("2021-01-01T00:00:00Z"), KmlDateTime.parse("2020-12-31T24:00:00.000Z"));
+		assertEquals(UNDEFINED, KmlDateTime.parse("2020-09-13T24:30:00Z"));
+		assertEquals(UNDEFINED, KmlDateTime.parse("2020-09-13T24:00:01Z"));
+		assertEquals(UNDEFINED, KmlDateTime.parse("2020-09-13T24:00:00.001Z"));
+		assertEquals(UNDEFINED, KmlDateTime.parse("2020-09-13T25:00:00Z"));
+	}
+
+	@Test
+	public void invalid(){
+		String[] invalid = {
+				"", "2020-", "2020-13", "2020-00", "2020-02-30", "2019-02-29", "2020-9-13",
+				"2020-09-13T", "2020-09-13T12:26", "2020-09-13T12:60:00Z", "2020-09-13T12:26:61Z",
+				"2020-09-13 12:26:40Z", "2020-09T12:26:40Z", "2020-09-13T12:26:40.Z",
+				"2020-09-13T12:26:40ZZ", "2020-09-13T12:26:40X",
+				"2020-09-13T12:26:40+", "2020-09-13T12:26:40+5", "2020-09-13T12:26:40+05:",
+				"2020-09-13T12:26:40+05:3", "2020-09-13T12:26:40+05:60", "2020-09-13T12:26:40+15:00",
+				"2020-09-13T12:26:40+05:00:00", "abcd",
+		};
+		for (String s : invalid)
+			assertEquals(s, UNDEFINED, KmlDateTime.parse(s));
+	}
+
+	@Test
+	public void localTime(){
+		KmlDateTime.setLocalTimeZone(TimeZone.getTimeZone("GMT+07:00"));
+		assertEquals(utc("2020-09-13T05:26:40Z"), KmlDateTime.parse("2020-09-13T12:26:40"));
+		assertEquals(utc("2020-09-12T17:00:00Z"), KmlDateTime.parse("2020-09-13"));
+		assertEquals(utc("2019-12-31T17:00:00Z"), KmlDateTime.parse("2020"));
+		assertEquals(utc("2020-08-31T17:00:00Z"), KmlDateTime.parse("2020-09"));
+		//with daylight saving time:
+		KmlDateTime.setLocalTimeZone(TimeZone.getTimeZone("Europe/Paris"));
+		assertEquals(utc("2020-07-01T10:00:00Z"), KmlDateTime.parse("2020-07-01T12:00:00"));
+		assertEquals(utc("2020-01-01T11:00:00Z"), KmlDateTime.parse("2020-01-01T12:00:00"));
+		//back to the default:
+		KmlDateTime.setLocalTimeZone(null);
+		assertEquals(TimeZone.getDefault().getID(), KmlDateTime.getLocalTimeZone().getID());
+	}
+
+	@Test
+	public void formatRoundTrip(){
+		assertNull(KmlDateTime.format(UNDEFINED));
+		assertEquals("2020-09-13T12:26:40Z", KmlDateTime.format(utc("2020-09-13T12:26:40Z")));
+		assertEquals("0099-01-01T00:00:00.005Z", KmlDateTime.format(utc("0099-01-01T00:00:00.005Z")));
+		long[] times = {0L, -1L, 1600000000123L, utc("2000-02-29T23:59:59.999Z"), utc("1600-03-01T00:00:00Z")};
+		for (long time : times)
+			assertEquals(time, KmlDateTime.parse(KmlDateTime.format(time)));
+	}
+}
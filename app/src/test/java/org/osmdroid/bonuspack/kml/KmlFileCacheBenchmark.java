@@ -0,0 +1,75 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a large KML file of 10k zone polygons (1.1M vertices, about 45MB): parsed, or loaded from the KmlFileCache entry
+ * of a previous session - the whole tree decoded, with a GeoPoint per vertex.
+ * ./gradlew :app:jmh -Pjmh.includes="KmlFileCacheBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class KmlFileCacheBenchmark {
+
+	private static final int ZONES = 10000;
+	private static final int ZONE_VERTICES = 100;
+
+	private File mDirectory;
+	private File mFile;
+	private KmlFileCache mCache;
+
+	@Setup public void setup() throws IOException {
+		mDirectory = Files.createTempDirectory("kmlcache").toFile();
+		mFile = new File(mDirectory, "zones.kml");
+		Files.write(mFile.toPath(), BenchmarkFixtures.kmlZones(ZONES, ZONE_VERTICES, 42).getBytes(StandardCharsets.UTF_8));
+		mCache = new KmlFileCache(new File(mDirectory, "cache"), 1L << 30);
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.setFileCache(mCache);
+		if (!kmlDocument.parseKMLFile(mFile) || mCache.count() != 1)
+			throw new IllegalStateException("not cached");
+	}
+
+	@TearDown public void tearDown(){
+		mCache.clear();
+		File cacheDirectory = new File(mDirectory, "cache");
+		for (File f : cacheDirectory.listFiles())
+			f.delete();
+		cacheDirectory.delete();
+		mFile.delete();
+		mDirectory.delete();
+	}
+
+	@Benchmark public KmlFolder parse(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseKMLFile(mFile);
+		return kmlDocument.mKmlRoot;
+	}
+
+	@Benchmark public KmlFolder cacheHit(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.setFileCache(mCache);
+		kmlDocument.parseKMLFile(mFile);
+		return kmlDocument.mKmlRoot;
+	}
+}
@@ -0,0 +1,243 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * KmlFileCache round trip, and corrupted entries: never an exception, the entry is removed.
+ */
+public class KmlFileCacheTest {
+
+	private static final String KEY = "kml:0123456789abcdef";
+
+	private File mDirectory;
+	private KmlFileCache mCache;
+
+	@Before
+	public void setUp() throws IOException {
+		mDirectory = Files.createTempDirectory("kmlcache").toFile();
+		mCache = new KmlFileCache(mDirectory, 1 << 20);
+	}
+
+	@After
+	public void tearDown(){
+		mCache.clear();
+		File[] files = mDirectory.listFiles();
+		if (files != null){
+			for (File f : files)
+				f.delete();
+		}
+		mDirectory.delete();
+	}
+
+	private static KmlDocument document(){
+		KmlDocument kmlDocument = new KmlDocument();
+		Style style = new Style();
+		style.mLineStyle = new LineStyle();
+		style.mLineStyle.mColor = 0xFF00FF00;
+		style.mLineStyle.mWidth = 3.0f;
+		kmlDocument.putStyle("line", style);
+		KmlPlacemark point = new KmlPlacemark(new GeoPoint(21.0285, 105.8542));
+		point.mName = "Hồ Hoàn Kiếm";
+		kmlDocument.mKmlRoot.add(point);
+		KmlTrack track = new KmlTrack();
+		for (int i = 0; i < 50; i++)
+			track.add(new GeoPoint(21.0 + i*0.001, 105.8 + i*0.001, i), 1600000000000L + i*1000L);
+		KmlPlacemark trackPlacemark = new KmlPlacemark();
+		trackPlacemark.mGeometry = track;
+		trackPlacemark.mStyle = "line";
+		kmlDocument.mKmlRoot.add(trackPlacemark);
+		return kmlDocument;
+	}
+
+	/** @return the single entry file of the cache */
+	private File entryFile(){
+		File[] files = mDirectory.listFiles();
+		assertNotNull(files);
+		File entry = null;
+		for (File f : files){
+			if (f.getName().equals("journal"))
+				continue;
+			assertNull("single entry expected", entry);
+			entry = f;
+		}
+		assertNotNull(entry);
+		return entry;
+	}
+
+	/** replace the content of the entry file */
+	private void overwrite(byte[] content) throws IOException {
+		FileOutputStream out = new FileOutputStream(entryFile());
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	/** @return a header valid for KEY, followed by what write adds */
+	private static byte[] entry(Body body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(KmlFileCache.MAGIC);
+		out.writeInt(KmlFileCache.VERSION);
+		writeString(out, KEY);
+		body.write(out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private interface Body {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private void assertRejected(byte[] content) throws IOException {
+		mCache.put(KEY, document());
+		overwrite(content);
+		KmlDocument kmlDocument = new KmlDocument();
+		KmlFolder root = kmlDocument.mKmlRoot;
+		assertFalse(mCache.get(KEY, kmlDocument));
+		//unchanged, and the entry is removed:
+		assertSame(root, kmlDocument.mKmlRoot);
+		assertFalse(mCache.get(KEY, new KmlDocument()));
+		assertEquals(0, mCache.size());
+	}
+
+	@Test
+	public void roundTrip(){
+		mCache.put(KEY, document());
+		KmlDocument kmlDocument = new KmlDocument();
+		assertTrue(mCache.get(KEY, kmlDocument));
+		assertEquals(2, kmlDocument.mKmlRoot.mItems.size());
+		assertEquals("Hồ Hoàn Kiếm", kmlDocument.mKmlRoot.mItems.get(0).mName);
+		KmlTrack track = (KmlTrack)((KmlPlacemark)kmlDocument.mKmlRoot.mItems.get(1)).mGeometry;
+		assertEquals(50, track.mWhenCount);
+		assertEquals(50, track.mCoordinates.size());
+		assertEquals(1600000000000L + 49*1000L, track.mWhen[49]);
+		assertEquals(49.0, track.mCoordinates.get(49).getAltitude(), 0.0);
+		assertNotNull(kmlDocument.getStyle("line"));
+	}
+
+	@Test
+	public void invalidHotSpotUnitsAreRejected() throws IOException {
+		assertRejected(entry(new Body() {
+			@Override public void write(DataOutputStream out) throws IOException {
+				out.writeInt(1); //styles
+				writeString(out, "icon");
+				out.writeByte(KmlFileCache.STYLE);
+				out.writeBoolean(false); //line
+				out.writeBoolean(false); //poly
+				out.writeBoolean(true); //icon
+				out.writeInt(0xFFFFFFFF);
+				out.writeInt(0);
+				out.writeFloat(1.0f);
+				out.writeFloat(0.0f);
+				out.writeInt(-1); //href
+				out.writeInt(-1); //bitmap
+				out.writeBoolean(true); //hotSpot
+				out.writeFloat(0.5f);
+				out.writeFloat(0.5f);
+				out.writeInt(7);
+				out.writeInt(0);
+				out.writeInt(0); //max style id
+			}
+		}));
+	}
+
+	@Test
+	public void negativeTrackCountIsRejected() throws IOException {
+		assertRejected(entry(new Body() {
+			@Override public void write(DataOutputStream out) throws IOException {
+				out.writeInt(0); //styles
+				out.writeInt(0); //max style id
+				out.writeByte(KmlFileCache.PLACEMARK);
+				for (int i = 0; i < 3; i++)
+					out.writeInt(-1); //id, name, description
+				out.writeBoolean(true);
+				out.writeBoolean(false);
+				out.writeInt(-1); //style
+				out.writeInt(-1); //extended data
+				out.writeByte(KmlFileCache.TRACK);
+				out.writeInt(-1); //id
+				out.writeInt(0); //coordinates
+				out.writeBoolean(false);
+				out.writeInt(-5); //when count
+			}
+		}));
+	}
+
+	@Test
+	public void hugeLengthsAreRejected() throws IOException {
+		assertRejected(entry(new Body() {
+			@Override public void write(DataOutputStream out) throws IOException {
+				out.writeInt(1); //styles
+				out.writeInt(Integer.MAX_VALUE); //string length
+				out.writeInt(0);
+			}
+		}));
+		assertRejected(entry(new Body() {
+			@Override public void write(DataOutputStream out) throws IOException {
+				out.writeInt(Integer.MAX_VALUE); //styles
+			}
+		}));
+		assertRejected(entry(new Body() {
+			@Override public void write(DataOutputStream out) throws IOException {
+				out.writeInt(1); //styles
+				out.writeInt(-7); //string length
+				out.write(new byte[64]);
+			}
+		}));
+	}
+
+	@Test
+	public void truncatedEntryIsRejected() throws IOException {
+		mCache.put(KEY, document());
+		byte[] valid = Files.readAllBytes(entryFile().toPath());
+		for (int length : new int[]{0, 3, 8, valid.length/2, valid.length-1}){
+			byte[] truncated = new byte[length];
+			System.arraycopy(valid, 0, truncated, 0, length);
+			assertRejected(truncated);
+		}
+	}
+
+	@Test
+	public void randomCorruptionNeverThrows() throws IOException {
+		Random random = new Random(1);
+		mCache.put(KEY, document());
+		int length = (int)entryFile().length();
+		for (int i = 0; i < 500; i++){
+			mCache.put(KEY, document());
+			RandomAccessFile raf = new RandomAccessFile(entryFile(), "rw");
+			try {
+				//after the key: else it is just not found
+				raf.seek(8 + 4 + KEY.length() + random.nextInt(length - 16 - KEY.length()));
+				raf.writeInt(random.nextBoolean() ? random.nextInt() : -random.nextInt(3));
+			} finally {
+				raf.close();
+			}
+			boolean found = mCache.get(KEY, new KmlDocument());
+			if (!found)
+				assertEquals(0, mCache.size());
+		}
+	}
+}
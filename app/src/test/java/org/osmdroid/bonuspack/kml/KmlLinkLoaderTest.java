@@ -0,0 +1,113 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class KmlLinkLoaderTest {
+
+	@Test
+	public void awaitsNestedTasks() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final KmlLinkLoader loader = new KmlLinkLoader(executor);
+			final AtomicInteger done = new AtomicInteger();
+			for (int i = 0; i < 10; i++){
+				loader.submit(new Runnable() {
+					@Override public void run(){
+						loader.submit(new Runnable() {
+							@Override public void run(){
+								done.incrementAndGet();
+							}
+						});
+						done.incrementAndGet();
+					}
+				});
+			}
+			assertTrue(loader.await());
+			assertEquals(20, done.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void interruptedAwaitCancelsAndWaitsForRunningTasks() throws InterruptedException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final KmlLinkLoader loader = new KmlLinkLoader(executor);
+			final CountDownLatch started = new CountDownLatch(1);
+			final AtomicBoolean runningTaskFinished = new AtomicBoolean();
+			final AtomicBoolean queuedTaskRan = new AtomicBoolean();
+			//a task like a KMZ entry read, then stopping on interruption:
+			loader.submit(new Runnable() {
+				@Override public void run(){
+					started.countDown();
+					try {
+						Thread.sleep(10000);
+					} catch (InterruptedException e){
+						//stopped by the cancellation
+					}
+					try {
+						Thread.sleep(100); //still using its resources for a while
+					} catch (InterruptedException e){
+						fail("interrupted twice");
+					}
+					runningTaskFinished.set(true);
+				}
+			});
+			loader.submit(new Runnable() {
+				@Override public void run(){
+					queuedTaskRan.set(true);
+				}
+			});
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			final AtomicBoolean result = new AtomicBoolean(true);
+			final AtomicBoolean finishedBeforeReturn = new AtomicBoolean();
+			final AtomicBoolean interruptStatus = new AtomicBoolean();
+			Thread parsing = new Thread(new Runnable() {
+				@Override public void run(){
+					result.set(loader.await());
+					finishedBeforeReturn.set(runningTaskFinished.get());
+					interruptStatus.set(Thread.currentThread().isInterrupted());
+				}
+			});
+			parsing.start();
+			Thread.sleep(50);
+			parsing.interrupt();
+			parsing.join(5000);
+			assertFalse(parsing.isAlive());
+			assertFalse(result.get());
+			assertTrue(finishedBeforeReturn.get());
+			assertTrue(interruptStatus.get());
+			assertFalse(queuedTaskRan.get());
+
+			//the executor thread is not left interrupted, and later submissions are ignored:
+			loader.submit(new Runnable() {
+				@Override public void run(){
+					queuedTaskRan.set(true);
+				}
+			});
+			final AtomicBoolean executorThreadInterrupted = new AtomicBoolean(true);
+			executor.submit(new Runnable() {
+				@Override public void run(){
+					executorThreadInterrupted.set(Thread.currentThread().isInterrupted());
+				}
+			});
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+			assertFalse(executorThreadInterrupted.get());
+			assertFalse(queuedTaskRan.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KML parsing hot paths:
+ * coordinates of a 50k-vertex LineString, a whole 100k-placemark document (kept, or streamed to a listener and dropped),
+ * 2k zone polygons of 200 vertices, and 10k gx:Track "when" values.
+ * ./gradlew :app:jmh -Pjmh.includes="KmlParserBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class KmlParserBenchmark {
+
+	private static final int VERTICES = 50000;
+	private static final int PLACEMARKS = 100000;
+	private static final int ZONES = 2000;
+	private static final int ZONE_VERTICES = 200;
+	private static final int WHENS = 10000;
+
+	private String mCoordinates;
+	private byte[] mDocument;
+	private byte[] mZones;
+	private String[] mWhens;
+
+	@Setup public void setup(){
+		mCoordinates = BenchmarkFixtures.kmlCoordinates(BenchmarkFixtures.randomWalk(VERTICES, 42));
+		mDocument = BenchmarkFixtures.kmlDocument(PLACEMARKS, 42).getBytes(StandardCharsets.UTF_8);
+		mZones = BenchmarkFixtures.kmlZones(ZONES, ZONE_VERTICES, 42).getBytes(StandardCharsets.UTF_8);
+		mWhens = BenchmarkFixtures.kmlWhens(WHENS);
+	}
+
+	@Benchmark public ArrayList<GeoPoint> parseKmlCoordinates(){
+		return KmlDocument.parseKmlCoordinates(mCoordinates);
+	}
+
+	@Benchmark public KmlFolder parseKMLStream(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseKMLStream(new ByteArrayInputStream(mDocument), null);
+		return kmlDocument.mKmlRoot;
+	}
+
+	@Benchmark public KmlFolder parseKMLZones(){
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseKMLStream(new ByteArrayInputStream(mZones), null);
+		return kmlDocument.mKmlRoot;
+	}
+
+	@Benchmark public int parseKMLStreamToListener(){
+		final int[] count = new int[1];
+		KmlDocument kmlDocument = new KmlDocument();
+		kmlDocument.parseKMLStream(new ByteArrayInputStream(mDocument), null, new KmlDocument.FeatureListener() {
+			@Override public boolean onFeature(KmlFeature feature, KmlFolder parent){
+				count[0]++;
+				return false;
+			}
+		});
+		return count[0];
+	}
+
+	@Benchmark public long[] parseKmlWhen(){
+		long[] times = new long[mWhens.length];
+		for (int i=0; i<mWhens.length; i++)
+			times[i] = KmlDateTime.parse(mWhens[i]);
+		return times;
+	}
+}
@@ -0,0 +1,71 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time queries on an 8-hour courier shift sampled every second (28.8k coords), as done at each playback frame:
+ * 1000 scrubbing positions, the trail of a frame in the middle of the shift, and a 30s downsampling.
+ * ./gradlew :app:jmh -Pjmh.includes="KmlTrackBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KmlTrackBenchmark {
+
+	private static final int POINTS = 8*3600;
+	private static final int SCRUBS = 1000;
+	private static final long START = 1700000000000L;
+
+	private KmlTrack mTrack;
+	private long[] mScrubTimes;
+	private GeoPoint mPosition = new GeoPoint(0.0, 0.0);
+	private ArrayList<GeoPoint> mTrail = new ArrayList<>();
+	private GeoPoint mTrailStart = new GeoPoint(0.0, 0.0), mTrailEnd = new GeoPoint(0.0, 0.0);
+
+	@Setup public void setup(){
+		mTrack = new KmlTrack();
+		long time = START;
+		for (GeoPoint p:BenchmarkFixtures.randomWalk(POINTS, 42)){
+			mTrack.add(p, time);
+			time += 1000;
+		}
+		mTrack.getStartTime(); //builds the time index
+		Random random = new Random(42);
+		mScrubTimes = new long[SCRUBS];
+		for (int i=0; i<SCRUBS; i++)
+			mScrubTimes[i] = START + (long)(random.nextDouble()*POINTS*1000L);
+	}
+
+	@Benchmark public double getPositionAt(){
+		double sum = 0.0;
+		for (long t:mScrubTimes)
+			sum += mTrack.getPositionAt(t, mPosition).getLatitude();
+		return sum;
+	}
+
+	@Benchmark public int getWindow(){
+		return mTrack.getWindow(START, START + POINTS*500L, mTrail, mTrailStart, mTrailEnd).size();
+	}
+
+	@Benchmark public KmlTrack downsample(){
+		return mTrack.downsample(30000);
+	}
+}
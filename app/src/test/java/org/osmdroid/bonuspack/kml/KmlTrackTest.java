@@ -0,0 +1,136 @@
+package org.osmdroid.bonuspack.kml;
+
+import org.junit.Test;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * KmlTrack time queries: time index, interpolated positions, and windows at their edges.
+ */
+public class KmlTrackTest {
+
+	private static final long T0 = 1600000000000L;
+	private static final double EPSILON = 1e-9;
+
+	/** 5 coords at T0, T0+10s, T0+10s (same time), T0+20s, T0+40s - added out of order */
+	private static KmlTrack track(){
+		KmlTrack track = new KmlTrack();
+		track.add(new GeoPoint(10.0, 100.0, 0.0), T0 + 20000);
+		track.add(new GeoPoint(0.0, 100.0, 0.0), T0);
+		track.add(new GeoPoint(5.0, 101.0, 50.0), T0 + 10000);
+		track.add(new GeoPoint(6.0, 101.0, 60.0), T0 + 10000);
+		track.add(new GeoPoint(30.0, 100.0, 100.0), T0 + 40000);
+		return track;
+	}
+
+	private static void assertPosition(double lat, double lon, double alt, GeoPoint p){
+		assertEquals(lat, p.getLatitude(), EPSILON);
+		assertEquals(lon, p.getLongitude(), EPSILON);
+		assertEquals(alt, p.getAltitude(), EPSILON);
+	}
+
+	@Test
+	public void floorTimeIndex(){
+		KmlTrack track = track();
+		assertEquals(5, track.getTimeIndexSize());
+		assertEquals(-1, track.floorTimeIndex(T0 - 1));
+		assertEquals(-1, track.floorTimeIndex(Long.MIN_VALUE));
+		assertEquals(0, track.floorTimeIndex(T0));
+		assertEquals(0, track.floorTimeIndex(T0 + 9999));
+		//same time twice: the last of them
+		assertEquals(2, track.floorTimeIndex(T0 + 10000));
+		assertEquals(3, track.floorTimeIndex(T0 + 20000));
+		assertEquals(3, track.floorTimeIndex(T0 + 39999));
+		assertEquals(4, track.floorTimeIndex(T0 + 40000));
+		assertEquals(4, track.floorTimeIndex(Long.MAX_VALUE));
+		//index in chronological order:
+		assertPosition(0.0, 100.0, 0.0, track.getTimeIndexPoint(0));
+		assertPosition(10.0, 100.0, 0.0, track.getTimeIndexPoint(3));
+	}
+
+	@Test
+	public void floorTimeIndexWithoutTimes(){
+		KmlTrack track = new KmlTrack();
+		assertEquals(-1, track.floorTimeIndex(T0));
+		track.add(new GeoPoint(1.0, 2.0), KmlDateTime.UNDEFINED);
+		assertEquals(0, track.getTimeIndexSize());
+		assertEquals(-1, track.floorTimeIndex(T0));
+		assertNull(track.getPositionAt(T0, null));
+		assertTrue(track.getWindow(T0, T0 + 1000, new ArrayList<GeoPoint>()).isEmpty());
+	}
+
+	@Test
+	public void positionAtEdges(){
+		KmlTrack track = track();
+		GeoPoint p = new GeoPoint(0.0, 0.0);
+		assertSame(p, track.getPositionAt(T0 - 5000, p));
+		assertPosition(0.0, 100.0, 0.0, p);
+		assertPosition(0.0, 100.0, 0.0, track.getPositionAt(T0, p));
+		assertPosition(2.5, 100.5, 25.0, track.getPositionAt(T0 + 5000, p));
+		assertPosition(10.0, 100.0, 0.0, track.getPositionAt(T0 + 20000, p));
+		assertPosition(20.0, 100.0, 50.0, track.getPositionAt(T0 + 30000, p));
+		assertPosition(30.0, 100.0, 100.0, track.getPositionAt(T0 + 40000, p));
+		assertPosition(30.0, 100.0, 100.0, track.getPositionAt(T0 + 99000, p));
+	}
+
+	@Test
+	public void positionAcrossTheDateLine(){
+		KmlTrack track = new KmlTrack();
+		track.add(new GeoPoint(0.0, 179.0), T0);
+		track.add(new GeoPoint(0.0, -179.0), T0 + 1000);
+		assertEquals(179.5, track.getPositionAt(T0 + 250, null).getLongitude(), EPSILON);
+		double lon = track.getPositionAt(T0 + 500, null).getLongitude();
+		assertEquals(180.0, Math.abs(lon), EPSILON);
+		assertEquals(-179.5, track.getPositionAt(T0 + 750, null).getLongitude(), EPSILON);
+	}
+
+	@Test
+	public void windowEdges(){
+		KmlTrack track = track();
+		ArrayList<GeoPoint> window = new ArrayList<>();
+		GeoPoint start = new GeoPoint(0.0, 0.0), end = new GeoPoint(0.0, 0.0);
+
+		//interpolated edges, coords strictly inside:
+		track.getWindow(T0 + 5000, T0 + 30000, window, start, end);
+		assertEquals(5, window.size());
+		assertSame(start, window.get(0));
+		assertSame(end, window.get(4));
+		assertPosition(2.5, 100.5, 25.0, start);
+		assertPosition(5.0, 101.0, 50.0, window.get(1));
+		assertPosition(6.0, 101.0, 60.0, window.get(2));
+		assertPosition(10.0, 100.0, 0.0, window.get(3));
+		assertPosition(20.0, 100.0, 50.0, end);
+
+		//edges on coords: not repeated
+		track.getWindow(T0 + 10000, T0 + 20000, window, start, end);
+		assertEquals(2, window.size());
+		assertPosition(6.0, 101.0, 60.0, window.get(0));
+		assertPosition(10.0, 100.0, 0.0, window.get(1));
+
+		//clipped to the track:
+		track.getWindow(Long.MIN_VALUE, Long.MAX_VALUE, window, start, end);
+		assertEquals(5, window.size());
+		assertPosition(0.0, 100.0, 0.0, window.get(0));
+		assertPosition(30.0, 100.0, 100.0, window.get(4));
+
+		//a single instant:
+		track.getWindow(T0 + 30000, T0 + 30000, window, start, end);
+		assertEquals(1, window.size());
+		assertPosition(20.0, 100.0, 50.0, window.get(0));
+
+		//outside, or reversed:
+		assertTrue(track.getWindow(T0 - 2000, T0 - 1000, window, start, end).isEmpty());
+		assertTrue(track.getWindow(T0 + 41000, T0 + 50000, window, start, end).isEmpty());
+		assertTrue(track.getWindow(T0 + 20000, T0 + 10000, window, start, end).isEmpty());
+
+		//without reusable positions: same result
+		ArrayList<GeoPoint> allocated = track.getWindow(T0 + 5000, T0 + 30000, new ArrayList<GeoPoint>());
+		track.getWindow(T0 + 5000, T0 + 30000, window, start, end);
+		assertEquals(window.size(), allocated.size());
+		for (int i = 0; i < window.size(); i++)
+			assertPosition(window.get(i).getLatitude(), window.get(i).getLongitude(), window.get(i).getAltitude(), allocated.get(i));
+	}
+}
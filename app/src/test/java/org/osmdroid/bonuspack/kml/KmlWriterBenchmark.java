@@ -0,0 +1,85 @@
+package org.osmdroid.bonuspack.kml;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export of a day of courier tracks - 20 KmlTracks of a point every 5 seconds - as KML and GeoJSON,
+ * to a writer discarding the chars. The GeoJSON tree of asGeoJSON is measured for comparison.
+ * ./gradlew :app:jmh -Pjmh.includes="KmlWriterBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class KmlWriterBenchmark {
+
+	private static final int TRACKS = 20;
+	private static final int POINTS = 24*3600/5;
+
+	/** counts the chars written, and discards them */
+	static class CountingWriter extends Writer {
+		long mCount;
+		@Override public void write(char[] cbuf, int off, int len){ mCount += len; }
+		@Override public void write(String str, int off, int len){ mCount += len; }
+		@Override public void flush(){}
+		@Override public void close(){}
+	}
+
+	private KmlDocument mDocument;
+
+	@Setup public void setup(){
+		mDocument = new KmlDocument();
+		for (int t=0; t<TRACKS; t++){
+			ArrayList<GeoPoint> points = BenchmarkFixtures.randomWalk(POINTS, 42+t);
+			KmlTrack track = new KmlTrack();
+			long time = 1700000000000L;
+			for (GeoPoint p:points){
+				track.add(p, time);
+				time += 5000;
+			}
+			KmlPlacemark placemark = new KmlPlacemark();
+			placemark.mName = "Courier " + t;
+			placemark.mGeometry = track;
+			mDocument.mKmlRoot.add(placemark);
+		}
+	}
+
+	@Benchmark public long saveAsKML(){
+		CountingWriter writer = new CountingWriter();
+		mDocument.saveAsKML(writer);
+		return writer.mCount;
+	}
+
+	@Benchmark public long saveAsGeoJSON(){
+		CountingWriter writer = new CountingWriter();
+		mDocument.saveAsGeoJSON(writer);
+		return writer.mCount;
+	}
+
+	@Benchmark public long saveAsGeoJSONTree(){
+		CountingWriter writer = new CountingWriter();
+		JsonObject json = mDocument.mKmlRoot.asGeoJSON(true);
+		new Gson().toJson(json, writer);
+		return writer.mCount;
+	}
+}
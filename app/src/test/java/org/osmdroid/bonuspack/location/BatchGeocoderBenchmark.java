@@ -0,0 +1,107 @@
+package org.osmdroid.bonuspack.location;
+
+import android.location.Address;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.LocalHttpServer;
+import org.osmdroid.bonuspack.utils.DiskLruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geocoding a manifest of 100 delivery addresses - 70 distinct, the others differing only by case or spaces -
+ * against a local stand-in for a self-hosted Nominatim answering in 10ms:
+ * one by one with GeocoderNominatim, with a BatchGeocoder of 4 parallel requests, and again from its persistent cache.
+ * ./gradlew :app:jmh -Pjmh.includes="BatchGeocoderBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchGeocoderBenchmark {
+
+	private static final int ADDRESSES = 100;
+	private static final int DISTINCT = 70;
+
+	private LocalHttpServer mServer;
+	private GeocoderNominatim mGeocoder;
+	private GeocoderNominatim mCachedGeocoder;
+	private BatchGeocoder mBatch;
+	private BatchGeocoder mCachedBatch;
+	private File mDirectory;
+	private List<String> mManifest;
+
+	@Setup public void setup() throws IOException {
+		mServer = new LocalHttpServer(8);
+		mServer.setLatency(10);
+		mServer.serve("/search.php", "[{\"place_id\":1,\"osm_type\":\"way\",\"osm_id\":4242,"
+			+ "\"boundingbox\":[\"48.85\",\"48.86\",\"2.29\",\"2.30\"],\"lat\":\"48.8582\",\"lon\":\"2.2945\","
+			+ "\"display_name\":\"5, Avenue Anatole France, Paris, France\",\"address\":{\"house_number\":\"5\","
+			+ "\"road\":\"Avenue Anatole France\",\"suburb\":\"Gros-Caillou\",\"city\":\"Paris\",\"postcode\":\"75007\","
+			+ "\"country\":\"France\",\"country_code\":\"fr\"}}]");
+		mGeocoder = new GeocoderNominatim(Locale.FRANCE, "BonusPackBenchmark");
+		mGeocoder.setService(mServer.getUrl("/"));
+		mBatch = new BatchGeocoder(mGeocoder, 4);
+		mDirectory = Files.createTempDirectory("geocoder").toFile();
+		mCachedGeocoder = new GeocoderNominatim(Locale.FRANCE, "BonusPackBenchmark");
+		mCachedGeocoder.setService(mServer.getUrl("/"));
+		mCachedGeocoder.setCache(new DiskLruCache(mDirectory, 1024*1024));
+		mCachedBatch = new BatchGeocoder(mCachedGeocoder, 4);
+		mManifest = new ArrayList<>(ADDRESSES);
+		for (int i = 0; i < ADDRESSES; i++){
+			int n = i % DISTINCT;
+			String address = (n + 1) + " rue de la Paix, " + (75001 + n % 20) + " Paris";
+			mManifest.add(i < DISTINCT ? address : "  " + address.toUpperCase(Locale.ROOT).replace(" ", "  "));
+		}
+		mCachedBatch.getAllFromLocationNames(mManifest, 5).join();
+	}
+
+	@TearDown public void tearDown(){
+		mBatch.shutdown();
+		mCachedBatch.shutdown();
+		mServer.stop();
+		mCachedGeocoder.getCache().clear();
+		for (File f : mDirectory.listFiles())
+			f.delete();
+		mDirectory.delete();
+	}
+
+	@Benchmark public int sequential() throws IOException {
+		int found = 0;
+		for (String address : mManifest)
+			found += mGeocoder.getFromLocationName(address, 5).size();
+		return found;
+	}
+
+	@Benchmark public int batch(){
+		int found = 0;
+		for (List<Address> addresses : mBatch.getAllFromLocationNames(mManifest, 5).join())
+			found += addresses.size();
+		return found;
+	}
+
+	@Benchmark public int batchCached(){
+		int found = 0;
+		for (List<Address> addresses : mCachedBatch.getAllFromLocationNames(mManifest, 5).join())
+			found += addresses.size();
+		return found;
+	}
+}
@@ -0,0 +1,161 @@
+package org.osmdroid.bonuspack.location;
+
+import android.location.Address;
+
+import org.junit.After;
+import org.junit.Test;
+import org.osmdroid.bonuspack.LocalHttpServer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BatchGeocoderTest {
+
+	private static final String UNREACHABLE_SERVICE = "http://127.0.0.1:1/batch-test/";
+
+	private static final String RESULTS = "["
+			+ "{\"lat\":\"21.0285\",\"lon\":\"105.8542\",\"display_name\":\"Hoàn Kiếm, Hà Nội\",\"osm_id\":1,\"osm_type\":\"node\","
+			+ "\"address\":{\"road\":\"Đinh Tiên Hoàng\",\"city\":\"Hà Nội\",\"country\":\"Việt Nam\",\"country_code\":\"vn\"}},"
+			+ "{\"lat\":\"21.03\",\"lon\":\"105.85\",\"display_name\":\"Hồ Gươm\",\"osm_id\":2,\"osm_type\":\"way\","
+			+ "\"address\":{\"city\":\"Hà Nội\"}}]";
+
+	private BatchGeocoder mBatch;
+
+	@After
+	public void tearDown(){
+		if (mBatch != null)
+			mBatch.shutdown();
+		GeocoderNominatim.setMinRequestInterval(GeocoderNominatim.NOMINATIM_SERVICE_URL, 0);
+	}
+
+	private static GeocoderNominatim geocoder(String service){
+		GeocoderNominatim geocoder = new GeocoderNominatim(Locale.ROOT, "BatchGeocoderTest");
+		geocoder.setService(service);
+		return geocoder;
+	}
+
+	private static int getPoolSize(BatchGeocoder batch){
+		return ((ThreadPoolExecutor)batch.mExecutor).getMaximumPoolSize();
+	}
+
+	@Test
+	public void normalize(){
+		assertEquals("hồ hoàn kiếm, hà nội", BatchGeocoder.normalize("  Hồ   Hoàn Kiếm ,Hà Nội "));
+		assertEquals("12 tràng tiền, hà nội", BatchGeocoder.normalize(", 12 Tràng Tiền,, ,Hà Nội,"));
+		assertEquals("hà nội", BatchGeocoder.normalize("\tHÀ\n NỘI\n"));
+		assertEquals("", BatchGeocoder.normalize("  "));
+	}
+
+	@Test
+	public void pendingQueriesAreShared() throws Exception {
+		LocalHttpServer server = new LocalHttpServer(8);
+		try {
+			server.serve("/search.php", RESULTS);
+			//long enough for all the queries to be submitted during the first requests:
+			server.setLatency(300);
+			mBatch = new BatchGeocoder(geocoder(server.getUrl("/")), 4);
+			List<CompletableFuture<List<Address>>> results = mBatch.getFromLocationNames(Arrays.asList(
+					"Hồ Hoàn Kiếm", "  hồ hoàn  kiếm", "HỒ HOÀN KIẾM, ", "Tràng Tiền", "tràng tiền"), 5);
+			assertSame(results.get(0), results.get(1));
+			assertSame(results.get(0), results.get(2));
+			assertSame(results.get(3), results.get(4));
+			assertNotSame(results.get(0), results.get(3));
+			for (CompletableFuture<List<Address>> result : results)
+				assertEquals(2, result.get(5, TimeUnit.SECONDS).size());
+			assertEquals(2, mBatch.getQueryCount());
+			assertEquals(3, mBatch.getSharedQueryCount());
+			assertEquals(2, server.getRequestCount());
+			assertEquals(0, mBatch.getPendingCount());
+
+			//not a cache: once done, the same query is sent again
+			server.setLatency(0);
+			assertEquals(2, mBatch.getFromLocationName("Hồ Hoàn Kiếm", 5).get(5, TimeUnit.SECONDS).size());
+			assertEquals(3, mBatch.getQueryCount());
+			assertEquals(3, server.getRequestCount());
+			//other maximum number of results, other query:
+			mBatch.getFromLocationName("Hồ Hoàn Kiếm", 1).get(5, TimeUnit.SECONDS);
+			assertEquals(4, mBatch.getQueryCount());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void selfHostedRequestsInParallel() throws Exception {
+		LocalHttpServer server = new LocalHttpServer(8);
+		try {
+			server.serve("/search.php", RESULTS);
+			server.setLatency(300);
+			mBatch = new BatchGeocoder(geocoder(server.getUrl("/")), 4);
+			assertEquals(4, getPoolSize(mBatch));
+			assertEquals(0, GeocoderNominatim.getMinRequestInterval(server.getUrl("/")));
+			List<List<Address>> results = mBatch.getAllFromLocationNames(Arrays.asList(
+					"Hàng Bài", "Hàng Khay", "Hàng Gai", "Hàng Bông"), 5).get(5, TimeUnit.SECONDS);
+			assertEquals(4, results.size());
+			assertEquals(4, server.getRequestCount());
+			assertEquals(4, server.getMaxConcurrentRequests());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void publicServiceIsOneRequestPerSecond(){
+		GeocoderNominatim geocoder = new GeocoderNominatim(Locale.ROOT, "BatchGeocoderTest");
+		assertTrue(geocoder.isPublicService());
+		mBatch = new BatchGeocoder(geocoder, 8);
+		assertEquals(1, getPoolSize(mBatch));
+		assertEquals(BatchGeocoder.NOMINATIM_MIN_INTERVAL, geocoder.getMinRequestInterval());
+		mBatch.shutdown();
+
+		//a longer interval is kept:
+		geocoder.setMinRequestInterval(3000);
+		mBatch = new BatchGeocoder(geocoder, 8);
+		assertEquals(1, getPoolSize(mBatch));
+		assertEquals(3000, geocoder.getMinRequestInterval());
+	}
+
+	@Test
+	public void failuresCompleteTheFutures() throws Exception {
+		mBatch = new BatchGeocoder(geocoder(UNREACHABLE_SERVICE), 2);
+		CompletableFuture<List<Address>> failed = mBatch.getFromLocationName("Hồ Hoàn Kiếm", 5);
+		try {
+			failed.get(5, TimeUnit.SECONDS);
+			fail("no service");
+		} catch (ExecutionException e){
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		List<List<Address>> results = mBatch.getAllFromLocationNames(Arrays.asList("Hàng Bài", "Hàng Khay"), 5)
+				.get(5, TimeUnit.SECONDS);
+		assertEquals(2, results.size());
+		assertTrue(results.get(0).isEmpty());
+		assertTrue(results.get(1).isEmpty());
+		assertEquals(0, mBatch.getPendingCount());
+
+		//any failure, not only IOException:
+		CompletableFuture<List<Address>> thrown = mBatch.submit("runtime", new Callable<List<Address>>() {
+			@Override public List<Address> call(){
+				throw new IllegalStateException("bug");
+			}
+		});
+		try {
+			thrown.get(5, TimeUnit.SECONDS);
+			fail("thrown");
+		} catch (ExecutionException e){
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+		//after shutdown:
+		mBatch.shutdown();
+		assertTrue(mBatch.getFromLocationName("Hàng Gai", 5).isCompletedExceptionally());
+	}
+}
@@ -0,0 +1,97 @@
+package org.osmdroid.bonuspack.location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocomplete from a GeocodeStore full of 2000 addresses: lookup of typed prefixes (2 to 8 characters) in the trie,
+ * versus a scan of all the normalized addresses; and reverse geocoding of positions near stored addresses. <br>
+ * The store is filled with Places, and the lookups return Places: android.location.Address is a stub in unit tests,
+ * it would give 2000 identical addresses.
+ * ./gradlew :app:jmh -Pjmh.includes="GeocodeStoreBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeocodeStoreBenchmark {
+
+	private static final int PLACES = 2000;
+	private static final int QUERIES = 256;
+	private static final String[] STREETS = {"Phố Huế", "Hàng Bài", "Tràng Tiền", "Lý Thường Kiệt", "Đinh Tiên Hoàng",
+		"Nguyễn Du", "Bà Triệu", "Hai Bà Trưng", "Trần Hưng Đạo", "Lê Duẩn", "Kim Mã", "Giảng Võ", "Láng Hạ",
+		"Xã Đàn", "Tây Sơn", "Chùa Bộc", "Đội Cấn", "Hoàng Hoa Thám", "Thụy Khuê", "Âu Cơ"};
+	private static final String[] DISTRICTS = {"Hoàn Kiếm", "Ba Đình", "Đống Đa", "Hai Bà Trưng", "Tây Hồ", "Cầu Giấy"};
+
+	private GeocodeStore mStore;
+	private List<String> mTexts;
+	private String[] mPrefixes;
+	private double[][] mPositions;
+	private int mNext;
+
+	@Setup public void setup(){
+		Random random = new Random(42);
+		mStore = new GeocodeStore(null, PLACES);
+		mTexts = new ArrayList<>(PLACES);
+		for (int i = 0; i < PLACES; i++){
+			String display = (1 + random.nextInt(300)) + ", " + STREETS[random.nextInt(STREETS.length)]
+				+ ", Phường " + (1 + random.nextInt(30)) + ", Quận " + DISTRICTS[random.nextInt(DISTRICTS.length)] + ", Hà Nội, Việt Nam";
+			String[] fields = new String[GeocodeStore.FIELDS];
+			fields[GeocodeStore.DISPLAY_NAME] = display;
+			fields[GeocodeStore.OSM_TYPE] = "node";
+			GeocodeStore.Place place = GeocodeStore.newPlace(20.95 + random.nextDouble()*0.15, 105.75 + random.nextDouble()*0.15,
+				"vi-VN", i + 1, new String[]{display}, fields);
+			mStore.putPlaces(null, 1, Collections.singletonList(place));
+			mTexts.add(GeocodeStore.normalize(display));
+		}
+		if (mStore.size() != PLACES)
+			throw new IllegalStateException("store of " + mStore.size() + " places");
+		mPrefixes = new String[QUERIES];
+		mPositions = new double[QUERIES][];
+		for (int i = 0; i < QUERIES; i++){
+			String street = GeocodeStore.normalize(STREETS[random.nextInt(STREETS.length)]);
+			mPrefixes[i] = street.substring(0, Math.min(street.length(), 2 + random.nextInt(7)));
+			mPositions[i] = new double[]{20.95 + random.nextDouble()*0.15, 105.75 + random.nextDouble()*0.15};
+		}
+	}
+
+	@Benchmark public List<GeocodeStore.Place> trieLookup(){
+		mNext = (mNext + 1) % QUERIES;
+		return mStore.getPlacesFromLocationName(mPrefixes[mNext], 5);
+	}
+
+	/** the naive alternative: all the addresses with a word starting with the prefix, keeping the 5 most recent */
+	@Benchmark public List<String> linearScan(){
+		mNext = (mNext + 1) % QUERIES;
+		String q = mPrefixes[mNext];
+		String wordStart = " " + q;
+		ArrayList<String> matches = new ArrayList<>();
+		for (String text : mTexts){
+			if (text.startsWith(q) || text.contains(wordStart))
+				matches.add(text);
+		}
+		//added in recency order:
+		return matches.subList(Math.max(0, matches.size() - 5), matches.size());
+	}
+
+	@Benchmark public List<GeocodeStore.Place> reverseLookup(){
+		mNext = (mNext + 1) % QUERIES;
+		return mStore.getPlacesFromLocation(mPositions[mNext][0], mPositions[mNext][1], 1);
+	}
+}
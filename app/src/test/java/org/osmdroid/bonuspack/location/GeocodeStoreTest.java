@@ -0,0 +1,248 @@
+package org.osmdroid.bonuspack.location;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * GeocodeStore lookups, eviction and persistence - on Places, as android.location.Address is a stub in unit tests.
+ */
+public class GeocodeStoreTest {
+
+	private static final String HO_GUOM = "Hồ Hoàn Kiếm, Hà Nội";
+	private static final String DINH_TIEN_HOANG = "Đinh Tiên Hoàng, Hoàn Kiếm, Hà Nội";
+	private static final String PHO_HUE = "Phố Huế, Hai Bà Trưng, Hà Nội";
+	private static final String SCHOOL = "Trường Trung học phổ thông Chu Văn An, Thụy Khuê, Tây Hồ, Hà Nội";
+
+	private File mDirectory;
+
+	@Before
+	public void setUp() throws IOException {
+		mDirectory = Files.createTempDirectory("geocodestore").toFile();
+	}
+
+	@After
+	public void tearDown(){
+		File[] files = mDirectory.listFiles();
+		if (files != null){
+			for (File f : files)
+				f.delete();
+		}
+		mDirectory.delete();
+	}
+
+	private static GeocodeStore.Place place(String displayName, double latitude, double longitude, long osmId){
+		String[] fields = new String[GeocodeStore.FIELDS];
+		fields[GeocodeStore.DISPLAY_NAME] = displayName;
+		fields[GeocodeStore.OSM_TYPE] = "node";
+		return GeocodeStore.newPlace(latitude, longitude, "vi-VN", osmId, new String[]{displayName}, fields);
+	}
+
+	private static void put(GeocodeStore store, String query, int maxResults, GeocodeStore.Place... places){
+		store.putPlaces(query, maxResults, Arrays.asList(places));
+	}
+
+	private static List<String> names(List<GeocodeStore.Place> places){
+		if (places == null)
+			return null;
+		List<String> names = new ArrayList<>(places.size());
+		for (GeocodeStore.Place p : places)
+			names.add(p.mFields[GeocodeStore.DISPLAY_NAME]);
+		return names;
+	}
+
+	private static GeocodeStore filled(File file, int maxPlaces){
+		GeocodeStore store = new GeocodeStore(file, maxPlaces);
+		put(store, null, 1, place(HO_GUOM, 21.0287, 105.8524, 1));
+		put(store, null, 1, place(DINH_TIEN_HOANG, 21.0300, 105.8530, 2));
+		put(store, null, 1, place(PHO_HUE, 21.0150, 105.8510, 3));
+		put(store, null, 1, place(SCHOOL, 21.0460, 105.8320, 4));
+		return store;
+	}
+
+	@Test
+	public void prefixesOfWordsWithoutAccents(){
+		GeocodeStore store = filled(null, 100);
+		assertEquals(4, store.size());
+		//most recently used first:
+		assertEquals(Arrays.asList(DINH_TIEN_HOANG, HO_GUOM), names(store.getPlacesFromLocationName("hoan k", 5)));
+		assertEquals(Collections.singletonList(HO_GUOM), names(store.getPlacesFromLocationName("HỒ  HOÀN", 5)));
+		assertEquals(Collections.singletonList(DINH_TIEN_HOANG), names(store.getPlacesFromLocationName("dinh-tien", 5)));
+		assertEquals(Collections.singletonList(PHO_HUE), names(store.getPlacesFromLocationName("hue", 5)));
+		assertEquals(2, store.getPlacesFromLocationName("ha noi", 2).size());
+		//only the first words of an address are indexed:
+		assertEquals(3, store.getPlacesFromLocationName("ha noi", 5).size());
+		assertEquals(Collections.singletonList(SCHOOL), names(store.getPlacesFromLocationName("van a", 5)));
+		//not the start of a word:
+		assertTrue(store.getPlacesFromLocationName("oan", 5).isEmpty());
+		assertTrue(store.getPlacesFromLocationName(" ,", 5).isEmpty());
+		//longer than the trie keys: checked on the full address
+		assertEquals(Collections.singletonList(SCHOOL), names(store.getPlacesFromLocationName("truong trung hoc pho thong chu", 5)));
+		assertTrue(store.getPlacesFromLocationName("truong trung hoc pho thong nguyen", 5).isEmpty());
+	}
+
+	@Test
+	public void exactQueryRule(){
+		GeocodeStore store = filled(null, 100);
+		put(store, "Hoàn Kiếm", 2, place(HO_GUOM, 21.0287, 105.8524, 1), place(DINH_TIEN_HOANG, 21.0300, 105.8530, 2));
+		put(store, "phố huế", 5, place(PHO_HUE, 21.0150, 105.8510, 3));
+		assertEquals(4, store.size());
+
+		//in the order of the service, whatever the use:
+		store.getPlacesFromLocationName("dinh", 1);
+		assertEquals(Arrays.asList(HO_GUOM, DINH_TIEN_HOANG), names(store.getPlacesFromQuery("hoan kiem", 2)));
+		assertEquals(Collections.singletonList(HO_GUOM), names(store.getPlacesFromQuery(" HOÀN KIẾM ", 1)));
+		//asked for 2 and got 2: the service may have more
+		assertNull(store.getPlacesFromQuery("hoan kiem", 5));
+		//asked for 5 and got 1: it has no more
+		assertEquals(Collections.singletonList(PHO_HUE), names(store.getPlacesFromQuery("pho hue", 10)));
+		//a prefix is not a query sent
+		assertNull(store.getPlacesFromQuery("hoan", 1));
+		assertNull(store.getPlacesFromQuery("", 1));
+
+		assertTrue(store.canAnswer("hoan kiem", 2));
+		assertTrue(store.canAnswer("pho hue", 5));
+		//enough addresses starting with it:
+		assertTrue(store.canAnswer("hoan", 2));
+		assertFalse(store.canAnswer("hoan", 3));
+		assertFalse(store.canAnswer("kim ma", 1));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed(){
+		GeocodeStore store = new GeocodeStore(null, 3);
+		put(store, "q1", 1, place("Place 1", 21.01, 105.81, 1));
+		put(store, "q2", 1, place("Place 2", 21.02, 105.82, 2));
+		put(store, "q3", 1, place("Place 3", 21.03, 105.83, 3));
+		assertEquals(1, store.getPlacesFromLocationName("place 1", 1).size());
+		put(store, "q4", 1, place("Place 4", 21.04, 105.84, 4));
+		assertEquals(3, store.size());
+		assertEquals(3, store.getQueryCount());
+		//the eldest is removed with its query, from all the indexes:
+		assertNull(store.getPlacesFromQuery("q2", 1));
+		assertTrue(store.getPlacesFromLocationName("place 2", 5).isEmpty());
+		assertTrue(store.getPlacesFromLocationName("q2", 5).isEmpty());
+		assertTrue(store.getPlacesFromLocation(21.02, 105.82, 5).isEmpty());
+		assertNotNull(store.getPlacesFromQuery("q1", 1));
+		assertEquals(3, store.getPlacesFromLocationName("place", 5).size());
+	}
+
+	@Test
+	public void updatedPlaceKeepsItsQueries(){
+		GeocodeStore store = new GeocodeStore(null, 10);
+		put(store, "ho guom", 1, place(HO_GUOM, 21.0287, 105.8524, 1));
+		put(store, null, 1, place("Hồ Gươm, Hoàn Kiếm, Hà Nội", 21.0288, 105.8523, 1));
+		assertEquals(1, store.size());
+		assertEquals(Collections.singletonList("Hồ Gươm, Hoàn Kiếm, Hà Nội"), names(store.getPlacesFromQuery("ho guom", 1)));
+		assertEquals(1, store.getPlacesFromLocationName("ha noi", 5).size());
+		assertEquals(1, store.getPlacesFromLocationName("hoan kiem", 5).size());
+	}
+
+	@Test
+	public void reverseNearestFirst(){
+		GeocodeStore store = new GeocodeStore(null, 10);
+		put(store, null, 1, place("A", 21.0285, 105.8542, 1));
+		//about 11 m north:
+		put(store, null, 1, place("B", 21.0286, 105.8542, 2));
+		//about 100 m east:
+		put(store, null, 1, place("C", 21.0285, 105.8552, 3));
+		assertEquals(Arrays.asList("B", "A"), names(store.getPlacesFromLocation(21.02862, 105.8542, 5)));
+		assertEquals(Collections.singletonList("B"), names(store.getPlacesFromLocation(21.02862, 105.8542, 1)));
+		store.setReverseDistance(150);
+		assertEquals(3, store.getPlacesFromLocation(21.0285, 105.8542, 5).size());
+	}
+
+	@Test
+	public void reload(){
+		File file = new File(mDirectory, "geocode.bin");
+		GeocodeStore store = filled(file, 100);
+		put(store, "Hoàn Kiếm", 2, place(HO_GUOM, 21.0287, 105.8524, 1), place(DINH_TIEN_HOANG, 21.0300, 105.8530, 2));
+		put(store, "nowhere", 5);
+		store.save();
+		assertTrue(file.exists());
+
+		GeocodeStore reloaded = new GeocodeStore(file, 100);
+		assertEquals(4, reloaded.size());
+		assertEquals(2, reloaded.getQueryCount());
+		assertEquals(Arrays.asList(HO_GUOM, DINH_TIEN_HOANG), names(reloaded.getPlacesFromQuery("hoan kiem", 2)));
+		assertTrue(reloaded.getPlacesFromQuery("nowhere", 5).isEmpty());
+		//same LRU order: the query put HO_GUOM then DINH_TIEN_HOANG
+		assertEquals(Arrays.asList(DINH_TIEN_HOANG, HO_GUOM), names(reloaded.getPlacesFromLocationName("hoan k", 5)));
+		assertEquals(Collections.singletonList(SCHOOL), names(reloaded.getPlacesFromLocation(21.0460, 105.8320, 1)));
+		GeocodeStore.Place school = reloaded.getPlacesFromLocationName("chu van an", 1).get(0);
+		assertEquals("node:4", school.mId);
+		assertEquals("vi-VN", school.mLocale);
+
+		//a smaller store keeps the most recently used of the file:
+		GeocodeStore smaller = new GeocodeStore(file, 2);
+		assertEquals(2, smaller.size());
+		assertEquals(2, smaller.getPlacesFromLocationName("hoan k", 5).size());
+		assertTrue(smaller.getPlacesFromLocationName("chu van", 5).isEmpty());
+		assertTrue(smaller.getPlacesFromLocationName("pho hue", 5).isEmpty());
+	}
+
+	@Test
+	public void corruptedFileIsIgnored() throws IOException {
+		File file = new File(mDirectory, "geocode.bin");
+		Files.write(file.toPath(), new byte[]{0x47, 0x45, 0x4F, 0x43, 0, 0, 0, 1, 0, 0, 0, 9});
+		GeocodeStore store = new GeocodeStore(file, 100);
+		assertEquals(0, store.size());
+		put(store, null, 1, place(HO_GUOM, 21.0287, 105.8524, 1));
+		assertEquals(1, store.size());
+	}
+
+	/** counts the snapshots written */
+	private static class CountingStore extends GeocodeStore {
+		final AtomicInteger mWrites = new AtomicInteger();
+		CountingStore(File file){
+			super(file, 100);
+		}
+		@Override protected void write(DataOutputStream out) throws IOException {
+			mWrites.incrementAndGet();
+			super.write(out);
+		}
+	}
+
+	@Test
+	public void changesAreSavedOnceAfterTheDelay() throws InterruptedException {
+		File file = new File(mDirectory, "geocode.bin");
+		CountingStore store = new CountingStore(file);
+		store.setSaveDelay(200);
+		for (int i = 0; i < 50; i++)
+			put(store, "query " + i, 1, place("Place " + i, 21.0 + i*0.001, 105.8, i+1));
+		assertFalse(file.exists());
+		for (int i = 0; i < 100 && !file.exists(); i++)
+			Thread.sleep(50);
+		assertTrue(file.exists());
+		assertEquals(1, store.mWrites.get());
+		assertEquals(50, new GeocodeStore(file, 100).size());
+
+		//nothing changed: not written again
+		store.save();
+		assertEquals(1, store.mWrites.get());
+		//saved at once, then the scheduled save has nothing to do:
+		put(store, null, 1, place(HO_GUOM, 21.0287, 105.8524, 100));
+		store.save();
+		assertEquals(2, store.mWrites.get());
+		Thread.sleep(400);
+		assertEquals(2, store.mWrites.get());
+		assertEquals(51, new GeocodeStore(file, 100).size());
+
+		//no delay: saved at each change
+		store.setSaveDelay(0);
+		put(store, null, 1, place(PHO_HUE, 21.0150, 105.8510, 101));
+		assertEquals(3, store.mWrites.get());
+	}
+}
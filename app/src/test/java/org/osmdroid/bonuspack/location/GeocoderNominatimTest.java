@@ -0,0 +1,122 @@
+package org.osmdroid.bonuspack.location;
+
+import android.location.Address;
+
+import org.junit.After;
+import org.junit.Test;
+import org.osmdroid.bonuspack.LocalHttpServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GeocoderNominatimTest {
+
+	private static final String SERVICE = "http://127.0.0.1:1/throttle-test/";
+	private static final String OTHER_SERVICE = "http://127.0.0.1:2/throttle-test/";
+
+	private static final String RESULTS = "["
+			+ "{\"lat\":\"21.0285\",\"lon\":\"105.8542\",\"display_name\":\"Hoàn Kiếm, Hà Nội\",\"osm_id\":1,\"osm_type\":\"node\","
+			+ "\"address\":{\"road\":\"Đinh Tiên Hoàng\",\"city\":\"Hà Nội\",\"country\":\"Việt Nam\",\"country_code\":\"vn\"}},"
+			+ "{\"lat\":\"21.03\",\"lon\":\"105.85\",\"display_name\":\"Hồ Gươm\",\"osm_id\":2,\"osm_type\":\"way\","
+			+ "\"address\":{\"city\":\"Hà Nội\"}}]";
+
+	@After
+	public void tearDown(){
+		GeocoderNominatim.setMinRequestInterval(SERVICE, 0);
+		GeocoderNominatim.setMinRequestInterval(OTHER_SERVICE, 0);
+	}
+
+	private static GeocoderNominatim geocoder(String service){
+		GeocoderNominatim geocoder = new GeocoderNominatim(Locale.ROOT, "GeocoderNominatimTest");
+		geocoder.setService(service);
+		return geocoder;
+	}
+
+	@Test
+	public void concurrentIdenticalRequestsShareOneCall() throws Exception {
+		LocalHttpServer server = new LocalHttpServer(8);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			server.serve("/search.php", RESULTS);
+			//long enough for all the callers to arrive during the first request:
+			server.setLatency(300);
+			final GeocoderNominatim geocoder = geocoder(server.getUrl("/"));
+			long sharedBefore = GeocoderNominatim.getRequests().getSharedCallCount();
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<List<Address>>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++){
+				results.add(executor.submit(new Callable<List<Address>>() {
+					@Override public List<Address> call() throws Exception {
+						start.await();
+						return geocoder.getFromLocationName("Hồ Hoàn Kiếm", 5, 0.0, 0.0, 0.0, 0.0, false);
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<List<Address>> result : results)
+				assertEquals(2, result.get(5, TimeUnit.SECONDS).size());
+			assertEquals(1, server.getRequestCount());
+			assertEquals(7, GeocoderNominatim.getRequests().getSharedCallCount() - sharedBefore);
+			assertEquals(0, GeocoderNominatim.getRequests().getInFlightCount());
+
+			//not a cache: once done, the same request is sent again
+			server.setLatency(0);
+			assertEquals(2, geocoder.getFromLocationName("Hồ Hoàn Kiếm", 5, 0.0, 0.0, 0.0, 0.0, false).size());
+			assertEquals(2, server.getRequestCount());
+		} finally {
+			executor.shutdownNow();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void requestIntervalIsSharedByService(){
+		GeocoderNominatim g1 = geocoder(SERVICE);
+		GeocoderNominatim g2 = geocoder(SERVICE);
+		GeocoderNominatim other = geocoder(OTHER_SERVICE);
+		g1.setMinRequestInterval(250);
+		assertEquals(250, g2.getMinRequestInterval());
+		assertEquals(250, GeocoderNominatim.getMinRequestInterval(SERVICE));
+		assertEquals(0, other.getMinRequestInterval());
+	}
+
+	@Test
+	public void requestsOfAllGeocodersAreSpaced() throws InterruptedException {
+		GeocoderNominatim.setMinRequestInterval(SERVICE, 100);
+		final GeocoderNominatim.RequestThrottle throttle = GeocoderNominatim.getThrottle(SERVICE);
+		final int requests = 4;
+		final CountDownLatch done = new CountDownLatch(requests);
+		long start = System.nanoTime();
+		//as if from 4 geocoders, in parallel:
+		for (int i = 0; i < requests; i++){
+			new Thread(new Runnable() {
+				@Override public void run() {
+					try {
+						throttle.await();
+					} catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		//the first starts at once, each other waits for its slot:
+		assertTrue("elapsed " + elapsed + "ms", elapsed >= (requests-1)*100 - 5);
+
+		//another service is not delayed:
+		long otherStart = System.nanoTime();
+		GeocoderNominatim.getThrottle(OTHER_SERVICE).await();
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - otherStart) < 50);
+	}
+}
@@ -0,0 +1,346 @@
+package org.osmdroid.bonuspack.routing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * CachingRoadManager in front of a stand-in routing service, and the RoadFileCache binary format.
+ */
+public class CachingRoadManagerTest {
+
+	private static final GeoPoint HOAN_KIEM = new GeoPoint(21.0285, 105.8542);
+	private static final GeoPoint OPERA = new GeoPoint(21.0245, 105.8575);
+	private static final GeoPoint TRAIN_STATION = new GeoPoint(21.0245, 105.8412);
+	//a street east-west then north, about 1km each:
+	private static final GeoPoint WEST = new GeoPoint(21.0300, 105.8500);
+	private static final GeoPoint CORNER = new GeoPoint(21.0300, 105.8600);
+	private static final GeoPoint NORTH = new GeoPoint(21.0400, 105.8600);
+
+	/** routing service stand-in: a straight road through the waypoints, counting the requests */
+	private static class StubRoadManager extends RoadManager {
+		int mRequests;
+		int mStatus = Road.STATUS_OK;
+
+		Road road(ArrayList<GeoPoint> waypoints){
+			Road road = new Road(waypoints);
+			road.mStatus = mStatus;
+			road.mLength = 1.5;
+			road.mDuration = 300.0;
+			for (GeoPoint waypoint : waypoints){
+				RoadNode node = new RoadNode();
+				node.mLocation = waypoint;
+				node.mInstructions = "Waypoint";
+				road.mNodes.add(node);
+			}
+			return road;
+		}
+
+		@Override public Road getRoad(ArrayList<GeoPoint> waypoints){
+			mRequests++;
+			return road(waypoints);
+		}
+
+		@Override public Road[] getRoads(ArrayList<GeoPoint> waypoints){
+			mRequests++;
+			return new Road[]{ road(waypoints), road(waypoints) };
+		}
+	}
+
+	private File mDirectory;
+	private StubRoadManager mService;
+	private CachingRoadManager mRoadManager;
+
+	@Before
+	public void setUp() throws IOException {
+		mDirectory = Files.createTempDirectory("roadcache").toFile();
+		mService = new StubRoadManager();
+		mRoadManager = new CachingRoadManager(mService, mDirectory);
+	}
+
+	@After
+	public void tearDown(){
+		mRoadManager.getCache().clear();
+		File roads = new File(mDirectory, "roads");
+		File[] files = roads.listFiles();
+		if (files != null){
+			for (File f : files)
+				f.delete();
+		}
+		roads.delete();
+		mDirectory.delete();
+	}
+
+	private static ArrayList<GeoPoint> waypoints(GeoPoint... points){
+		return new ArrayList<>(Arrays.asList(points));
+	}
+
+	/** @return p moved to the north by this distance in meters */
+	private static GeoPoint north(GeoPoint p, double meters){
+		return new GeoPoint(p.getLatitude() + meters / CachingRoadManager.METERS_PER_DEGREE, p.getLongitude());
+	}
+
+	/** @return the entry files of the cache */
+	private File[] entries(){
+		return new File(mDirectory, "roads").listFiles(new FileFilter() {
+			@Override public boolean accept(File f){
+				return f.getName().endsWith(".dat");
+			}
+		});
+	}
+
+	@Test
+	public void missThenHit(){
+		Road road = mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(1, mService.mRequests);
+		assertEquals(1, mRoadManager.getCache().count());
+		Road cached = mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(1, mService.mRequests);
+		assertNotSame(road, cached);
+		assertEquals(road.mDuration, cached.mDuration, 0.0);
+		assertEquals(road.mRouteHigh.size(), cached.mRouteHigh.size());
+
+		//alternatives are another entry, with all the roads:
+		assertEquals(2, mRoadManager.getRoads(waypoints(HOAN_KIEM, OPERA)).length);
+		assertEquals(2, mRoadManager.getRoads(waypoints(HOAN_KIEM, OPERA)).length);
+		assertEquals(2, mService.mRequests);
+
+		//other destination, other options: misses
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, TRAIN_STATION));
+		assertEquals(3, mService.mRequests);
+		mRoadManager.addRequestOption("exclude=toll");
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(4, mService.mRequests);
+	}
+
+	@Test
+	public void failuresAreNotCached(){
+		mService.mStatus = Road.STATUS_TECHNICAL_ISSUE;
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(2, mService.mRequests);
+		assertEquals(0, mRoadManager.getCache().count());
+	}
+
+	@Test
+	public void expiredEntriesAreRequestedAgain() throws InterruptedException {
+		mRoadManager.setTimeToLive(CachingRoadManager.MEAN_DEFAULT, 50);
+		assertEquals(50, mRoadManager.getTimeToLive(CachingRoadManager.MEAN_DEFAULT));
+		assertEquals(24*CachingRoadManager.HOUR, mRoadManager.getTimeToLive(OSRMRoadManager.MEAN_BY_CAR));
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(1, mService.mRequests);
+		Thread.sleep(100);
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(2, mService.mRequests);
+		//the expired entry is replaced by the new road:
+		assertEquals(1, mRoadManager.getCache().count());
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(2, mService.mRequests);
+
+		//an expired entry is removed when read:
+		RoadFileCache cache = mRoadManager.getCache();
+		cache.put("old", new Road[]{ mService.road(waypoints(HOAN_KIEM, OPERA)) });
+		Thread.sleep(10);
+		assertNull(cache.get("old", 5));
+		assertFalse(cache.contains("old"));
+	}
+
+	@Test
+	public void corruptedEntriesAreRemoved() throws IOException {
+		mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		File[] files = entries();
+		assertEquals(1, files.length);
+		//truncated:
+		RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		raf.setLength(raf.length() / 2);
+		raf.close();
+		Road road = mRoadManager.getRoad(waypoints(HOAN_KIEM, OPERA));
+		assertEquals(Road.STATUS_OK, road.mStatus);
+		assertEquals(2, mService.mRequests);
+		assertEquals(1, mRoadManager.getCache().count());
+
+		//a count way beyond the file size:
+		files = entries();
+		raf = new RandomAccessFile(files[0], "rw");
+		raf.seek(8);
+		int keyLength = raf.readInt();
+		//after magic, version, key and write time:
+		raf.seek(8 + 4 + keyLength + 8);
+		raf.writeInt(Integer.MAX_VALUE);
+		raf.close();
+		RoadFileCache cache = mRoadManager.getCache();
+		String key = mRoadManager.getKey(waypoints(HOAN_KIEM, OPERA), false);
+		assertTrue(cache.contains(key));
+		assertNull(cache.get(key, CachingRoadManager.HOUR));
+		assertFalse(cache.contains(key));
+		assertEquals(0, entries().length);
+	}
+
+	@Test
+	public void matchesWithinTheTolerance(){
+		Road road = mService.road(waypoints(WEST, CORNER, NORTH));
+		assertTrue(mRoadManager.matches(road, waypoints(WEST, CORNER, NORTH)));
+		//default tolerance of 50m, north of the east-west street:
+		assertTrue(mRoadManager.matches(road, waypoints(north(WEST, 49), north(CORNER, -49), NORTH)));
+		assertFalse(mRoadManager.matches(road, waypoints(north(WEST, 51), CORNER, NORTH)));
+		assertFalse(mRoadManager.matches(road, waypoints(WEST, north(NORTH, 51))));
+		//passing through a waypoint in the middle of a segment:
+		GeoPoint middle = new GeoPoint(21.0300, 105.8550);
+		assertTrue(mRoadManager.matches(road, waypoints(WEST, north(middle, 30), NORTH)));
+		assertTrue(mRoadManager.matches(road, waypoints(WEST, NORTH)));
+		assertFalse(mRoadManager.matches(road, waypoints(WEST, new GeoPoint(21.0350, 105.8550), NORTH)));
+		Road empty = new Road();
+		assertFalse(mRoadManager.matches(empty, waypoints(WEST, NORTH)));
+	}
+
+	@Test
+	public void matchesInTheSameOrder(){
+		Road road = mService.road(waypoints(WEST, CORNER, NORTH));
+		assertFalse(mRoadManager.matches(road, waypoints(NORTH, CORNER, WEST)));
+		assertFalse(mRoadManager.matches(road, waypoints(NORTH, WEST)));
+		//the corner is the start of the segment to the north: still before it
+		assertFalse(mRoadManager.matches(road, waypoints(WEST, NORTH, CORNER)));
+		GeoPoint middle = new GeoPoint(21.0300, 105.8550);
+		assertFalse(mRoadManager.matches(road, waypoints(WEST, CORNER, middle)));
+		//a few meters back on the same segment are within the tolerance:
+		assertTrue(mRoadManager.matches(road, waypoints(WEST, middle, new GeoPoint(21.0300, 105.8548), NORTH)));
+
+		//a round trip passes twice at the corner:
+		Road roundTrip = mService.road(waypoints(WEST, CORNER, WEST));
+		assertTrue(mRoadManager.matches(roundTrip, waypoints(WEST, CORNER, WEST)));
+		assertTrue(mRoadManager.matches(roundTrip, waypoints(WEST, middle, CORNER, middle, WEST)));
+	}
+
+	@Test
+	public void nearbyWaypointsReuseTheRoad(){
+		mRoadManager.setQuantization(200, 50);
+		mRoadManager.getRoad(waypoints(WEST, CORNER));
+		assertEquals(1, mService.mRequests);
+		//in the same cell or a neighbour cell, within the tolerance of the shape:
+		Road road = mRoadManager.getRoad(waypoints(north(WEST, 40), north(CORNER, -40)));
+		assertEquals(1, mService.mRequests);
+		assertEquals(WEST.getLatitude(), road.mRouteHigh.getLatitude(0), 1e-6);
+		//in a neighbour cell, but outside the tolerance:
+		road = mRoadManager.getRoad(waypoints(north(WEST, 60), CORNER));
+		assertEquals(2, mService.mRequests);
+		assertEquals(north(WEST, 60).getLatitude(), road.mRouteHigh.getLatitude(0), 1e-6);
+		road = mRoadManager.getRoad(waypoints(WEST, north(CORNER, -60)));
+		assertEquals(3, mService.mRequests);
+	}
+
+	@Test
+	public void otherOrderOrWaypointsMiss(){
+		mRoadManager.setQuantization(200, 50);
+		mRoadManager.getRoad(waypoints(WEST, CORNER, NORTH));
+		assertEquals(1, mService.mRequests);
+		mRoadManager.getRoad(waypoints(WEST, CORNER, NORTH));
+		assertEquals(1, mService.mRequests);
+		mRoadManager.getRoad(waypoints(NORTH, CORNER, WEST));
+		assertEquals(2, mService.mRequests);
+		mRoadManager.getRoad(waypoints(WEST, NORTH, CORNER));
+		assertEquals(3, mService.mRequests);
+		//fewer or more waypoints, even on the cached shape:
+		mRoadManager.getRoad(waypoints(WEST, NORTH));
+		assertEquals(4, mService.mRequests);
+		mRoadManager.getRoad(waypoints(WEST, new GeoPoint(21.0300, 105.8550), CORNER, NORTH));
+		assertEquals(5, mService.mRequests);
+		assertEquals(5, mRoadManager.getCache().count());
+	}
+
+	@Test
+	public void binaryRoundTrip(){
+		Road road = new Road();
+		road.mStatus = Road.STATUS_OK;
+		road.mLength = 12.345;
+		road.mDuration = 1234.5;
+		for (int i = 0; i < 3; i++){
+			RoadNode node = new RoadNode();
+			node.mManeuverType = 10 + i;
+			node.mInstructions = (i == 1 ? null : "Rẽ phải vào Tràng Tiền " + i);
+			node.mLength = 0.5 * i;
+			node.mDuration = 60.0 * i;
+			node.mLocation = (i == 2 ? null : new GeoPoint(21.0 + i*0.01, 105.8 + i*0.01));
+			road.mNodes.add(node);
+		}
+		road.mLegs.add(new RoadLeg());
+		road.mLegs.get(0).mLength = 12.345;
+		road.mLegs.get(0).mDuration = 1234.5;
+		road.mLegs.get(0).mStartNodeIndex = 0;
+		road.mLegs.get(0).mEndNodeIndex = 2;
+		road.mRouteHigh = new PackedPolyline();
+		for (int i = 0; i < 100; i++)
+			road.mRouteHigh.add(new GeoPoint(21.0 + i*0.0001234567, 105.8 - i*0.0007654321, 10.0 + i*0.25));
+		road.mBoundingBox = road.mRouteHigh.getBoundingBox();
+
+		Road flat = new Road(waypoints(HOAN_KIEM, OPERA, TRAIN_STATION));
+		flat.mBoundingBox = null;
+
+		RoadFileCache cache = mRoadManager.getCache();
+		cache.put("roads", new Road[]{ road, flat });
+		Road[] roads = cache.get("roads", CachingRoadManager.HOUR);
+		assertEquals(2, roads.length);
+		assertSameRoad(road, roads[0]);
+		assertSameRoad(flat, roads[1]);
+		assertTrue(roads[0].mRouteHigh.hasAltitude());
+		assertFalse(roads[1].mRouteHigh.hasAltitude());
+		assertNull(roads[1].mBoundingBox);
+		//the whole shape is read again - not the one kept in memory:
+		assertNotSame(road.mRouteHigh, roads[0].mRouteHigh);
+	}
+
+	private static void assertSameRoad(Road expected, Road actual){
+		assertEquals(expected.mStatus, actual.mStatus);
+		assertEquals(expected.mLength, actual.mLength, 0.0);
+		assertEquals(expected.mDuration, actual.mDuration, 0.0);
+		assertEquals(expected.mNodes.size(), actual.mNodes.size());
+		for (int i = 0; i < expected.mNodes.size(); i++){
+			RoadNode e = expected.mNodes.get(i);
+			RoadNode a = actual.mNodes.get(i);
+			assertEquals(e.mManeuverType, a.mManeuverType);
+			assertEquals(e.mInstructions, a.mInstructions);
+			assertEquals(e.mLength, a.mLength, 0.0);
+			assertEquals(e.mDuration, a.mDuration, 0.0);
+			assertEquals(e.mLocation, a.mLocation);
+		}
+		assertEquals(expected.mLegs.size(), actual.mLegs.size());
+		for (int i = 0; i < expected.mLegs.size(); i++){
+			RoadLeg e = expected.mLegs.get(i);
+			RoadLeg a = actual.mLegs.get(i);
+			assertEquals(e.mLength, a.mLength, 0.0);
+			assertEquals(e.mDuration, a.mDuration, 0.0);
+			assertEquals(e.mStartNodeIndex, a.mStartNodeIndex);
+			assertEquals(e.mEndNodeIndex, a.mEndNodeIndex);
+		}
+		PackedPolyline es = expected.mRouteHigh, as = actual.mRouteHigh;
+		assertEquals(es.size(), as.size());
+		assertEquals(es.hasAltitude(), as.hasAltitude());
+		for (int i = 0; i < es.size(); i++){
+			assertEquals(es.getLatitudeE6(i), as.getLatitudeE6(i));
+			assertEquals(es.getLongitudeE6(i), as.getLongitudeE6(i));
+			assertEquals((float)es.getAltitude(i), (float)as.getAltitude(i), 0.0f);
+		}
+		BoundingBox eb = expected.mBoundingBox, ab = actual.mBoundingBox;
+		if (eb == null)
+			assertNull(ab);
+		else {
+			assertEquals(eb.getLatNorth(), ab.getLatNorth(), 0.0);
+			assertEquals(eb.getLonEast(), ab.getLonEast(), 0.0);
+			assertEquals(eb.getLatSouth(), ab.getLatSouth(), 0.0);
+			assertEquals(eb.getLonWest(), ab.getLonWest(), 0.0);
+		}
+	}
+}
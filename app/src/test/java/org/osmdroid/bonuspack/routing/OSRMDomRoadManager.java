@@ -0,0 +1,112 @@
+package org.osmdroid.bonuspack.routing;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.osmdroid.bonuspack.utils.BonusPackHelper;
+import org.osmdroid.bonuspack.utils.PolylineEncoder;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+
+/**
+ * OSRMRoadManager parsing the whole response in a JSON DOM, as it did before getRoadsFromStream.
+ * Reference implementation for the parser tests and benchmark. <br>
+ *
+ * Instructions are the road names: there is no Context for string resources on the JVM.
+ */
+class OSRMDomRoadManager extends OSRMRoadManager {
+
+	OSRMDomRoadManager(){
+		super(null, "test");
+	}
+
+	@Override protected String buildInstructions(int maneuver, String roadName){
+		return roadName;
+	}
+
+	/**
+	 * Parse a whole OSRM response, using a JSON DOM.
+	 * @param jString the OSRM response
+	 * @param waypoints the requested waypoints, to build a default road in case of error.
+	 */
+	Road[] getRoadsFromJSON(String jString, ArrayList<GeoPoint> waypoints) {
+		try {
+			JSONObject jObject = new JSONObject(jString);
+			String jCode = jObject.getString("code");
+			if (!"Ok".equals(jCode)) {
+				Log.e(BonusPackHelper.LOG_TAG, "OSRMRoadManager::getRoad: error code=" + jCode);
+				Road[] roads = defaultRoad(waypoints);
+				if ("NoRoute".equals(jCode)) {
+					roads[0].mStatus = Road.STATUS_INVALID;
+				}
+				return roads;
+			} else {
+				JSONArray jRoutes = jObject.getJSONArray("routes");
+				Road[] roads = new Road[jRoutes.length()];
+				for (int i=0; i<jRoutes.length(); i++){
+					Road road = new Road();
+					roads[i] = road;
+					road.mStatus = Road.STATUS_OK;
+					JSONObject jRoute = jRoutes.getJSONObject(i);
+					String route_geometry = jRoute.getString("geometry");
+					road.mRouteHigh = PolylineEncoder.decodePacked(route_geometry, 10, false);
+					road.mBoundingBox = road.mRouteHigh.getBoundingBox();
+					road.mLength = jRoute.getDouble("distance") / 1000.0;
+					road.mDuration = jRoute.getDouble("duration");
+					//legs:
+					JSONArray jLegs = jRoute.getJSONArray("legs");
+					for (int l=0; l<jLegs.length(); l++) {
+						//leg:
+						JSONObject jLeg = jLegs.getJSONObject(l);
+						RoadLeg leg = new RoadLeg();
+						road.mLegs.add(leg);
+						leg.mLength = jLeg.getDouble("distance");
+						leg.mDuration = jLeg.getDouble("duration");
+						//steps:
+						JSONArray jSteps = jLeg.getJSONArray("steps");
+						RoadNode lastNode = null;
+						String lastRoadName = "";
+						for (int s=0; s<jSteps.length(); s++) {
+							JSONObject jStep = jSteps.getJSONObject(s);
+							RoadNode node = new RoadNode();
+							node.mLength = jStep.getDouble("distance") / 1000.0;
+							node.mDuration = jStep.getDouble("duration");
+							JSONObject jStepManeuver = jStep.getJSONObject("maneuver");
+							JSONArray jLocation = jStepManeuver.getJSONArray("location");
+							node.mLocation = new GeoPoint(jLocation.getDouble(1), jLocation.getDouble(0));
+							String direction = jStepManeuver.getString("type");
+							if (direction.equals("turn") || direction.equals("ramp") || direction.equals("merge")){
+								//no modifier: plain type
+								if (!jStepManeuver.isNull("modifier"))
+									direction = direction + '-' + jStepManeuver.getString("modifier");
+							} else if (direction.equals("roundabout") || direction.equals("rotary")){
+								//convert rotary in roundabout, no exit: plain roundabout
+								int exit = jStepManeuver.optInt("exit", 0);
+								direction = (exit > 0 ? "roundabout" + '-' + exit : "roundabout");
+							}
+							node.mManeuverType = getManeuverCode(direction);
+							String roadName = jStep.optString("name", "");
+							node.mInstructions = buildInstructions(node.mManeuverType, roadName);
+							if (lastNode != null && node.mManeuverType == 2 && lastRoadName.equals(roadName)) {
+								//workaround for https://github.com/Project-OSRM/osrm-backend/issues/2273
+								lastNode.mDuration += node.mDuration;
+								lastNode.mLength += node.mLength;
+							} else {
+								road.mNodes.add(node);
+								lastNode = node;
+								lastRoadName = roadName;
+							}
+						} //steps
+					} //legs
+				} //routes
+				return roads;
+			} //if code is Ok
+		} catch (JSONException e) {
+			e.printStackTrace();
+			return defaultRoad(waypoints);
+		}
+	}
+}
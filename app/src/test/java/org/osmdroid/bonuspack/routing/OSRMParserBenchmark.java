@@ -0,0 +1,64 @@
+package org.osmdroid.bonuspack.routing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OSRM response parsing: JSON DOM (OSRMDomRoadManager, the former parser) versus streaming (getRoadsFromStream).
+ * Both start from the raw bytes, as received from the network.
+ * Run with "-prof gc" to compare allocation rates:
+ * ./gradlew :app:jmh -Pjmh.includes="OSRMParserBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OSRMParserBenchmark {
+
+	/** 2 legs: a single delivery (~100KB). 40 legs: a full multi-stop tour (~2MB). */
+	@Param({"2", "40"})
+	public int legs;
+
+	private static final int STEPS_PER_LEG = 30;
+	private static final int VERTICES_PER_STEP = 40;
+
+	private byte[] mResponse;
+	private ArrayList<GeoPoint> mWaypoints;
+	private OSRMDomRoadManager mRoadManager;
+
+	@Setup public void setup(){
+		mResponse = BenchmarkFixtures.osrmResponse(legs, STEPS_PER_LEG, VERTICES_PER_STEP, 42)
+				.getBytes(StandardCharsets.UTF_8);
+		mWaypoints = BenchmarkFixtures.osrmWaypoints(legs, STEPS_PER_LEG, VERTICES_PER_STEP, 42);
+		mRoadManager = new OSRMDomRoadManager();
+	}
+
+	@Benchmark public Road[] dom(){
+		String jString = new String(mResponse, StandardCharsets.UTF_8);
+		return mRoadManager.getRoadsFromJSON(jString, mWaypoints);
+	}
+
+	@Benchmark public Road[] streaming(){
+		InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(mResponse), StandardCharsets.UTF_8);
+		return mRoadManager.getRoadsFromStream(reader, mWaypoints);
+	}
+}
@@ -0,0 +1,139 @@
+package org.osmdroid.bonuspack.routing;
+
+import org.junit.Test;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.bonuspack.utils.PackedPolyline;
+import org.osmdroid.util.GeoPoint;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * OSRMRoadManager streaming parser, against the former JSON DOM parser (OSRMDomRoadManager).
+ */
+public class OSRMRoadManagerTest {
+
+	private static final ArrayList<GeoPoint> WAYPOINTS = new ArrayList<>(Arrays.asList(
+			new GeoPoint(38.5, -120.2), new GeoPoint(43.252, -126.453)));
+
+	private final OSRMDomRoadManager mRoadManager = new OSRMDomRoadManager();
+
+	private Road[] stream(String jString, ArrayList<GeoPoint> waypoints){
+		return mRoadManager.getRoadsFromStream(new StringReader(jString), waypoints);
+	}
+
+	private static String step(String name, String maneuver){
+		return "{\"distance\":120.5,\"duration\":14.2,\"name\":\"" + name + "\",\"mode\":\"driving\","
+				+ "\"maneuver\":{\"location\":[-120.2,38.5]," + maneuver + "}}";
+	}
+
+	/** @return an OSRM response with a single route and leg, with these steps */
+	private static String response(String... steps){
+		StringBuilder sb = new StringBuilder("{\"code\":\"Ok\",\"routes\":[{\"geometry\":\"_p~iF~ps|U_ulLnnqC_mqNvxq`@\","
+				+ "\"distance\":1446.5,\"duration\":171.3,\"legs\":[{\"distance\":1446.5,\"duration\":171.3,\"steps\":[");
+		for (int i = 0; i < steps.length; i++){
+			if (i > 0)
+				sb.append(',');
+			sb.append(steps[i]);
+		}
+		return sb.append("]}]}],\"waypoints\":[]}").toString();
+	}
+
+	@Test
+	public void streamingParsesAsTheDom(){
+		for (int legs : new int[]{ 1, 5 }){
+			for (long seed = 0; seed < 5; seed++){
+				String jString = BenchmarkFixtures.osrmResponse(legs, 30, 10, seed);
+				ArrayList<GeoPoint> waypoints = BenchmarkFixtures.osrmWaypoints(legs, 30, 10, seed);
+				Road[] expected = mRoadManager.getRoadsFromJSON(jString, waypoints);
+				Road[] actual = stream(jString, waypoints);
+				assertEquals(expected.length, actual.length);
+				for (int i = 0; i < expected.length; i++){
+					assertEquals(Road.STATUS_OK, actual[i].mStatus);
+					assertSameRoad(expected[i], actual[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void roundaboutsWithoutExit(){
+		String jString = response(
+				step("Hàng Bài", "\"type\":\"depart\""),
+				step("Tràng Tiền", "\"type\":\"roundabout\",\"exit\":2,\"modifier\":\"right\""),
+				step("Lê Thái Tổ", "\"type\":\"roundabout\",\"modifier\":\"right\""),
+				step("Đinh Tiên Hoàng", "\"type\":\"rotary\",\"exit\":3"),
+				step("Hàng Khay", "\"type\":\"rotary\""),
+				step("Bà Triệu", "\"type\":\"turn\",\"modifier\":\"left\""),
+				step("Hai Bà Trưng", "\"type\":\"turn\""),
+				step("Hai Bà Trưng", "\"type\":\"arrive\""));
+		Road road = stream(jString, WAYPOINTS)[0];
+		assertEquals(Road.STATUS_OK, road.mStatus);
+		int[] expected = { 24, 28, 35, 29, 35, 4, 0, 24 };
+		assertEquals(expected.length, road.mNodes.size());
+		for (int i = 0; i < expected.length; i++)
+			assertEquals("step " + i, expected[i], road.mNodes.get(i).mManeuverType);
+		assertEquals("Lê Thái Tổ", road.mNodes.get(2).mInstructions);
+		assertSameRoad(mRoadManager.getRoadsFromJSON(jString, WAYPOINTS)[0], road);
+	}
+
+	@Test
+	public void sameNameIsMergedInThePreviousNode(){
+		String jString = response(
+				step("Hàng Bài", "\"type\":\"depart\""),
+				step("Hàng Bài", "\"type\":\"new name\",\"modifier\":\"straight\""),
+				step("Hàng Khay", "\"type\":\"new name\",\"modifier\":\"straight\""),
+				step("Hàng Khay", "\"type\":\"arrive\""));
+		Road road = stream(jString, WAYPOINTS)[0];
+		assertEquals(3, road.mNodes.size());
+		assertEquals(0.241, road.mNodes.get(0).mLength, 1e-9);
+		assertEquals(28.4, road.mNodes.get(0).mDuration, 1e-9);
+		assertEquals(2, road.mNodes.get(1).mManeuverType);
+		assertSameRoad(mRoadManager.getRoadsFromJSON(jString, WAYPOINTS)[0], road);
+	}
+
+	@Test
+	public void errorsGiveTheDefaultRoad(){
+		Road[] roads = stream("{\"code\":\"NoRoute\",\"message\":\"Impossible route between points\"}", WAYPOINTS);
+		assertEquals(1, roads.length);
+		assertEquals(Road.STATUS_INVALID, roads[0].mStatus);
+		assertEquals(2, roads[0].mRouteHigh.size());
+
+		roads = stream(response(step("Hàng Bài", "\"type\":\"depart\"")).substring(0, 150), WAYPOINTS);
+		assertEquals(1, roads.length);
+		assertEquals(Road.STATUS_TECHNICAL_ISSUE, roads[0].mStatus);
+		assertEquals(2, roads[0].mRouteHigh.size());
+	}
+
+	private static void assertSameRoad(Road expected, Road actual){
+		assertEquals(expected.mStatus, actual.mStatus);
+		assertEquals(expected.mLength, actual.mLength, 0.0);
+		assertEquals(expected.mDuration, actual.mDuration, 0.0);
+		assertEquals(expected.mNodes.size(), actual.mNodes.size());
+		for (int i = 0; i < expected.mNodes.size(); i++){
+			RoadNode e = expected.mNodes.get(i);
+			RoadNode a = actual.mNodes.get(i);
+			assertEquals(e.mManeuverType, a.mManeuverType);
+			assertEquals(e.mInstructions, a.mInstructions);
+			assertEquals(e.mLength, a.mLength, 0.0);
+			assertEquals(e.mDuration, a.mDuration, 0.0);
+			assertEquals(e.mLocation, a.mLocation);
+		}
+		assertEquals(expected.mLegs.size(), actual.mLegs.size());
+		for (int i = 0; i < expected.mLegs.size(); i++){
+			assertEquals(expected.mLegs.get(i).mLength, actual.mLegs.get(i).mLength, 0.0);
+			assertEquals(expected.mLegs.get(i).mDuration, actual.mLegs.get(i).mDuration, 0.0);
+		}
+		PackedPolyline es = expected.mRouteHigh, as = actual.mRouteHigh;
+		assertEquals(es.size(), as.size());
+		for (int i = 0; i < es.size(); i++){
+			assertEquals(es.getLatitudeE6(i), as.getLatitudeE6(i));
+			assertEquals(es.getLongitudeE6(i), as.getLongitudeE6(i));
+		}
+		assertEquals(expected.mBoundingBox.getLatNorth(), actual.mBoundingBox.getLatNorth(), 0.0);
+		assertEquals(expected.mBoundingBox.getLonWest(), actual.mBoundingBox.getLonWest(), 0.0);
+	}
+}
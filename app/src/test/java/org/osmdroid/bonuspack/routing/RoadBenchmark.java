@@ -0,0 +1,60 @@
+package org.osmdroid.bonuspack.routing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Road.buildLegs, used by MapQuest and GraphHopper to split a multi-stop road into legs.
+ * ./gradlew :app:jmh -Pjmh.includes=RoadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoadBenchmark {
+
+	/** number of legs of the tour */
+	@Param({"2", "40"})
+	public int legs;
+
+	private static final int NODES_PER_LEG = 30;
+	private static final int VERTICES_PER_NODE = 40;
+
+	private Road mRoad;
+	private ArrayList<GeoPoint> mWaypoints;
+
+	@Setup public void setup(){
+		ArrayList<GeoPoint> shape = BenchmarkFixtures.randomWalk(legs * NODES_PER_LEG * VERTICES_PER_NODE + 1, 42);
+		mRoad = new Road();
+		mRoad.mRouteHigh.addAll(shape);
+		for (int i=0; i<shape.size(); i+=VERTICES_PER_NODE){
+			RoadNode node = new RoadNode();
+			node.mLocation = shape.get(i);
+			node.mLength = VERTICES_PER_NODE * 0.0111;
+			node.mDuration = node.mLength * 450.0;
+			mRoad.mNodes.add(node);
+		}
+		mWaypoints = BenchmarkFixtures.osrmWaypoints(legs, NODES_PER_LEG, VERTICES_PER_NODE, 42);
+	}
+
+	@Benchmark public ArrayList<RoadLeg> buildLegs(){
+		mRoad.buildLegs(mWaypoints);
+		return mRoad.mLegs;
+	}
+}
@@ -0,0 +1,55 @@
+package org.osmdroid.bonuspack.routing;
+
+import org.junit.Test;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.bonuspack.utils.PolylinePyramid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class RoadTest {
+
+	@Test
+	public void sharedRoadBuildsOnePyramid() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (int round = 0; round < 20; round++){
+				final Road road = new Road(BenchmarkFixtures.randomWalk(5000, round));
+				final CountDownLatch start = new CountDownLatch(1);
+				List<Future<PolylinePyramid>> pyramids = new ArrayList<>();
+				for (int i = 0; i < 8; i++){
+					pyramids.add(executor.submit(new Callable<PolylinePyramid>() {
+						@Override public PolylinePyramid call() throws InterruptedException {
+							start.await();
+							return road.getRoutePyramid();
+						}
+					}));
+				}
+				start.countDown();
+				PolylinePyramid first = pyramids.get(0).get();
+				assertNotNull(first);
+				for (Future<PolylinePyramid> pyramid : pyramids)
+					assertSame(first, pyramid.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void newShapeResetsThePyramid(){
+		Road road = new Road(BenchmarkFixtures.randomWalk(100, 1));
+		PolylinePyramid pyramid = road.getRoutePyramid();
+		assertSame(pyramid, road.getRoutePyramid());
+		road.setRouteHigh(BenchmarkFixtures.randomWalk(200, 2));
+		assertNotSame(pyramid, road.getRoutePyramid());
+		assertEquals(200, road.mRouteHigh.size());
+	}
+}
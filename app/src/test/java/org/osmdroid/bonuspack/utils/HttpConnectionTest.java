@@ -0,0 +1,137 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.bonuspack.LocalHttpServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * HttpConnection through an HttpTransport, against a local server: connection reuse, limit per host,
+ * and release of the host on every path.
+ */
+public class HttpConnectionTest {
+
+	private static final String BODY = "{\"status\":\"ok\"}";
+
+	private LocalHttpServer mServer;
+
+	@Before
+	public void setUp() throws Exception {
+		mServer = new LocalHttpServer(8);
+		mServer.serve("/ok", BODY);
+	}
+
+	@After
+	public void tearDown(){
+		mServer.stop();
+	}
+
+	private static HttpTransport transport(int maxConnectionsPerHost){
+		HttpTransport transport = new HttpTransport(maxConnectionsPerHost);
+		transport.setTimeouts(1000, 1000);
+		return transport;
+	}
+
+	@Test
+	public void sequentialRequestsReuseOneSocket(){
+		HttpTransport transport = transport(4);
+		for (int i = 0; i < 10; i++){
+			HttpConnection connection = new HttpConnection(transport);
+			try {
+				assertTrue(connection.doGet(mServer.getUrl("/ok")));
+				assertEquals(BODY, connection.getContentAsString());
+			} finally {
+				connection.close();
+			}
+		}
+		assertEquals(10, mServer.getRequestCount());
+		assertEquals(1, mServer.getConnectionCount());
+	}
+
+	@Test
+	public void concurrentRequestsStayUnderTheLimitPerHost() throws Exception {
+		final HttpTransport transport = transport(2);
+		mServer.setLatency(20);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 24; i++){
+				results.add(executor.submit(new Callable<String>() {
+					@Override public String call() {
+						HttpConnection connection = new HttpConnection(transport);
+						try {
+							connection.doGet(mServer.getUrl("/ok"));
+							return connection.getContentAsString();
+						} finally {
+							connection.close();
+						}
+					}
+				}));
+			}
+			for (Future<String> result : results)
+				assertEquals(BODY, result.get());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(24, mServer.getRequestCount());
+		assertEquals(2, mServer.getMaxConcurrentRequests());
+		assertTrue(mServer.getConnectionCount() <= 2);
+	}
+
+	@Test
+	public void hostIsReleasedAfterAnError(){
+		HttpTransport transport = transport(1);
+		for (int i = 0; i < 3; i++){
+			HttpConnection connection = new HttpConnection(transport);
+			try {
+				assertFalse(connection.doGet(mServer.getUrl("/missing")));
+				assertNull(connection.getStream());
+			} finally {
+				connection.close();
+			}
+		}
+		//with a single permit, this would time out if an error had kept it:
+		HttpConnection connection = new HttpConnection(transport);
+		try {
+			assertTrue(connection.doGet(mServer.getUrl("/ok")));
+			assertEquals(BODY, connection.getContentAsString());
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void waitForTheHostTimesOut(){
+		HttpTransport transport = transport(1);
+		transport.setTimeouts(100, 100);
+		HttpConnection holder = new HttpConnection(transport);
+		HttpConnection waiter = new HttpConnection(transport);
+		try {
+			//body not read: the host stays held
+			assertTrue(holder.doGet(mServer.getUrl("/ok")));
+			long start = System.nanoTime();
+			assertFalse(waiter.doGet(mServer.getUrl("/ok")));
+			long waited = (System.nanoTime() - start) / 1000000;
+			assertTrue("waited " + waited + "ms", waited >= 150 && waited < 2000);
+			assertNull(waiter.getStream());
+		} finally {
+			waiter.close();
+			holder.close();
+		}
+		HttpConnection connection = new HttpConnection(transport);
+		try {
+			assertTrue(connection.doGet(mServer.getUrl("/ok")));
+		} finally {
+			connection.close();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.bonuspack.LocalHttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests of an OSRM route response (2 legs, 60 steps) to a local stand-in server:
+ * through HttpConnection (keep-alive, gzip), and as before: a new connection per request - as Android's
+ * disconnect() closes the socket, emulated here with "Connection: close" - read line by line.
+ * On loopback, this only shows the TCP setup and the transfer size; on a real service, TLS setup comes on top
+ * for each new connection.
+ * ./gradlew :app:jmh -Pjmh.includes="HttpTransportBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpTransportBenchmark {
+
+	private LocalHttpServer mServer;
+	private String mUrl;
+
+	@Setup public void setup() throws IOException {
+		mServer = new LocalHttpServer(4);
+		mServer.serve("/route", BenchmarkFixtures.osrmResponse(2, 30, 40, 42));
+		mUrl = mServer.getUrl("/route");
+	}
+
+	@TearDown public void tearDown(){
+		System.out.println("\nrequests: " + mServer.getRequestCount() + ", connections: " + mServer.getConnectionCount());
+		mServer.stop();
+	}
+
+	@Benchmark public String pooled(){
+		HttpConnection connection = new HttpConnection();
+		connection.doGet(mUrl);
+		String result = connection.getContentAsString();
+		connection.close();
+		return result;
+	}
+
+	@Benchmark public String newConnection() throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(mUrl).openConnection();
+		connection.setConnectTimeout(30000);
+		connection.setReadTimeout(30000);
+		connection.setRequestMethod("GET");
+		connection.setRequestProperty("Connection", "close");
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+			return null;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+		StringBuilder sb = new StringBuilder();
+		String line;
+		while ((line = reader.readLine()) != null)
+			sb.append(line);
+		reader.close();
+		connection.disconnect();
+		return sb.toString();
+	}
+}
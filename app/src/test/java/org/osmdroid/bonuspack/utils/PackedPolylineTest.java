@@ -0,0 +1,83 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.junit.Test;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PackedPolylineTest {
+
+	private static PackedPolyline polyline(double... latLonAlt){
+		PackedPolyline polyline = new PackedPolyline();
+		for (int i = 0; i < latLonAlt.length; i += 3)
+			polyline.add(new GeoPoint(latLonAlt[i], latLonAlt[i+1], latLonAlt[i+2]));
+		return polyline;
+	}
+
+	@Test
+	public void addAllWithoutAltitudes(){
+		PackedPolyline p = polyline(1.0, 2.0, 0.0, 3.0, 4.0, 0.0);
+		p.addAll(polyline(5.0, 6.0, 0.0));
+		assertFalse(p.hasAltitude());
+		assertEquals(3, p.size());
+		assertEquals(5.0, p.getLatitude(2), 0.0);
+		assertEquals(6.0, p.getLongitude(2), 0.0);
+	}
+
+	@Test
+	public void addAllOtherWithAltitudes(){
+		PackedPolyline p = polyline(1.0, 2.0, 0.0);
+		p.addAll(polyline(5.0, 6.0, 100.0, 7.0, 8.0, 200.0));
+		assertTrue(p.hasAltitude());
+		assertEquals(0.0, p.getAltitude(0), 0.0);
+		assertEquals(100.0, p.getAltitude(1), 0.0);
+		assertEquals(200.0, p.getAltitude(2), 0.0);
+	}
+
+	@Test
+	public void addAllOtherWithoutAltitudesFillsZero(){
+		PackedPolyline p = polyline(1.0, 2.0, 10.0, 3.0, 4.0, 20.0, 5.0, 6.0, 30.0);
+		//leave stale altitudes beyond the size:
+		p.remove(2);
+		p.remove(1);
+		p.addAll(polyline(7.0, 8.0, 0.0, 9.0, 10.0, 0.0));
+		assertEquals(3, p.size());
+		assertEquals(10.0, p.getAltitude(0), 0.0);
+		assertEquals(0.0, p.getAltitude(1), 0.0);
+		assertEquals(0.0, p.getAltitude(2), 0.0);
+		assertEquals(0.0, p.get(2).getAltitude(), 0.0);
+	}
+
+	@Test
+	public void addAllGrows(){
+		PackedPolyline p = polyline(1.0, 2.0, 10.0);
+		PackedPolyline other = new PackedPolyline(1);
+		for (int i = 0; i < 100; i++)
+			other.add(i*1000, i*2000);
+		p.addAll(other);
+		assertEquals(101, p.size());
+		assertEquals(10.0, p.getAltitude(0), 0.0);
+		for (int i = 0; i < 100; i++){
+			assertEquals(i*1000, p.getLatitudeE6(i+1));
+			assertEquals(i*2000, p.getLongitudeE6(i+1));
+			assertEquals(0.0, p.getAltitude(i+1), 0.0);
+		}
+		assertFalse(p.addAll(new PackedPolyline()));
+	}
+
+	@Test
+	public void listView(){
+		List<GeoPoint> points = new ArrayList<>();
+		points.add(new GeoPoint(48.8583, 2.2945));
+		points.add(new GeoPoint(21.0285, 105.8542, 12.0));
+		PackedPolyline p = new PackedPolyline(points);
+		assertEquals(points, p.toGeoPoints());
+		p.add(1, new GeoPoint(0.5, 0.25));
+		assertEquals(0.5, p.get(1).getLatitude(), 0.0);
+		assertEquals(21.0285, p.get(2).getLatitude(), 0.0);
+		assertEquals(12.0, p.get(2).getAltitude(), 0.0);
+	}
+}
@@ -0,0 +1,60 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Google polyline encoding and decoding, on a full-day route shape (50k vertices, OSRM precision 1E5).
+ * ./gradlew :app:jmh -Pjmh.includes="PolylineEncoderBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolylineEncoderBenchmark {
+
+	@Param({"50000"})
+	public int vertices;
+
+	private ArrayList<GeoPoint> mShape;
+	private PackedPolyline mPackedShape;
+	private String mEncoded;
+
+	@Setup public void setup(){
+		mShape = BenchmarkFixtures.randomWalk(vertices, 42);
+		mPackedShape = new PackedPolyline(mShape);
+		mEncoded = PolylineEncoder.encode(mShape, 10);
+	}
+
+	@Benchmark public String encode(){
+		return PolylineEncoder.encode(mShape, 10);
+	}
+
+	@Benchmark public String encodePacked(){
+		return PolylineEncoder.encode(mPackedShape, 10);
+	}
+
+	@Benchmark public ArrayList<GeoPoint> decode(){
+		return PolylineEncoder.decode(mEncoded, 10, false);
+	}
+
+	@Benchmark public PackedPolyline decodePacked(){
+		return PolylineEncoder.decodePacked(mEncoded, 10, false);
+	}
+}
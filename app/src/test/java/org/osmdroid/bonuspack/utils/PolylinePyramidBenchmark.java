@@ -0,0 +1,61 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.BenchmarkFixtures;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.PointReducer;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Level-of-detail of a 40k points road shape: building the pyramid, extracting a level at a city zoom (12)
+ * and at a street zoom (16), compared to the fixed 1500m reduction of Road.getRouteLow.
+ * ./gradlew :app:jmh -Pjmh.includes="PolylinePyramidBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolylinePyramidBenchmark {
+
+	private static final int POINTS = 40000;
+
+	private PackedPolyline mShape;
+	private PolylinePyramid mPyramid;
+
+	@Setup public void setup(){
+		mShape = new PackedPolyline();
+		mShape.addAll(BenchmarkFixtures.randomWalk(POINTS, 42));
+		mPyramid = new PolylinePyramid(mShape);
+	}
+
+	@Benchmark public PolylinePyramid build(){
+		return new PolylinePyramid(mShape);
+	}
+
+	@Benchmark public ArrayList<GeoPoint> levelCity(){
+		mPyramid.setPixelTolerance(1.0);
+		return mPyramid.getPoints(12);
+	}
+
+	@Benchmark public ArrayList<GeoPoint> levelStreet(){
+		mPyramid.setPixelTolerance(1.0);
+		return mPyramid.getPoints(16);
+	}
+
+	@Benchmark public ArrayList<GeoPoint> routeLow(){
+		return PointReducer.reduceWithTolerance(mShape.toGeoPoints(), 1500.0);
+	}
+}
@@ -0,0 +1,178 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RTreeTest {
+
+	/** an item and its rectangle, as inserted */
+	private static class Entry {
+		final Integer mItem;
+		final double mMinX, mMinY, mMaxX, mMaxY;
+
+		Entry(Integer item, double minX, double minY, double maxX, double maxY){
+			mItem = item;
+			mMinX = minX;
+			mMinY = minY;
+			mMaxX = maxX;
+			mMaxY = maxY;
+		}
+
+		boolean intersects(double minX, double minY, double maxX, double maxY){
+			return mMinX <= maxX && mMaxX >= minX && mMinY <= maxY && mMaxY >= minY;
+		}
+	}
+
+	private static Entry randomEntry(Random random, Integer item){
+		double x = random.nextDouble()*360.0 - 180.0;
+		double y = random.nextDouble()*170.0 - 85.0;
+		return new Entry(item, x, y, x + random.nextDouble()*5.0, y + random.nextDouble()*5.0);
+	}
+
+	private static void insert(RTree<Integer> tree, Entry e){
+		tree.insert(e.mItem, e.mMinX, e.mMinY, e.mMaxX, e.mMaxY);
+	}
+
+	private static boolean remove(RTree<Integer> tree, Entry e){
+		return tree.remove(e.mItem, e.mMinX, e.mMinY, e.mMaxX, e.mMaxY);
+	}
+
+	private static List<Integer> search(RTree<Integer> tree, double minX, double minY, double maxX, double maxY){
+		List<Integer> found = new ArrayList<>();
+		tree.search(minX, minY, maxX, maxY, found);
+		return found;
+	}
+
+	/** check random windows against a scan of the entries, counting each entry found */
+	private static void assertSameAsScan(RTree<Integer> tree, List<Entry> entries, Random random){
+		assertEquals(entries.size(), tree.size());
+		for (int w = 0; w < 200; w++){
+			double x = random.nextDouble()*360.0 - 180.0;
+			double y = random.nextDouble()*170.0 - 85.0;
+			double maxX = x + random.nextDouble()*40.0, maxY = y + random.nextDouble()*40.0;
+			List<Integer> expected = new ArrayList<>();
+			for (Entry e : entries){
+				if (e.intersects(x, y, maxX, maxY))
+					expected.add(e.mItem);
+			}
+			List<Integer> found = search(tree, x, y, maxX, maxY);
+			expected.sort(null);
+			found.sort(null);
+			assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	public void emptyTreeFindsNothing(){
+		RTree<Integer> tree = new RTree<>();
+		assertEquals(0, tree.size());
+		assertTrue(search(tree, -180.0, -90.0, 180.0, 90.0).isEmpty());
+		assertFalse(tree.remove(1, 0.0, 0.0, 1.0, 1.0));
+	}
+
+	@Test
+	public void searchMatchesScanAfterInserts(){
+		Random random = new Random(42);
+		RTree<Integer> tree = new RTree<>();
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < 2000; i++){
+			Entry e = randomEntry(random, i);
+			insert(tree, e);
+			entries.add(e);
+		}
+		assertSameAsScan(tree, entries, random);
+	}
+
+	@Test
+	public void searchMatchesScanAfterRemovals(){
+		Random random = new Random(7);
+		RTree<Integer> tree = new RTree<>();
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i < 2000; i++){
+			Entry e = randomEntry(random, i);
+			insert(tree, e);
+			entries.add(e);
+		}
+		for (int i = 0; i < 1500; i++){
+			Entry e = entries.remove(random.nextInt(entries.size()));
+			assertTrue(remove(tree, e));
+			assertFalse(remove(tree, e));
+		}
+		assertSameAsScan(tree, entries, random);
+		for (Entry e : entries)
+			assertTrue(remove(tree, e));
+		assertEquals(0, tree.size());
+		assertTrue(search(tree, -180.0, -90.0, 180.0, 90.0).isEmpty());
+	}
+
+	@Test
+	public void removeNeedsTheInsertionRectangle(){
+		RTree<Integer> tree = new RTree<>();
+		tree.insert(1, 0.0, 0.0, 1.0, 1.0);
+		assertFalse(tree.remove(1, 0.0, 0.0, 2.0, 1.0));
+		assertFalse(tree.remove(2, 0.0, 0.0, 1.0, 1.0));
+		assertEquals(1, tree.size());
+		assertTrue(tree.remove(1, 0.0, 0.0, 1.0, 1.0));
+		assertEquals(0, tree.size());
+	}
+
+	@Test
+	public void itemAcrossTheDateLineKeepsItsOtherRectangle(){
+		Random random = new Random(3);
+		RTree<Integer> tree = new RTree<>();
+		//enough other entries to have several levels:
+		for (int i = 0; i < 500; i++)
+			insert(tree, randomEntry(random, i));
+		Integer item = -1;
+		tree.insert(item, 170.0, 10.0, 180.0, 20.0);
+		tree.insert(item, -180.0, 10.0, -170.0, 20.0);
+		assertEquals(502, tree.size());
+
+		assertTrue(tree.remove(item, -180.0, 10.0, -170.0, 20.0));
+		assertFalse(search(tree, -180.0, 14.0, -175.0, 15.0).contains(item));
+		assertTrue(search(tree, 175.0, 14.0, 180.0, 15.0).contains(item));
+
+		assertTrue(tree.remove(item, 170.0, 10.0, 180.0, 20.0));
+		assertFalse(search(tree, 175.0, 14.0, 180.0, 15.0).contains(item));
+		assertEquals(500, tree.size());
+	}
+
+	@Test
+	public void duplicateItemsAreSeparateEntries(){
+		Random random = new Random(11);
+		RTree<Integer> tree = new RTree<>();
+		List<Entry> entries = new ArrayList<>();
+		//each item twice, with unrelated rectangles, and some exactly twice the same entry:
+		for (int i = 0; i < 600; i++){
+			Integer item = i;
+			Entry e1 = randomEntry(random, item);
+			Entry e2 = (i % 10 == 0 ? e1 : randomEntry(random, item));
+			insert(tree, e1);
+			insert(tree, e2);
+			entries.add(e1);
+			entries.add(e2);
+		}
+		assertSameAsScan(tree, entries, random);
+		//remove one entry of each item:
+		Set<Integer> removed = new HashSet<>();
+		for (int i = entries.size()-1; i >= 0; i--){
+			Entry e = entries.get(i);
+			if (removed.add(e.mItem)){
+				assertTrue(remove(tree, e));
+				entries.remove(i);
+			}
+		}
+		assertSameAsScan(tree, entries, random);
+		for (Entry e : entries){
+			List<Integer> found = search(tree, e.mMinX, e.mMinY, e.mMaxX, e.mMaxY);
+			assertTrue(found.contains(e.mItem));
+		}
+	}
+}
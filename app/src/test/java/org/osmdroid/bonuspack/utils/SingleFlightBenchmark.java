@@ -0,0 +1,67 @@
+package org.osmdroid.bonuspack.utils;
+
+import com.google.gson.JsonElement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osmdroid.bonuspack.LocalHttpServer;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 8 threads repeatedly asking for the same reverse geocoding, as fast UI interactions do,
+ * to a local stand-in service answering in 20ms: each thread calling the service, or calls coalesced by a SingleFlight.
+ * The number of requests received by the service is printed at the end of each run.
+ * ./gradlew :app:jmh -Pjmh.includes="SingleFlightBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class SingleFlightBenchmark {
+
+	private LocalHttpServer mServer;
+	private String mUrl;
+	private SingleFlight<String, JsonElement> mRequests;
+
+	@Setup public void setup() throws IOException {
+		mServer = new LocalHttpServer(16);
+		mServer.serve("/reverse.php", "{\"place_id\":1,\"lat\":\"21.0285\",\"lon\":\"105.8542\",\"display_name\":\"Hoan Kiem, Ha Noi\","
+				+ "\"address\":{\"road\":\"Dinh Tien Hoang\",\"city\":\"Ha Noi\",\"country\":\"Viet Nam\",\"country_code\":\"vn\"}}");
+		mServer.setLatency(20);
+		mUrl = mServer.getUrl("/reverse.php") + "?format=json&lat=21.0285&lon=105.8542";
+		mRequests = new SingleFlight<>();
+	}
+
+	@TearDown public void tearDown(){
+		System.out.println("\nservice requests: " + mServer.getRequestCount() + ", shared: " + mRequests.getSharedCallCount());
+		mServer.stop();
+	}
+
+	@Benchmark public JsonElement direct(){
+		return BonusPackHelper.requestJsonFromUrl(mUrl, null);
+	}
+
+	@Benchmark public JsonElement coalesced() throws Exception {
+		return mRequests.execute(mUrl, new Callable<JsonElement>() {
+			@Override public JsonElement call() {
+				return BonusPackHelper.requestJsonFromUrl(mUrl, null);
+			}
+		});
+	}
+}
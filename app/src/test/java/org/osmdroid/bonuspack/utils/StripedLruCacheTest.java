@@ -0,0 +1,147 @@
+package org.osmdroid.bonuspack.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * StripedLruCache, the memory tier of ImageCache: byte budget per stripe, LRU eviction, independent stripes.
+ */
+public class StripedLruCacheTest {
+
+	private static StripedLruCache<byte[]> cache(long maxBytes, int stripes){
+		return new StripedLruCache<byte[]>(maxBytes, stripes){
+			@Override protected long sizeOf(byte[] value){
+				return value.length;
+			}
+		};
+	}
+
+	/** @return count keys "prefix" + i which fall in this stripe */
+	private static List<String> keysOfStripe(StripedLruCache<?> cache, int stripe, String prefix, int count){
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; keys.size() < count; i++){
+			if (cache.getStripeIndex(prefix + i) == stripe)
+				keys.add(prefix + i);
+		}
+		return keys;
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedAboveTheBudget(){
+		StripedLruCache<byte[]> cache = cache(1000, 1);
+		cache.put("a", new byte[400]);
+		cache.put("b", new byte[400]);
+		assertEquals(800, cache.size());
+		cache.put("c", new byte[400]);
+		assertNull(cache.get("a"));
+		assertEquals(800, cache.size());
+		//a get makes it the most recently used:
+		assertNotNull(cache.get("b"));
+		cache.put("d", new byte[400]);
+		assertNull(cache.get("c"));
+		assertNotNull(cache.get("b"));
+		assertNotNull(cache.get("d"));
+
+		//replaced: counted once
+		cache.put("d", new byte[100]);
+		assertEquals(500, cache.size());
+		assertEquals(2, cache.count());
+		cache.remove("b");
+		assertEquals(100, cache.size());
+
+		//larger than the budget: kept alone
+		cache.put("e", new byte[5000]);
+		assertEquals(1, cache.count());
+		assertEquals(5000, cache.size());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get("e"));
+	}
+
+	@Test
+	public void stripesHaveTheirOwnBudget(){
+		StripedLruCache<byte[]> cache = cache(4000, 4);
+		List<String> first = keysOfStripe(cache, 0, "first", 4);
+		List<String> second = keysOfStripe(cache, 1, "second", 2);
+		for (String key : second)
+			cache.put(key, new byte[400]);
+		//1000 bytes per stripe: 2 of 400 fit
+		for (String key : first)
+			cache.put(key, new byte[400]);
+		assertNull(cache.get(first.get(0)));
+		assertNull(cache.get(first.get(1)));
+		assertNotNull(cache.get(first.get(2)));
+		assertNotNull(cache.get(first.get(3)));
+		//not evicted by the other stripe:
+		for (String key : second)
+			assertNotNull(cache.get(key));
+		assertEquals(1600, cache.size());
+	}
+
+	@Test
+	public void keysAreSpreadOverStripes(){
+		StripedLruCache<byte[]> cache = cache(1 << 20, 8);
+		int[] counts = new int[8];
+		for (int i = 0; i < 8000; i++)
+			counts[cache.getStripeIndex("https://tile.example.com/icons/" + i + ".png")]++;
+		for (int count : counts)
+			assertTrue("stripe of " + count + " keys", count > 500 && count < 1500);
+	}
+
+	@Test
+	public void entriesByDefault(){
+		StripedLruCache<String> cache = new StripedLruCache<>(2, 1);
+		cache.put("a", "A");
+		cache.put("b", "B");
+		cache.put("c", "C");
+		assertEquals(2, cache.count());
+		assertEquals(2, cache.size());
+		assertNull(cache.get("a"));
+	}
+
+	@Test
+	public void concurrentUseKeepsTheAccounting() throws Exception {
+		final StripedLruCache<byte[]> cache = cache(64 * 1024, 8);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++){
+				final long seed = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override public Void call(){
+						Random random = new Random(seed);
+						for (int i = 0; i < 20000; i++){
+							String key = "k" + random.nextInt(500);
+							if (random.nextInt(4) == 0)
+								cache.remove(key);
+							else if (cache.get(key) == null)
+								cache.put(key, new byte[1 + random.nextInt(1024)]);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures)
+				future.get();
+		} finally {
+			executor.shutdownNow();
+		}
+		long total = 0;
+		for (int i = 0; i < 500; i++){
+			byte[] value = cache.get("k" + i);
+			if (value != null)
+				total += value.length;
+		}
+		assertEquals(total, cache.size());
+		assertTrue(cache.size() <= 64 * 1024);
+	}
+}